@@ -0,0 +1,65 @@
+package cycling.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ClassificationBenchmark class measures working out the classifications of a race after every stage has
+ * changed, with the stages worked out one after another or on fork/join pools of different sizes. Each call
+ * deletes and registers again one rider's result in every stage, so every stage has to be worked out again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassificationBenchmark {
+
+    /**
+     * The Parallelism class sets how the benchmark portal works out its classifications.
+     */
+    @State(Scope.Benchmark)
+    public static class Parallelism {
+        @Param({"1", "2", "4"})
+        public int parallelism;
+
+        @Param({"4"})
+        public int minimumStages;
+
+        public LocalTime[][] checkpoints;
+
+        @Setup(Level.Trial)
+        public void configure(PortalState state) throws Exception {
+            state.portal.setClassificationParallelism(parallelism, minimumStages);
+            checkpoints = new LocalTime[state.stages][];
+            for (int s = 0; s < state.stages; s++) {
+                LocalTime[] times = state.portal.getRiderResultsInStage(state.stageIds[s], state.riderId);
+                checkpoints[s] = Arrays.copyOf(times, times.length - 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public int[] changeEveryStageAndRankGeneralClassification(PortalState state, Parallelism parallelism)
+            throws Exception {
+        for (int s = 0; s < state.stages; s++) {
+            state.portal.deleteRiderResultsInStage(state.stageIds[s], state.riderId);
+            state.portal.registerRiderResultsInStage(state.stageIds[s], state.riderId, parallelism.checkpoints[s]);
+        }
+        return state.portal.getRidersGeneralClassificationRank(state.raceId);
+    }
+}
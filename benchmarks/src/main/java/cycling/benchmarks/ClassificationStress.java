@@ -0,0 +1,128 @@
+package cycling.benchmarks;
+
+import cycling.ConcurrentCyclingPortal;
+import cycling.StageType;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ClassificationStress class checks changing how classifications are worked out while they are being worked
+ * out on a {@link ConcurrentCyclingPortal}. A writer changes a result in every stage of a race, so a query has
+ * several stages to work out on the fork/join pool, and then replaces the setting with a new pool, over and over,
+ * while readers ask for the general classification. Every query must succeed, even one still using the pool the
+ * setting replaced, and afterwards the race must have the classification it had from the start, as every result
+ * is registered again with the same times. Exits with status 1 if any check fails.
+ */
+public class ClassificationStress {
+    private static final int RIDERS = 200;
+    private static final int STAGES = 6;
+    private static final int CHANGES = 2000;
+    private static final int READERS = 2;
+
+    /**
+     * Runs the stress test.
+     * @param args The number of rounds, 5 if not given.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        boolean passed = true;
+        for (int round = 0; round < rounds; round++) {
+            passed &= round(round);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one round on a new portal.
+     * @param round The number of the round, which seeds the generated results.
+     * @return true if every check passed.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    private static boolean round(int round) throws Exception {
+        ConcurrentCyclingPortal portal = new ConcurrentCyclingPortal();
+        int teamId = portal.createTeam("Team", "Stress team");
+        int[] riderIds = new int[RIDERS];
+        LocalTime[][] times = new LocalTime[RIDERS][];
+        Random random = new Random(round);
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+            times[r] = PortalState.checkpoints(random, 1);
+        }
+        int raceId = portal.createRace("Stress", "Stress race");
+        int[] stageIds = new int[STAGES];
+        for (int s = 0; s < STAGES; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stress" + s, "Stress stage", 180,
+                    LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+            portal.addIntermediateSprintToStage(stageIds[s], 90);
+            portal.concludeStagePreparation(stageIds[s]);
+            for (int r = 0; r < RIDERS; r++) {
+                portal.registerRiderResultsInStage(stageIds[s], riderIds[r], times[r]);
+            }
+        }
+        int[] expected = portal.getRidersGeneralClassificationRank(raceId);
+
+        AtomicLong queries = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicBoolean changing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(1 + READERS);
+        Future<?> writer = pool.submit(() -> {
+            start.await();
+            try {
+                for (int change = 0; change < CHANGES; change++) {
+                    int r = change % RIDERS;
+                    for (int s = 0; s < STAGES; s++) {
+                        portal.deleteRiderResultsInStage(stageIds[s], riderIds[r]);
+                        portal.registerRiderResultsInStage(stageIds[s], riderIds[r], times[r]);
+                    }
+                    portal.setClassificationParallelism(4, 2);
+                }
+            } finally {
+                changing.set(false);
+            }
+            return null;
+        });
+        Future<?>[] readers = new Future<?>[READERS];
+        for (int k = 0; k < READERS; k++) {
+            readers[k] = pool.submit(() -> {
+                start.await();
+                while (changing.get()) {
+                    try {
+                        portal.getRidersGeneralClassificationRank(raceId);
+                    } catch (RuntimeException e) {
+                        if (errors.getAndIncrement() == 0) {
+                            e.printStackTrace();
+                        }
+                    }
+                    queries.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        writer.get();
+        for (Future<?> reader:readers) {
+            reader.get();
+        }
+        pool.shutdown();
+        portal.setClassificationParallelism(1, 2);
+
+        boolean passed = errors.get() == 0
+                && Arrays.equals(expected, portal.getRidersGeneralClassificationRank(raceId));
+        System.out.printf("round %d: %d setting changes, %d queries, %d errors, %s%n", round, CHANGES,
+                queries.get(), errors.get(), passed ? "passed" : "FAILED");
+        return passed;
+    }
+}
@@ -0,0 +1,155 @@
+package cycling.benchmarks;
+
+import cycling.ConcurrentCyclingPortal;
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ConcurrencyBenchmark class measures finish-line ingestion in one race while other threads read the
+ * classifications of another race, on a {@link ConcurrentCyclingPortal} against a {@link CyclingPortal} behind a
+ * single lock, and the same with the readers reading the race being ingested into. The ingesting thread deletes
+ * and registers again the result of one rider at a time, so the race it writes to keeps the same size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrencyBenchmark {
+    private static final int RIDERS = 1000;
+    private static final int STAGES = 7;
+
+    /**
+     * The TwoRaces class builds a portal with a race being ingested into and a finished race being read.
+     */
+    @State(Scope.Group)
+    public static class TwoRaces {
+        @Param({"striped", "global"})
+        public String locking;
+
+        public CyclingPortalInterface portal;
+        public int readRaceId;
+        public int writeRaceId;
+        public int writeStageId;
+        public int[] riderIds;
+        public LocalTime[][] checkpoints;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void build() throws Exception {
+            portal = locking.equals("striped") ? new ConcurrentCyclingPortal() : new CyclingPortal();
+            Random random = new Random(42);
+            int teamId = portal.createTeam("Team", "Benchmark team");
+            riderIds = new int[RIDERS];
+            for (int r = 0; r < RIDERS; r++) {
+                riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+            }
+            readRaceId = addRace("Finished", random);
+            writeRaceId = addRace("Live", random);
+            writeStageId = portal.getRaceStages(writeRaceId)[STAGES - 1];
+            checkpoints = new LocalTime[RIDERS][];
+            for (int r = 0; r < RIDERS; r++) {
+                checkpoints[r] = portal.getRiderResultsInStage(writeStageId, riderIds[r]);
+                checkpoints[r] = Arrays.copyOf(checkpoints[r], checkpoints[r].length - 1);
+            }
+        }
+
+        /**
+         * Adds a race with every rider's results in every stage.
+         * @param name The name of the race.
+         * @param random The source of the results.
+         * @return The ID of the race.
+         * @throws Exception If the portal rejects any of the generated data.
+         */
+        private int addRace(String name, Random random) throws Exception {
+            int raceId = portal.createRace(name, "Benchmark race");
+            for (int s = 0; s < STAGES; s++) {
+                int stageId = portal.addStageToRace(raceId, name + s, "Benchmark stage", 180,
+                        LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+                portal.addIntermediateSprintToStage(stageId, 90);
+                portal.concludeStagePreparation(stageId);
+                for (int riderId:riderIds) {
+                    portal.registerRiderResultsInStage(stageId, riderId, PortalState.checkpoints(random, 1));
+                }
+            }
+            return raceId;
+        }
+    }
+
+    @Benchmark
+    @Group("ingestAndRead")
+    @GroupThreads(1)
+    public void ingest(TwoRaces state) throws Exception {
+        int rider = state.next++ % RIDERS;
+        if (state.portal instanceof ConcurrentCyclingPortal) {
+            reregister(state, rider);
+        } else {
+            synchronized (state.portal) {
+                reregister(state, rider);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("ingestAndRead")
+    @GroupThreads(3)
+    public int[] read(TwoRaces state) throws Exception {
+        if (state.portal instanceof ConcurrentCyclingPortal) {
+            return state.portal.getRidersGeneralClassificationRank(state.readRaceId);
+        }
+        synchronized (state.portal) {
+            return state.portal.getRidersGeneralClassificationRank(state.readRaceId);
+        }
+    }
+
+    @Benchmark
+    @Group("ingestAndReadSameRace")
+    @GroupThreads(1)
+    public void ingestRaceBeingRead(TwoRaces state) throws Exception {
+        ingest(state);
+    }
+
+    @Benchmark
+    @Group("ingestAndReadSameRace")
+    @GroupThreads(3)
+    public int[] readRaceBeingIngested(TwoRaces state) throws Exception {
+        if (state.portal instanceof ConcurrentCyclingPortal) {
+            return state.portal.getRidersGeneralClassificationRank(state.writeRaceId);
+        }
+        synchronized (state.portal) {
+            return state.portal.getRidersGeneralClassificationRank(state.writeRaceId);
+        }
+    }
+
+    /**
+     * Deletes a rider's result in the live stage and registers it again.
+     * @param state The benchmark portal.
+     * @param rider The index of the rider.
+     * @throws Exception If the portal rejects the result.
+     */
+    private static void reregister(TwoRaces state, int rider) throws Exception {
+        state.portal.deleteRiderResultsInStage(state.writeStageId, state.riderIds[rider]);
+        state.portal.registerRiderResultsInStage(state.writeStageId, state.riderIds[rider], state.checkpoints[rider]);
+    }
+}
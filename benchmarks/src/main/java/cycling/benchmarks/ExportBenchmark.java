@@ -0,0 +1,86 @@
+package cycling.benchmarks;
+
+import cycling.ClassificationExporter;
+import cycling.ExportFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ExportBenchmark class measures exporting the results of every stage of the benchmark race and its
+ * classifications as JSON, against building the same JSON by hand from the arrays the portal's queries return.
+ * Both write to a stream that throws the bytes away, so only encoding is measured.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Benchmark
+    public long exportCyclingPortal(PortalState state) throws Exception {
+        ClassificationExporter exporter = new ClassificationExporter(OutputStream.nullOutputStream(), ExportFormat.JSON);
+        state.portal.exportCyclingPortal(exporter);
+        return exporter.getBytesWritten();
+    }
+
+    @Benchmark
+    public void buildJsonFromQueries(PortalState state) throws Exception {
+        PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+        StringBuilder json = new StringBuilder("{\"raceId\":").append(state.raceId).append(",\"stages\":[");
+        for (int s = 0; s < state.stageIds.length; s++) {
+            int stageId = state.stageIds[s];
+            int[] riderIds = state.portal.getRidersRankInStage(stageId);
+            LocalTime[] times = state.portal.getRankedAdjustedElapsedTimesInStage(stageId);
+            int[] points = state.portal.getRidersPointsInStage(stageId);
+            int[] mountainPoints = state.portal.getRidersMountainPointsInStage(stageId);
+            json.append(s > 0 ? "," : "").append("{\"stageId\":").append(stageId).append(",\"results\":[");
+            for (int rank = 0; rank < riderIds.length; rank++) {
+                json.append(rank > 0 ? "," : "").append("{\"rank\":").append(rank + 1)
+                        .append(",\"riderId\":").append(riderIds[rank])
+                        .append(",\"adjustedElapsedTime\":\"").append(times[rank])
+                        .append("\",\"points\":").append(points[rank])
+                        .append(",\"mountainPoints\":").append(mountainPoints[rank]).append('}');
+            }
+            json.append("]}");
+        }
+        int[] riderIds = state.portal.getRidersGeneralClassificationRank(state.raceId);
+        LocalTime[] times = state.portal.getGeneralClassificationTimesInRace(state.raceId);
+        int[] points = state.portal.getRidersPointsInRace(state.raceId);
+        int[] mountainPoints = state.portal.getRidersMountainPointsInRace(state.raceId);
+        json.append("],\"general\":[");
+        for (int rank = 0; rank < riderIds.length; rank++) {
+            json.append(rank > 0 ? "," : "").append("{\"rank\":").append(rank + 1)
+                    .append(",\"riderId\":").append(riderIds[rank])
+                    .append(",\"adjustedElapsedTime\":\"").append(times[rank])
+                    .append("\",\"points\":").append(points[rank])
+                    .append(",\"mountainPoints\":").append(mountainPoints[rank]).append('}');
+        }
+        appendClassification(json.append("],\"points\":["), state.portal.getRidersPointClassificationRank(state.raceId));
+        appendClassification(json.append("],\"mountain\":["),
+                state.portal.getRidersMountainPointClassificationRank(state.raceId));
+        out.println(json.append("]}"));
+    }
+
+    /**
+     * Appends the riders of a classification to the hand-built JSON.
+     * @param json The JSON built so far.
+     * @param riderIds The IDs of the riders in order.
+     */
+    private static void appendClassification(StringBuilder json, int[] riderIds) {
+        for (int rank = 0; rank < riderIds.length; rank++) {
+            json.append(rank > 0 ? "," : "").append("{\"rank\":").append(rank + 1)
+                    .append(",\"riderId\":").append(riderIds[rank]).append('}');
+        }
+    }
+}
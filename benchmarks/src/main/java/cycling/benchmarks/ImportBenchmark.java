@@ -0,0 +1,104 @@
+package cycling.benchmarks;
+
+import cycling.ResultImportReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ImportBenchmark class measures importing the results of every stage of the benchmark race from a CSV file,
+ * against reading the same file a line at a time and registering each result with its own call. Each benchmark
+ * deletes the results first, so every call imports the same file into the same empty stages.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+
+    /**
+     * The ResultFile class writes the results of the benchmark portal to a temporary CSV file.
+     */
+    @State(Scope.Benchmark)
+    public static class ResultFile {
+        public File file;
+
+        @Setup(Level.Trial)
+        public void write(PortalState state) throws Exception {
+            file = File.createTempFile("results", ".csv");
+            try (PrintWriter writer = new PrintWriter(file)) {
+                writer.println("stage,rider,checkpoints");
+                for (int stageId:state.stageIds) {
+                    for (int riderId:state.riderIds) {
+                        LocalTime[] times = state.portal.getRiderResultsInStage(stageId, riderId);
+                        StringBuilder line = new StringBuilder().append(stageId).append(',').append(riderId);
+                        for (int i = 0; i < times.length - 1; i++) {
+                            line.append(',').append(times[i]);
+                        }
+                        writer.println(line);
+                    }
+                }
+            }
+            System.out.printf("%nresult file %d bytes%n", file.length());
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public ResultImportReport deleteAndImportRiderResults(PortalState state, ResultFile results) throws Exception {
+        deleteResults(state);
+        return state.portal.importRiderResults(results.file.getPath());
+    }
+
+    @Benchmark
+    public void deleteAndRegisterRiderResultsLineByLine(PortalState state, ResultFile results) throws Exception {
+        deleteResults(state);
+        try (BufferedReader reader = Files.newBufferedReader(results.file.toPath())) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                LocalTime[] checkpoints = new LocalTime[fields.length - 2];
+                for (int i = 0; i < checkpoints.length; i++) {
+                    checkpoints[i] = LocalTime.parse(fields[i + 2]);
+                }
+                state.portal.registerRiderResultsInStage(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        checkpoints);
+            }
+        }
+    }
+
+    /**
+     * Deletes the results of every rider in every stage of the benchmark race.
+     * @param state The benchmark portal.
+     * @throws Exception If a result cannot be deleted.
+     */
+    private static void deleteResults(PortalState state) throws Exception {
+        for (int stageId:state.stageIds) {
+            for (int riderId:state.riderIds) {
+                state.portal.deleteRiderResultsInStage(stageId, riderId);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package cycling.benchmarks;
+
+import cycling.ConcurrentCyclingPortal;
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.DuplicatedResultException;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The IngestionBenchmark class measures a sprint finish: 1, 2 and 4 timing feeds registering the results of
+ * different riders in the same stage at once, on a {@link ConcurrentCyclingPortal}, whose feeds offer results
+ * without a lock, against a {@link CyclingPortal} behind a single lock. Each iteration fills the stages of a new
+ * race, which is removed afterwards, so no result is ever registered twice. Only registering is measured: the
+ * concurrent portal merges the offered results into its stages when the race is next used, which here is when
+ * it is removed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+    private static final int RIDERS = 20000;
+    private static final int STAGES = 100;
+
+    /**
+     * The Finish class holds the riders and the race whose stages the feeds register results in.
+     */
+    @State(Scope.Benchmark)
+    public static class Finish {
+        @Param({"inbox", "synchronized"})
+        public String ingestion;
+
+        public CyclingPortalInterface portal;
+        public int[] riderIds;
+        public LocalTime[][] checkpoints;
+        public int raceId;
+        public int[] stageIds;
+        public final AtomicInteger next = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void build() throws Exception {
+            portal = ingestion.equals("inbox") ? new ConcurrentCyclingPortal() : new CyclingPortal();
+            Random random = new Random(42);
+            int teamId = portal.createTeam("Team", "Benchmark team");
+            riderIds = new int[RIDERS];
+            checkpoints = new LocalTime[RIDERS][];
+            for (int r = 0; r < RIDERS; r++) {
+                riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+                checkpoints[r] = PortalState.checkpoints(random, 1);
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void addRace() throws Exception {
+            raceId = portal.createRace("Finish", "Benchmark race");
+            stageIds = new int[STAGES];
+            for (int s = 0; s < STAGES; s++) {
+                stageIds[s] = portal.addStageToRace(raceId, "Finish" + s, "Benchmark stage", 180,
+                        LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+                portal.addIntermediateSprintToStage(stageIds[s], 90);
+                portal.concludeStagePreparation(stageIds[s]);
+            }
+            next.set(0);
+        }
+
+        @TearDown(Level.Iteration)
+        public void removeRace() throws Exception {
+            portal.removeRaceById(raceId);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean register1Feed(Finish finish) throws Exception {
+        return register(finish);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean register2Feeds(Finish finish) throws Exception {
+        return register(finish);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean register4Feeds(Finish finish) throws Exception {
+        return register(finish);
+    }
+
+    /**
+     * Registers the result of the next rider, moving on to the next stage once every rider has one. If an
+     * iteration runs through every stage, it starts again and the portal rejects the results as duplicates.
+     * @param finish The benchmark portal.
+     * @return true if the result was registered.
+     * @throws Exception If the portal rejects the result for any other reason.
+     */
+    private static boolean register(Finish finish) throws Exception {
+        int n = finish.next.getAndIncrement();
+        int stageId = finish.stageIds[(n / RIDERS) % STAGES];
+        int rider = n % RIDERS;
+        try {
+            if (finish.portal instanceof ConcurrentCyclingPortal) {
+                finish.portal.registerRiderResultsInStage(stageId, finish.riderIds[rider], finish.checkpoints[rider]);
+            } else {
+                synchronized (finish.portal) {
+                    finish.portal.registerRiderResultsInStage(stageId, finish.riderIds[rider],
+                            finish.checkpoints[rider]);
+                }
+            }
+            return true;
+        } catch (DuplicatedResultException e) {
+            return false;
+        }
+    }
+}
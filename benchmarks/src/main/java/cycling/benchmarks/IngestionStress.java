@@ -0,0 +1,193 @@
+package cycling.benchmarks;
+
+import cycling.ConcurrentCyclingPortal;
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.DuplicatedResultException;
+import cycling.StageType;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The IngestionStress class checks registering results from many threads at once on a
+ * {@link ConcurrentCyclingPortal}. Every feed tries to register a result for every rider in every stage, each in
+ * its own order and with its own times, while readers query the classifications. Afterwards each rider must
+ * have exactly one result per stage, from the feed whose registration succeeded, every other registration must
+ * have been rejected as a duplicate, and the classifications must match a {@link CyclingPortal} given the
+ * winning results one at a time. Exits with status 1 if any check fails.
+ */
+public class IngestionStress {
+    private static final int RIDERS = 2000;
+    private static final int STAGES = 4;
+    private static final int FEEDS = 8;
+    private static final int READERS = 2;
+
+    /**
+     * Runs the stress test.
+     * @param args The number of rounds, 5 if not given.
+     * @throws Exception If the portals reject the generated data.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        boolean passed = true;
+        for (int round = 0; round < rounds; round++) {
+            passed &= round(round);
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one round on a new portal.
+     * @param round The number of the round, which seeds the generated results.
+     * @return true if every check passed.
+     * @throws Exception If the portals reject the generated data.
+     */
+    private static boolean round(int round) throws Exception {
+        ConcurrentCyclingPortal portal = new ConcurrentCyclingPortal();
+        CyclingPortal expected = new CyclingPortal();
+        int[] riderIds = addRiders(portal);
+        addRiders(expected);
+        int raceId = addRace(portal);
+        addRace(expected);
+        int[] stageIds = portal.getRaceStages(raceId);
+        LocalTime[][][] times = new LocalTime[FEEDS][RIDERS][];
+        Random random = new Random(round);
+        for (int f = 0; f < FEEDS; f++) {
+            for (int r = 0; r < RIDERS; r++) {
+                times[f][r] = PortalState.checkpoints(random, 1);
+            }
+        }
+
+        AtomicIntegerArray winners = new AtomicIntegerArray(STAGES * RIDERS);
+        AtomicLong duplicates = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicBoolean ingesting = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(FEEDS + READERS);
+        List<Future<?>> feeds = new ArrayList<>();
+        for (int f = 0; f < FEEDS; f++) {
+            int feed = f;
+            feeds.add(pool.submit(() -> {
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < STAGES * RIDERS; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, new Random(round * 31L + feed));
+                start.await();
+                for (int i:order) {
+                    int r = i % RIDERS;
+                    try {
+                        portal.registerRiderResultsInStage(stageIds[i / RIDERS], riderIds[r], times[feed][r]);
+                        if (!winners.compareAndSet(i, 0, feed + 1)) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (DuplicatedResultException e) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int k = 0; k < READERS; k++) {
+            readers.add(pool.submit(() -> {
+                int[] seen = new int[STAGES];
+                start.await();
+                while (ingesting.get()) {
+                    for (int s = 0; s < STAGES; s++) {
+                        int size = portal.getRidersRankInStage(stageIds[s]).length;
+                        if (size < seen[s]) {
+                            errors.incrementAndGet();
+                        }
+                        seen[s] = size;
+                    }
+                    portal.getRidersGeneralClassificationRank(raceId);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> feed:feeds) {
+            feed.get();
+        }
+        ingesting.set(false);
+        for (Future<?> reader:readers) {
+            reader.get();
+        }
+        pool.shutdown();
+
+        int registered = 0;
+        for (int i = 0; i < STAGES * RIDERS; i++) {
+            int winner = winners.get(i);
+            if (winner == 0) {
+                continue;
+            }
+            registered++;
+            int r = i % RIDERS;
+            LocalTime[] winning = times[winner - 1][r];
+            expected.registerRiderResultsInStage(stageIds[i / RIDERS], riderIds[r], winning);
+            LocalTime[] stored = portal.getRiderResultsInStage(stageIds[i / RIDERS], riderIds[r]);
+            if (!Arrays.equals(winning, Arrays.copyOf(stored, winning.length))) {
+                errors.incrementAndGet();
+            }
+        }
+        boolean passed = errors.get() == 0
+                && registered == STAGES * RIDERS
+                && duplicates.get() == (long) (FEEDS - 1) * STAGES * RIDERS
+                && Arrays.equals(portal.getRidersGeneralClassificationRank(raceId),
+                        expected.getRidersGeneralClassificationRank(raceId))
+                && Arrays.equals(portal.getGeneralClassificationTimesInRace(raceId),
+                        expected.getGeneralClassificationTimesInRace(raceId))
+                && Arrays.equals(portal.getRidersPointsInRace(raceId), expected.getRidersPointsInRace(raceId));
+        System.out.printf("round %d: %d registered, %d duplicates, %d errors, %s%n", round, registered,
+                duplicates.get(), errors.get(), passed ? "passed" : "FAILED");
+        return passed;
+    }
+
+    /**
+     * Adds a team of riders to a portal.
+     * @param portal The portal.
+     * @return The IDs of the riders.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    private static int[] addRiders(CyclingPortalInterface portal) throws Exception {
+        int teamId = portal.createTeam("Team", "Stress team");
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Adds a race of stages waiting for results to a portal.
+     * @param portal The portal.
+     * @return The ID of the race.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    private static int addRace(CyclingPortalInterface portal) throws Exception {
+        int raceId = portal.createRace("Stress", "Stress race");
+        for (int s = 0; s < STAGES; s++) {
+            int stageId = portal.addStageToRace(raceId, "Stress" + s, "Stress stage", 180,
+                    LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+            portal.addIntermediateSprintToStage(stageId, 90);
+            portal.concludeStagePreparation(stageId);
+        }
+        return raceId;
+    }
+}
@@ -0,0 +1,79 @@
+package cycling.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JournalBenchmark class measures changing the portal while every change is recorded in a journal, with each
+ * change synced to disk before it returns and with changes synced in the background by group commit.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    /**
+     * The JournalState class opens a journal for the benchmark portal in a temporary directory. The portal is
+     * saved and loaded back with the journal open, which takes a checkpoint of it.
+     */
+    @State(Scope.Benchmark)
+    public static class JournalState {
+        @Param({"0", "5"})
+        public long groupCommitMillis;
+
+        public Path directory;
+
+        @Setup(Level.Trial)
+        public void open(PortalState state) throws Exception {
+            directory = Files.createTempDirectory("portal-journal");
+            File savedPortal = File.createTempFile("portal", ".cyps");
+            state.portal.saveCyclingPortal(savedPortal.getPath());
+            state.portal.openJournal(directory.toString(), groupCommitMillis);
+            state.portal.loadCyclingPortal(savedPortal.getPath());
+            savedPortal.delete();
+        }
+
+        @TearDown(Level.Trial)
+        public void close(PortalState state) throws IOException {
+            state.portal.closeJournal();
+            File[] files = directory.toFile().listFiles();
+            if (files != null) {
+                for (File file:files) {
+                    file.delete();
+                }
+            }
+            directory.toFile().delete();
+        }
+    }
+
+    @Benchmark
+    public void deleteAndRegisterRiderResultsInStage(PortalState state, JournalState journal) throws Exception {
+        state.portal.deleteRiderResultsInStage(state.resultsStageId, state.riderId);
+        state.portal.registerRiderResultsInStage(state.resultsStageId, state.riderId, state.riderCheckpoints);
+    }
+
+    @Benchmark
+    public void createAndRemoveRaceById(PortalState state, JournalState journal) throws Exception {
+        int raceId = state.portal.createRace("ExtraRace", "Created by the benchmark");
+        state.portal.removeRaceById(raceId);
+    }
+}
@@ -0,0 +1,200 @@
+package cycling.benchmarks;
+
+import cycling.CyclingPortal;
+import cycling.MappedCyclingPortal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The PersistenceBenchmark class measures saving the portal to a file, loading it into a new portal, and
+ * erasing a loaded portal. Saving and loading a Java serialization stream of the portal, the format used before
+ * snapshots, is measured alongside for comparison, as is opening a read-only image of the portal by mapping it
+ * and answering a first query from it. Saved portals are race archives, which load each race when it is first
+ * used, so a first query is also measured against loading the whole portal from a snapshot, and a save of only
+ * what changed is measured against saving everything. Compressed archives are measured against plain ones, and
+ * results registered while the portal is saved in the background are measured against registering them after a
+ * save on the caller's thread.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+    private static final int CHANGES_PER_SAVE = 100;
+
+    /**
+     * The PortalFile class holds a saved copy of the benchmark portal in each format, which the load benchmarks
+     * read.
+     */
+    @State(Scope.Benchmark)
+    public static class PortalFile {
+        public File savedPortal;
+        public File snapshot;
+        public File compressedPortal;
+        public File serializedPortal;
+        public File portalImage;
+        public File scratchFile;
+
+        @Setup(Level.Trial)
+        public void save(PortalState state) throws IOException {
+            savedPortal = File.createTempFile("portal", ".cypa");
+            snapshot = File.createTempFile("portal", ".cyps");
+            compressedPortal = File.createTempFile("portal-compressed", ".cypa");
+            serializedPortal = File.createTempFile("portal", ".ser");
+            portalImage = File.createTempFile("portal", ".img");
+            scratchFile = File.createTempFile("portal-scratch", ".ser");
+            state.portal.setCompressedSaves(true);
+            state.portal.saveCyclingPortal(compressedPortal.getPath());
+            state.portal.setCompressedSaves(false);
+            state.portal.saveCyclingPortal(savedPortal.getPath());
+            serialize(state.portal, serializedPortal);
+            state.portal.savePortalImage(portalImage.getPath());
+            new MappedCyclingPortal(portalImage.getPath()).saveCyclingPortal(snapshot.getPath());
+            System.out.printf("%narchive %d bytes, compressed archive %d bytes, snapshot %d bytes, "
+                    + "Java serialization %d bytes, image %d bytes%n", savedPortal.length(), compressedPortal.length(),
+                    snapshot.length(), serializedPortal.length(), portalImage.length());
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() {
+            savedPortal.delete();
+            snapshot.delete();
+            compressedPortal.delete();
+            serializedPortal.delete();
+            portalImage.delete();
+            scratchFile.delete();
+        }
+    }
+
+    /**
+     * Writes the portal as a Java serialization stream, the way it was saved before snapshots.
+     * @param portal The portal to write.
+     * @param file The file to write it to.
+     * @throws IOException If the file cannot be written.
+     */
+    static void serialize(CyclingPortal portal, File file) throws IOException {
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(file))) {
+            outputStream.writeObject(portal);
+        }
+    }
+
+    @Benchmark
+    public void saveCyclingPortal(PortalState state, PortalFile file) throws IOException {
+        state.portal.saveCyclingPortal(file.scratchFile.getPath());
+    }
+
+    @Benchmark
+    public void saveCompressedCyclingPortal(PortalState state, PortalFile file) throws IOException {
+        state.portal.setCompressedSaves(true);
+        state.portal.saveCyclingPortal(file.scratchFile.getPath());
+        state.portal.setCompressedSaves(false);
+    }
+
+    @Benchmark
+    public void changeResultAndSaveCyclingPortalChanges(PortalState state, PortalFile file) throws Exception {
+        state.portal.deleteRiderResultsInStage(state.resultsStageId, state.riderId);
+        state.portal.registerRiderResultsInStage(state.resultsStageId, state.riderId, state.riderCheckpoints);
+        state.portal.saveCyclingPortalChanges(file.savedPortal.getPath());
+    }
+
+    @Benchmark
+    public void saveCyclingPortalAndChangeResults(PortalState state, PortalFile file) throws Exception {
+        state.portal.saveCyclingPortal(file.scratchFile.getPath());
+        changeResults(state);
+    }
+
+    @Benchmark
+    public long changeResultsWhileSavingCyclingPortalInBackground(PortalState state, PortalFile file)
+            throws Exception {
+        CompletableFuture<Long> snapshot = state.portal.saveCyclingPortalInBackground(file.scratchFile.getPath());
+        changeResults(state);
+        return snapshot.get();
+    }
+
+    /**
+     * Deletes and registers the result of the benchmark rider in the results stage a number of times.
+     * @param state The benchmark portal.
+     * @throws Exception If a result cannot be changed.
+     */
+    private static void changeResults(PortalState state) throws Exception {
+        for (int i = 0; i < CHANGES_PER_SAVE; i++) {
+            state.portal.deleteRiderResultsInStage(state.resultsStageId, state.riderId);
+            state.portal.registerRiderResultsInStage(state.resultsStageId, state.riderId, state.riderCheckpoints);
+        }
+    }
+
+    @Benchmark
+    public CyclingPortal loadCyclingPortal(PortalFile file) throws IOException, ClassNotFoundException {
+        CyclingPortal portal = new CyclingPortal();
+        portal.loadCyclingPortal(file.savedPortal.getPath());
+        return portal;
+    }
+
+    @Benchmark
+    public CyclingPortal loadSnapshot(PortalFile file) throws IOException, ClassNotFoundException {
+        CyclingPortal portal = new CyclingPortal();
+        portal.loadCyclingPortal(file.snapshot.getPath());
+        return portal;
+    }
+
+    @Benchmark
+    public void saveJavaSerialization(PortalState state, PortalFile file) throws IOException {
+        serialize(state.portal, file.scratchFile);
+    }
+
+    @Benchmark
+    public CyclingPortal loadJavaSerialization(PortalFile file) throws IOException, ClassNotFoundException {
+        CyclingPortal portal = new CyclingPortal();
+        portal.loadCyclingPortal(file.serializedPortal.getPath());
+        return portal;
+    }
+
+    @Benchmark
+    public int[] openPortalImageAndGetRidersRankInStage(PortalState state, PortalFile file) throws Exception {
+        MappedCyclingPortal portal = new MappedCyclingPortal(file.portalImage.getPath());
+        return portal.getRidersRankInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] loadCyclingPortalAndGetRidersRankInStage(PortalState state, PortalFile file) throws Exception {
+        return loadCyclingPortal(file).getRidersRankInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] loadCompressedCyclingPortalAndGetRidersRankInStage(PortalState state, PortalFile file)
+            throws Exception {
+        CyclingPortal portal = new CyclingPortal();
+        portal.loadCyclingPortal(file.compressedPortal.getPath());
+        return portal.getRidersRankInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] loadSnapshotAndGetRidersRankInStage(PortalState state, PortalFile file) throws Exception {
+        return loadSnapshot(file).getRidersRankInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public CyclingPortal loadAndEraseCyclingPortal(PortalFile file) throws IOException, ClassNotFoundException {
+        CyclingPortal portal = loadCyclingPortal(file);
+        portal.eraseCyclingPortal();
+        return portal;
+    }
+}
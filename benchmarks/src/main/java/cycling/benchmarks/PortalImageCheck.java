@@ -0,0 +1,159 @@
+package cycling.benchmarks;
+
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.MappedCyclingPortal;
+import cycling.SegmentType;
+import cycling.StageType;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * The PortalImageCheck class checks that a {@link MappedCyclingPortal} gives the same answers as the
+ * {@link CyclingPortal} its image was saved from, for races whose stages were not added in start time order: one
+ * race has its stages added latest first, another in a shuffled order with two stages starting at the same time.
+ * Every query on races, stages and classifications is compared. A second portal, with a stage and a climb without
+ * a type, is saved as an image too, and the mapped portal, saved and loaded again, must save to the same bytes
+ * as the portal it came from, which shows the missing types read back as missing. Exits with status 1 if any answer differs.
+ */
+public class PortalImageCheck {
+    private static final int RIDERS = 30;
+
+    /**
+     * Runs the check.
+     * @param args Not used.
+     * @throws Exception If the portal rejects the generated data or the image cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+        CyclingPortal portal = new CyclingPortal();
+        Random random = new Random(42);
+        int teamId = portal.createTeam("Team", "Check team");
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        addRace(portal, "Reversed", new int[] {4, 3, 2, 1, 0}, riderIds, random);
+        addRace(portal, "Shuffled", new int[] {2, 0, 4, 2, 1}, riderIds, random);
+
+        File file = File.createTempFile("portal", ".img");
+        try {
+            portal.savePortalImage(file.getPath());
+            MappedCyclingPortal mapped = new MappedCyclingPortal(file.getPath());
+            int differences = 0;
+            for (int raceId:portal.getRaceIds()) {
+                differences += compare("getRaceStages " + raceId, portal.getRaceStages(raceId),
+                        mapped.getRaceStages(raceId));
+                differences += compare("viewRaceDetails " + raceId, portal.viewRaceDetails(raceId),
+                        mapped.viewRaceDetails(raceId));
+                differences += compare("getRidersGeneralClassificationRank " + raceId,
+                        portal.getRidersGeneralClassificationRank(raceId),
+                        mapped.getRidersGeneralClassificationRank(raceId));
+                differences += compare("getGeneralClassificationTimesInRace " + raceId,
+                        portal.getGeneralClassificationTimesInRace(raceId),
+                        mapped.getGeneralClassificationTimesInRace(raceId));
+                differences += compare("getRidersPointsInRace " + raceId, portal.getRidersPointsInRace(raceId),
+                        mapped.getRidersPointsInRace(raceId));
+                differences += compare("getRidersMountainPointsInRace " + raceId,
+                        portal.getRidersMountainPointsInRace(raceId), mapped.getRidersMountainPointsInRace(raceId));
+                for (int stageId:portal.getRaceStages(raceId)) {
+                    differences += compare("getStageSegments " + stageId, portal.getStageSegments(stageId),
+                            mapped.getStageSegments(stageId));
+                    differences += compare("getRidersRankInStage " + stageId, portal.getRidersRankInStage(stageId),
+                            mapped.getRidersRankInStage(stageId));
+                    differences += compare("getRidersPointsInStage " + stageId,
+                            portal.getRidersPointsInStage(stageId), mapped.getRidersPointsInStage(stageId));
+                }
+            }
+            differences += compareUntyped(file);
+            System.out.printf("%d differences, %s%n", differences, differences == 0 ? "passed" : "FAILED");
+            if (differences > 0) {
+                System.exit(1);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Adds a race whose stages are added in the given order of start days, each with a climb and a sprint and a
+     * result for every rider.
+     * @param portal The portal.
+     * @param name The name of the race.
+     * @param startDays The day each stage starts on, in the order the stages are added.
+     * @param riderIds The riders to register results for.
+     * @param random The source of the results.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    private static void addRace(CyclingPortalInterface portal, String name, int[] startDays, int[] riderIds,
+                                Random random) throws Exception {
+        int raceId = portal.createRace(name, "Check race");
+        for (int s = 0; s < startDays.length; s++) {
+            int stageId = portal.addStageToRace(raceId, name + s, "Check stage", 180,
+                    LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(startDays[s]), StageType.MEDIUM_MOUNTAIN);
+            portal.addCategorizedClimbToStage(stageId, 60.0, SegmentType.C1, 6.0, 8.0);
+            portal.addIntermediateSprintToStage(stageId, 120);
+            portal.concludeStagePreparation(stageId);
+            for (int riderId:riderIds) {
+                portal.registerRiderResultsInStage(stageId, riderId, PortalState.checkpoints(random, 2));
+            }
+        }
+    }
+
+    /**
+     * Saves a portal with a stage and a climb without a type as an image, and compares the mapped portal with it.
+     * Their points are not compared, as a stage or climb without a type has none.
+     * @param file The file to save the image in, which is overwritten.
+     * @return The number of answers that differ.
+     * @throws Exception If the portal rejects the generated data or the files cannot be written.
+     */
+    private static int compareUntyped(File file) throws Exception {
+        CyclingPortal portal = new CyclingPortal();
+        SnapshotCheck.addRace(portal);
+        portal.savePortalImage(file.getPath());
+        MappedCyclingPortal mapped = new MappedCyclingPortal(file.getPath());
+        int differences = 0;
+        for (int raceId:portal.getRaceIds()) {
+            differences += compare("getRaceStages " + raceId, portal.getRaceStages(raceId),
+                    mapped.getRaceStages(raceId));
+            for (int stageId:portal.getRaceStages(raceId)) {
+                differences += compare("getStageSegments " + stageId, portal.getStageSegments(stageId),
+                        mapped.getStageSegments(stageId));
+                differences += compare("getRidersRankInStage " + stageId, portal.getRidersRankInStage(stageId),
+                        mapped.getRidersRankInStage(stageId));
+            }
+        }
+        Path snapshot = Files.createTempFile("portal", ".cyps");
+        try {
+            mapped.saveCyclingPortal(snapshot.toString());
+            CyclingPortal reloaded = new CyclingPortal();
+            reloaded.loadCyclingPortal(snapshot.toString());
+            differences += compare("saveCyclingPortal", SnapshotCheck.save(portal, snapshot),
+                    SnapshotCheck.save(reloaded, snapshot));
+        } finally {
+            Files.delete(snapshot);
+        }
+        return differences;
+    }
+
+    /**
+     * Compares the answers of the two portals to a query, printing them if they differ.
+     * @param query The query.
+     * @param expected The answer of the portal.
+     * @param actual The answer of the image.
+     * @return 1 if they differ, otherwise 0.
+     */
+    private static int compare(String query, Object expected, Object actual) {
+        if (Objects.deepEquals(expected, actual)) {
+            return 0;
+        }
+        System.out.printf("%s: expected %s but was %s%n", query, Arrays.deepToString(new Object[] {expected}),
+                Arrays.deepToString(new Object[] {actual}));
+        return 1;
+    }
+}
@@ -0,0 +1,146 @@
+package cycling.benchmarks;
+
+import cycling.CyclingPortal;
+import cycling.SegmentType;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The PortalState class builds a cycling portal holding one race with every rider's results registered in
+ * every stage, sized by the benchmark parameters. Time trial stages have no segments, as the portal does not
+ * allow them to.
+ */
+@State(Scope.Benchmark)
+public class PortalState {
+    private static final StageType[] STAGE_TYPES = {StageType.FLAT, StageType.MEDIUM_MOUNTAIN,
+            StageType.HIGH_MOUNTAIN, StageType.TT};
+    private static final SegmentType[] CLIMB_TYPES = {SegmentType.C4, SegmentType.C3, SegmentType.C2,
+            SegmentType.C1, SegmentType.HC};
+    private static final int RIDERS_PER_TEAM = 10;
+    private static final double STAGE_LENGTH = 180;
+
+    @Param({"20", "200", "2000"})
+    public int riders;
+
+    @Param({"1", "7", "21"})
+    public int stages;
+
+    @Param({"0", "3", "6"})
+    public int segments;
+
+    public CyclingPortal portal;
+    public int raceId;
+    public String raceName;
+    public int[] stageIds;
+    public int[] teamIds;
+    public int[] riderIds;
+    /**
+     * A stage of the race that is still being prepared, so segments can be added to it and removed again.
+     */
+    public int preparingStageId;
+    /**
+     * The last stage of the race, which has segments unless there are none at all.
+     */
+    public int resultsStageId;
+    /**
+     * A rider in the middle of the field, used for single rider queries.
+     */
+    public int riderId;
+    /**
+     * The checkpoint times registered for the query rider in the results stage.
+     */
+    public LocalTime[] riderCheckpoints;
+
+    /**
+     * Builds the portal and registers the results of every rider.
+     * @throws Exception If the portal rejects any of the generated data.
+     */
+    @Setup(Level.Trial)
+    public void build() throws Exception {
+        portal = new CyclingPortal();
+        Random random = new Random(riders * 31L + stages * 7L + segments);
+
+        int numberOfTeams = (riders + RIDERS_PER_TEAM - 1) / RIDERS_PER_TEAM;
+        teamIds = new int[numberOfTeams];
+        for (int t = 0; t < numberOfTeams; t++) {
+            teamIds[t] = portal.createTeam("Team" + t, "Benchmark team " + t);
+        }
+        riderIds = new int[riders];
+        for (int r = 0; r < riders; r++) {
+            riderIds[r] = portal.createRider(teamIds[r / RIDERS_PER_TEAM], "Rider" + r, 1980 + r % 25);
+        }
+
+        raceName = "Tour";
+        raceId = portal.createRace(raceName, "Benchmark race");
+        stageIds = new int[stages];
+        int[] segmentsInStage = new int[stages];
+        for (int s = 0; s < stages; s++) {
+            // The last stage is never a time trial, so there is always a stage with segments when segments > 0.
+            StageType type = s == stages - 1 ? StageType.FLAT : STAGE_TYPES[s % STAGE_TYPES.length];
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, "Benchmark stage", STAGE_LENGTH,
+                    LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), type);
+            if (type != StageType.TT) {
+                addSegments(stageIds[s], segments);
+                segmentsInStage[s] = segments;
+            }
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        preparingStageId = portal.addStageToRace(raceId, "Preparing", "Stage still being prepared", STAGE_LENGTH,
+                LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(stages), StageType.FLAT);
+
+        for (int s = 0; s < stages; s++) {
+            for (int r = 0; r < riders; r++) {
+                portal.registerRiderResultsInStage(stageIds[s], riderIds[r], checkpoints(random, segmentsInStage[s]));
+            }
+        }
+        resultsStageId = stageIds[stages - 1];
+        riderId = riderIds[riders / 2];
+        riderCheckpoints = portal.getRiderResultsInStage(resultsStageId, riderId);
+        riderCheckpoints = Arrays.copyOf(riderCheckpoints, riderCheckpoints.length - 1);
+    }
+
+    /**
+     * Adds segments to a stage, alternating intermediate sprints with climbs of every category.
+     * @param stageId The ID of the stage.
+     * @param numberOfSegments The number of segments to add.
+     * @throws Exception If the portal rejects a segment.
+     */
+    private void addSegments(int stageId, int numberOfSegments) throws Exception {
+        for (int k = 0; k < numberOfSegments; k++) {
+            double location = STAGE_LENGTH * (k + 1) / (numberOfSegments + 1);
+            if (k % 2 == 0) {
+                portal.addIntermediateSprintToStage(stageId, location);
+            } else {
+                portal.addCategorizedClimbToStage(stageId, location, CLIMB_TYPES[(k / 2) % CLIMB_TYPES.length],
+                        6.0, 5.0);
+            }
+        }
+    }
+
+    /**
+     * Makes up the checkpoint times of one rider in a stage. Riders are spread over about ten minutes at each
+     * checkpoint, so many finish within a second of another rider.
+     * @param random The source of the spread.
+     * @param numberOfSegments The number of segments in the stage.
+     * @return The start time, the time at each segment and the finish time.
+     */
+    public static LocalTime[] checkpoints(Random random, int numberOfSegments) {
+        LocalTime[] times = new LocalTime[numberOfSegments + 2];
+        LocalTime start = LocalTime.of(11, 0);
+        times[0] = start;
+        long leg = 4 * 3600L / (numberOfSegments + 1);
+        for (int k = 1; k < times.length; k++) {
+            times[k] = start.plusSeconds(leg * k + random.nextInt(600)).plusNanos(random.nextInt(1_000_000_000));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,126 @@
+package cycling.benchmarks;
+
+import cycling.IDNotRecognisedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The QueryBenchmark class measures every read-only query of the cycling portal against a portal whose results
+ * have all been registered. The stage and race classifications are cached by the portal, so these figures are
+ * for repeated reads with no results changing in between; {@link UpdateBenchmark} covers reads after a change.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Benchmark
+    public int[] getRaceIds(PortalState state) {
+        return state.portal.getRaceIds();
+    }
+
+    @Benchmark
+    public String viewRaceDetails(PortalState state) throws IDNotRecognisedException {
+        return state.portal.viewRaceDetails(state.raceId);
+    }
+
+    @Benchmark
+    public int getNumberOfStages(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getNumberOfStages(state.raceId);
+    }
+
+    @Benchmark
+    public int[] getRaceStages(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRaceStages(state.raceId);
+    }
+
+    @Benchmark
+    public double getStageLength(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getStageLength(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] getStageSegments(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getStageSegments(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] getTeams(PortalState state) {
+        return state.portal.getTeams();
+    }
+
+    @Benchmark
+    public int[] getTeamRiders(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getTeamRiders(state.teamIds[0]);
+    }
+
+    @Benchmark
+    public LocalTime[] getRiderResultsInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRiderResultsInStage(state.resultsStageId, state.riderId);
+    }
+
+    @Benchmark
+    public LocalTime getRiderAdjustedElapsedTimeInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRiderAdjustedElapsedTimeInStage(state.resultsStageId, state.riderId);
+    }
+
+    @Benchmark
+    public int[] getRidersRankInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersRankInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRankedAdjustedElapsedTimesInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] getRidersPointsInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersPointsInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] getRidersMountainPointsInStage(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersMountainPointsInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] getRidersGeneralClassificationRank(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersGeneralClassificationRank(state.raceId);
+    }
+
+    @Benchmark
+    public LocalTime[] getGeneralClassificationTimesInRace(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getGeneralClassificationTimesInRace(state.raceId);
+    }
+
+    @Benchmark
+    public int[] getRidersPointsInRace(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersPointsInRace(state.raceId);
+    }
+
+    @Benchmark
+    public int[] getRidersMountainPointsInRace(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersMountainPointsInRace(state.raceId);
+    }
+
+    @Benchmark
+    public int[] getRidersPointClassificationRank(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersPointClassificationRank(state.raceId);
+    }
+
+    @Benchmark
+    public int[] getRidersMountainPointClassificationRank(PortalState state) throws IDNotRecognisedException {
+        return state.portal.getRidersMountainPointClassificationRank(state.raceId);
+    }
+}
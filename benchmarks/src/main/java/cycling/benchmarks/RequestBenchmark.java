@@ -0,0 +1,105 @@
+package cycling.benchmarks;
+
+import cycling.PortalRequestExecutor;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RequestBenchmark class measures a burst of requests made through a {@link PortalRequestExecutor}, all in
+ * flight at once before any is waited for, as a request layer would make them. The requests are spread over
+ * several races: each rider's result in a stage is deleted and registered again, which the executor keeps in
+ * order per race, and every tenth pair also asks for the general classification of the race.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+    private static final int RACES = 8;
+    private static final int STAGES = 5;
+    private static final int RIDERS = 2000;
+
+    /**
+     * The Requests class holds the executor and the races the requests are made on.
+     */
+    @State(Scope.Benchmark)
+    public static class Requests {
+        @Param({"1000", "20000"})
+        public int inFlight;
+
+        public PortalRequestExecutor executor;
+        public int[] raceIds;
+        public int[][] stageIds;
+        public int[] riderIds;
+        public LocalTime[][] checkpoints;
+
+        @Setup(Level.Trial)
+        public void build() throws Exception {
+            executor = new PortalRequestExecutor();
+            Random random = new Random(42);
+            int teamId = executor.createTeam("Team", "Benchmark team");
+            riderIds = new int[RIDERS];
+            checkpoints = new LocalTime[RIDERS][];
+            for (int r = 0; r < RIDERS; r++) {
+                riderIds[r] = executor.createRider(teamId, "Rider" + r, 1990);
+                checkpoints[r] = PortalState.checkpoints(random, 1);
+            }
+            raceIds = new int[RACES];
+            stageIds = new int[RACES][STAGES];
+            for (int race = 0; race < RACES; race++) {
+                raceIds[race] = executor.createRace("Race" + race, "Benchmark race");
+                for (int s = 0; s < STAGES; s++) {
+                    int stageId = executor.addStageToRace(raceIds[race], "Race" + race + "Stage" + s,
+                            "Benchmark stage", 180, LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+                    executor.addIntermediateSprintToStage(stageId, 90);
+                    executor.concludeStagePreparation(stageId);
+                    for (int r = 0; r < RIDERS; r++) {
+                        executor.registerRiderResultsInStage(stageId, riderIds[r], checkpoints[r]);
+                    }
+                    stageIds[race][s] = stageId;
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            executor.close();
+        }
+    }
+
+    @Benchmark
+    public Void deleteAndRegisterInFlight(Requests requests) {
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[requests.inFlight];
+        for (int n = 0; n < requests.inFlight; n++) {
+            int race = n % RACES;
+            int stageId = requests.stageIds[race][(n / RACES) % STAGES];
+            int rider = (n / (RACES * STAGES)) % RIDERS;
+            requests.executor.deleteRiderResultsInStageAsync(stageId, requests.riderIds[rider]);
+            if (n % 10 == 0) {
+                requests.executor.getRidersGeneralClassificationRankAsync(requests.raceIds[race]);
+            }
+            inFlight[n] = requests.executor.registerRiderResultsInStageAsync(stageId, requests.riderIds[rider],
+                    requests.checkpoints[rider]);
+        }
+        return CompletableFuture.allOf(inFlight).join();
+    }
+}
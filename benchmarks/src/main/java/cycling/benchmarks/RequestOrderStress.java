@@ -0,0 +1,109 @@
+package cycling.benchmarks;
+
+import cycling.IDNotRecognisedException;
+import cycling.PortalRequestExecutor;
+import cycling.StageType;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The RequestOrderStress class checks that a {@link PortalRequestExecutor} runs changes to the portal as a whole in
+ * order with the changes to races made around them. Each round queues, without waiting, a rider being created,
+ * results being registered for every rider in the stages of several races, the last rider being removed, and
+ * one of the races being removed by name. Every registration must succeed, as the rider it is for was created
+ * before and removed after it, the removed rider must have no results left, and the race removed by name must be
+ * gone. Exits with status 1 if any check fails.
+ */
+public class RequestOrderStress {
+    private static final int RIDERS = 50;
+    private static final int RACES = 4;
+    private static final int STAGES = 2;
+
+    /**
+     * Runs the stress test.
+     * @param args The number of rounds, 300 if not given.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int failed = 0;
+        try (PortalRequestExecutor executor = new PortalRequestExecutor()) {
+            for (int round = 0; round < rounds; round++) {
+                if (!round(executor, round)) {
+                    failed++;
+                }
+            }
+        }
+        System.out.printf("%d rounds, %d failed, %s%n", rounds, failed, failed == 0 ? "passed" : "FAILED");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one round on an erased portal.
+     * @param executor The executor.
+     * @param round The number of the round, which seeds the generated results.
+     * @return true if every check passed.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    private static boolean round(PortalRequestExecutor executor, int round) throws Exception {
+        executor.eraseCyclingPortal();
+        int teamId = executor.createTeam("Team", "Stress team");
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS - 1; r++) {
+            riderIds[r] = executor.createRider(teamId, "Rider" + r, 1990);
+        }
+        int[][] stageIds = new int[RACES][STAGES];
+        for (int race = 0; race < RACES; race++) {
+            int raceId = executor.createRace("Race" + race, "Stress race");
+            for (int s = 0; s < STAGES; s++) {
+                stageIds[race][s] = executor.addStageToRace(raceId, "Race" + race + "Stage" + s, "Stress stage",
+                        180, LocalDateTime.of(2023, 7, 1, 11, 0).plusDays(s), StageType.FLAT);
+                executor.addIntermediateSprintToStage(stageIds[race][s], 90);
+                executor.concludeStagePreparation(stageIds[race][s]);
+            }
+        }
+
+        Random random = new Random(round);
+        CompletableFuture<Integer> lastRider = executor.createRiderAsync(teamId, "Rider" + (RIDERS - 1), 1990);
+        riderIds[RIDERS - 1] = lastRider.join();
+        List<CompletableFuture<Void>> registrations = new ArrayList<>();
+        for (int r = 0; r < RIDERS; r++) {
+            LocalTime[] checkpoints = PortalState.checkpoints(random, 1);
+            for (int race = 0; race < RACES; race++) {
+                for (int s = 0; s < STAGES; s++) {
+                    registrations.add(executor.registerRiderResultsInStageAsync(stageIds[race][s], riderIds[r],
+                            checkpoints));
+                }
+            }
+        }
+        CompletableFuture<Void> riderRemoved = executor.removeRiderAsync(riderIds[RIDERS - 1]);
+        CompletableFuture<Void> raceRemoved = executor.removeRaceByNameAsync("Race0");
+
+        boolean passed = true;
+        for (CompletableFuture<Void> registration:registrations) {
+            passed &= !registration.handle((value, exception) -> exception != null).join();
+        }
+        riderRemoved.join();
+        raceRemoved.join();
+        passed &= executor.getRaceIds().length == RACES - 1;
+        for (int race = 1; race < RACES; race++) {
+            for (int s = 0; s < STAGES; s++) {
+                passed &= executor.getRidersRankInStage(stageIds[race][s]).length == RIDERS - 1;
+            }
+        }
+        try {
+            executor.getRiderResultsInStage(stageIds[0][0], riderIds[0]);
+            passed = false;
+        } catch (IDNotRecognisedException e) {
+            //the race was removed with its stages
+        }
+        return passed;
+    }
+}
@@ -0,0 +1,127 @@
+package cycling.benchmarks;
+
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.SegmentType;
+import cycling.StageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The SnapshotCheck class checks that a portal holding a stage without a type and a climb without a type, which
+ * the portal accepts, can be saved and loaded, and checkpointed into a journal and restored from it. After each
+ * round trip the restored portal must answer the race and stage queries as the original does and save to the
+ * same bytes, which shows the missing types came back as missing. Exits with status 1 if any check fails.
+ */
+public class SnapshotCheck {
+    private static final int RIDERS = 20;
+
+    /**
+     * Runs the check.
+     * @param args Not used.
+     * @throws Exception If the portal rejects the generated data or the files cannot be written.
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("snapshot-check");
+        try {
+            CyclingPortal portal = new CyclingPortal();
+            portal.openJournal(directory.resolve("journal").toString(), 0);
+            addRace(portal);
+            boolean passed = true;
+
+            File saved = directory.resolve("portal.cyps").toFile();
+            portal.saveCyclingPortal(saved.getPath());
+            CyclingPortal loaded = new CyclingPortal();
+            loaded.loadCyclingPortal(saved.getPath());
+            passed &= report("save and load", portal, loaded, directory);
+
+            portal.checkpointJournal();
+            portal.closeJournal();
+            CyclingPortal restored = new CyclingPortal();
+            restored.openJournal(directory.resolve("journal").toString(), 0);
+            passed &= report("checkpoint and restore", portal, restored, directory);
+            restored.closeJournal();
+
+            if (!passed) {
+                System.exit(1);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Adds a race with a stage without a type, and a stage with a climb without a type, each with a result for
+     * every rider.
+     * @param portal The portal.
+     * @throws Exception If the portal rejects the generated data.
+     */
+    static void addRace(CyclingPortal portal) throws Exception {
+        Random random = new Random(42);
+        int teamId = portal.createTeam("Team", "Check team");
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        int raceId = portal.createRace("Untyped", "Check race");
+        int untypedStageId = portal.addStageToRace(raceId, "Untyped", "Stage without a type", 150,
+                LocalDateTime.of(2023, 7, 1, 11, 0), null);
+        int climbStageId = portal.addStageToRace(raceId, "Climb", "Stage with a climb without a type", 180,
+                LocalDateTime.of(2023, 7, 2, 11, 0), StageType.HIGH_MOUNTAIN);
+        portal.addCategorizedClimbToStage(climbStageId, 120.0, null, 7.0, 10.0);
+        portal.addCategorizedClimbToStage(climbStageId, 170.0, SegmentType.HC, 8.0, 12.0);
+        portal.concludeStagePreparation(untypedStageId);
+        portal.concludeStagePreparation(climbStageId);
+        for (int riderId:riderIds) {
+            portal.registerRiderResultsInStage(untypedStageId, riderId, PortalState.checkpoints(random, 0));
+            portal.registerRiderResultsInStage(climbStageId, riderId, PortalState.checkpoints(random, 2));
+        }
+    }
+
+    /**
+     * Compares a restored portal with the original, printing whether they match.
+     * @param roundTrip The name of the round trip.
+     * @param expected The original portal.
+     * @param actual The restored portal.
+     * @param directory The directory to save both portals in to compare them.
+     * @return true if they match.
+     * @throws Exception If a query fails or the portals cannot be saved.
+     */
+    private static boolean report(String roundTrip, CyclingPortal expected, CyclingPortal actual, Path directory)
+            throws Exception {
+        boolean passed = Arrays.equals(expected.getRaceIds(), actual.getRaceIds());
+        for (int raceId:expected.getRaceIds()) {
+            passed &= Arrays.equals(expected.getRaceStages(raceId), actual.getRaceStages(raceId));
+            for (int stageId:expected.getRaceStages(raceId)) {
+                passed &= Arrays.equals(expected.getStageSegments(stageId), actual.getStageSegments(stageId));
+                passed &= Arrays.equals(expected.getRidersRankInStage(stageId), actual.getRidersRankInStage(stageId));
+            }
+        }
+        passed &= Arrays.equals(save(expected, directory.resolve("expected.cyps")),
+                save(actual, directory.resolve("actual.cyps")));
+        System.out.printf("%s: %s%n", roundTrip, passed ? "passed" : "FAILED");
+        return passed;
+    }
+
+    /**
+     * Saves a portal and reads the file back.
+     * @param portal The portal.
+     * @param file The file to save it in.
+     * @return The bytes of the file.
+     * @throws IOException If the file cannot be written or read.
+     */
+    static byte[] save(CyclingPortalInterface portal, Path file) throws IOException {
+        portal.saveCyclingPortal(file.toString());
+        return Files.readAllBytes(file);
+    }
+}
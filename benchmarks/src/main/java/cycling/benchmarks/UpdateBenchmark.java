@@ -0,0 +1,118 @@
+package cycling.benchmarks;
+
+import cycling.SegmentType;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The UpdateBenchmark class measures the operations of the cycling portal that change it. Each benchmark undoes
+ * its own change, for example by deleting the result it registered, so the portal is the same size on every
+ * call. Benchmarks that end in a query measure reading a classification straight after the results it depends
+ * on have changed.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+    private static final LocalDateTime EXTRA_STAGE_START = LocalDateTime.of(2024, 7, 1, 11, 0);
+
+    @Benchmark
+    public void deleteAndRegisterRiderResultsInStage(PortalState state) throws Exception {
+        state.portal.deleteRiderResultsInStage(state.resultsStageId, state.riderId);
+        state.portal.registerRiderResultsInStage(state.resultsStageId, state.riderId, state.riderCheckpoints);
+    }
+
+    @Benchmark
+    public int[] registerThenGetRidersPointsInStage(PortalState state) throws Exception {
+        deleteAndRegisterRiderResultsInStage(state);
+        return state.portal.getRidersPointsInStage(state.resultsStageId);
+    }
+
+    @Benchmark
+    public int[] registerThenGetRidersGeneralClassificationRank(PortalState state) throws Exception {
+        deleteAndRegisterRiderResultsInStage(state);
+        return state.portal.getRidersGeneralClassificationRank(state.raceId);
+    }
+
+    @Benchmark
+    public LocalTime[] registerThenGetGeneralClassificationTimesInRace(PortalState state) throws Exception {
+        deleteAndRegisterRiderResultsInStage(state);
+        return state.portal.getGeneralClassificationTimesInRace(state.raceId);
+    }
+
+    @Benchmark
+    public int[] registerThenGetRidersPointClassificationRank(PortalState state) throws Exception {
+        deleteAndRegisterRiderResultsInStage(state);
+        return state.portal.getRidersPointClassificationRank(state.raceId);
+    }
+
+    @Benchmark
+    public int[] registerThenGetRidersMountainPointClassificationRank(PortalState state) throws Exception {
+        deleteAndRegisterRiderResultsInStage(state);
+        return state.portal.getRidersMountainPointClassificationRank(state.raceId);
+    }
+
+    @Benchmark
+    public void createAndRemoveRaceById(PortalState state) throws Exception {
+        int raceId = state.portal.createRace("ExtraRace", "Created by the benchmark");
+        state.portal.removeRaceById(raceId);
+    }
+
+    @Benchmark
+    public void createAndRemoveRaceByName(PortalState state) throws Exception {
+        state.portal.createRace("ExtraRace", "Created by the benchmark");
+        state.portal.removeRaceByName("ExtraRace");
+    }
+
+    @Benchmark
+    public void addAndRemoveStage(PortalState state) throws Exception {
+        int stageId = state.portal.addStageToRace(state.raceId, "ExtraStage", "Created by the benchmark", 100,
+                EXTRA_STAGE_START, StageType.FLAT);
+        state.portal.removeStageById(stageId);
+    }
+
+    @Benchmark
+    public void addConcludeAndRemoveStage(PortalState state) throws Exception {
+        int stageId = state.portal.addStageToRace(state.raceId, "ExtraStage", "Created by the benchmark", 100,
+                EXTRA_STAGE_START, StageType.FLAT);
+        state.portal.concludeStagePreparation(stageId);
+        state.portal.removeStageById(stageId);
+    }
+
+    @Benchmark
+    public void addAndRemoveIntermediateSprint(PortalState state) throws Exception {
+        int segmentId = state.portal.addIntermediateSprintToStage(state.preparingStageId, 90);
+        state.portal.removeSegment(segmentId);
+    }
+
+    @Benchmark
+    public void addAndRemoveCategorizedClimb(PortalState state) throws Exception {
+        int segmentId = state.portal.addCategorizedClimbToStage(state.preparingStageId, 120.0, SegmentType.C1,
+                7.0, 8.0);
+        state.portal.removeSegment(segmentId);
+    }
+
+    @Benchmark
+    public void createAndRemoveTeam(PortalState state) throws Exception {
+        int teamId = state.portal.createTeam("ExtraTeam", "Created by the benchmark");
+        state.portal.removeTeam(teamId);
+    }
+
+    @Benchmark
+    public void createAndRemoveRider(PortalState state) throws Exception {
+        int riderId = state.portal.createRider(state.teamIds[0], "ExtraRider", 1995);
+        state.portal.removeRider(riderId);
+    }
+}
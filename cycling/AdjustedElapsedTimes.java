@@ -0,0 +1,94 @@
+package cycling;
+
+/**
+ * The AdjustedElapsedTimes class works out the adjusted elapsed time of every rider in a stage at once.
+ * The elapsed times are read from the stage's checkpoint columns and sorted a single time and the adjustment for riders finishing
+ * together is then applied in one sweep. A stage keeps the outcome until its results change.
+ */
+public class AdjustedElapsedTimes {
+    /**
+     * Riders finishing less than this many nanoseconds behind the previous rider are given the same adjusted
+     * elapsed time as that rider.
+     */
+    public static final long GAP_NANOS = 1_000_000_000L;
+    private final int[] rankedRiderIds;
+    private final long[] rankedElapsedTimes;
+    private final long[] rankedAdjustedElapsedTimes;
+    private final IntIntMap rankOfRider;
+
+    /**
+     * Constructor for the AdjustedElapsedTimes class, working out the adjusted elapsed times for a stage.
+     * @param columns The checkpoint times of all rider results for the stage.
+     * @param type The type of the stage. There is no adjustment of elapsed times in time trials.
+     */
+    public AdjustedElapsedTimes(CheckpointColumns columns, StageType type) {
+        int numberOfResults = columns.size();
+        long[] elapsedTimes = new long[numberOfResults];
+        int[] riderIds = new int[numberOfResults];
+        for (int slot = 0; slot < numberOfResults; slot++) {
+            elapsedTimes[slot] = columns.getElapsedNanos(slot);
+            riderIds[slot] = columns.getRiderId(slot);
+        }
+        int[] order = Ranking.sortedOrder(elapsedTimes, riderIds, numberOfResults);
+        rankedRiderIds = new int[numberOfResults];
+        rankedElapsedTimes = new long[numberOfResults];
+        rankedAdjustedElapsedTimes = new long[numberOfResults];
+        rankOfRider = new IntIntMap(numberOfResults);
+        for (int rank = 0; rank < numberOfResults; rank++) {
+            int index = order[rank];
+            rankedRiderIds[rank] = riderIds[index];
+            rankedElapsedTimes[rank] = elapsedTimes[index];
+            rankOfRider.put(riderIds[index], rank);
+            if (rank > 0 && type != StageType.TT
+                    && rankedElapsedTimes[rank] - rankedElapsedTimes[rank - 1] < GAP_NANOS) {
+                rankedAdjustedElapsedTimes[rank] = rankedAdjustedElapsedTimes[rank - 1];
+            } else {
+                rankedAdjustedElapsedTimes[rank] = rankedElapsedTimes[rank];
+            }
+        }
+    }
+
+    /**
+     * Gets the number of riders with a result in the stage.
+     * @return The number of riders.
+     */
+    public int getNumberOfRiders() {
+        return rankedRiderIds.length;
+    }
+
+    /**
+     * Gets the ID of the rider at a position in the stage.
+     * @param rank The position, starting from 0 for the rider with the smallest elapsed time.
+     * @return The ID of the rider.
+     */
+    public int getRiderId(int rank) {
+        return rankedRiderIds[rank];
+    }
+
+    /**
+     * Gets the elapsed time of the rider at a position in the stage.
+     * @param rank The position, starting from 0 for the rider with the smallest elapsed time.
+     * @return The elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos(int rank) {
+        return rankedElapsedTimes[rank];
+    }
+
+    /**
+     * Gets the adjusted elapsed time of the rider at a position in the stage.
+     * @param rank The position, starting from 0 for the rider with the smallest elapsed time.
+     * @return The adjusted elapsed time in nanoseconds.
+     */
+    public long getAdjustedElapsedNanos(int rank) {
+        return rankedAdjustedElapsedTimes[rank];
+    }
+
+    /**
+     * Gets the position of a rider in the stage.
+     * @param riderId The ID of the rider.
+     * @return The position, starting from 0, or -1 if the rider has no result in the stage.
+     */
+    public int getRankOfRider(int riderId) {
+        return rankOfRider.get(riderId, -1);
+    }
+}
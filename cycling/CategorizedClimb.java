@@ -13,6 +13,7 @@ public class CategorizedClimb extends Segment {
 
     /**
      * Constructor for the CategorizedClimb class.
+     * @param idAllocator The ID allocator of the portal the segment is created in.
      * @param stageId The ID if the stage to which the climb segment is being added.
      * @param location The kilometre location where the climb finishes within the stage.
      * @param type The category of the climb - {@link SegmentType#C4},
@@ -21,8 +22,23 @@ public class CategorizedClimb extends Segment {
      * @param averageGradient The average gradient for the climb.
      * @param length The length of the climb in kilometres.
      */
-    public CategorizedClimb(int stageId, Double location, SegmentType type, 
+    public CategorizedClimb(IdAllocator idAllocator, int stageId, Double location, SegmentType type, 
                             Double averageGradient, Double length) {
+        this(idAllocator.nextSegmentId(), stageId, location, type, averageGradient, length);
+    }
+
+    /**
+     * Constructor for a categorized climb restored from a saved portal, which keeps its saved ID.
+     * @param segmentId The ID of the segment.
+     * @param stageId The ID if the stage the climb segment belongs to.
+     * @param location The kilometre location where the climb finishes within the stage.
+     * @param type The category of the climb.
+     * @param averageGradient The average gradient for the climb.
+     * @param length The length of the climb in kilometres.
+     */
+    CategorizedClimb(int segmentId, int stageId, Double location, SegmentType type,
+                     Double averageGradient, Double length) {
+        super(segmentId);
         this.location = location;
         this.type = type;
         this.averageGradient = averageGradient;
@@ -45,4 +61,20 @@ public class CategorizedClimb extends Segment {
     public Double getLocation() {
         return location;
     }
+
+    /**
+     * Gets the average gradient of the climb.
+     * @return The average gradient.
+     */
+    public Double getAverageGradient() {
+        return averageGradient;
+    }
+
+    /**
+     * Gets the length of the climb.
+     * @return The length of the climb in kilometres.
+     */
+    public Double getLength() {
+        return length;
+    }
 }
\ No newline at end of file
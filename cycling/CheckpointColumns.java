@@ -0,0 +1,159 @@
+package cycling;
+
+/**
+ * The CheckpointColumns class stores the checkpoint times of every result in a stage column by column, with one
+ * array of times for each checkpoint. Each rider with a result has a slot, which is the same index in every
+ * column, so the times of all riders at a segment can be sorted directly without copying them out of the results.
+ * When a result is removed, the result in the last slot is moved into its place to keep the columns packed.
+ */
+public class CheckpointColumns {
+    private static final int DEFAULT_CAPACITY = 16;
+    private final long[][] columns;
+    private int[] slotRiderIds;
+    private final IntIntMap slotOfRider;
+    private int size;
+
+    /**
+     * Constructor for the CheckpointColumns class, creating empty columns.
+     * @param numberOfCheckpoints The number of checkpoints of each result, including the start time and the finish line.
+     * @param expectedSize The number of results the columns should hold without growing.
+     */
+    public CheckpointColumns(int numberOfCheckpoints, int expectedSize) {
+        int capacity = Math.max(expectedSize, DEFAULT_CAPACITY);
+        columns = new long[numberOfCheckpoints][capacity];
+        slotRiderIds = new int[capacity];
+        slotOfRider = new IntIntMap(capacity);
+    }
+
+    /**
+     * Adds the checkpoint times of a result to the columns, in a new slot.
+     * @param result The result being added. It must have one time for each column and a rider without a slot.
+     */
+    public void add(Result result) {
+        if (size == slotRiderIds.length) {
+            grow(size << 1);
+        }
+        for (int checkpoint = 0; checkpoint < columns.length; checkpoint++) {
+            columns[checkpoint][size] = result.getCheckpoint(checkpoint);
+        }
+        slotRiderIds[size] = result.getRiderId();
+        slotOfRider.put(result.getRiderId(), size);
+        size++;
+    }
+
+    /**
+     * Makes room in the columns for a number of results, so adding them grows every column at most once.
+     * @param capacity The number of results the columns should hold without growing.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > slotRiderIds.length) {
+            grow(Math.max(capacity, slotRiderIds.length << 1));
+        }
+    }
+
+    /**
+     * Removes the checkpoint times of a rider from the columns, moving the last slot into the gap.
+     * @param riderId The ID of the rider.
+     */
+    public void remove(int riderId) {
+        int slot = slotOfRider.get(riderId, -1);
+        if (slot < 0) {
+            return;
+        }
+        slotOfRider.remove(riderId);
+        int last = --size;
+        if (slot != last) {
+            for (long[] column:columns) {
+                column[slot] = column[last];
+            }
+            slotRiderIds[slot] = slotRiderIds[last];
+            slotOfRider.put(slotRiderIds[slot], slot);
+        }
+    }
+
+    /**
+     * Grows every column to a new capacity.
+     * @param capacity The new number of slots.
+     */
+    private void grow(int capacity) {
+        for (int checkpoint = 0; checkpoint < columns.length; checkpoint++) {
+            long[] column = new long[capacity];
+            System.arraycopy(columns[checkpoint], 0, column, 0, size);
+            columns[checkpoint] = column;
+        }
+        int[] riderIds = new int[capacity];
+        System.arraycopy(slotRiderIds, 0, riderIds, 0, size);
+        slotRiderIds = riderIds;
+    }
+
+    /**
+     * Copies the columns, holding only the slots in use. The copy shares nothing with the columns, so it can be
+     * read after they have changed.
+     * @return A copy of the columns.
+     */
+    public CheckpointColumns copy() {
+        CheckpointColumns copy = new CheckpointColumns(columns.length, size);
+        for (int checkpoint = 0; checkpoint < columns.length; checkpoint++) {
+            System.arraycopy(columns[checkpoint], 0, copy.columns[checkpoint], 0, size);
+        }
+        System.arraycopy(slotRiderIds, 0, copy.slotRiderIds, 0, size);
+        for (int slot = 0; slot < size; slot++) {
+            copy.slotOfRider.put(slotRiderIds[slot], slot);
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Gets the number of results in the columns.
+     * @return The number of slots in use.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of checkpoints held for each result.
+     * @return The number of columns.
+     */
+    public int getNumberOfCheckpoints() {
+        return columns.length;
+    }
+
+    /**
+     * Gets the ID of the rider whose times are in a slot.
+     * @param slot The slot, from 0 to one less than {@link #size()}.
+     * @return The ID of the rider.
+     */
+    public int getRiderId(int slot) {
+        return slotRiderIds[slot];
+    }
+
+    /**
+     * Gets the slot holding the times of a rider.
+     * @param riderId The ID of the rider.
+     * @return The slot, or -1 if the rider has no result in the columns.
+     */
+    public int getSlotOfRider(int riderId) {
+        return slotOfRider.get(riderId, -1);
+    }
+
+    /**
+     * Gets the times of every rider at one checkpoint. The array is the column itself rather than a copy, so it
+     * must not be changed, and only the first {@link #size()} entries are in use.
+     * @param checkpoint The index of the checkpoint, where 0 is the start time.
+     * @return The times in nanoseconds of the day, indexed by slot.
+     */
+    public long[] getColumn(int checkpoint) {
+        return columns[checkpoint];
+    }
+
+    /**
+     * Gets the elapsed time of the rider in a slot.
+     * @param slot The slot of the rider.
+     * @return The difference between the finish time and the start time in nanoseconds.
+     */
+    public long getElapsedNanos(int slot) {
+        return columns[columns.length - 1][slot] - columns[0][slot];
+    }
+}
@@ -0,0 +1,480 @@
+package cycling;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The ClassificationExporter class writes stage results and race classifications to a stream or channel as CSV
+ * or JSON. It reads them a rank at a time from the adjusted elapsed times and points a stage keeps and the
+ * classification a race keeps, and encodes them into a fixed-size buffer that is written out whenever it fills,
+ * so the memory an export takes does not grow with the number of stages or riders.
+ *
+ * CSV has a single header line, written before the first row, and then one line per rider in each stage and
+ * each classification, with the columns race_id, stage_id, classification, rank, rider_id, elapsed_time,
+ * adjusted_elapsed_time, points and mountain_points. The classification is stage, general, points or mountain;
+ * race rows leave the stage ID and elapsed time empty, and give the total adjusted elapsed time and points.
+ * JSON has one object per stage or race exported, each on its own line. Times are written as hours, minutes and
+ * seconds, with a fraction of a second if there is one, and totals over 24 hours are not wrapped.
+ */
+public class ClassificationExporter implements Flushable {
+    private static final int BUFFER_LENGTH = 64 * 1024;
+    private static final int MAX_NUMBER_LENGTH = 32;
+    private static final String CSV_HEADER = "race_id,stage_id,classification,rank,rider_id,elapsed_time,"
+            + "adjusted_elapsed_time,points,mountain_points\n";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream outputStream;
+    private final WritableByteChannel channel;
+    private final ExportFormat format;
+    private final byte[] buffer = new byte[BUFFER_LENGTH];
+    private final byte[] digits = new byte[MAX_NUMBER_LENGTH];
+    private int length;
+    private long bytesWritten;
+    private boolean headerWritten;
+
+    /**
+     * Constructor for an exporter that writes to a stream. The stream is not closed by the exporter.
+     * @param outputStream The stream to write to.
+     * @param format The format to write in.
+     */
+    public ClassificationExporter(OutputStream outputStream, ExportFormat format) {
+        this.outputStream = outputStream;
+        this.channel = null;
+        this.format = format;
+    }
+
+    /**
+     * Constructor for an exporter that writes to a channel, such as a file or socket channel. The channel is not
+     * closed by the exporter.
+     * @param channel The channel to write to.
+     * @param format The format to write in.
+     */
+    public ClassificationExporter(WritableByteChannel channel, ExportFormat format) {
+        this.outputStream = null;
+        this.channel = channel;
+        this.format = format;
+    }
+
+    /**
+     * Gets the format the exporter writes in.
+     * @return CSV or JSON.
+     */
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the number of bytes exported so far, including any not yet written out of the buffer.
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten + length;
+    }
+
+    /**
+     * Exports the results of a stage, in order of adjusted elapsed time.
+     * @param stage The stage.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    void exportStage(Stage stage) throws IOException {
+        if (format == ExportFormat.CSV) {
+            writeCsvHeader();
+            writeStageRows(stage);
+        } else {
+            writeStageObject(stage);
+            write('\n');
+        }
+    }
+
+    /**
+     * Exports the general, points and mountain classifications of a race, optionally after the results of each
+     * of its stages in order of start time.
+     * @param race The race.
+     * @param includeStages Whether to export the results of the stages as well.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    void exportRace(Race race, boolean includeStages) throws IOException {
+        ArrayList<Stage> stages = includeStages ? race.getStagesInStartOrder() : new ArrayList<>();
+        RaceClassification classification = race.getClassification();
+        if (format == ExportFormat.CSV) {
+            writeCsvHeader();
+            for (Stage stage:stages) {
+                writeStageRows(stage);
+            }
+            writeRaceRows(race.getRaceId(), classification);
+            return;
+        }
+        writeAscii("{\"raceId\":");
+        writeNumber(race.getRaceId());
+        writeAscii(",\"name\":");
+        writeString(race.getName());
+        if (includeStages) {
+            writeAscii(",\"stages\":[");
+            for (int s = 0; s < stages.size(); s++) {
+                if (s > 0) {
+                    write(',');
+                }
+                writeStageObject(stages.get(s));
+            }
+            write(']');
+        }
+        writeAscii(",\"general\":[");
+        for (int rank = 0; rank < classification.getNumberOfRiders(); rank++) {
+            if (rank > 0) {
+                write(',');
+            }
+            writeAscii("{\"rank\":");
+            writeNumber(rank + 1);
+            writeAscii(",\"riderId\":");
+            writeNumber(classification.getRiderId(rank));
+            writeAscii(",\"adjustedElapsedTime\":\"");
+            writeDuration(classification.getTotalAdjustedElapsedNanos(rank));
+            writeAscii("\",\"points\":");
+            writeNumber(classification.getPoints(rank));
+            writeAscii(",\"mountainPoints\":");
+            writeNumber(classification.getMountainPoints(rank));
+            write('}');
+        }
+        writeAscii("],\"points\":[");
+        for (int position = 0; position < classification.getNumberOfRiders(); position++) {
+            int rank = classification.getGeneralClassificationRankInPointsClassification(position);
+            writePointsEntry(position, classification.getRiderId(rank), "points", classification.getPoints(rank));
+        }
+        writeAscii("],\"mountain\":[");
+        for (int position = 0; position < classification.getNumberOfRiders(); position++) {
+            int rank = classification.getGeneralClassificationRankInMountainClassification(position);
+            writePointsEntry(position, classification.getRiderId(rank), "mountainPoints",
+                    classification.getMountainPoints(rank));
+        }
+        writeAscii("]}\n");
+    }
+
+    /**
+     * Writes the CSV header if it has not been written yet.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeCsvHeader() throws IOException {
+        if (!headerWritten) {
+            writeAscii(CSV_HEADER);
+            headerWritten = true;
+        }
+    }
+
+    /**
+     * Writes a CSV line for each rider with a result in a stage.
+     * @param stage The stage.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeStageRows(Stage stage) throws IOException {
+        AdjustedElapsedTimes times = stage.getAdjustedElapsedTimes();
+        StagePoints points = stage.getStagePoints();
+        for (int rank = 0; rank < times.getNumberOfRiders(); rank++) {
+            writeNumber(stage.getRaceId());
+            write(',');
+            writeNumber(stage.getStageId());
+            writeAscii(",stage,");
+            writeNumber(rank + 1);
+            write(',');
+            writeNumber(times.getRiderId(rank));
+            write(',');
+            writeDuration(times.getElapsedNanos(rank));
+            write(',');
+            writeDuration(times.getAdjustedElapsedNanos(rank));
+            write(',');
+            writeNumber(points.getPoints(rank));
+            write(',');
+            writeNumber(points.getMountainPoints(rank));
+            write('\n');
+        }
+    }
+
+    /**
+     * Writes a CSV line for each rider in each classification of a race.
+     * @param raceId The ID of the race.
+     * @param classification The classifications of the race.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeRaceRows(int raceId, RaceClassification classification) throws IOException {
+        int numberOfRiders = classification.getNumberOfRiders();
+        for (int rank = 0; rank < numberOfRiders; rank++) {
+            writeRaceRow(raceId, "general", rank, classification, rank);
+        }
+        for (int position = 0; position < numberOfRiders; position++) {
+            writeRaceRow(raceId, "points", position, classification,
+                    classification.getGeneralClassificationRankInPointsClassification(position));
+        }
+        for (int position = 0; position < numberOfRiders; position++) {
+            writeRaceRow(raceId, "mountain", position, classification,
+                    classification.getGeneralClassificationRankInMountainClassification(position));
+        }
+    }
+
+    /**
+     * Writes a CSV line for a rider in a classification of a race.
+     * @param raceId The ID of the race.
+     * @param name The name of the classification.
+     * @param position The position of the rider in the classification, starting from 0.
+     * @param classification The classifications of the race.
+     * @param rank The position of the rider in the general classification, starting from 0.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeRaceRow(int raceId, String name, int position, RaceClassification classification, int rank)
+            throws IOException {
+        writeNumber(raceId);
+        writeAscii(",,");
+        writeAscii(name);
+        write(',');
+        writeNumber(position + 1);
+        write(',');
+        writeNumber(classification.getRiderId(rank));
+        writeAscii(",,");
+        writeDuration(classification.getTotalAdjustedElapsedNanos(rank));
+        write(',');
+        writeNumber(classification.getPoints(rank));
+        write(',');
+        writeNumber(classification.getMountainPoints(rank));
+        write('\n');
+    }
+
+    /**
+     * Writes a stage and its results as a JSON object.
+     * @param stage The stage.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeStageObject(Stage stage) throws IOException {
+        AdjustedElapsedTimes times = stage.getAdjustedElapsedTimes();
+        StagePoints points = stage.getStagePoints();
+        writeAscii("{\"raceId\":");
+        writeNumber(stage.getRaceId());
+        writeAscii(",\"stageId\":");
+        writeNumber(stage.getStageId());
+        writeAscii(",\"name\":");
+        writeString(stage.getStageName());
+        writeAscii(",\"type\":\"");
+        writeAscii(stage.getStageType().name());
+        writeAscii("\",\"results\":[");
+        for (int rank = 0; rank < times.getNumberOfRiders(); rank++) {
+            if (rank > 0) {
+                write(',');
+            }
+            writeAscii("{\"rank\":");
+            writeNumber(rank + 1);
+            writeAscii(",\"riderId\":");
+            writeNumber(times.getRiderId(rank));
+            writeAscii(",\"elapsedTime\":\"");
+            writeDuration(times.getElapsedNanos(rank));
+            writeAscii("\",\"adjustedElapsedTime\":\"");
+            writeDuration(times.getAdjustedElapsedNanos(rank));
+            writeAscii("\",\"points\":");
+            writeNumber(points.getPoints(rank));
+            writeAscii(",\"mountainPoints\":");
+            writeNumber(points.getMountainPoints(rank));
+            write('}');
+        }
+        writeAscii("]}");
+    }
+
+    /**
+     * Writes a rider's entry in a points classification as a JSON object, after a comma unless it is the first.
+     * @param position The position of the rider in the classification, starting from 0.
+     * @param riderId The ID of the rider.
+     * @param field The name of the points field.
+     * @param points The points of the rider.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writePointsEntry(int position, int riderId, String field, int points) throws IOException {
+        if (position > 0) {
+            write(',');
+        }
+        writeAscii("{\"rank\":");
+        writeNumber(position + 1);
+        writeAscii(",\"riderId\":");
+        writeNumber(riderId);
+        writeAscii(",\"");
+        writeAscii(field);
+        writeAscii("\":");
+        writeNumber(points);
+        write('}');
+    }
+
+    /**
+     * Writes a length of time as hours, minutes and seconds, followed by the fraction of a second in groups of
+     * three digits if it is not whole, the way LocalTime writes a time of day.
+     * @param nanos The length of time in nanoseconds.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeDuration(long nanos) throws IOException {
+        long seconds = nanos / NANOS_PER_SECOND;
+        int fraction = (int) (nanos % NANOS_PER_SECOND);
+        long hours = seconds / 3600;
+        if (hours < 10) {
+            write('0');
+        }
+        writeNumber(hours);
+        write(':');
+        writeTwoDigits((int) (seconds / 60 % 60));
+        write(':');
+        writeTwoDigits((int) (seconds % 60));
+        if (fraction != 0) {
+            int fractionDigits = 9;
+            while (fractionDigits > 3 && fraction % 1000 == 0) {
+                fraction /= 1000;
+                fractionDigits -= 3;
+            }
+            ensureSpace(fractionDigits + 1);
+            buffer[length++] = '.';
+            for (int i = fractionDigits - 1; i >= 0; i--) {
+                buffer[length + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            length += fractionDigits;
+        }
+    }
+
+    /**
+     * Writes a number below 100 as two digits.
+     * @param value The number.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeTwoDigits(int value) throws IOException {
+        ensureSpace(2);
+        buffer[length++] = (byte) ('0' + value / 10);
+        buffer[length++] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Writes a whole number in decimal.
+     * @param value The number.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeNumber(long value) throws IOException {
+        ensureSpace(MAX_NUMBER_LENGTH);
+        if (value < 0) {
+            buffer[length++] = '-';
+            if (value == Long.MIN_VALUE) {
+                writeAscii("9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        System.arraycopy(digits, start, buffer, length, digits.length - start);
+        length += digits.length - start;
+    }
+
+    /**
+     * Writes a string as a JSON string, escaping quotes, backslashes and control characters and encoding other
+     * characters as UTF-8.
+     * @param value The string, or null to write null.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20) {
+                writeAscii("\\u00");
+                write(HEX_DIGITS[c >> 4]);
+                write(HEX_DIGITS[c & 0xF]);
+            } else if (c < 0x80) {
+                write(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+                byte[] encoded = value.substring(i, end).getBytes(StandardCharsets.UTF_8);
+                ensureSpace(encoded.length);
+                System.arraycopy(encoded, 0, buffer, length, encoded.length);
+                length += encoded.length;
+                i = end - 1;
+            }
+        }
+        write('"');
+    }
+
+    /**
+     * Writes a string made only of ASCII characters.
+     * @param value The string.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void writeAscii(String value) throws IOException {
+        int count = value.length();
+        if (count > buffer.length) {
+            for (int i = 0; i < count; i++) {
+                write(value.charAt(i));
+            }
+            return;
+        }
+        ensureSpace(count);
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     * @param b The byte, as an ASCII character.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void write(int b) throws IOException {
+        if (length == buffer.length) {
+            drain();
+        }
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Makes sure there is room in the buffer for a number of bytes, writing it out first if there is not.
+     * @param count The number of bytes, which must not be more than the length of the buffer.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void ensureSpace(int count) throws IOException {
+        if (length + count > buffer.length) {
+            drain();
+        }
+    }
+
+    /**
+     * Writes the buffer out to the stream or channel and empties it.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    private void drain() throws IOException {
+        if (outputStream != null) {
+            outputStream.write(buffer, 0, length);
+        } else {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+        bytesWritten += length;
+        length = 0;
+    }
+
+    /**
+     * Writes out everything exported so far, flushing the stream if the exporter writes to one.
+     * @throws IOException If the stream or channel cannot be written to.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+    }
+}
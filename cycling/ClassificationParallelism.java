@@ -0,0 +1,114 @@
+package cycling;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ClassificationParallelism class says how the classifications of a race are worked out: one stage after
+ * another, or with the stages shared out over a fork/join pool. The times and points of each stage depend only
+ * on that stage's results, so they can be worked out at the same time, and the totals of any group of stages
+ * can be added to those of any other. When fewer stages need working out than the threshold, they are always
+ * worked out one after another, as handing out the work would cost more than it saves.
+ * <p>
+ * A query may still be using a setting after the portal has replaced it, so the pool is only shut down once the
+ * portal and every query holding the setting have let go of it.
+ */
+public class ClassificationParallelism {
+    /**
+     * Works out every stage one after another, on the thread asking for the classifications.
+     */
+    public static final ClassificationParallelism SEQUENTIAL = new ClassificationParallelism();
+    private final ForkJoinPool pool;
+    private final int minimumStages;
+    private final AtomicInteger holders = new AtomicInteger(1);//the portal's own hold, until the setting is replaced
+
+    /**
+     * Constructor for the sequential setting.
+     */
+    private ClassificationParallelism() {
+        pool = null;
+        minimumStages = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Constructor for the ClassificationParallelism class, with a fork/join pool of its own.
+     * @param parallelism The number of threads to work out stages on. 1 works them out one after another.
+     * @param minimumStages The fewest stages needing to be worked out for them to be shared out over the pool.
+     * @throws IllegalArgumentException If the parallelism is less than 1 or the threshold less than 2.
+     */
+    public ClassificationParallelism(int parallelism, int minimumStages) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1");
+        }
+        if (minimumStages < 2) {
+            throw new IllegalArgumentException("At least 2 stages are needed to share them out");
+        }
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+        this.minimumStages = parallelism == 1 ? Integer.MAX_VALUE : minimumStages;
+    }
+
+    /**
+     * Checks whether a number of stages is enough to share them out over the pool.
+     * @param numberOfStages The number of stages needing to be worked out.
+     * @return true if they should be worked out in parallel.
+     */
+    public boolean isParallel(int numberOfStages) {
+        return pool != null && numberOfStages >= minimumStages;
+    }
+
+    /**
+     * Gets the number of threads stages are worked out on.
+     * @return The parallelism, or 1 if stages are worked out one after another.
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Gets the fewest stages needing to be worked out for them to be shared out over the pool.
+     * @return The threshold, or Integer.MAX_VALUE if stages are worked out one after another.
+     */
+    public int getMinimumStages() {
+        return minimumStages;
+    }
+
+    /**
+     * Runs a task on the pool and waits for its result. Only called once {@link #isParallel(int)} has said so.
+     * @param task The task.
+     * @param <T> The type of the result.
+     * @return The result of the task.
+     */
+    <T> T invoke(ForkJoinTask<T> task) {
+        return pool.invoke(task);
+    }
+
+    /**
+     * Holds the setting for a query that works out stages after releasing the portal's locks, so the pool is not
+     * shut down under it. Must be called while the setting cannot be replaced, that is under the lock
+     * {@link #retire()} is called under, and matched by a call to {@link #release()}.
+     * @return This setting.
+     */
+    ClassificationParallelism acquire() {
+        holders.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Lets go of a setting held by {@link #acquire()}, stopping the pool's threads if the setting has been
+     * replaced and nothing else holds it.
+     */
+    void release() {
+        if (holders.decrementAndGet() == 0 && pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lets go of the portal's own hold when the setting is replaced. The pool's threads stop once the queries
+     * still holding the setting are done with it.
+     */
+    void retire() {
+        release();
+    }
+}
@@ -0,0 +1,640 @@
+package cycling;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentCyclingPortal is a cycling portal that can be used from many threads at once. It keeps a
+ * {@link CyclingPortal} and guards it with two levels of read/write locks:
+ * <ul>
+ * <li>A structure lock, held for writing by the methods that create or remove races, stages, segments, teams or
+ * riders, which change the index every ID is looked up in, and by erasing, saving and loading the portal. Every
+ * other method holds it for reading.</li>
+ * <li>A race lock, held for reading by queries about a race or its stages and for writing by the methods that
+ * change results or the state of a stage. Races share a fixed number of locks, picked by race ID, so a portal of
+ * any size takes the same memory for locks.</li>
+ * </ul>
+ * Queries never wait for each other. Results are registered under the race's read lock too: each one is offered
+ * to its stage's {@link ResultInbox}, which takes it with a single compare-and-set, so timing feeds registering
+ * results for different riders of the same stage do not wait for each other or for queries. The first method to
+ * take a race's write lock, or to query the race, while results are pending merges them into the stages, and
+ * taking the structure lock for writing merges the pending results of every race. Classification queries hold
+ * no race lock while they add up the stages: each race publishes its classifications with the version of every
+ * stage's results they came from, and a query uses them as long as those versions are current, or else takes a
+ * new snapshot of the stage results under the read lock and adds it up after releasing it. The locks are views of {@link StampedLock}s, whose read locks
+ * are cheaper to take than those of a ReentrantReadWriteLock; none of them is taken twice by the same call. Every
+ * race is kept in memory, as evicting a race would change the portal while other races are being read.
+ */
+public class ConcurrentCyclingPortal implements CyclingPortalInterface {
+    private static final int NUMBER_OF_RACE_LOCKS = 64;
+    private final CyclingPortal portal = new CyclingPortal();
+    private final ReadWriteLock structureLock = new StampedLock().asReadWriteLock();
+    private final ReadWriteLock[] raceLocks = new ReadWriteLock[NUMBER_OF_RACE_LOCKS];
+    private final ConcurrentHashMap<Integer, Integer> raceIdOfStage = new ConcurrentHashMap<>();//read without a lock
+    private final ConcurrentHashMap<Integer, Integer> raceIdOfSegment = new ConcurrentHashMap<>();//read without a lock
+
+    /**
+     * Constructor for the ConcurrentCyclingPortal class, creating an empty portal.
+     */
+    public ConcurrentCyclingPortal() {
+        for (int i = 0; i < raceLocks.length; i++) {
+            raceLocks[i] = new StampedLock().asReadWriteLock();
+        }
+    }
+
+    /**
+     * Gets the lock of a race. Consecutive race IDs get different locks.
+     * @param raceId The ID of the race.
+     * @return The read/write lock of the race.
+     */
+    private ReadWriteLock raceLock(int raceId) {
+        return raceLocks[raceId & (NUMBER_OF_RACE_LOCKS - 1)];
+    }
+
+    /**
+     * Finds the race of a stage in the portal index. The structure lock must be held.
+     * @param stageId The ID of the stage.
+     * @return The ID of the race, or 0 if there is no such stage, which still picks a lock for the portal to
+     *         report the unknown ID under.
+     */
+    private int raceOfStage(int stageId) {
+        Race race = portal.portalIndex.getRaceOfStage(stageId);
+        return race == null ? 0 : race.getRaceId();
+    }
+
+    /**
+     * Finds the race a stage belongs to, for callers that order changes by race. The race of every stage is kept in
+     * a concurrent map alongside the structure, so this takes no lock and never waits for a change to the structure.
+     * A lookup made while the stage is being added or removed may see it either way.
+     * @param stageId The ID of the stage.
+     * @return The ID of the race, or 0 if there is no such stage.
+     */
+    int getRaceOfStage(int stageId) {
+        return raceIdOfStage.getOrDefault(stageId, 0);
+    }
+
+    /**
+     * Finds the race a segment belongs to, for callers that order changes by race. Takes no lock, the same way as
+     * {@link #getRaceOfStage(int)}.
+     * @param segmentId The ID of the segment.
+     * @return The ID of the race, or 0 if there is no such segment.
+     */
+    int getRaceOfSegment(int segmentId) {
+        return raceIdOfSegment.getOrDefault(segmentId, 0);
+    }
+
+    /**
+     * Forgets the races of the stages and segments no longer in the portal, after a race, stage or segment has
+     * been removed. The structure lock must be held for writing.
+     */
+    private void forgetRemoved() {
+        raceIdOfStage.keySet().removeIf(stageId -> portal.portalIndex.getStage(stageId) == null);
+        raceIdOfSegment.keySet().removeIf(segmentId -> portal.portalIndex.getSegment(segmentId) == null);
+    }
+
+    /**
+     * Records the race of every stage and segment again, after the whole portal has been erased or loaded. The
+     * structure lock must be held for writing.
+     */
+    private void indexAllStages() {
+        raceIdOfStage.clear();
+        raceIdOfSegment.clear();
+        for (int raceId:portal.getRaceIds()) {
+            for (Stage stage:portal.portalIndex.getRace(raceId).getStages()) {
+                raceIdOfStage.put(stage.getStageId(), raceId);
+                for (Segment segment:stage.getSegmentsInLocationOrder()) {
+                    raceIdOfSegment.put(segment.getSegmentId(), raceId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks the structure for writing, then merges the results pending in every race so the portal is complete
+     * for the change.
+     */
+    private void lockStructure() {
+        structureLock.writeLock().lock();
+        portal.mergeAllPendingResults();
+    }
+
+    /**
+     * Locks the structure for reading and a race for reading, first merging any results pending in the race.
+     * @param raceId The ID of the race.
+     * @return The race lock taken, to pass to {@link #unlock(Lock)}.
+     */
+    private Lock readRace(int raceId) {
+        structureLock.readLock().lock();
+        return readLockMerged(raceId);
+    }
+
+    /**
+     * Locks the structure for reading and the race of a stage for reading, first merging any results pending in
+     * the race.
+     * @param stageId The ID of the stage.
+     * @return The race lock taken, to pass to {@link #unlock(Lock)}.
+     */
+    private Lock readStage(int stageId) {
+        structureLock.readLock().lock();
+        return readLockMerged(raceOfStage(stageId));
+    }
+
+    /**
+     * Locks the structure for reading and the race of a stage for reading, without merging pending results, for
+     * offering results.
+     * @param stageId The ID of the stage.
+     * @return The race lock taken, to pass to {@link #unlock(Lock)}.
+     */
+    private Lock offerStage(int stageId) {
+        structureLock.readLock().lock();
+        Lock lock = raceLock(raceOfStage(stageId)).readLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Locks the structure for reading and the race of a stage for writing, then merges any results pending in the
+     * race.
+     * @param stageId The ID of the stage.
+     * @return The race lock taken, to pass to {@link #unlock(Lock)}.
+     */
+    private Lock writeStage(int stageId) {
+        structureLock.readLock().lock();
+        int raceId = raceOfStage(stageId);
+        Lock lock = raceLock(raceId).writeLock();
+        lock.lock();
+        portal.mergePendingResults(raceId);
+        return lock;
+    }
+
+    /**
+     * Takes a race's read lock, the structure read lock being held. If results are pending in the race, they are
+     * merged under the write lock first; results offered after that are left for the next merge, as they were
+     * registered while the query ran.
+     * @param raceId The ID of the race.
+     * @return The read lock taken.
+     */
+    private Lock readLockMerged(int raceId) {
+        ReadWriteLock raceLock = raceLock(raceId);
+        if (portal.hasPendingResults(raceId)) {
+            raceLock.writeLock().lock();
+            try {
+                portal.mergePendingResults(raceId);
+            } finally {
+                raceLock.writeLock().unlock();
+            }
+        }
+        Lock lock = raceLock.readLock();
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Unlocks a race lock and then the structure.
+     * @param raceLock The race lock taken with the structure.
+     */
+    private void unlock(Lock raceLock) {
+        raceLock.unlock();
+        structureLock.readLock().unlock();
+    }
+
+    @Override
+    public int[] getRaceIds() {
+        structureLock.readLock().lock();
+        try {
+            return portal.getRaceIds();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+        lockStructure();
+        try {
+            return portal.createRace(name, description);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+        Lock lock = readRace(raceId);
+        try {
+            return portal.viewRaceDetails(raceId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public void removeRaceById(int raceId) throws IDNotRecognisedException {
+        lockStructure();
+        try {
+            portal.removeRaceById(raceId);
+            forgetRemoved();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+        Lock lock = readRace(raceId);
+        try {
+            return portal.getNumberOfStages(raceId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime,
+                              StageType type)
+            throws IDNotRecognisedException, IllegalNameException, InvalidNameException, InvalidLengthException {
+        lockStructure();
+        try {
+            int stageId = portal.addStageToRace(raceId, stageName, description, length, startTime, type);
+            raceIdOfStage.put(stageId, raceId);
+            return stageId;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        Lock lock = readRace(raceId);
+        try {
+            return portal.getRaceStages(raceId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public double getStageLength(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getStageLength(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public void removeStageById(int stageId) throws IDNotRecognisedException {
+        lockStructure();
+        try {
+            portal.removeStageById(stageId);
+            forgetRemoved();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+                                          Double length) throws IDNotRecognisedException, InvalidLocationException,
+            InvalidStageStateException, InvalidStageTypeException {
+        lockStructure();
+        try {
+            int segmentId = portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+            raceIdOfSegment.put(segmentId, raceOfStage(stageId));
+            return segmentId;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+            InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+        lockStructure();
+        try {
+            int segmentId = portal.addIntermediateSprintToStage(stageId, location);
+            raceIdOfSegment.put(segmentId, raceOfStage(stageId));
+            return segmentId;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
+        lockStructure();
+        try {
+            portal.removeSegment(segmentId);
+            forgetRemoved();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+        Lock lock = writeStage(stageId);
+        try {
+            portal.concludeStagePreparation(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getStageSegments(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+        lockStructure();
+        try {
+            return portal.createTeam(name, description);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeTeam(int teamId) throws IDNotRecognisedException {
+        lockStructure();
+        try {
+            portal.removeTeam(teamId);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getTeams() {
+        structureLock.readLock().lock();
+        try {
+            return portal.getTeams();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+        structureLock.readLock().lock();
+        try {
+            return portal.getTeamRiders(teamId);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int createRider(int teamID, String name, int yearOfBirth)
+            throws IDNotRecognisedException, IllegalArgumentException {
+        lockStructure();
+        try {
+            return portal.createRider(teamID, name, yearOfBirth);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeRider(int riderId) throws IDNotRecognisedException {
+        lockStructure();
+        try {
+            portal.removeRider(riderId);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+            throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+            InvalidStageStateException {
+        Lock lock = offerStage(stageId);
+        try {
+            portal.offerRiderResultsInStage(stageId, riderId, checkpoints);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRiderResultsInStage(stageId, riderId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        Lock lock = writeStage(stageId);
+        try {
+            portal.deleteRiderResultsInStage(stageId, riderId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRidersRankInStage(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRankedAdjustedElapsedTimesInStage(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRidersPointsInStage(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+        Lock lock = readStage(stageId);
+        try {
+            return portal.getRidersMountainPointsInStage(stageId);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    @Override
+    public void eraseCyclingPortal() {
+        lockStructure();
+        try {
+            portal.eraseCyclingPortal();
+            indexAllStages();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveCyclingPortal(String filename) throws IOException {
+        lockStructure();
+        try {
+            portal.saveCyclingPortal(filename);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+        lockStructure();
+        try {
+            portal.loadCyclingPortal(filename);
+            portal.loadAllArchivedRaces();
+            indexAllStages();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeRaceByName(String name) throws NameNotRecognisedException {
+        lockStructure();
+        try {
+            portal.removeRaceByName(name);
+            forgetRemoved();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how the classifications of a race are worked out, as {@link CyclingPortal#setClassificationParallelism}
+     * does.
+     * @param parallelism The number of threads, or 1 to work out the stages one after another.
+     * @param minimumStages The fewest stages needing to be worked out for them to be worked out in parallel.
+     * @throws IllegalArgumentException If the parallelism is less than 1 or the threshold less than 2.
+     */
+    public void setClassificationParallelism(int parallelism, int minimumStages) {
+        lockStructure();
+        try {
+            portal.setClassificationParallelism(parallelism, minimumStages);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the classifications of a race. If the classifications published on the race are still current they
+     * are used without taking the race lock. Otherwise a snapshot of the race is taken under the race's read lock,
+     * which only copies the checkpoint times of the stages that changed since the last snapshot. The lock is
+     * released before those stages are ranked and the snapshot is added up and published, so writers to the race
+     * only wait for the copies to be taken, never for the classifications to be worked out.
+     * @param raceId The ID of the race.
+     * @return The classifications of the race.
+     * @throws IDNotRecognisedException If the ID does not match to any race in the system.
+     */
+    private RaceClassification classification(int raceId) throws IDNotRecognisedException {
+        Race race;
+        RaceSnapshot captured;
+        ClassificationParallelism parallelism;
+        structureLock.readLock().lock();
+        try {
+            race = portal.portalIndex.getRace(raceId);
+            if (race == null) {
+                throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+            }
+            if (!portal.hasPendingResults(raceId)) {
+                RaceClassification published = race.getPublishedClassification();
+                if (published != null) {
+                    return published;
+                }
+            }
+            Lock lock = readLockMerged(raceId);
+            try {
+                RaceClassification published = race.getPublishedClassification();
+                if (published != null) {
+                    return published;
+                }
+                parallelism = portal.classificationParallelism;
+                captured = race.takeSnapshot();
+                parallelism.acquire();//kept until the snapshot is added up, even if the setting is replaced
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        try {
+            return race.classify(captured, parallelism);
+        } finally {
+            parallelism.release();
+        }
+    }
+
+    @Override
+    public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        return classification(raceId).getGeneralClassificationRiderIds();
+    }
+
+    @Override
+    public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        return CyclingPortal.toGeneralClassificationTimes(classification(raceId));
+    }
+
+    @Override
+    public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+        return classification(raceId).getRankedPoints();
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+        return classification(raceId).getRankedMountainPoints();
+    }
+
+    @Override
+    public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return classification(raceId).getPointsClassificationRiderIds();
+    }
+
+    @Override
+    public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return classification(raceId).getMountainClassificationRiderIds();
+    }
+}
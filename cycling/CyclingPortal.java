@@ -1,18 +1,25 @@
 package cycling;
 
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.time.Duration;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Hashtable;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -24,11 +31,331 @@ import java.util.Set;
  *
  */
 public class CyclingPortal implements CyclingPortalInterface {
+	private static final int IMPORT_BATCH_SIZE = 1024;
 	ArrayList<Race> arrayListOfRaces = new ArrayList<>();
 	ArrayList<Team> arrayListOfTeams = new ArrayList<>();
+	PortalIndex portalIndex = new PortalIndex();
+	transient IdAllocator idAllocator = new IdAllocator();//hands out the IDs of this portal, saved with it
+	private transient PortalJournal journal;//records every change while a journal is open, otherwise null
+	private transient RaceArchive raceArchive = new RaceArchive();//races left on disk until they are first used
+	private transient CopyOnWriteArrayList<RaceArchive.Capture> pendingSnapshots = new CopyOnWriteArrayList<>();//snapshots still being written in the background
+	private transient ExecutorService snapshotWriter = newSnapshotWriter();
+	private transient SnapshotMetrics snapshotMetrics = new SnapshotMetrics();
+	transient ClassificationParallelism classificationParallelism = ClassificationParallelism.SEQUENTIAL;//how the stages of a race are added up
+
+	/**
+	 * Gets the race with the given ID from the portal index.
+	 * @param raceId The ID of the race.
+	 * @return The race with the given ID.
+	 * @throws IDNotRecognisedException If the ID does not match to any race in the system.
+	 */
+	private Race findRace(int raceId) throws IDNotRecognisedException {
+		Race race = portalIndex.getRace(raceId);
+		if (race != null) {
+			raceArchive.touch(raceId);
+		} else if (raceArchive.isUnloaded(raceId)) {
+			race = loadArchivedRace(raceId);
+		} else {
+			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		}
+		return race;
+	}
+
+	/**
+	 * Gets the stage with the given ID from the portal index.
+	 * @param stageId The ID of the stage.
+	 * @return The stage with the given ID.
+	 * @throws IDNotRecognisedException If the ID does not match to any stage in the system.
+	 */
+	private Stage findStage(int stageId) throws IDNotRecognisedException {
+		Stage stage = getStage(stageId);
+		if (stage == null) {
+			throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		}
+		return stage;
+	}
+
+	/**
+	 * Gets the stage with the given ID, loading its race from the race archive if it is not loaded yet.
+	 * @param stageId The ID of the stage.
+	 * @return The stage with the given ID, or null if there is no such stage.
+	 */
+	private Stage getStage(int stageId) {
+		Stage stage = portalIndex.getStage(stageId);
+		if (stage != null) {
+			raceArchive.touch(stage.getRaceId());
+			return stage;
+		}
+		int raceId = raceArchive.getRaceOfUnloadedStage(stageId);
+		if (raceId < 0) {
+			return null;
+		}
+		loadArchivedRace(raceId);
+		return portalIndex.getStage(stageId);
+	}
+
+	/**
+	 * Gets the team with the given ID from the portal index.
+	 * @param teamId The ID of the team.
+	 * @return The team with the given ID.
+	 * @throws IDNotRecognisedException If the ID does not match to any team in the system.
+	 */
+	private Team findTeam(int teamId) throws IDNotRecognisedException {
+		Team team = portalIndex.getTeam(teamId);
+		if (team == null) {
+			throw new IDNotRecognisedException("The ID entered does not match to any team in the system");
+		}
+		return team;
+	}
+
+	/**
+	 * Gets the stage with the given ID for an operation on a rider's result, checking that the rider exists.
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @return The stage with the given ID.
+	 * @throws IDNotRecognisedException If the IDs do not match to any stage or rider in the system.
+	 */
+	private Stage findStageForRider(int stageId, int riderId) throws IDNotRecognisedException {
+		Stage stage = portalIndex.getRider(riderId) == null ? null : getStage(stageId);
+		if (stage == null) {
+			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		}
+		return stage;
+	}
+
+	/**
+	 * Rebuilds the portal index from the lists of races and teams.
+	 */
+	private void rebuildPortalIndex() {
+		portalIndex = new PortalIndex();
+		for (Race race:arrayListOfRaces) {
+			portalIndex.addRace(race);
+		}
+		for (Team team:arrayListOfTeams) {
+			portalIndex.addTeam(team);
+		}
+	}
+
+	/**
+	 * Loads a race from the race archive into the portal, then evicts the races used least recently if the loaded
+	 * races no longer fit in the memory budget.
+	 * @param raceId The ID of a race that is in the archive and not loaded.
+	 * @return The loaded race.
+	 * @throws UncheckedIOException If the race cannot be read, or an evicted race cannot be written.
+	 */
+	private Race loadArchivedRace(int raceId) {
+		Race race = addArchivedRace(raceId);
+		evictArchivedRaces();
+		return race;
+	}
+
+	/**
+	 * Loads a race from the race archive and adds it to the portal, keeping the races in ID order.
+	 * @param raceId The ID of a race that is in the archive and not loaded.
+	 * @return The loaded race.
+	 * @throws UncheckedIOException If the race cannot be read.
+	 */
+	private Race addArchivedRace(int raceId) {
+		Race race;
+		try {
+			race = raceArchive.load(raceId);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int position = 0;
+		while (position < arrayListOfRaces.size() && arrayListOfRaces.get(position).getRaceId() < raceId) {
+			position++;
+		}
+		arrayListOfRaces.add(position, race);
+		portalIndex.addRace(race);
+		return race;
+	}
+
+	/**
+	 * Loads every race that is still in the race archive, for operations that need the whole portal in memory.
+	 * @throws UncheckedIOException If a race cannot be read.
+	 */
+	void loadAllArchivedRaces() {
+		for (int raceId:raceArchive.getUnloadedRaceIds()) {
+			addArchivedRace(raceId);
+		}
+	}
+
+	/**
+	 * Evicts the races used least recently until the loaded races fit in the memory budget, removing them from
+	 * the portal until they are used again.
+	 * @throws UncheckedIOException If a changed race cannot be written to the spill file.
+	 */
+	private void evictArchivedRaces() {
+		ArrayList<Race> evictedRaces;
+		try {
+			evictedRaces = raceArchive.evict();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (Race race:evictedRaces) {
+			arrayListOfRaces.remove(race);
+			portalIndex.removeRace(race);
+		}
+	}
+
+	/**
+	 * Sets the most memory the loaded races should take up. Races loaded from an archive saved by
+	 * {@link #saveCyclingPortal(String)} are read from disk when first used, and once they go over the budget the
+	 * races used least recently are evicted back to disk until they are needed again. The race used most recently
+	 * always stays loaded, so a single race larger than the budget still works.
+	 * @param bytes The memory budget in bytes, as estimated by {@link RaceArchive#estimateSize(Race)}, or
+	 *              Long.MAX_VALUE to keep every race loaded once it has been used.
+	 * @throws IllegalArgumentException If the budget is negative.
+	 */
+	public void setRaceMemoryBudget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("The memory budget can't be negative");
+		}
+		raceArchive.setMemoryBudget(bytes);
+		evictArchivedRaces();
+	}
+
+	/**
+	 * Sets how the classifications of a race are worked out. By default the stages are worked out one after
+	 * another; with a parallelism above 1, whenever at least the given number of stages need working out, such
+	 * as the first time a race is classified after loading, each stage's times and points are worked out on a
+	 * fork/join pool of that many threads and added up in parallel. Races with fewer stages to work out, such as
+	 * a live race where one stage changes at a time, are still worked out one stage after another.
+	 * @param parallelism The number of threads, or 1 to work out the stages one after another.
+	 * @param minimumStages The fewest stages needing to be worked out for them to be worked out in parallel.
+	 * @throws IllegalArgumentException If the parallelism is less than 1 or the threshold less than 2.
+	 */
+	public void setClassificationParallelism(int parallelism, int minimumStages) {
+		ClassificationParallelism previous = classificationParallelism;
+		classificationParallelism = new ClassificationParallelism(parallelism, minimumStages);
+		previous.retire();
+	}
+
+	/**
+	 * Keeps a race as it is for the snapshots still being written in the background, before the portal changes
+	 * it. Each snapshot copies the race at most once, and only if it has not written it yet.
+	 * @param race The race about to change.
+	 */
+	private void preserveForSnapshots(Race race) {
+		for (RaceArchive.Capture capture:pendingSnapshots) {
+			capture.preserve(race);
+		}
+	}
+
+	/**
+	 * Keeps the race of a stage as it is for the snapshots still being written in the background, before the
+	 * portal changes the stage.
+	 * @param stage The stage about to change.
+	 */
+	private void preserveForSnapshots(Stage stage) {
+		if (!pendingSnapshots.isEmpty()) {
+			preserveForSnapshots(portalIndex.getRaceOfStage(stage.getStageId()));
+		}
+	}
+
+	/**
+	 * Creates the executor that writes snapshots, with a single daemon thread that stops when it has been idle
+	 * for a while, so a portal that is no longer used does not keep a thread.
+	 * @return The executor.
+	 */
+	private static ExecutorService newSnapshotWriter() {
+		return new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+			Thread thread = new Thread(task, "portal-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Converts times given to the portal into nanoseconds of the day, which is how they are stored.
+	 * @param times The times to convert.
+	 * @return The nanosecond of the day of each time.
+	 */
+	private static long[] toNanos(LocalTime[] times) {
+		long[] nanos = new long[times.length];
+		for (int i = 0; i < times.length; i++) {
+			nanos[i] = times[i].toNanoOfDay();
+		}
+		return nanos;
+	}
+
+	/**
+	 * Converts times stored in nanoseconds into the times returned by the portal.
+	 * @param nanos The times in nanoseconds, each less than a day.
+	 * @return The times.
+	 */
+	private static LocalTime[] toLocalTimes(long[] nanos) {
+		LocalTime[] times = new LocalTime[nanos.length];
+		for (int i = 0; i < nanos.length; i++) {
+			times[i] = LocalTime.ofNanoOfDay(nanos[i]);
+		}
+		return times;
+	}
+
+	/**
+	 * Restores the portal from a journal directory and records every change made to it from now on. The portal
+	 * is replaced by the directory's latest snapshot with the changes journaled since it replayed on top, or left
+	 * empty if the directory is new. Changes are written to disk by group commit: with an interval of zero each
+	 * change is on disk before its method returns, otherwise changes are synced in the background once per
+	 * interval and a crash can lose the changes of the last interval.
+	 * @param directory The journal directory, which is created if it does not exist.
+	 * @param groupCommitMillis The time between syncs in milliseconds, or 0 to sync every change.
+	 * @throws IOException If the directory cannot be read or written, or its journal does not match its snapshot.
+	 */
+	public void openJournal(String directory, long groupCommitMillis) throws IOException {
+		closeJournal();
+		journal = PortalJournal.open(Paths.get(directory), TimeUnit.MILLISECONDS.toNanos(groupCommitMillis), this);
+	}
+
+	/**
+	 * Writes a snapshot of the portal into the journal directory and starts a new, empty journal after it, so a
+	 * later restore does not have to replay the changes made so far.
+	 * @throws IOException If the files cannot be written.
+	 * @throws IllegalStateException If no journal is open.
+	 */
+	public void checkpointJournal() throws IOException {
+		if (journal == null) {
+			throw new IllegalStateException("The portal has no journal open");
+		}
+		loadAllArchivedRaces();
+		journal = journal.checkpoint(arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters());
+		evictArchivedRaces();
+	}
+
+	/**
+	 * Waits until every change recorded in the journal so far is on disk.
+	 * @throws IOException If the journal cannot be written to.
+	 */
+	public void syncJournal() throws IOException {
+		if (journal != null) {
+			journal.sync();
+		}
+	}
+
+	/**
+	 * Syncs and closes the journal, after which changes to the portal are no longer recorded.
+	 * @throws IOException If the journal cannot be written to.
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			PortalJournal closing = journal;
+			journal = null;
+			closing.close();
+		}
+	}
 
 	@Override
 	public int[] getRaceIds() {
+		if (raceArchive.hasUnloadedRaces()) {
+			int[] unloadedRaceIds = raceArchive.getUnloadedRaceIds();
+			int[] raceIds = Arrays.copyOf(unloadedRaceIds, unloadedRaceIds.length + arrayListOfRaces.size());
+			for (int i = 0; i < arrayListOfRaces.size(); i++) {
+				raceIds[unloadedRaceIds.length + i] = arrayListOfRaces.get(i).getRaceId();
+			}
+			Arrays.sort(raceIds);
+			return raceIds;
+		}
 		if (arrayListOfRaces.size() == 0) {
 			return new int[0];
 		} else {
@@ -46,116 +373,107 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
-		Race newRace = new Race(name, description);
 		for (Race race:arrayListOfRaces){
 			if (race.getName().equals(name)){
 				throw new IllegalNameException("The race name already exists in the platform");
 			}
-			if (name == null || name.isEmpty() || name.length() == 0 || name.length() > 30 || name.contains(" ")) {
-				throw new InvalidNameException("Race name entered can't be empty, have more than 30 characters, or include spaces");
-			}
 		}
+		if (raceArchive.findUnloadedRace(name) >= 0) {
+			throw new IllegalNameException("The race name already exists in the platform");
+		}
+		if (name == null || name.isEmpty() || name.length() == 0 || name.length() > 30 || name.contains(" ")) {
+			throw new InvalidNameException("Race name entered can't be empty, have more than 30 characters, or include spaces");
+		}
+		Race newRace = new Race(idAllocator, name, description);
 		arrayListOfRaces.add(newRace);
+		portalIndex.addRace(newRace);
+		raceArchive.added(newRace);
+		if (journal != null) {
+			journal.createRace(newRace.getRaceId(), name, description);
+		}
 		return newRace.getRaceId();
 	}
 
 	@Override
 	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
-		for (Race race:arrayListOfRaces){
-			if (race.getRaceId()==(raceId)){
-				String concatenatedString = String.valueOf(race.getRaceId()) + " " + race.getName()
-				+ " " + race.getDescription() +" "+ String.valueOf(race.getNumberOfStages())
-				+ " "+ String.valueOf(race.getTotalLength());
-				return concatenatedString;
-			}
-		}
-		throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		Race race = findRace(raceId);
+		String concatenatedString = String.valueOf(race.getRaceId()) + " " + race.getName()
+		+ " " + race.getDescription() +" "+ String.valueOf(race.getNumberOfStages())
+		+ " "+ String.valueOf(race.getTotalLength());
+		return concatenatedString;
 	}
 
 	@Override
 	public void removeRaceById(int raceId) throws IDNotRecognisedException {
-		int initialLength = arrayListOfRaces.size();
-		for (Race race:arrayListOfRaces ){
-			if (race.getRaceId() == (raceId)) {
-				arrayListOfRaces.remove(race);
-				break;
-			}
-		}
-		if (arrayListOfRaces.size() == initialLength) {
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		Race race = findRace(raceId);
+		arrayListOfRaces.remove(race);
+		portalIndex.removeRace(race);
+		raceArchive.removed(raceId);
+		if (journal != null) {
+			journal.removeRace(raceId);
 		}
 	}
 
 	@Override
 	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
-		for (Race race:arrayListOfRaces){
-			if (race.getRaceId()==(raceId)){
-				int numberOfStages = race.getNumberOfStages();
-				return numberOfStages;
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		Race race = findRace(raceId);
+		int numberOfStages = race.getNumberOfStages();
+		return numberOfStages;
 	}
 
 	@Override
 	public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type)
 			throws IDNotRecognisedException, IllegalNameException, InvalidNameException, InvalidLengthException {
-		for (Race race:arrayListOfRaces){
-			if (race.getRaceId()==(raceId)){
-				for (Stage s:race.arrayListOfStages){
-					if (s.getStageName().equals(stageName)){
-						throw new IllegalNameException("The stage name already exists in the platform");
-					}
-				}
-				if (stageName==null || stageName.isEmpty()|| stageName.length()>30|| stageName.contains(" ")){
-					throw new InvalidNameException("Name entered can't be empty, have more than 30 characters, or include spaces");
-				}
-				if (length<5){
-					throw new InvalidLengthException("The length of the stage must be longer than 5km");
-				}
-				int stageId =race.createStage(raceId, stageName, description, length, startTime, type);
-				return stageId;
+		Race race = findRace(raceId);
+		for (Stage s:race.arrayListOfStages){
+			if (s.getStageName().equals(stageName)){
+				throw new IllegalNameException("The stage name already exists in the platform");
 			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		}
+		if (stageName==null || stageName.isEmpty()|| stageName.length()>30|| stageName.contains(" ")){
+			throw new InvalidNameException("Name entered can't be empty, have more than 30 characters, or include spaces");
+		}
+		if (length<5){
+			throw new InvalidLengthException("The length of the stage must be longer than 5km");
+		}
+		preserveForSnapshots(race);
+		Stage newStage = race.createStage(idAllocator, raceId, stageName, description, length, startTime, type);
+		portalIndex.addStage(race, newStage);
+		raceArchive.changed(raceId);
+		if (journal != null) {
+			journal.addStage(newStage.getStageId(), raceId, stageName, description, length, startTime, type);
+		}
+		return newStage.getStageId();
 	}
 
 	@Override
 	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
-		for (Race race:arrayListOfRaces){
-			if (race.getRaceId()==(raceId)){
-				ArrayList<Integer> arrayListOfStageIDs = race.getRaceStages();
-				//int[] array = arrayListOfStageIDs.toArray(new int[arrayListOfStageIDs.size()]);
-				int[] arrayNew = new int[arrayListOfStageIDs.size()];
-				for (int i=0; i < arrayNew.length; i++) {
-					arrayNew[i] = arrayListOfStageIDs.get(i).intValue();
-				}
-				return arrayNew;
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		Race race = findRace(raceId);
+		ArrayList<Integer> arrayListOfStageIDs = race.getRaceStages();
+		int[] arrayNew = new int[arrayListOfStageIDs.size()];
+		for (int i=0; i < arrayNew.length; i++) {
+			arrayNew[i] = arrayListOfStageIDs.get(i).intValue();
+		}
+		return arrayNew;
 	}
 	
 	@Override
 	public double getStageLength(int stageId) throws IDNotRecognisedException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					double stageLength = s.getStageLength();
-					return stageLength;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		double stageLength = s.getStageLength();
+		return stageLength;
 	}
 
 	@Override
 	public void removeStageById(int stageId) throws IDNotRecognisedException {
-		int initialLength=0;
-		Race raceInQuestion = null;
-		for (Race race: arrayListOfRaces){
-			initialLength = race.arrayListOfStages.size();
-			race.removeStage(stageId);
-			raceInQuestion = race;
-			break;
-		}if (raceInQuestion.arrayListOfStages.size()==initialLength){
-			throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		Race race = portalIndex.getRaceOfStage(stageId);
+		preserveForSnapshots(race);
+		race.removeStage(stageId);
+		portalIndex.removeStage(s);
+		raceArchive.changed(race.getRaceId());
+		if (journal != null) {
+			journal.removeStage(stageId);
 		}
 	}
 
@@ -163,99 +481,95 @@ public class CyclingPortal implements CyclingPortalInterface {
 	public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
 			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
 			InvalidStageTypeException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					if (location>s.getStageLength()){
-						throw new InvalidLocationException("The entered finish location is not within the stage length");
-					}
-					if (s.getStageState().equals("waiting for results")){
-						throw new InvalidStageStateException("Still waiting for results");
-					}
-					if (s.getStageType().equals(StageType.TT)){
-						throw new InvalidStageTypeException("Time trial stages cannot contain any segments");
-					}
-					int climbId = s.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
-					return climbId;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		if (location>s.getStageLength()){
+			throw new InvalidLocationException("The entered finish location is not within the stage length");
+		}
+		if (s.getStageState().equals("waiting for results")){
+			throw new InvalidStageStateException("Still waiting for results");
+		}
+		if (s.getStageType().equals(StageType.TT)){
+			throw new InvalidStageTypeException("Time trial stages cannot contain any segments");
+		}
+		preserveForSnapshots(s);
+		Segment climb = s.addCategorizedClimbToStage(idAllocator, stageId, location, type, averageGradient, length);
+		portalIndex.addSegment(s, climb);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.addCategorizedClimb(climb.getSegmentId(), stageId, location, type, averageGradient, length);
+		}
+		return climb.getSegmentId();
 	}
 
 	@Override
 	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
 			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					if (location>s.getStageLength()){
-						throw new InvalidLocationException("The entered finish location is not within the stage length");
-					}
-					if (s.getStageState().equals("waiting for results")){
-						throw new InvalidStageStateException("Still waiting for results");
-					}
-					if (s.getStageType().equals(StageType.TT)){
-						throw new InvalidStageTypeException("Time trial stages cannot contain any segments");
-					}
-					int sprintId = s.addIntermediateSprintToStage(stageId, location);
-					return sprintId;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		if (location>s.getStageLength()){
+			throw new InvalidLocationException("The entered finish location is not within the stage length");
+		}
+		if (s.getStageState().equals("waiting for results")){
+			throw new InvalidStageStateException("Still waiting for results");
+		}
+		if (s.getStageType().equals(StageType.TT)){
+			throw new InvalidStageTypeException("Time trial stages cannot contain any segments");
+		}
+		preserveForSnapshots(s);
+		Segment sprint = s.addIntermediateSprintToStage(idAllocator, stageId, location);
+		portalIndex.addSegment(s, sprint);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.addIntermediateSprint(sprint.getSegmentId(), stageId, location);
+		}
+		return sprint.getSegmentId();
 	}
 
 	@Override
 	public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
-		int initialLength =0;
-		Stage stageInQuestion = null;
-		outerloop:
-		for (Race race: arrayListOfRaces){
-			for (Stage i:race.arrayListOfStages){
-				if (i.getStageState().equals("waiting for results")){
-					throw new InvalidStageStateException("Still waiting for results");
-				}
-				initialLength= i.arrayListOfSegments.size();
-				i.removeSegment(segmentId);
-				stageInQuestion = i;
-				break outerloop;
-			}
-		}if (stageInQuestion.arrayListOfSegments.size()==initialLength){
+		Segment segment = portalIndex.getSegment(segmentId);
+		if (segment == null && raceArchive.getRaceOfUnloadedSegment(segmentId) >= 0) {
+			loadArchivedRace(raceArchive.getRaceOfUnloadedSegment(segmentId));
+			segment = portalIndex.getSegment(segmentId);
+		}
+		if (segment == null){
 			throw new IDNotRecognisedException("The ID entered does not match to any segment in the system");
 		}
+		Stage s = portalIndex.getStageOfSegment(segmentId);
+		if (s.getStageState().equals("waiting for results")){
+			throw new InvalidStageStateException("Still waiting for results");
+		}
+		preserveForSnapshots(s);
+		s.removeSegment(segmentId);
+		portalIndex.removeSegment(segment);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.removeSegment(segmentId);
+		}
 	}
 
 	@Override
 	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
-		int flag = 0;
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					if (s.getStageState().equals("waiting for results")){
-						throw new InvalidStageStateException("Still waiting for results");
-					}
-					s.concludeStagePreparation();
-					flag=1;
-				}
-			}
-		}if (flag ==0 ){
-			throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		if (s.getStageState().equals("waiting for results")){
+			throw new InvalidStageStateException("Still waiting for results");
+		}
+		preserveForSnapshots(s);
+		s.concludeStagePreparation();
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.concludeStagePreparation(stageId);
 		}
 	}
 
 	@Override
 	public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					ArrayList<Integer> arrayListOfSegmentIDs = s.getStageSegments();
-					int[] arrayNew = new int[arrayListOfSegmentIDs.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = arrayListOfSegmentIDs.get(i).intValue();
-					}
-					return arrayNew;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		ArrayList<Integer> arrayListOfSegmentIDs = s.getStageSegments();
+		int[] arrayNew = new int[arrayListOfSegmentIDs.size()];
+		for (int i=0; i < arrayNew.length; i++) {
+			arrayNew[i] = arrayListOfSegmentIDs.get(i).intValue();
+		}
+		return arrayNew;
 	}
 
 	@Override
@@ -264,26 +578,28 @@ public class CyclingPortal implements CyclingPortalInterface {
 			if (team.getName().equals(name)) {
 				throw new IllegalNameException("The team name already exists in the platform");
 			}
-			if (name == null || name.isEmpty() || name.length() == 0 || name.length() > 30 || name.contains(" ")) {
-				throw new InvalidNameException("Team name entered can't be empty, have more than 30 characters, or include spaces");
-			}
 		}
-		Team newTeam = new Team(name, description);
+		if (name == null || name.isEmpty() || name.length() == 0 || name.length() > 30 || name.contains(" ")) {
+			throw new InvalidNameException("Team name entered can't be empty, have more than 30 characters, or include spaces");
+		}
+		Team newTeam = new Team(idAllocator, name, description);
 		arrayListOfTeams.add(newTeam);
+		portalIndex.addTeam(newTeam);
+		raceArchive.teamsChanged();
+		if (journal != null) {
+			journal.createTeam(newTeam.getTeamId(), name, description);
+		}
 		return newTeam.getTeamId();
 	}
 
 	@Override
 	public void removeTeam(int teamId) throws IDNotRecognisedException {
-		int initialLength = arrayListOfTeams.size();
-		for (Team team:arrayListOfTeams){
-			if (team.getTeamId() == (teamId)){
-				arrayListOfTeams.remove(team);
-				break;
-			}
-		}
-		if (arrayListOfTeams.size() == initialLength){
-			throw new IDNotRecognisedException("The ID entered does not match to any team in the system");
+		Team team = findTeam(teamId);
+		arrayListOfTeams.remove(team);
+		portalIndex.removeTeam(team);
+		raceArchive.teamsChanged();
+		if (journal != null) {
+			journal.removeTeam(teamId);
 		}
 	}
 
@@ -305,789 +621,660 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
-		for (Team team:arrayListOfTeams){
-			if (team.getTeamId() == (teamId)){
-				ArrayList<Integer> arrayListOfRiderIDs = team.getTeamRiders();
-				Integer[] array = arrayListOfRiderIDs.toArray(new Integer[arrayListOfRiderIDs.size()]);
-				int[] arrayNew = new int[array.length];
-				Arrays.setAll(arrayNew, i -> array[i]);
-				return arrayNew;
-			}
-		}
-		throw new IDNotRecognisedException("The ID entered does not match to any team in the system");
+		Team team = findTeam(teamId);
+		ArrayList<Integer> arrayListOfRiderIDs = team.getTeamRiders();
+		Integer[] array = arrayListOfRiderIDs.toArray(new Integer[arrayListOfRiderIDs.size()]);
+		int[] arrayNew = new int[array.length];
+		Arrays.setAll(arrayNew, i -> array[i]);
+		return arrayNew;
 	}
 
 	@Override
 	public int createRider(int teamID, String name, int yearOfBirth)
 			throws IDNotRecognisedException, IllegalArgumentException {
-		for (Team team:arrayListOfTeams){
-			if (team.getTeamId() == (teamID)){
-				if (name == null || yearOfBirth < 1900){
-					throw new IllegalArgumentException("Name of rider cannot be empty and year of birth cannot be less than 1900");
-				}
-				int riderID = team.createRider(teamID, name, yearOfBirth);
-				return riderID;
-			}
+		Team team = findTeam(teamID);
+		if (name == null || yearOfBirth < 1900){
+			throw new IllegalArgumentException("Name of rider cannot be empty and year of birth cannot be less than 1900");
 		}
-		throw new IDNotRecognisedException("The ID entered does not match to any team in the system");
+		Rider newRider = team.createRider(idAllocator, teamID, name, yearOfBirth);
+		portalIndex.addRider(team, newRider);
+		raceArchive.teamsChanged();
+		if (journal != null) {
+			journal.createRider(newRider.getRiderId(), teamID, name, yearOfBirth);
+		}
+		return newRider.getRiderId();
 	}
 
 	@Override
 	public void removeRider(int riderId) throws IDNotRecognisedException {
-		int initialLength=0;
-		Team teamInQuestion = null;
-		outerloop:
-		for (Team team: arrayListOfTeams){
-			//initialLength = team.arrayListOfRiders.size();
-			for (Rider rider: team.arrayListOfRiders){
-				if (rider.getRiderId()==riderId){
-					initialLength = team.arrayListOfRiders.size();
-					team.removeRider(riderId);
-					teamInQuestion = team;
-					break outerloop;
-				}
-			}
-		}for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				for (Result result: s.arrayListOfResults){
-					if (result.getRiderId()==riderId){
-						s.arrayListOfResults.remove(result);
-					}
-				}
-			}
-		}if (teamInQuestion.arrayListOfRiders.size() == initialLength){
+		Rider rider = portalIndex.getRider(riderId);
+		if (rider == null){
 			throw new IDNotRecognisedException("The ID entered does not match to any rider in the system");
 		}
+		portalIndex.getTeamOfRider(riderId).removeRider(riderId);
+		portalIndex.removeRider(rider);
+		raceArchive.teamsChanged();
+		for (Race race: arrayListOfRaces){
+			deleteRiderResultsInRace(race, riderId);
+		}
+		for (int raceId:raceArchive.getUnloadedRaceIds()) {
+			deleteRiderResultsInRace(loadArchivedRace(raceId), riderId);
+		}
+		if (journal != null) {
+			journal.removeRider(riderId);
+		}
+	}
+
+	/**
+	 * Deletes the results of a rider in every stage of a race.
+	 * @param race The race.
+	 * @param riderId The ID of the rider.
+	 */
+	private void deleteRiderResultsInRace(Race race, int riderId) {
+		for (Stage s:race.arrayListOfStages){
+			if (s.hasResult(riderId)) {
+				preserveForSnapshots(race);
+				s.deleteRiderResultsInStage(riderId);
+				raceArchive.changed(race.getRaceId());
+			}
+		}
 	}
 
 	@Override
 	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
 			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
 			InvalidStageStateException {
-		int initialLength=0;
-		Stage stageInQuestion = null;
-		outerloop:
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					initialLength = s.arrayListOfResults.size();
-					for (Result result: s.arrayListOfResults){
-						if (result.getRiderId()==riderId){
-							throw new DuplicatedResultException("Rider already has a result for that stage");
-						}
-					}
-					if (checkpoints.length != (s.arrayListOfSegments.size()+2)){
-						throw new InvalidCheckpointsException("The number of checkpoints in the stage is invaliid");
+		registerRiderResultsInStage(stageId, riderId, toNanos(checkpoints));
+	}
+
+	/**
+	 * Records the times of a rider in a stage, given in nanoseconds of the day.
+	 * @param stageId The ID of the stage the result refers to.
+	 * @param riderId The ID of the rider the result refers to.
+	 * @param checkpoints The times the rider reached each checkpoint, in nanoseconds of the day.
+	 * @throws IDNotRecognisedException If the IDs do not match to any stage or rider in the system.
+	 * @throws DuplicatedResultException If the rider already has a result for the stage.
+	 * @throws InvalidCheckpointsException If the number of checkpoints does not match the stage.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	void registerRiderResultsInStage(int stageId, int riderId, long[] checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		Stage s = findStageForRider(stageId, riderId);
+		checkNewResult(s, s.hasResult(riderId), checkpoints.length);
+		preserveForSnapshots(s);
+		s.registerRiderResultsInStage(stageId, riderId, checkpoints);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.registerRiderResults(stageId, riderId, checkpoints);
+		}
+	}
+
+	/**
+	 * Offers the times of a rider to a stage, for callers registering results from many threads at once. The
+	 * checks are the same as for registering a result, but the result only goes into the stage's inbox, so
+	 * threads offering results for different riders do not wait for each other. The result is added to the stage
+	 * by {@link #mergePendingResults(int)}, which must run before the race is next read or changed and while no
+	 * results are being offered.
+	 * @param stageId The ID of the stage the result refers to.
+	 * @param riderId The ID of the rider the result refers to.
+	 * @param checkpoints The times the rider reached each checkpoint.
+	 * @throws IDNotRecognisedException If the IDs do not match to any stage or rider in the system.
+	 * @throws DuplicatedResultException If the rider already has a result for the stage, or has one offered.
+	 * @throws InvalidCheckpointsException If the number of checkpoints does not match the stage.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	void offerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		Stage s = findStageForRider(stageId, riderId);
+		checkNewResult(s, s.hasResult(riderId) || s.hasPendingResult(riderId), checkpoints.length);
+		if (!s.offerRiderResultsInStage(stageId, riderId, toNanos(checkpoints))) {
+			throw new DuplicatedResultException("Rider already has a result for that stage");
+		}
+	}
+
+	/**
+	 * Checks that a new result for a rider can be added to a stage, for both registering and offering results.
+	 * @param s The stage the result is for.
+	 * @param alreadyHasResult Whether the rider already has a result for the stage.
+	 * @param numberOfCheckpoints The number of checkpoint times in the result.
+	 * @throws DuplicatedResultException If the rider already has a result for the stage.
+	 * @throws InvalidCheckpointsException If the number of checkpoints does not match the stage.
+	 * @throws InvalidStageStateException If the stage is not waiting for results.
+	 */
+	private static void checkNewResult(Stage s, boolean alreadyHasResult, int numberOfCheckpoints)
+			throws DuplicatedResultException, InvalidCheckpointsException, InvalidStageStateException {
+		if (alreadyHasResult){
+			throw new DuplicatedResultException("Rider already has a result for that stage");
+		}
+		if (numberOfCheckpoints != (s.arrayListOfSegments.size()+2)){
+			throw new InvalidCheckpointsException("The number of checkpoints in the stage is invalid");
+		}
+		if (!s.getStageState().equals("waiting for results")){
+			throw new InvalidStageStateException("Results can only be added to a stage while it is waiting for results");
+		}
+	}
+
+	/**
+	 * Checks whether any stage of a race has results offered that have not been merged yet.
+	 * @param raceId The ID of the race.
+	 * @return true if the race has pending results, or false if it has none or is not loaded.
+	 */
+	boolean hasPendingResults(int raceId) {
+		Race race = portalIndex.getRace(raceId);
+		if (race == null) {
+			return false;
+		}
+		for (Stage stage:race.arrayListOfStages) {
+			if (stage.hasPendingResults()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the results offered to the stages of a race to the stages, recording them in the journal as if they
+	 * had been registered one at a time in order of rider ID.
+	 * @param raceId The ID of the race.
+	 */
+	void mergePendingResults(int raceId) {
+		Race race = portalIndex.getRace(raceId);
+		if (race == null) {
+			return;
+		}
+		for (Stage stage:race.arrayListOfStages) {
+			if (!stage.hasPendingResults()) {
+				continue;
+			}
+			preserveForSnapshots(race);
+			int numberOfResults = stage.getNumberOfResults();
+			if (!stage.addPendingResults()) {
+				continue;
+			}
+			raceArchive.changed(raceId);
+			if (journal != null) {
+				ArrayList<Result> results = stage.getArrayListOfResults();
+				for (int i = numberOfResults; i < results.size(); i++) {
+					Result result = results.get(i);
+					journal.registerRiderResults(stage.getStageId(), result.getRiderId(), result.getCheckpoints());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the results offered to the stages of every loaded race to the stages.
+	 */
+	void mergeAllPendingResults() {
+		for (Race race:arrayListOfRaces) {
+			mergePendingResults(race.getRaceId());
+		}
+	}
+
+	/**
+	 * The ResultBatch class holds results read from a file for one stage until they are registered together.
+	 */
+	private static final class ResultBatch {
+		final Stage stage;
+		final int numberOfCheckpoints;
+		final int[] riderIds = new int[IMPORT_BATCH_SIZE];
+		final long[][] checkpoints = new long[IMPORT_BATCH_SIZE][];
+		final IntIntMap pendingRiders = new IntIntMap();
+		int count;
+
+		/**
+		 * Constructor for the ResultBatch class, working out once how many checkpoint times each result needs.
+		 * @param stage The stage the results are for.
+		 */
+		ResultBatch(Stage stage) {
+			this.stage = stage;
+			this.numberOfCheckpoints = stage.arrayListOfSegments.size() + 2;
+		}
+	}
+
+	/**
+	 * Imports rider results from a CSV file, such as an export from a timing system. Each line holds a stage ID,
+	 * a rider ID, and the time the rider reached each checkpoint of the stage, including the start and the
+	 * finish line, written like 12:04:31.250; the format is described in {@link ResultCsvReader}. The file is
+	 * streamed, and each stage is looked up and its number of checkpoints worked out once, after which its
+	 * results are registered in batches. A line that could not be registered by
+	 * {@link #registerRiderResultsInStage(int, int, LocalTime...)} is skipped and reported, and the rest of the
+	 * file is still imported.
+	 * @param filename Location of the file to import.
+	 * @return What was imported and what was wrong with each line that was not.
+	 * @throws IOException If the file cannot be read. Results from the lines before the failure are kept.
+	 */
+	public ResultImportReport importRiderResults(String filename) throws IOException {
+		ResultImportReport report = new ResultImportReport();
+		IntObjectMap<ResultBatch> batches = new IntObjectMap<>();
+		IntIntMap unknownStages = new IntIntMap();
+		try (ResultCsvReader reader = new ResultCsvReader(FileChannel.open(Paths.get(filename), StandardOpenOption.READ))) {
+			while (reader.next()) {
+				report.rowRead();
+				if (reader.getError() != null) {
+					report.error(reader.getLineNumber(), reader.getError());
+					continue;
+				}
+				int stageId = reader.getStageId();
+				int riderId = reader.getRiderId();
+				ResultBatch batch = batches.get(stageId);
+				if (batch == null && !unknownStages.containsKey(stageId)) {
+					if (portalIndex.getStage(stageId) == null) {
+						//loading a race can evict others, so the results read for them are registered first
+						registerBatches(batches, report);
+						batches.clear();
 					}
-					if (!s.getStageState().equals("waiting for results")){
-						throw new InvalidStageStateException("Results can only be added to a stage while it is waiting for results");
+					Stage stage = getStage(stageId);
+					if (stage == null) {
+						unknownStages.put(stageId, stageId);
+					} else {
+						batch = new ResultBatch(stage);
+						batches.put(stageId, batch);
 					}
-					s.registerRiderResultsInStage(stageId, riderId, checkpoints);
-					stageInQuestion = s;
-					break outerloop;
+				}
+				String error = checkImportedResult(batch, stageId, riderId, reader.getNumberOfCheckpoints());
+				if (error != null) {
+					report.error(reader.getLineNumber(), error);
+					continue;
+				}
+				batch.riderIds[batch.count] = riderId;
+				batch.checkpoints[batch.count] = reader.getCheckpoints();
+				batch.pendingRiders.put(riderId, riderId);
+				batch.count++;
+				if (batch.count == IMPORT_BATCH_SIZE) {
+					registerBatch(batch, report);
 				}
 			}
-		}if (stageInQuestion==null){
-			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		} finally {
+			registerBatches(batches, report);
 		}
-		if (stageInQuestion.arrayListOfResults.size()==initialLength){
-			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		return report;
+	}
+
+	/**
+	 * Checks a result read from a file the way {@link #registerRiderResultsInStage(int, int, long[])} does.
+	 * @param batch The results read so far for the stage, or null if there is no such stage.
+	 * @param stageId The ID of the stage.
+	 * @param riderId The ID of the rider.
+	 * @param numberOfCheckpoints The number of checkpoint times read.
+	 * @return What is wrong with the result, or null if it can be registered.
+	 */
+	private String checkImportedResult(ResultBatch batch, int stageId, int riderId, int numberOfCheckpoints) {
+		if (batch == null) {
+			return "Stage " + stageId + " does not match to any stage in the system";
+		}
+		if (portalIndex.getRider(riderId) == null) {
+			return "Rider " + riderId + " does not match to any rider in the system";
+		}
+		if (batch.stage.hasResult(riderId) || batch.pendingRiders.containsKey(riderId)) {
+			return "Rider " + riderId + " already has a result for stage " + stageId;
+		}
+		if (numberOfCheckpoints != batch.numberOfCheckpoints) {
+			return "Stage " + stageId + " has " + batch.numberOfCheckpoints + " checkpoints but the line has "
+					+ numberOfCheckpoints + " times";
+		}
+		if (!batch.stage.getStageState().equals("waiting for results")) {
+			return "Stage " + stageId + " is not waiting for results";
+		}
+		return null;
+	}
+
+	/**
+	 * Registers every result waiting in the batches of an import.
+	 * @param batches The batches by stage ID.
+	 * @param report The report of the import, which counts the results registered.
+	 */
+	private void registerBatches(IntObjectMap<ResultBatch> batches, ResultImportReport report) {
+		for (ResultBatch batch:batches.values()) {
+			registerBatch(batch, report);
+		}
+	}
+
+	/**
+	 * Registers the results waiting in a batch together and empties it.
+	 * @param batch The batch.
+	 * @param report The report of the import, which counts the results registered.
+	 */
+	private void registerBatch(ResultBatch batch, ResultImportReport report) {
+		if (batch.count == 0) {
+			return;
+		}
+		Stage s = batch.stage;
+		preserveForSnapshots(s);
+		s.registerRiderResultsInStage(s.getStageId(), batch.riderIds, batch.checkpoints, batch.count);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			for (int i = 0; i < batch.count; i++) {
+				journal.registerRiderResults(s.getStageId(), batch.riderIds[i], batch.checkpoints[i]);
+			}
 		}
+		report.imported(batch.count);
+		Arrays.fill(batch.checkpoints, 0, batch.count, null);
+		batch.pendingRiders.clear();
+		batch.count = 0;
 	}
 
 	@Override
 	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					ArrayList<LocalTime> arrayListOfRiderResults = s.getRiderResultsInStage(riderId);
-					LocalTime[] array = arrayListOfRiderResults.toArray(new LocalTime[arrayListOfRiderResults.size()]);
-					if (array.length ==0){
-						throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
-					}
-					return array;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		Stage s = findStageForRider(stageId, riderId);
+		long[] riderResults = s.getRiderResultsInStage(riderId);
+		if (riderResults.length ==0){
+			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		}
+		return toLocalTimes(riderResults);
 	}
 
 	@Override
 	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					LocalTime adjustedTime = s.getRiderAdjustedElapsedTimeInStage(riderId);
-					if (adjustedTime == null){
-						throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
-					}
-					return adjustedTime;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		Stage s = findStageForRider(stageId, riderId);
+		if (!s.hasResult(riderId)){
+			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+		}
+		return LocalTime.ofNanoOfDay(s.getRiderAdjustedElapsedTimeInStage(riderId));
 	}
 
 	@Override
 	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
-		int initialLength = 0;
-		Stage stageInQuestion=null;
-		outerloop:
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					initialLength = s.arrayListOfResults.size();
-					s.deleteRiderResultsInStage(riderId);
-					stageInQuestion = s;
-					break outerloop;
-				}
-			}
-		}if (stageInQuestion==null){
-			throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
-		}
-		if (stageInQuestion.arrayListOfResults.size()==initialLength){
+		Stage s = findStageForRider(stageId, riderId);
+		if (!s.hasResult(riderId)){
 			throw new IDNotRecognisedException("The ID entered does not match to any rider or stage in the system");
 		}
+		preserveForSnapshots(s);
+		s.deleteRiderResultsInStage(riderId);
+		raceArchive.changed(s.getRaceId());
+		if (journal != null) {
+			journal.deleteRiderResults(stageId, riderId);
+		}
 	}
 
 	@Override
 	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
+		Stage s = findStage(stageId);
+		ArrayList<Integer> ridersRankInStage = s.getRidersRankInStage();
+		int[] arrayNew = new int[ridersRankInStage.size()];
+		for (int i=0; i < arrayNew.length; i++) {
+			arrayNew[i] = ridersRankInStage.get(i).intValue();
 		}
-			
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					ArrayList<Integer> ridersRankInStage = s.getRidersRankInStage(allRiders);
-					int[] arrayNew = new int[ridersRankInStage.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = ridersRankInStage.get(i).intValue();
-					}
-					return arrayNew;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
-		
+		return arrayNew;
 	}
 
 	@Override
 	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-			
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					ArrayList<LocalTime> rankedAdjustedElapsedTimes = s.getRankedAdjustedElapsedTimesInStage(allRiders);
-					LocalTime[] arrayNew = new LocalTime[rankedAdjustedElapsedTimes.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = rankedAdjustedElapsedTimes.get(i);
-					}
-					return arrayNew;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		return toLocalTimes(s.getRankedAdjustedElapsedTimesInStage());
 	}
+
 	@Override
 	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-			
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					ArrayList<Integer> ridersPointsInStage = s.getRidersPointsInStage(allRiders);
-					int[] arrayNew = new int[ridersPointsInStage.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = ridersPointsInStage.get(i).intValue();
-					}
-					return arrayNew;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		return s.getRidersPointsInStage();
 	}
 
 	@Override
 	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-			
-		for (Race race: arrayListOfRaces){
-			for (Stage s:race.arrayListOfStages){
-				if (s.getStageId()==stageId){
-					if (s.getStageType().equals(StageType.TT)){
-						return new int[allRiders.size()];
-					}
-					ArrayList<Integer> ridersMountainPointsInStage = s.getRidersMountainPointsInStage(allRiders);
-					int[] arrayNew = new int[ridersMountainPointsInStage.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = ridersMountainPointsInStage.get(i).intValue();
-					}
-					return arrayNew;
-				}
-			}
-		}throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+		Stage s = findStage(stageId);
+		return s.getRidersMountainPointsInStage();
 	}
 
 	@Override
 	public void eraseCyclingPortal() {
 		arrayListOfRaces.clear();
         arrayListOfTeams.clear();
-
-        Team.teamCounter = 0;
-		Race.raceCounter = 0;
-		Rider.riderCounter = 0;
-		Segment.segmentCounter = 0;
-        //Stage.stageCounter = 0;
+		portalIndex.clear();
+		RaceArchive erasedArchive = raceArchive;
+		raceArchive = new RaceArchive();
+		raceArchive.setMemoryBudget(erasedArchive.getMemoryBudget());
+		raceArchive.setCompressed(erasedArchive.isCompressed());
+		try {
+			erasedArchive.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		idAllocator.reset();
+		if (journal != null) {
+			journal.erase();
+		}
 	}
 
 	@Override
 	public void saveCyclingPortal(String filename) throws IOException {
-		ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(filename));
-        outputStream.writeObject(this);
-        outputStream.close();
+		raceArchive.save(Paths.get(filename), arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters());
+	}
+
+	/**
+	 * Saves the portal as {@link #saveCyclingPortal(String)} does, but writes the file on a background thread so
+	 * the portal can keep changing while it is written. The snapshot holds the portal as it was when this method
+	 * was called: races are shared with it rather than copied, and a race the portal changes before the snapshot
+	 * has written it is copied first, which copies the lists of its stages but not the results in them. The
+	 * caller only waits while the teams are copied and, if a race it changes is being written at that moment,
+	 * until that one race has been written. The portal's own save file is left as it is, and the portal must
+	 * still be used from one thread at a time.
+	 * @param filename Location of the file to be saved.
+	 * @return A future completed with the number of bytes written once the file is on disk, or completed
+	 *         exceptionally if it could not be written.
+	 * @throws IOException If the file the portal was loaded from cannot be opened again, or a race evicted to
+	 *                     the spill file cannot be read.
+	 */
+	public CompletableFuture<Long> saveCyclingPortalInBackground(String filename) throws IOException {
+		long start = System.nanoTime();
+		RaceArchive.Capture capture = raceArchive.capture(arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters());
+		pendingSnapshots.add(capture);
+		snapshotMetrics.captured(System.nanoTime() - start);
+		Path file = Paths.get(filename);
+		CompletableFuture<Long> future = new CompletableFuture<>();
+		snapshotWriter.execute(() -> {
+			try {
+				long bytesWritten = capture.writeTo(file);
+				pendingSnapshots.remove(capture);
+				snapshotMetrics.completed(System.nanoTime() - start, bytesWritten, capture.getNumberOfCopiedRaces());
+				future.complete(bytesWritten);
+			} catch (IOException | RuntimeException e) {
+				pendingSnapshots.remove(capture);
+				snapshotMetrics.failed();
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Gets the figures for the snapshots saved by {@link #saveCyclingPortalInBackground(String)}, which are
+	 * updated as each snapshot finishes.
+	 * @return The snapshot metrics of the portal.
+	 */
+	public SnapshotMetrics getSnapshotMetrics() {
+		return snapshotMetrics;
+	}
+
+	/**
+	 * Sets whether {@link #saveCyclingPortal(String)} and {@link #saveCyclingPortalChanges(String)} compress what
+	 * they write. Compressed races store each rider's gaps between checkpoints as the difference from the previous
+	 * rider's gaps, which are small because riders cover the same segments, and are then deflated as they are
+	 * written. Loading needs no setting, since every race in a file records how it was written.
+	 * @param compressed true to compress races and teams written from now on.
+	 */
+	public void setCompressedSaves(boolean compressed) {
+		raceArchive.setCompressed(compressed);
+	}
+
+	/**
+	 * Saves only the races and teams that changed since the portal was last saved to or loaded from the file,
+	 * appending them to it. Races, and their stages and results, that did not change are left where they are, so
+	 * on a portal of finished races and one live race each save costs about the size of the live race. Once the
+	 * superseded copies left in the file outgrow the live portal, or if the portal did not come from the file,
+	 * the whole portal is saved as {@link #saveCyclingPortal(String)} does, which compacts the file.
+	 * @param filename Location of the file to be saved.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void saveCyclingPortalChanges(String filename) throws IOException {
+		raceArchive.saveChanges(Paths.get(filename), arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters());
+	}
+
+	/**
+	 * Saves the portal as a read-only image that {@link MappedCyclingPortal} maps into memory and queries in
+	 * place, for archives that are opened far more often than they change.
+	 * @param filename Location of the image file to be saved.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void savePortalImage(String filename) throws IOException {
+		loadAllArchivedRaces();
+		PortalImage.write(arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters(), Paths.get(filename));
+		evictArchivedRaces();
 	}
 
 	@Override
 	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
-		eraseCyclingPortal();
-		ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(filename));
-		Object portalObject = inputStream.readObject();
-		CyclingPortal newPortal = (CyclingPortal)portalObject;
-		this.arrayListOfTeams = newPortal.arrayListOfTeams;
-		this.arrayListOfRaces = newPortal.arrayListOfRaces;
-		inputStream.close();
-		
-		//Race.raceCounter = arrayListOfRaces.get(arrayListOfRaces.size()-1).getRaceId();
-		//Stage.stageCounter = Race.arrayListOfStages.get(Race.arrayListOfStages.size()-1).getStageId();
-		//Segment.segmentCounter = Stage.arrayListOfSegments.get(Stage.arrayListOfSegments.size()-1).getSegmentId();
-		//Team.teamCounter = arrayListOfTeams.get(arrayListOfTeams.size()-1).getTeamId();
-		//Rider.riderCounter = Team.arrayListOfRiders.get(Team.arrayListOfRiders.size()-1).getRiderId();
+		try (InputStream inputStream = new BufferedInputStream(new FileInputStream(filename))) {
+			byte[] header = new byte[PortalSnapshot.MAGIC.length];
+			inputStream.mark(header.length);
+			int length = inputStream.readNBytes(header, 0, header.length);
+			inputStream.reset();
+			if (RaceArchive.isArchive(header, length)) {
+				//archives are read lazily, so only their index and teams are read here
+				RaceArchive archive = RaceArchive.open(Paths.get(filename));
+				eraseCyclingPortal();
+				archive.setMemoryBudget(raceArchive.getMemoryBudget());
+				archive.setCompressed(raceArchive.isCompressed());
+				this.raceArchive = archive;
+				this.arrayListOfTeams = archive.getTeams();
+				this.arrayListOfRaces = new ArrayList<>();
+				idAllocator.restore(archive.getCounters());
+			} else if (length >= 2 && (header[0] & 0xFF) == 0xAC && (header[1] & 0xFF) == 0xED) {
+				//files saved before the snapshot format are Java serialization streams of the whole portal
+				CyclingPortal newPortal = (CyclingPortal) new ObjectInputStream(inputStream).readObject();
+				eraseCyclingPortal();
+				this.arrayListOfTeams = newPortal.arrayListOfTeams;
+				this.arrayListOfRaces = newPortal.arrayListOfRaces;
+				idAllocator.restore(arrayListOfRaces, arrayListOfTeams);
+			} else {
+				PortalSnapshot snapshot = PortalSnapshot.read(inputStream);
+				eraseCyclingPortal();
+				this.arrayListOfTeams = snapshot.getTeams();
+				this.arrayListOfRaces = snapshot.getRaces();
+				idAllocator.restore(snapshot.getCounters());
+			}
+		}
+		for (Race race:arrayListOfRaces) {
+			raceArchive.added(race);
+		}
+		rebuildPortalIndex();
+		if (journal != null) {
+			loadAllArchivedRaces();
+			journal = journal.checkpoint(arrayListOfRaces, arrayListOfTeams, idAllocator.getCounters());
+		}
+		evictArchivedRaces();
 	}
 
 	@Override
 	public void removeRaceByName(String name) throws NameNotRecognisedException {
-		int initialLength = arrayListOfRaces.size();
 		for (Race race:arrayListOfRaces){
 			if ((race.getName()).equals(name)){
 				arrayListOfRaces.remove(race);
-				break;
+				portalIndex.removeRace(race);
+				raceArchive.removed(race.getRaceId());
+				if (journal != null) {
+					journal.removeRace(race.getRaceId());
+				}
+				return;
 			}
 		}
-		if (arrayListOfRaces.size() == initialLength){
-			throw new NameNotRecognisedException("The name entered does not match to any race in the system");
+		int raceId = raceArchive.findUnloadedRace(name);
+		if (raceId >= 0) {
+			raceArchive.removed(raceId);
+			if (journal != null) {
+				journal.removeRace(raceId);
+			}
+			return;
 		}
+		throw new NameNotRecognisedException("The name entered does not match to any race in the system");
 	}
 
 	@Override
 	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+		return toGeneralClassificationTimes(findRace(raceId).getClassification(classificationParallelism));
+	}
+
+	/**
+	 * Gets the total adjusted elapsed times of the riders in the general classification of a race.
+	 * @param classification The classifications of the race.
+	 * @return The times, in general classification order.
+	 */
+	static LocalTime[] toGeneralClassificationTimes(RaceClassification classification) {
+		LocalTime[] arrayOfTimes = new LocalTime[classification.getNumberOfRiders()];
+		for (int rank = 0; rank < arrayOfTimes.length; rank++){
+			arrayOfTimes[rank] = LocalTime.MIDNIGHT.plusNanos(classification.getTotalAdjustedElapsedNanos(rank));
 		}
-		int numberOfRiders = 0;
-        Hashtable<String, LocalTime> riderTotalAdjustedElapsedTimeDictionary = new Hashtable<String, LocalTime>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalAdjustedElapsedTimeDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalAdjustedElapsedTimeDictionary.put("Rider "+String.valueOf(result.getRiderId()),LocalTime.of(0,0,0,0));
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new LocalTime[0];
-        }
-        Set<String> setOfKeys = riderTotalAdjustedElapsedTimeDictionary.keySet();
-        if (numberOfRiders==riderTotalAdjustedElapsedTimeDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							LocalTime adjustedElapsedTime = stage.getRiderAdjustedElapsedTimeInStage(Integer.valueOf((key.split(" "))[1]));
-							LocalTime currentDictionaryValue = riderTotalAdjustedElapsedTimeDictionary.get(key);
-							Duration currentDictionaryValueDuration = Duration.ofNanos(currentDictionaryValue.toNanoOfDay());
-							long currentDictionaryValueLong = currentDictionaryValueDuration.toNanos();
-							LocalTime updatedDictionaryValue = adjustedElapsedTime.plusNanos(currentDictionaryValueLong);
-							riderTotalAdjustedElapsedTimeDictionary.put(key, updatedDictionaryValue);
-						}
-					}ArrayList<LocalTime> arrayListOfTotalAdjustedElapsedTimesForEachRider = new ArrayList<>();
-					for (String key : setOfKeys){
-						arrayListOfTotalAdjustedElapsedTimesForEachRider.add(riderTotalAdjustedElapsedTimeDictionary.get(key));
-					}Collections.sort(arrayListOfTotalAdjustedElapsedTimesForEachRider);
-					//int[] array = arrayListOfTotalAdjustedElapsedTimesForEachRider.toArray(new int[arrayListOfTotalAdjustedElapsedTimesForEachRider.size()]);
-					//return array;
-					LocalTime[] arrayNew = new LocalTime[arrayListOfTotalAdjustedElapsedTimesForEachRider.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = arrayListOfTotalAdjustedElapsedTimesForEachRider.get(i);
-					}
-					return arrayNew;
-				}
-			}
-        }return new LocalTime[0];
+		return arrayOfTimes;
 	}
 
 	@Override
 	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
-		}
-		///
-		///
-		///
-		///
-		///
-		//STUFF TO GET ARRAY OF ORDERED TOTAL ELAPSED TIMES
-		int numberOfRiders = 0;
-        Hashtable<String, LocalTime> riderTotalElapsedTimeDictionary = new Hashtable<String, LocalTime>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalElapsedTimeDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalElapsedTimeDictionary.put("Rider "+String.valueOf(result.getRiderId()),LocalTime.of(0,0,0,0));
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new int[0];
-        }
-		ArrayList<LocalTime> arrayListOfTotalElapsedTimesForEachRider = new ArrayList<>();
-        Set<String> setOfKeys = riderTotalElapsedTimeDictionary.keySet();
-        if (numberOfRiders==riderTotalElapsedTimeDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							LocalTime elapsedTime = stage.getRiderElapsedTimeInStage(Integer.valueOf((key.split(" "))[1]));
-							LocalTime currentDictionaryValue = riderTotalElapsedTimeDictionary.get(key);
-							Duration currentDictionaryValueDuration = Duration.ofNanos(currentDictionaryValue.toNanoOfDay());
-							long currentDictionaryValueLong = currentDictionaryValueDuration.toNanos();
-							LocalTime updatedDictionaryValue = elapsedTime.plusNanos(currentDictionaryValueLong);
-							riderTotalElapsedTimeDictionary.put(key, updatedDictionaryValue);
-						}
-					}
-					for (String key : setOfKeys){
-						arrayListOfTotalElapsedTimesForEachRider.add(riderTotalElapsedTimeDictionary.get(key));
-					}Collections.sort(arrayListOfTotalElapsedTimesForEachRider);
-				}
-			}
-		}
-		///
-		//STUFF CONCERNING POINTS
-		///
-		///
-		///
-		///
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-		int numberOfRiders2 = 0;
-        Hashtable<String, Integer> riderTotalPointsDictionary = new Hashtable<String, Integer>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders2 = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders2==0){
-            return new int[0];
-        }
-        Set<String> setOfKeys2 = riderTotalPointsDictionary.keySet();
-        if (numberOfRiders2==riderTotalPointsDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys2){
-							ArrayList<Integer> riderPointsInStage = stage.getRidersPointsInStage(allRiders);
-							ArrayList<Integer> arrayListOfRiderIDsCorrespondingToRiderPointsInStageAL = stage.getRidersRankInStage(allRiders);
-							int indexOfID = arrayListOfRiderIDsCorrespondingToRiderPointsInStageAL.indexOf(Integer.valueOf((key.split(" "))[1]));
-							int pointsForGivenRiderInGivenStage = riderPointsInStage.get(indexOfID);
-							int currentDictionaryValue = riderTotalPointsDictionary.get(key);
-                    		int updatedDictionaryValue = currentDictionaryValue += pointsForGivenRiderInGivenStage;
-							riderTotalPointsDictionary.put(key, updatedDictionaryValue);
-						}
-					}
-				}
-			}
-		}ArrayList<Integer> riderTotalPointsSortedByTotalElapsedTime = new ArrayList<>();
-		ArrayList<Integer> riderIDsCorrespondingToTotalElapsedTimes = new ArrayList<>();
-		for (LocalTime elapsedTime: arrayListOfTotalElapsedTimesForEachRider){
-			for (String key: setOfKeys){
-				if (riderTotalElapsedTimeDictionary.get(key).equals(elapsedTime)){
-					riderIDsCorrespondingToTotalElapsedTimes.add(Integer.valueOf((key.split(" "))[1]));
-				}
-			}for (Integer riderId: riderIDsCorrespondingToTotalElapsedTimes){
-				riderTotalPointsSortedByTotalElapsedTime.add(riderTotalPointsDictionary.get("Rider "+ String.valueOf(riderId)));
-			}
-			int[] arrayNew = new int[riderTotalPointsSortedByTotalElapsedTime.size()];
-			for (int i=0; i < arrayNew.length; i++) {
-				arrayNew[i] = riderTotalPointsSortedByTotalElapsedTime.get(i);
-			}
-			return arrayNew;
-		}return new int[0];
+		return findRace(raceId).getClassification(classificationParallelism).getRankedPoints();
 	}
 
 	@Override
 	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
-		}
-		///
-		///
-		///
-		///
-		///
-		//STUFF TO GET ARRAY OF ORDERED TOTAL ELAPSED TIMES
-		int numberOfRiders = 0;
-        Hashtable<String, LocalTime> riderTotalElapsedTimeDictionary = new Hashtable<String, LocalTime>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalElapsedTimeDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalElapsedTimeDictionary.put("Rider "+String.valueOf(result.getRiderId()),LocalTime.of(0,0,0,0));
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new int[0];
-        }
-		ArrayList<LocalTime> arrayListOfTotalElapsedTimesForEachRider = new ArrayList<>();
-        Set<String> setOfKeys = riderTotalElapsedTimeDictionary.keySet();
-        if (numberOfRiders==riderTotalElapsedTimeDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							LocalTime elapsedTime = stage.getRiderElapsedTimeInStage(Integer.valueOf((key.split(" "))[1]));
-							LocalTime currentDictionaryValue = riderTotalElapsedTimeDictionary.get(key);
-							Duration currentDictionaryValueDuration = Duration.ofNanos(currentDictionaryValue.toNanoOfDay());
-							long currentDictionaryValueLong = currentDictionaryValueDuration.toNanos();
-							LocalTime updatedDictionaryValue = elapsedTime.plusNanos(currentDictionaryValueLong);
-							riderTotalElapsedTimeDictionary.put(key, updatedDictionaryValue);
-						}
-					}
-					for (String key : setOfKeys){
-						arrayListOfTotalElapsedTimesForEachRider.add(riderTotalElapsedTimeDictionary.get(key));
-					}Collections.sort(arrayListOfTotalElapsedTimesForEachRider);
-				}
-			}
-		}
-		///
-		//STUFF CONCERNING POINTS
-		///
-		///
-		///
-		///
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-		int numberOfRiders2 = 0;
-        Hashtable<String, Integer> riderTotalMountainPointsDictionary = new Hashtable<String, Integer>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders2 = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalMountainPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalMountainPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders2==0){
-            return new int[0];
-        }
-        Set<String> setOfKeys2 = riderTotalMountainPointsDictionary.keySet();
-        if (numberOfRiders2==riderTotalMountainPointsDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys2){
-							ArrayList<Integer> riderMountainPointsInStage = stage.getRidersMountainPointsInStage(allRiders);
-							ArrayList<Integer> arrayListOfRiderIDsCorrespondingToRiderMountainPointsInStageAL = stage.getRidersRankInStage(allRiders);
-							int indexOfID = arrayListOfRiderIDsCorrespondingToRiderMountainPointsInStageAL.indexOf(Integer.valueOf((key.split(" "))[1]));
-							int mountainPointsForGivenRiderInGivenStage = riderMountainPointsInStage.get(indexOfID);
-							int currentDictionaryValue = riderTotalMountainPointsDictionary.get(key);
-                    		int updatedDictionaryValue = currentDictionaryValue += mountainPointsForGivenRiderInGivenStage;
-							riderTotalMountainPointsDictionary.put(key, updatedDictionaryValue);
-						}
-					}
-				}
-			}
-		}ArrayList<Integer> riderTotalMountainPointsSortedByTotalElapsedTime = new ArrayList<>();
-		ArrayList<Integer> riderIDsCorrespondingToTotalElapsedTimes = new ArrayList<>();
-		for (LocalTime elapsedTime: arrayListOfTotalElapsedTimesForEachRider){
-			for (String key: setOfKeys){
-				if (riderTotalElapsedTimeDictionary.get(key).equals(elapsedTime)){
-					riderIDsCorrespondingToTotalElapsedTimes.add(Integer.valueOf((key.split(" "))[1]));
-				}
-			}for (Integer riderId: riderIDsCorrespondingToTotalElapsedTimes){
-				riderTotalMountainPointsSortedByTotalElapsedTime.add(riderTotalMountainPointsDictionary.get("Rider "+ String.valueOf(riderId)));
-			}
-			int[] arrayNew = new int[riderTotalMountainPointsSortedByTotalElapsedTime.size()];
-			for (int i=0; i < arrayNew.length; i++) {
-				arrayNew[i] = riderTotalMountainPointsSortedByTotalElapsedTime.get(i);
-			}
-			return arrayNew;
-		}return new int[0];
+		return findRace(raceId).getClassification(classificationParallelism).getRankedMountainPoints();
 	}
 
 	@Override
 	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
-		}
-        int numberOfRiders = 0;
-        Hashtable<String, LocalTime> riderTotalAdjustedElapsedTimeDictionary = new Hashtable<String, LocalTime>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalAdjustedElapsedTimeDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalAdjustedElapsedTimeDictionary.put("Rider "+String.valueOf(result.getRiderId()),LocalTime.of(0,0,0,0));
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new int[0];
-        }
-        Set<String> setOfKeys = riderTotalAdjustedElapsedTimeDictionary.keySet();
-        if (numberOfRiders==riderTotalAdjustedElapsedTimeDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							LocalTime adjustedElapsedTime = stage.getRiderAdjustedElapsedTimeInStage(Integer.valueOf((key.split(" "))[1]));
-							LocalTime currentDictionaryValue = riderTotalAdjustedElapsedTimeDictionary.get(key);
-							//long currentDictionaryValueDuration = Duration.ofNanos(currentDictionaryValue.toNanoOfDay());
-							Duration currentDictionaryValueDuration = Duration.ofNanos(currentDictionaryValue.toNanoOfDay());
-							long currentDictionaryValueLong = currentDictionaryValueDuration.toNanos();
-							LocalTime updatedDictionaryValue = adjustedElapsedTime.plusNanos(currentDictionaryValueLong);
-							//LocalTime updatedDictionaryValue = adjustedElapsedTime.plusNanos(currentDictionaryValueDuration);
-							riderTotalAdjustedElapsedTimeDictionary.put(key, updatedDictionaryValue);
-						}
-					}ArrayList<LocalTime> arrayListOfTotalAdjustedElapsedTimesForEachRider = new ArrayList<>();
-					for (String key : setOfKeys){
-						arrayListOfTotalAdjustedElapsedTimesForEachRider.add(riderTotalAdjustedElapsedTimeDictionary.get(key));
-					}Collections.sort(arrayListOfTotalAdjustedElapsedTimesForEachRider);
-					ArrayList<Integer> arrayListOfIDsSortedByTAE = new ArrayList<>();
-					for (LocalTime j: arrayListOfTotalAdjustedElapsedTimesForEachRider){
-						for (String key : setOfKeys){
-							if (!arrayListOfIDsSortedByTAE.contains(Integer.valueOf((key.split(" "))[1]))){
-								if (riderTotalAdjustedElapsedTimeDictionary.get(key).equals(j)){
-									arrayListOfIDsSortedByTAE.add(Integer.valueOf((key.split(" "))[1]));
-									break;
-								} 
-							}
-						}
-					}//int[] array = arrayListOfIDsSortedByTAE.toArray(new int[arrayListOfIDsSortedByTAE.size()]);
-					//return array;
-					int[] arrayNew = new int[arrayListOfIDsSortedByTAE.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = arrayListOfIDsSortedByTAE.get(i);
-					}
-					return arrayNew;
-				}
-			}
-        }return new int[0];
+		return findRace(raceId).getClassification(classificationParallelism).getGeneralClassificationRiderIds();
 	}
 
 	@Override
 	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
-		}
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
-			}
-		}
-		int numberOfRiders = 0;
-        Hashtable<String, Integer> riderTotalPointsDictionary = new Hashtable<String, Integer>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new int[0];
-        }
-        Set<String> setOfKeys = riderTotalPointsDictionary.keySet();
-        if (numberOfRiders==riderTotalPointsDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							ArrayList<Integer> riderPointsInStage = stage.getRidersPointsInStage(allRiders);
-							ArrayList<Integer> arrayListOfRiderIDsCorrespondingToRiderPointsInStageAL = stage.getRidersRankInStage(allRiders);
-							int indexOfID = arrayListOfRiderIDsCorrespondingToRiderPointsInStageAL.indexOf(Integer.valueOf((key.split(" "))[1]));
-							int pointsForGivenRiderInGivenStage = riderPointsInStage.get(indexOfID);
-							int currentDictionaryValue = riderTotalPointsDictionary.get(key);
-                    		int updatedDictionaryValue = currentDictionaryValue += pointsForGivenRiderInGivenStage;
-							riderTotalPointsDictionary.put(key, updatedDictionaryValue);
-						}
-					}ArrayList<Integer> arrayListOfTotalPointsForEachRider = new ArrayList<>();
-					for (String key : setOfKeys){
-						arrayListOfTotalPointsForEachRider.add(riderTotalPointsDictionary.get(key));
-					}Collections.sort(arrayListOfTotalPointsForEachRider, Collections.reverseOrder());
-					ArrayList<Integer> arrayListOfIDsSortedByPoints = new ArrayList<>();
-					for (int j: arrayListOfTotalPointsForEachRider){
-						for (String key : setOfKeys){
-							if (!arrayListOfIDsSortedByPoints.contains(Integer.valueOf((key.split(" "))[1]))){
-								if (riderTotalPointsDictionary.get(key)==(j)){
-									arrayListOfIDsSortedByPoints.add(Integer.valueOf((key.split(" "))[1]));
-									break;
-								} 
-							}
-						}
-            		}
-					int[] arrayNew = new int[arrayListOfIDsSortedByPoints.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = arrayListOfIDsSortedByPoints.get(i);
-					}
-					return arrayNew;
-				}
-			}
-		}return new int[0];
+		return findRace(raceId).getClassification(classificationParallelism).getPointsClassificationRiderIds();
 	}
 
 	@Override
 	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
-		ArrayList<Integer> arrayListOfRaceIDs = new ArrayList<>();
-		for (Race race: arrayListOfRaces){
-			arrayListOfRaceIDs.add(race.getRaceId());
-		}
-		if (!arrayListOfRaceIDs.contains(raceId)){
-			throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
-		}
-		ArrayList<Rider> allRiders = new ArrayList<>();
-		for (Team team:arrayListOfTeams){
-			for (Rider rider: team.arrayListOfRiders){
-				allRiders.add(rider);
+		return findRace(raceId).getClassification(classificationParallelism).getMountainClassificationRiderIds();
+	}
+
+	/**
+	 * Exports the results of a stage, in order of adjusted elapsed time, with each rider's elapsed and adjusted
+	 * elapsed time and the points and mountain points they earned. The exporter is flushed but not closed.
+	 * @param stageId The ID of the stage.
+	 * @param exporter The exporter to write the results with.
+	 * @throws IDNotRecognisedException If the ID does not match to any stage in the system.
+	 * @throws IOException If the exporter cannot write to its stream or channel.
+	 */
+	public void exportStageResults(int stageId, ClassificationExporter exporter) throws IDNotRecognisedException, IOException {
+		exporter.exportStage(findStage(stageId));
+		exporter.flush();
+	}
+
+	/**
+	 * Exports the general, points and mountain classifications of a race. The exporter is flushed but not closed.
+	 * @param raceId The ID of the race.
+	 * @param exporter The exporter to write the classifications with.
+	 * @throws IDNotRecognisedException If the ID does not match to any race in the system.
+	 * @throws IOException If the exporter cannot write to its stream or channel.
+	 */
+	public void exportRaceClassifications(int raceId, ClassificationExporter exporter) throws IDNotRecognisedException, IOException {
+		exporter.exportRace(findRace(raceId), false);
+		exporter.flush();
+	}
+
+	/**
+	 * Exports every race in the portal in ID order, each with the results of its stages in order of start time
+	 * followed by its classifications. Races that are not loaded are loaded one at a time, so the memory budget
+	 * of the race archive still holds. The exporter is flushed but not closed.
+	 * @param exporter The exporter to write the portal with.
+	 * @throws IOException If the exporter cannot write to its stream or channel.
+	 * @throws UncheckedIOException If a race cannot be loaded from the race archive.
+	 */
+	public void exportCyclingPortal(ClassificationExporter exporter) throws IOException {
+		for (int raceId:getRaceIds()) {
+			try {
+				exporter.exportRace(findRace(raceId), true);
+			} catch (IDNotRecognisedException e) {
+				throw new IllegalStateException(e);
 			}
 		}
-		int numberOfRiders = 0;
-        Hashtable<String, Integer> riderTotalMountainPointsDictionary = new Hashtable<String, Integer>();
-		for (Race race: arrayListOfRaces){
-            if (race.getRaceId()==(raceId)){
-                if (race.getNumberOfStages()!=(0)){
-                    numberOfRiders = (race.getStages().get(0)).getNumberOfResults();
-                    for (Result result:((race.getStages().get(0)).getArrayListOfResults())){
-                        if (!riderTotalMountainPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                            riderTotalMountainPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
-                        }
-                    }
-                }
-            }
-        }
-        if (numberOfRiders==0){
-            return new int[0];
-        }
-        Set<String> setOfKeys = riderTotalMountainPointsDictionary.keySet();
-        if (numberOfRiders==riderTotalMountainPointsDictionary.size()){
-			for (Race race: arrayListOfRaces){
-				if (race.getRaceId()==(raceId)){
-					for (Stage stage: race.getStages()){
-						for (String key : setOfKeys){
-							ArrayList<Integer> riderMountainPointsInStage = stage.getRidersMountainPointsInStage(allRiders);
-							ArrayList<Integer> arrayListOfRiderIDsCorrespondingToRiderMountainPointsInStageAL = stage.getRidersRankInStage(allRiders);
-							int indexOfID = arrayListOfRiderIDsCorrespondingToRiderMountainPointsInStageAL.indexOf(Integer.valueOf((key.split(" "))[1]));
-							int mountainPointsForGivenRiderInGivenStage = riderMountainPointsInStage.get(indexOfID);
-							int currentDictionaryValue = riderTotalMountainPointsDictionary.get(key);
-                    		int updatedDictionaryValue = currentDictionaryValue += mountainPointsForGivenRiderInGivenStage;
-							riderTotalMountainPointsDictionary.put(key, updatedDictionaryValue);
-						}
-					}ArrayList<Integer> arrayListOfTotalMountainPointsForEachRider = new ArrayList<>();
-					for (String key : setOfKeys){
-						arrayListOfTotalMountainPointsForEachRider.add(riderTotalMountainPointsDictionary.get(key));
-					}Collections.sort(arrayListOfTotalMountainPointsForEachRider, Collections.reverseOrder());
-					ArrayList<Integer> arrayListOfIDsSortedByMountainPoints = new ArrayList<>();
-					for (int j: arrayListOfTotalMountainPointsForEachRider){
-						for (String key : setOfKeys){
-							if (!arrayListOfIDsSortedByMountainPoints.contains(Integer.valueOf((key.split(" "))[1]))){
-								if (riderTotalMountainPointsDictionary.get(key)==(j)){
-									arrayListOfIDsSortedByMountainPoints.add(Integer.valueOf((key.split(" "))[1]));
-									break;
-								} 
-							}
-						}
-            		}
-					int[] arrayNew = new int[arrayListOfIDsSortedByMountainPoints.size()];
-					for (int i=0; i < arrayNew.length; i++) {
-						arrayNew[i] = arrayListOfIDsSortedByMountainPoints.get(i);
-					}
-					return arrayNew;
-				}
-			}
-		}return new int[0];
+		exporter.flush();
 	}
 }
\ No newline at end of file
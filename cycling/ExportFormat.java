@@ -0,0 +1,17 @@
+package cycling;
+
+/**
+ * This enum is used to represent the formats results can be exported in by a {@link ClassificationExporter}.
+ */
+public enum ExportFormat {
+
+    /**
+     * Used for comma separated values, with one header line and one line per rider in each classification.
+     */
+    CSV,
+
+    /**
+     * Used for JSON, with one object per stage, race or portal exported, each on its own line.
+     */
+    JSON;
+}
@@ -0,0 +1,160 @@
+package cycling;
+
+/**
+ * The IdAllocator class hands out the IDs of the races, stages, segments, teams and riders of one portal. Each
+ * kind of object is numbered from 1 in the order it is created, and IDs are never reused, even after the object
+ * is removed. Every portal has its own allocator, which is saved with the portal and restored when it is
+ * loaded, so several portals can be used side by side without their IDs clashing.
+ */
+public class IdAllocator {
+    /**
+     * The number of counters, in the order {@link #getCounters()} gives them.
+     */
+    static final int NUMBER_OF_COUNTERS = 5;
+    private int lastRaceId;
+    private int lastStageId;
+    private int lastSegmentId;
+    private int lastTeamId;
+    private int lastRiderId;
+
+    /**
+     * Constructor for an allocator that has not handed out any IDs.
+     */
+    public IdAllocator() {
+    }
+
+    /**
+     * Hands out the ID of a new race.
+     * @return The race ID.
+     */
+    int nextRaceId() {
+        return ++lastRaceId;
+    }
+
+    /**
+     * Hands out the ID of a new stage.
+     * @return The stage ID.
+     */
+    int nextStageId() {
+        return ++lastStageId;
+    }
+
+    /**
+     * Hands out the ID of a new segment.
+     * @return The segment ID.
+     */
+    int nextSegmentId() {
+        return ++lastSegmentId;
+    }
+
+    /**
+     * Hands out the ID of a new team.
+     * @return The team ID.
+     */
+    int nextTeamId() {
+        return ++lastTeamId;
+    }
+
+    /**
+     * Hands out the ID of a new rider.
+     * @return The rider ID.
+     */
+    int nextRiderId() {
+        return ++lastRiderId;
+    }
+
+    /**
+     * Gets the last ID handed out of each kind, which is what a saved portal stores.
+     * @return The race, stage, segment, team and rider counters.
+     */
+    int[] getCounters() {
+        return new int[] {lastRaceId, lastStageId, lastSegmentId, lastTeamId, lastRiderId};
+    }
+
+    /**
+     * Sets the counters to the values a portal was saved with, so objects created after loading get new IDs.
+     * @param counters The race, stage, segment, team and rider counters.
+     */
+    void restore(int[] counters) {
+        lastRaceId = counters[0];
+        lastStageId = counters[1];
+        lastSegmentId = counters[2];
+        lastTeamId = counters[3];
+        lastRiderId = counters[4];
+    }
+
+    /**
+     * Moves the counters past the IDs of every race, stage, segment, team and rider given, for portals saved in
+     * a format that did not store the counters.
+     * @param arrayListOfRaces The races, with their stages and segments.
+     * @param arrayListOfTeams The teams, with their riders.
+     */
+    void restore(Iterable<Race> arrayListOfRaces, Iterable<Team> arrayListOfTeams) {
+        for (Race race:arrayListOfRaces) {
+            lastRaceId = Math.max(lastRaceId, race.getRaceId());
+            for (Stage stage:race.arrayListOfStages) {
+                lastStageId = Math.max(lastStageId, stage.getStageId());
+                for (Segment segment:stage.arrayListOfSegments) {
+                    lastSegmentId = Math.max(lastSegmentId, segment.getSegmentId());
+                }
+            }
+        }
+        for (Team team:arrayListOfTeams) {
+            lastTeamId = Math.max(lastTeamId, team.getTeamId());
+            for (Rider rider:team.arrayListOfRiders) {
+                lastRiderId = Math.max(lastRiderId, rider.getRiderId());
+            }
+        }
+    }
+
+    /**
+     * Sets every counter back to 0, so the next object of each kind gets ID 1.
+     */
+    void reset() {
+        lastRaceId = 0;
+        lastStageId = 0;
+        lastSegmentId = 0;
+        lastTeamId = 0;
+        lastRiderId = 0;
+    }
+
+    /**
+     * Gets the ID of the last race created.
+     * @return The last race ID handed out, or 0 if there has been none.
+     */
+    public int getLastRaceId() {
+        return lastRaceId;
+    }
+
+    /**
+     * Gets the ID of the last stage created.
+     * @return The last stage ID handed out, or 0 if there has been none.
+     */
+    public int getLastStageId() {
+        return lastStageId;
+    }
+
+    /**
+     * Gets the ID of the last segment created.
+     * @return The last segment ID handed out, or 0 if there has been none.
+     */
+    public int getLastSegmentId() {
+        return lastSegmentId;
+    }
+
+    /**
+     * Gets the ID of the last team created.
+     * @return The last team ID handed out, or 0 if there has been none.
+     */
+    public int getLastTeamId() {
+        return lastTeamId;
+    }
+
+    /**
+     * Gets the ID of the last rider created.
+     * @return The last rider ID handed out, or 0 if there has been none.
+     */
+    public int getLastRiderId() {
+        return lastRiderId;
+    }
+}
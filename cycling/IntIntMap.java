@@ -0,0 +1,217 @@
+package cycling;
+
+import java.io.Serializable;
+
+/**
+ * The IntIntMap class is a hash map from primitive int keys to primitive int values. It uses open
+ * addressing with linear probing so that neither keys nor values are boxed.
+ */
+public class IntIntMap implements Serializable {
+    private static final int DEFAULT_CAPACITY = 16;
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    /**
+     * Constructor for the IntIntMap class, creating an empty map.
+     */
+    public IntIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for the IntIntMap class, creating an empty map sized for the expected number of entries.
+     * @param expectedSize The number of entries the map should hold without resizing.
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Works out the first slot to probe for a key.
+     * @param key The key being looked up.
+     * @return The index of the first slot to probe.
+     */
+    private int slotFor(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Finds the slot holding a key.
+     * @param key The key being looked up.
+     * @return The slot holding the key, or -1 if the key is not in the map.
+     */
+    private int find(int key) {
+        for (int slot = slotFor(key); used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value stored for a key.
+     * @param key The key being looked up.
+     * @param defaultValue The value to return if the key is not in the map.
+     * @return The value for the key, or the default value if the key is not in the map.
+     */
+    public int get(int key, int defaultValue) {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    /**
+     * Checks whether the map holds a value for a key.
+     * @param key The key being looked up.
+     * @return True if the key is in the map.
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Stores a value for a key, replacing any value already stored for it.
+     * @param key The key to store the value under.
+     * @param value The value to store.
+     */
+    public void put(int key, int value) {
+        int slot = slotFor(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        size++;
+        if (size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Adds an amount to the value stored for a key, storing the amount if the key is not yet in the map.
+     * @param key The key whose value is increased.
+     * @param amount The amount to add.
+     * @return The new value for the key.
+     */
+    public int add(int key, int amount) {
+        int slot = slotFor(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] += amount;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        put(key, amount);
+        return amount;
+    }
+
+    /**
+     * Removes a key and its value from the map.
+     * @param key The key to remove.
+     * @return True if the key was in the map.
+     */
+    public boolean remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving later entries of the same probe chain back,
+     * so lookups never need tombstones.
+     * @param gap The slot that has just been emptied.
+     */
+    private void shiftBack(int gap) {
+        int slot = (gap + 1) & mask;
+        while (used[slot]) {
+            int home = slotFor(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[gap] = false;
+    }
+
+    /**
+     * Moves every entry into new arrays of the given capacity.
+     * @param capacity The new capacity, which must be a power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotFor(oldKeys[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    /**
+     * Gets every key in the map.
+     * @return A new array holding the keys, in no particular order.
+     */
+    public int[] keys() {
+        int[] keysInMap = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                keysInMap[count++] = keys[slot];
+            }
+        }
+        return keysInMap;
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry from the map.
+     */
+    public void clear() {
+        keys = new int[DEFAULT_CAPACITY];
+        values = new int[DEFAULT_CAPACITY];
+        used = new boolean[DEFAULT_CAPACITY];
+        mask = DEFAULT_CAPACITY - 1;
+        size = 0;
+    }
+}
@@ -0,0 +1,218 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The IntObjectMap class is a hash map from primitive int keys to objects. It uses open addressing
+ * with linear probing so that looking up an ID never boxes the key or allocates.
+ * @param <V> The type of the values held in the map. Null values are not allowed.
+ */
+public class IntObjectMap<V> implements Serializable {
+    private static final int DEFAULT_CAPACITY = 16;
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Constructor for the IntObjectMap class, creating an empty map.
+     */
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for the IntObjectMap class, creating an empty map sized for the expected number of entries.
+     * @param expectedSize The number of entries the map should hold without resizing.
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Works out the first slot to probe for a key.
+     * @param key The key being looked up.
+     * @return The index of the first slot to probe.
+     */
+    private int slotFor(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Gets the value stored for a key.
+     * @param key The key being looked up.
+     * @return The value for the key, or null if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        for (int slot = slotFor(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the map holds a value for a key.
+     * @param key The key being looked up.
+     * @return True if the key is in the map.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Stores a value for a key, replacing any value already stored for it.
+     * @param key The key to store the value under.
+     * @param value The value to store. Must not be null.
+     * @return The value previously stored for the key, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntObjectMap does not hold null values");
+        }
+        int slot = slotFor(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key and its value from the map.
+     * @param key The key to remove.
+     * @return The value that was stored for the key, or null if the key was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = slotFor(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V removed = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving later entries of the same probe chain back,
+     * so lookups never need tombstones.
+     * @param gap The slot that has just been emptied.
+     */
+    private void shiftBack(int gap) {
+        int slot = (gap + 1) & mask;
+        while (values[slot] != null) {
+            int home = slotFor(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[gap] = null;
+    }
+
+    /**
+     * Moves every entry into new arrays of the given capacity.
+     * @param capacity The new capacity, which must be a power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotFor(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     * @return True if the map has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every entry from the map.
+     */
+    public void clear() {
+        keys = new int[DEFAULT_CAPACITY];
+        values = new Object[DEFAULT_CAPACITY];
+        mask = DEFAULT_CAPACITY - 1;
+        size = 0;
+    }
+
+    /**
+     * Gets every key in the map.
+     * @return A new array holding the keys, in no particular order.
+     */
+    public int[] keys() {
+        int[] keysInMap = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) {
+                keysInMap[count++] = keys[slot];
+            }
+        }
+        return keysInMap;
+    }
+
+    /**
+     * Gets all the values held in the map, in no particular order.
+     * @return A list of the values.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<V> values() {
+        ArrayList<V> arrayListOfValues = new ArrayList<>(size);
+        for (Object value:values) {
+            if (value != null) {
+                arrayListOfValues.add((V) value);
+            }
+        }
+        return arrayListOfValues;
+    }
+}
@@ -11,12 +11,25 @@ public class IntermediateSprint extends Segment {
 
     /**
      * Constructor for the IntermediateSprint class.
+     * @param idAllocator The ID allocator of the portal the segment is created in.
      * @param stageId The ID of the stage to which the intermediate sprint segment is being added.
      * @param location The kilometre location where the intermediate sprint finishes 
      *        within the stage.
      * @param type The type of the segment.
      */
-    public IntermediateSprint(int stageId, double location) {
+    public IntermediateSprint(IdAllocator idAllocator, int stageId, double location) {
+        this(idAllocator.nextSegmentId(), stageId, location);
+    }
+
+    /**
+     * Constructor for an intermediate sprint restored from a saved portal, which keeps its saved ID.
+     * @param segmentId The ID of the segment.
+     * @param stageId The ID of the stage the intermediate sprint segment belongs to.
+     * @param location The kilometre location where the intermediate sprint finishes 
+     *        within the stage.
+     */
+    IntermediateSprint(int segmentId, int stageId, double location) {
+        super(segmentId);
         this.location = location;
         this.stageId = stageId;
     }
@@ -0,0 +1,431 @@
+package cycling;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+
+/**
+ * MappedCyclingPortal is a read-only cycling portal that answers queries from a memory-mapped
+ * {@link PortalImage}, for opening archives of past seasons without reading them into memory first. Queries
+ * about IDs, names, lengths and results are answered straight from the image. Stage and race objects are only
+ * built when a ranking, points or classification of them is asked for, and are kept for later queries. Methods
+ * that change the portal throw UnsupportedOperationException.
+ */
+public class MappedCyclingPortal implements CyclingPortalInterface {
+    private static final String READ_ONLY = "A mapped portal image is read-only";
+    private transient PortalImage image;//null until an image is loaded
+    private transient IntObjectMap<Stage> stagesById = new IntObjectMap<>();//stages built from the image so far
+    private transient IntObjectMap<Race> racesById = new IntObjectMap<>();//races built from the image so far
+
+    /**
+     * Constructor for the MappedCyclingPortal class, creating an empty portal until an image is loaded.
+     */
+    public MappedCyclingPortal() {
+    }
+
+    /**
+     * Constructor for the MappedCyclingPortal class, mapping an image file.
+     * @param filename The location of the image file.
+     * @throws IOException If the file cannot be mapped or is not a portal image.
+     */
+    public MappedCyclingPortal(String filename) throws IOException {
+        image = PortalImage.open(Paths.get(filename));
+    }
+
+    /**
+     * Gets the record number of a race in the image.
+     * @param raceId The ID of the race.
+     * @return The record number of the race.
+     * @throws IDNotRecognisedException If the ID does not match to any race in the system.
+     */
+    private int findRace(int raceId) throws IDNotRecognisedException {
+        int race = image == null ? -1 : image.findRace(raceId);
+        if (race < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to any race in the system");
+        }
+        return race;
+    }
+
+    /**
+     * Gets the record number of a stage in the image.
+     * @param stageId The ID of the stage.
+     * @return The record number of the stage.
+     * @throws IDNotRecognisedException If the ID does not match to any stage in the system.
+     */
+    private int findStage(int stageId) throws IDNotRecognisedException {
+        int stage = image == null ? -1 : image.findStage(stageId);
+        if (stage < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to any stage in the system");
+        }
+        return stage;
+    }
+
+    /**
+     * Gets the record number of a team in the image.
+     * @param teamId The ID of the team.
+     * @return The record number of the team.
+     * @throws IDNotRecognisedException If the ID does not match to any team in the system.
+     */
+    private int findTeam(int teamId) throws IDNotRecognisedException {
+        int team = image == null ? -1 : image.findTeam(teamId);
+        if (team < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to any team in the system");
+        }
+        return team;
+    }
+
+    /**
+     * Gets the record number of a stage for an operation on a rider's result, checking that the rider exists.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @return The record number of the stage.
+     * @throws IDNotRecognisedException If the IDs do not match to any stage or rider in the system.
+     */
+    private int findStageForRider(int stageId, int riderId) throws IDNotRecognisedException {
+        int stage = image == null ? -1 : image.findStage(stageId);
+        if (stage < 0 || image.findRider(riderId) < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+        }
+        return stage;
+    }
+
+    /**
+     * Gets the stage object of a stage, building it from the image the first time it is needed.
+     * @param stageId The ID of the stage.
+     * @return The stage.
+     * @throws IDNotRecognisedException If the ID does not match to any stage in the system.
+     */
+    private Stage getStage(int stageId) throws IDNotRecognisedException {
+        Stage stage = stagesById.get(stageId);
+        if (stage == null) {
+            stage = image.buildStage(findStage(stageId));
+            stagesById.put(stageId, stage);
+        }
+        return stage;
+    }
+
+    /**
+     * Gets the race object of a race with all its stages, building them from the image the first time they are
+     * needed.
+     * @param raceId The ID of the race.
+     * @return The race.
+     * @throws IDNotRecognisedException If the ID does not match to any race in the system.
+     */
+    private Race getRace(int raceId) throws IDNotRecognisedException {
+        Race race = racesById.get(raceId);
+        if (race == null) {
+            int record = findRace(raceId);
+            int firstStage = image.getFirstStage(record);
+            ArrayList<Stage> arrayListOfStages = new ArrayList<>(image.getNumberOfStages(record));
+            for (int stage = firstStage; stage < firstStage + image.getNumberOfStages(record); stage++) {
+                arrayListOfStages.add(getStage(image.getStageId(stage)));
+            }
+            race = image.buildRace(record, arrayListOfStages);
+            racesById.put(raceId, race);
+        }
+        return race;
+    }
+
+    /**
+     * Converts times stored in nanoseconds into the times returned by the portal.
+     * @param nanos The times in nanoseconds, each less than a day.
+     * @return The times.
+     */
+    private static LocalTime[] toLocalTimes(long[] nanos) {
+        LocalTime[] times = new LocalTime[nanos.length];
+        for (int i = 0; i < nanos.length; i++) {
+            times[i] = LocalTime.ofNanoOfDay(nanos[i]);
+        }
+        return times;
+    }
+
+    @Override
+    public int[] getRaceIds() {
+        if (image == null) {
+            return new int[0];
+        }
+        int[] raceIds = new int[image.getNumberOfRaces()];
+        for (int race = 0; race < raceIds.length; race++) {
+            raceIds[race] = image.getRaceId(race);
+        }
+        return raceIds;
+    }
+
+    @Override
+    public int createRace(String name, String description) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+        int race = findRace(raceId);
+        int firstStage = image.getFirstStage(race);
+        int numberOfStages = image.getNumberOfStages(race);
+        double totalLength = 0;
+        for (int stage = firstStage; stage < firstStage + numberOfStages; stage++) {
+            totalLength += image.getStageLength(stage);
+        }
+        return raceId + " " + image.getRaceName(race) + " " + image.getRaceDescription(race) + " " + numberOfStages
+                + " " + totalLength;
+    }
+
+    @Override
+    public void removeRaceById(int raceId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+        return image.getNumberOfStages(findRace(raceId));
+    }
+
+    @Override
+    public int addStageToRace(int raceId, String stageName, String description, double length,
+                              LocalDateTime startTime, StageType type) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        int race = findRace(raceId);
+        int firstStage = image.getFirstStage(race);
+        int[] stageIds = new int[image.getNumberOfStages(race)];
+        for (int i = 0; i < stageIds.length; i++) {
+            stageIds[i] = image.getStageId(firstStage + i);
+        }
+        return stageIds;
+    }
+
+    @Override
+    public double getStageLength(int stageId) throws IDNotRecognisedException {
+        return image.getStageLength(findStage(stageId));
+    }
+
+    @Override
+    public void removeStageById(int stageId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+                                          Double length) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int addIntermediateSprintToStage(int stageId, double location) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void removeSegment(int segmentId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void concludeStagePreparation(int stageId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+        int stage = findStage(stageId);
+        int firstSegment = image.getFirstSegment(stage);
+        int[] segmentIds = new int[image.getNumberOfSegments(stage)];
+        for (int i = 0; i < segmentIds.length; i++) {
+            segmentIds[i] = image.getSegmentId(firstSegment + i);
+        }
+        return segmentIds;
+    }
+
+    @Override
+    public int createTeam(String name, String description) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void removeTeam(int teamId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int[] getTeams() {
+        if (image == null) {
+            return new int[0];
+        }
+        int[] teamIds = new int[image.getNumberOfTeams()];
+        for (int team = 0; team < teamIds.length; team++) {
+            teamIds[team] = image.getTeamId(team);
+        }
+        return teamIds;
+    }
+
+    @Override
+    public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+        int team = findTeam(teamId);
+        int firstRider = image.getFirstRider(team);
+        int[] riderIds = new int[image.getNumberOfRiders(team)];
+        for (int i = 0; i < riderIds.length; i++) {
+            riderIds[i] = image.getRiderId(firstRider + i);
+        }
+        return riderIds;
+    }
+
+    @Override
+    public int createRider(int teamID, String name, int yearOfBirth) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void removeRider(int riderId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        int stage = findStageForRider(stageId, riderId);
+        int result = image.findResult(stage, riderId);
+        if (result < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+        }
+        long[] checkpoints = image.getCheckpoints(stage, result);
+        long[] times = new long[checkpoints.length + 1];
+        System.arraycopy(checkpoints, 0, times, 0, checkpoints.length);
+        times[checkpoints.length] = checkpoints[checkpoints.length - 1] - checkpoints[0];
+        return toLocalTimes(times);
+    }
+
+    @Override
+    public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        int stage = findStageForRider(stageId, riderId);
+        if (image.findResult(stage, riderId) < 0) {
+            throw new IDNotRecognisedException("The ID entered does not match to either any rider or stage in the system");
+        }
+        return LocalTime.ofNanoOfDay(getStage(stageId).getRiderAdjustedElapsedTimeInStage(riderId));
+    }
+
+    @Override
+    public void deleteRiderResultsInStage(int stageId, int riderId) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        AdjustedElapsedTimes times = getStage(stageId).getAdjustedElapsedTimes();
+        int[] riderIds = new int[times.getNumberOfRiders()];
+        for (int rank = 0; rank < riderIds.length; rank++) {
+            riderIds[rank] = times.getRiderId(rank);
+        }
+        return riderIds;
+    }
+
+    @Override
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        return toLocalTimes(getStage(stageId).getRankedAdjustedElapsedTimesInStage());
+    }
+
+    @Override
+    public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+        return getStage(stageId).getRidersPointsInStage();
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+        return getStage(stageId).getRidersMountainPointsInStage();
+    }
+
+    @Override
+    public void eraseCyclingPortal() {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    /**
+     * Saves the whole image as a snapshot that {@link CyclingPortal#loadCyclingPortal(String)} can load, building
+     * every race and team from the image to do so.
+     * @param filename Location of the file to be saved.
+     * @throws IOException If there is a problem experienced when trying to save the file.
+     */
+    @Override
+    public void saveCyclingPortal(String filename) throws IOException {
+        ArrayList<Race> arrayListOfRaces = new ArrayList<>();
+        ArrayList<Team> arrayListOfTeams = new ArrayList<>();
+        int[] counters = new int[5];
+        if (image != null) {
+            try {
+                for (int raceId:getRaceIds()) {
+                    arrayListOfRaces.add(getRace(raceId));
+                }
+            } catch (IDNotRecognisedException e) {
+                throw new IOException("The portal image refers to a race it does not hold", e);
+            }
+            for (int team = 0; team < image.getNumberOfTeams(); team++) {
+                arrayListOfTeams.add(image.buildTeam(team));
+            }
+            counters = image.getCounters();
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(filename)) {
+            PortalSnapshot.write(arrayListOfRaces, arrayListOfTeams, counters, outputStream);
+        }
+    }
+
+    /**
+     * Maps a portal image in place of the current one.
+     * @param filename Location of the image file.
+     * @throws IOException If the file cannot be mapped or is not a portal image.
+     */
+    @Override
+    public void loadCyclingPortal(String filename) throws IOException {
+        PortalImage newImage = PortalImage.open(Paths.get(filename));
+        image = newImage;
+        stagesById = new IntObjectMap<>();
+        racesById = new IntObjectMap<>();
+    }
+
+    @Override
+    public void removeRaceByName(String name) {
+        throw new UnsupportedOperationException(READ_ONLY);
+    }
+
+    @Override
+    public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        RaceClassification classification = getRace(raceId).getClassification();
+        LocalTime[] arrayOfTimes = new LocalTime[classification.getNumberOfRiders()];
+        for (int rank = 0; rank < arrayOfTimes.length; rank++) {
+            arrayOfTimes[rank] = LocalTime.MIDNIGHT.plusNanos(classification.getTotalAdjustedElapsedNanos(rank));
+        }
+        return arrayOfTimes;
+    }
+
+    @Override
+    public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+        return getRace(raceId).getClassification().getRankedPoints();
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+        return getRace(raceId).getClassification().getRankedMountainPoints();
+    }
+
+    @Override
+    public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        return getRace(raceId).getClassification().getGeneralClassificationRiderIds();
+    }
+
+    @Override
+    public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return getRace(raceId).getClassification().getPointsClassificationRiderIds();
+    }
+
+    @Override
+    public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return getRace(raceId).getClassification().getMountainClassificationRiderIds();
+    }
+}
@@ -0,0 +1,850 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * The PortalImage class is a read-only file layout of a cycling portal that is memory-mapped and queried in place,
+ * so opening it does not read the portal into objects. Races, stages, segments, teams, riders and results are
+ * tables of fixed-width records, and each record finds its children as a range of records in the next table: the
+ * stages of a race are next to each other in the stage table, the results of a stage are next to each other in the
+ * result table, and so on. Records refer to strings by their position in a string table, and each kind of object
+ * has an index of IDs sorted for binary search.
+ * <p>
+ * The file starts with the bytes "CYPI", the format version, the offset and count of every table, and the ID
+ * counters of the portal. The names of the {@link StageType} and {@link SegmentType} constants are saved in the
+ * file in the order their records use, so reordering the enums does not change the meaning of an image; a stage or
+ * segment without a type, which the portal accepts, has the reserved type 0xFF. Stages
+ * are saved in start time order, segments in location order and the results of a stage in rider ID order, so the
+ * stages of a race and the segments of a stage are read in order and a rider's result is found by binary search.
+ */
+public class PortalImage {
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'I'};
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final int RACES = 0;
+    private static final int STAGES = 1;
+    private static final int SEGMENTS = 2;
+    private static final int TEAMS = 3;
+    private static final int RIDERS = 4;
+    private static final int RESULTS = 5;
+    private static final int CHECKPOINTS = 6;
+    private static final int STRINGS = 7;
+    private static final int STRING_BYTES = 8;
+    private static final int RACE_INDEX = 9;
+    private static final int STAGE_INDEX = 10;
+    private static final int TEAM_INDEX = 11;
+    private static final int RIDER_INDEX = 12;
+    private static final int STAGE_TYPES = 13;
+    private static final int SEGMENT_TYPES = 14;
+    private static final int NUMBER_OF_TABLES = 15;
+    private static final int NUMBER_OF_COUNTERS = 5;
+    private static final int HEADER_LENGTH = MAGIC.length + 4 + NUMBER_OF_TABLES * 8 + NUMBER_OF_COUNTERS * 4;
+    private static final int[] RECORD_LENGTHS = {20, 72, 40, 20, 16, 4, 8, 8, 1, 8, 8, 8, 8, 4, 4};
+
+    private static final int RACE_ID = 0;
+    private static final int RACE_NAME = 4;
+    private static final int RACE_DESCRIPTION = 8;
+    private static final int RACE_FIRST_STAGE = 12;
+    private static final int RACE_STAGE_COUNT = 16;
+
+    private static final int STAGE_ID = 0;
+    private static final int STAGE_RACE_ID = 4;
+    private static final int STAGE_NAME = 8;
+    private static final int STAGE_DESCRIPTION = 12;
+    private static final int STAGE_LENGTH = 16;
+    private static final int STAGE_START_SECOND = 24;
+    private static final int STAGE_START_NANO = 32;
+    private static final int STAGE_TYPE = 36;
+    private static final int STAGE_STATE = 40;
+    private static final int STAGE_FIRST_SEGMENT = 44;
+    private static final int STAGE_SEGMENT_COUNT = 48;
+    private static final int STAGE_FIRST_RESULT = 52;
+    private static final int STAGE_RESULT_COUNT = 56;
+    private static final int STAGE_CHECKPOINTS_PER_RESULT = 60;
+    private static final int STAGE_FIRST_CHECKPOINT = 64;
+
+    private static final int SEGMENT_ID = 0;
+    private static final int SEGMENT_STAGE_ID = 4;
+    private static final int SEGMENT_TYPE = 8;
+    private static final int SEGMENT_FLAGS = 9;
+    private static final int SEGMENT_LOCATION = 16;
+    private static final int SEGMENT_AVERAGE_GRADIENT = 24;
+    private static final int SEGMENT_LENGTH = 32;
+    private static final int CLIMB = 1;
+    private static final int HAS_AVERAGE_GRADIENT = 2;
+    private static final int HAS_LENGTH = 4;
+    private static final byte NO_TYPE = (byte) 0xFF;
+
+    private static final int TEAM_ID = 0;
+    private static final int TEAM_NAME = 4;
+    private static final int TEAM_DESCRIPTION = 8;
+    private static final int TEAM_FIRST_RIDER = 12;
+    private static final int TEAM_RIDER_COUNT = 16;
+
+    private static final int RIDER_ID = 0;
+    private static final int RIDER_TEAM_ID = 4;
+    private static final int RIDER_NAME = 8;
+    private static final int RIDER_YEAR_OF_BIRTH = 12;
+
+    private final ByteBuffer buffer;
+    private final int[] offsets = new int[NUMBER_OF_TABLES];
+    private final int[] counts = new int[NUMBER_OF_TABLES];
+    private final int[] counters = new int[NUMBER_OF_COUNTERS];
+    private final StageType[] stageTypes;
+    private final SegmentType[] segmentTypes;
+
+    /**
+     * Constructor for the PortalImage class, checking the header and table bounds of a mapped image.
+     * @param buffer The contents of the image file.
+     * @throws IOException If the contents are not a portal image this class can read.
+     */
+    private PortalImage(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_LENGTH) {
+            throw new IOException("The file is not a cycling portal image");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("The file is not a cycling portal image");
+            }
+        }
+        int version = buffer.getInt(MAGIC.length);
+        if (version != VERSION) {
+            throw new IOException("Cycling portal image version " + version + " is not supported");
+        }
+        int position = MAGIC.length + 4;
+        for (int table = 0; table < NUMBER_OF_TABLES; table++) {
+            offsets[table] = buffer.getInt(position);
+            counts[table] = buffer.getInt(position + 4);
+            position += 8;
+            long end = (long) offsets[table] + (long) counts[table] * RECORD_LENGTHS[table];
+            if (offsets[table] < HEADER_LENGTH || counts[table] < 0 || end > buffer.capacity()) {
+                throw new IOException("The cycling portal image is damaged or cut short");
+            }
+        }
+        for (int i = 0; i < NUMBER_OF_COUNTERS; i++) {
+            counters[i] = buffer.getInt(position);
+            position += 4;
+        }
+        stageTypes = new StageType[counts[STAGE_TYPES]];
+        for (int i = 0; i < stageTypes.length; i++) {
+            stageTypes[i] = valueOf(StageType.class, getString(buffer.getInt(offsets[STAGE_TYPES] + i * 4)));
+        }
+        segmentTypes = new SegmentType[counts[SEGMENT_TYPES]];
+        for (int i = 0; i < segmentTypes.length; i++) {
+            segmentTypes[i] = valueOf(SegmentType.class, getString(buffer.getInt(offsets[SEGMENT_TYPES] + i * 4)));
+        }
+    }
+
+    /**
+     * Maps an image file into memory. Nothing but the header is read until a record is asked for.
+     * @param file The image file.
+     * @return The image.
+     * @throws IOException If the file cannot be mapped or is not a portal image this class can read.
+     */
+    public static PortalImage open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The cycling portal image is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new PortalImage(buffer);
+        }
+    }
+
+    /**
+     * Writes an image of the portal to a file with the given ID counters, replacing the file if it exists.
+     * @param arrayListOfRaces The races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters to save.
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written, or the image would be too large to map.
+     */
+    static void write(ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters,
+                      Path file) throws IOException {
+        int[] counts = new int[NUMBER_OF_TABLES];
+        counts[RACES] = arrayListOfRaces.size();
+        counts[TEAMS] = arrayListOfTeams.size();
+        counts[RACE_INDEX] = counts[RACES];
+        counts[TEAM_INDEX] = counts[TEAMS];
+        counts[STAGE_TYPES] = StageType.values().length;
+        counts[SEGMENT_TYPES] = SegmentType.values().length;
+        for (Race race:arrayListOfRaces) {
+            counts[STAGES] += race.arrayListOfStages.size();
+            for (Stage stage:race.arrayListOfStages) {
+                counts[SEGMENTS] += stage.arrayListOfSegments.size();
+                int numberOfResults = stage.getNumberOfResults();
+                counts[RESULTS] += numberOfResults;
+                if (numberOfResults > 0) {
+                    counts[CHECKPOINTS] += numberOfResults
+                            * stage.getArrayListOfResults().get(0).getNumberOfCheckpoints();
+                }
+            }
+        }
+        for (Team team:arrayListOfTeams) {
+            counts[RIDERS] += team.arrayListOfRiders.size();
+        }
+        counts[STAGE_INDEX] = counts[STAGES];
+        counts[RIDER_INDEX] = counts[RIDERS];
+
+        ImageStrings imageStrings = new ImageStrings();
+        for (StageType type:StageType.values()) {
+            imageStrings.add(type.name());
+        }
+        for (SegmentType type:SegmentType.values()) {
+            imageStrings.add(type.name());
+        }
+        for (Race race:arrayListOfRaces) {
+            imageStrings.add(race.getName());
+            imageStrings.add(race.getDescription());
+            for (Stage stage:race.arrayListOfStages) {
+                imageStrings.add(stage.getStageName());
+                imageStrings.add(stage.getDescription());
+                imageStrings.add(stage.getStageState());
+            }
+        }
+        for (Team team:arrayListOfTeams) {
+            imageStrings.add(team.getName());
+            imageStrings.add(team.getDescription());
+            for (Rider rider:team.arrayListOfRiders) {
+                imageStrings.add(rider.getName());
+            }
+        }
+        ArrayList<byte[]> strings = imageStrings.getStrings();
+        counts[STRINGS] = strings.size();
+        for (byte[] bytes:strings) {
+            counts[STRING_BYTES] += bytes.length;
+        }
+
+        int[] offsets = new int[NUMBER_OF_TABLES];
+        long size = HEADER_LENGTH;
+        for (int table = 0; table < NUMBER_OF_TABLES; table++) {
+            size = (size + 7) & ~7L;
+            offsets[table] = (int) Math.min(size, Integer.MAX_VALUE);
+            size += (long) counts[table] * RECORD_LENGTHS[table];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The cycling portal is too large for an image");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            for (int table = 0; table < NUMBER_OF_TABLES; table++) {
+                buffer.putInt(offsets[table]);
+                buffer.putInt(counts[table]);
+            }
+            for (int counter:counters) {
+                buffer.putInt(counter);
+            }
+
+            int stringPosition = 0;
+            for (int i = 0; i < strings.size(); i++) {
+                int record = offsets[STRINGS] + i * RECORD_LENGTHS[STRINGS];
+                buffer.putInt(record, stringPosition);
+                buffer.putInt(record + 4, strings.get(i).length);
+                buffer.position(offsets[STRING_BYTES] + stringPosition);
+                buffer.put(strings.get(i));
+                stringPosition += strings.get(i).length;
+            }
+            for (StageType type:StageType.values()) {
+                buffer.putInt(offsets[STAGE_TYPES] + type.ordinal() * 4, imageStrings.add(type.name()));
+            }
+            for (SegmentType type:SegmentType.values()) {
+                buffer.putInt(offsets[SEGMENT_TYPES] + type.ordinal() * 4, imageStrings.add(type.name()));
+            }
+
+            int stageIndex = 0;
+            int segmentIndex = 0;
+            int resultIndex = 0;
+            int checkpointIndex = 0;
+            for (int r = 0; r < arrayListOfRaces.size(); r++) {
+                Race race = arrayListOfRaces.get(r);
+                int record = offsets[RACES] + r * RECORD_LENGTHS[RACES];
+                buffer.putInt(record + RACE_ID, race.getRaceId());
+                buffer.putInt(record + RACE_NAME, imageStrings.add(race.getName()));
+                buffer.putInt(record + RACE_DESCRIPTION, imageStrings.add(race.getDescription()));
+                buffer.putInt(record + RACE_FIRST_STAGE, stageIndex);
+                buffer.putInt(record + RACE_STAGE_COUNT, race.arrayListOfStages.size());
+                for (Stage stage:race.getStagesInStartOrder()) {
+                    record = offsets[STAGES] + stageIndex * RECORD_LENGTHS[STAGES];
+                    buffer.putInt(record + STAGE_ID, stage.getStageId());
+                    buffer.putInt(record + STAGE_RACE_ID, race.getRaceId());
+                    buffer.putInt(record + STAGE_NAME, imageStrings.add(stage.getStageName()));
+                    buffer.putInt(record + STAGE_DESCRIPTION, imageStrings.add(stage.getDescription()));
+                    buffer.putDouble(record + STAGE_LENGTH, stage.getStageLength());
+                    LocalDateTime startTime = stage.getStartTime();
+                    buffer.putLong(record + STAGE_START_SECOND,
+                            startTime == null ? 0 : startTime.toEpochSecond(ZoneOffset.UTC));
+                    buffer.putInt(record + STAGE_START_NANO, startTime == null ? -1 : startTime.getNano());
+                    buffer.put(record + STAGE_TYPE, typeOrdinal(stage.getStageType()));
+                    buffer.putInt(record + STAGE_STATE, imageStrings.add(stage.getStageState()));
+
+                    ArrayList<Segment> arrayListOfSegments = stage.getSegmentsInLocationOrder();
+                    buffer.putInt(record + STAGE_FIRST_SEGMENT, segmentIndex);
+                    buffer.putInt(record + STAGE_SEGMENT_COUNT, arrayListOfSegments.size());
+                    for (Segment segment:arrayListOfSegments) {
+                        writeSegment(buffer, offsets[SEGMENTS] + segmentIndex * RECORD_LENGTHS[SEGMENTS], segment,
+                                stage.getStageId());
+                        segmentIndex++;
+                    }
+
+                    ArrayList<Result> arrayListOfResults = new ArrayList<>(stage.getArrayListOfResults());
+                    arrayListOfResults.sort(Comparator.comparingInt(Result::getRiderId));
+                    int checkpointsPerResult = arrayListOfResults.isEmpty() ? 0
+                            : arrayListOfResults.get(0).getNumberOfCheckpoints();
+                    buffer.putInt(record + STAGE_FIRST_RESULT, resultIndex);
+                    buffer.putInt(record + STAGE_RESULT_COUNT, arrayListOfResults.size());
+                    buffer.putInt(record + STAGE_CHECKPOINTS_PER_RESULT, checkpointsPerResult);
+                    buffer.putInt(record + STAGE_FIRST_CHECKPOINT, checkpointIndex);
+                    for (Result result:arrayListOfResults) {
+                        buffer.putInt(offsets[RESULTS] + resultIndex * RECORD_LENGTHS[RESULTS], result.getRiderId());
+                        resultIndex++;
+                        for (int i = 0; i < checkpointsPerResult; i++) {
+                            buffer.putLong(offsets[CHECKPOINTS] + checkpointIndex * RECORD_LENGTHS[CHECKPOINTS],
+                                    result.getCheckpoint(i));
+                            checkpointIndex++;
+                        }
+                    }
+                    stageIndex++;
+                }
+            }
+
+            int riderIndex = 0;
+            for (int t = 0; t < arrayListOfTeams.size(); t++) {
+                Team team = arrayListOfTeams.get(t);
+                int record = offsets[TEAMS] + t * RECORD_LENGTHS[TEAMS];
+                buffer.putInt(record + TEAM_ID, team.getTeamId());
+                buffer.putInt(record + TEAM_NAME, imageStrings.add(team.getName()));
+                buffer.putInt(record + TEAM_DESCRIPTION, imageStrings.add(team.getDescription()));
+                buffer.putInt(record + TEAM_FIRST_RIDER, riderIndex);
+                buffer.putInt(record + TEAM_RIDER_COUNT, team.arrayListOfRiders.size());
+                for (Rider rider:team.arrayListOfRiders) {
+                    record = offsets[RIDERS] + riderIndex * RECORD_LENGTHS[RIDERS];
+                    buffer.putInt(record + RIDER_ID, rider.getRiderId());
+                    buffer.putInt(record + RIDER_TEAM_ID, team.getTeamId());
+                    buffer.putInt(record + RIDER_NAME, imageStrings.add(rider.getName()));
+                    buffer.putInt(record + RIDER_YEAR_OF_BIRTH, rider.getYearOfBirth());
+                    riderIndex++;
+                }
+            }
+
+            writeIndex(buffer, offsets, RACES, RACE_INDEX, counts[RACES]);
+            writeIndex(buffer, offsets, STAGES, STAGE_INDEX, counts[STAGES]);
+            writeIndex(buffer, offsets, TEAMS, TEAM_INDEX, counts[TEAMS]);
+            writeIndex(buffer, offsets, RIDERS, RIDER_INDEX, counts[RIDERS]);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Writes the record of a segment.
+     * @param buffer The image being written.
+     * @param record The position of the record.
+     * @param segment The segment.
+     * @param stageId The ID of the stage the segment belongs to.
+     */
+    private static void writeSegment(ByteBuffer buffer, int record, Segment segment, int stageId) {
+        buffer.putInt(record + SEGMENT_ID, segment.getSegmentId());
+        buffer.putInt(record + SEGMENT_STAGE_ID, stageId);
+        buffer.put(record + SEGMENT_TYPE, typeOrdinal(segment.getSegmentType()));
+        buffer.putDouble(record + SEGMENT_LOCATION, segment.getLocation());
+        int flags = 0;
+        if (segment instanceof CategorizedClimb) {
+            CategorizedClimb climb = (CategorizedClimb) segment;
+            flags |= CLIMB;
+            if (climb.getAverageGradient() != null) {
+                flags |= HAS_AVERAGE_GRADIENT;
+                buffer.putDouble(record + SEGMENT_AVERAGE_GRADIENT, climb.getAverageGradient());
+            }
+            if (climb.getLength() != null) {
+                flags |= HAS_LENGTH;
+                buffer.putDouble(record + SEGMENT_LENGTH, climb.getLength());
+            }
+        }
+        buffer.put(record + SEGMENT_FLAGS, (byte) flags);
+    }
+
+    /**
+     * Writes the index of a table, pairs of ID and record number sorted by ID. The ID is the first field of every
+     * record.
+     * @param buffer The image being written, with the table already filled in.
+     * @param offsets The offsets of the tables.
+     * @param table The table to index.
+     * @param index The index table.
+     * @param count The number of records in the table.
+     */
+    private static void writeIndex(ByteBuffer buffer, int[] offsets, int table, int index, int count) {
+        long[] pairs = new long[count];
+        for (int i = 0; i < count; i++) {
+            int id = buffer.getInt(offsets[table] + i * RECORD_LENGTHS[table]);
+            pairs[i] = ((long) id << 32) | i;
+        }
+        Arrays.sort(pairs);
+        for (int i = 0; i < count; i++) {
+            int record = offsets[index] + i * RECORD_LENGTHS[index];
+            buffer.putInt(record, (int) (pairs[i] >> 32));
+            buffer.putInt(record + 4, (int) pairs[i]);
+        }
+    }
+
+    /**
+     * Finds a record by ID with a binary search of an index table.
+     * @param index The index table.
+     * @param id The ID.
+     * @return The record number, or -1 if no record has the ID.
+     */
+    private int find(int index, int id) {
+        int low = 0;
+        int high = counts[index] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = offsets[index] + middle * RECORD_LENGTHS[index];
+            int middleId = buffer.getInt(record);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(record + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the position of a field of a record.
+     * @param table The table.
+     * @param record The record number.
+     * @param field The position of the field in the record.
+     * @return The position of the field in the image.
+     */
+    private int at(int table, int record, int field) {
+        return offsets[table] + record * RECORD_LENGTHS[table] + field;
+    }
+
+    /**
+     * Gets a string from the string table.
+     * @param reference The position of the string in the table, or -1 for null.
+     * @return The string, which may be null.
+     */
+    private String getString(int reference) {
+        if (reference < 0) {
+            return null;
+        }
+        int record = at(STRINGS, reference, 0);
+        int length = buffer.getInt(record + 4);
+        byte[] bytes = new byte[length];
+        buffer.get(offsets[STRING_BYTES] + buffer.getInt(record), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the ID counters saved in the image.
+     * @return The race, stage, segment, team and rider counters.
+     */
+    public int[] getCounters() {
+        return counters.clone();
+    }
+
+    /**
+     * Gets the number of races in the image.
+     * @return The number of races.
+     */
+    public int getNumberOfRaces() {
+        return counts[RACES];
+    }
+
+    /**
+     * Finds a race by ID.
+     * @param raceId The ID of the race.
+     * @return The record number of the race, or -1 if there is no race with the ID.
+     */
+    public int findRace(int raceId) {
+        return find(RACE_INDEX, raceId);
+    }
+
+    /**
+     * Gets the ID of a race.
+     * @param race The record number of the race.
+     * @return The race ID.
+     */
+    public int getRaceId(int race) {
+        return buffer.getInt(at(RACES, race, RACE_ID));
+    }
+
+    /**
+     * Gets the name of a race.
+     * @param race The record number of the race.
+     * @return The race name.
+     */
+    public String getRaceName(int race) {
+        return getString(buffer.getInt(at(RACES, race, RACE_NAME)));
+    }
+
+    /**
+     * Gets the description of a race.
+     * @param race The record number of the race.
+     * @return The race description.
+     */
+    public String getRaceDescription(int race) {
+        return getString(buffer.getInt(at(RACES, race, RACE_DESCRIPTION)));
+    }
+
+    /**
+     * Gets the record number of the first stage of a race. The stages of a race follow each other in order of
+     * start time, the order the portal gives them in.
+     * @param race The record number of the race.
+     * @return The record number of the first stage.
+     */
+    public int getFirstStage(int race) {
+        return buffer.getInt(at(RACES, race, RACE_FIRST_STAGE));
+    }
+
+    /**
+     * Gets the number of stages in a race.
+     * @param race The record number of the race.
+     * @return The number of stages.
+     */
+    public int getNumberOfStages(int race) {
+        return buffer.getInt(at(RACES, race, RACE_STAGE_COUNT));
+    }
+
+    /**
+     * Finds a stage by ID.
+     * @param stageId The ID of the stage.
+     * @return The record number of the stage, or -1 if there is no stage with the ID.
+     */
+    public int findStage(int stageId) {
+        return find(STAGE_INDEX, stageId);
+    }
+
+    /**
+     * Gets the ID of a stage.
+     * @param stage The record number of the stage.
+     * @return The stage ID.
+     */
+    public int getStageId(int stage) {
+        return buffer.getInt(at(STAGES, stage, STAGE_ID));
+    }
+
+    /**
+     * Gets the ID of the race a stage belongs to.
+     * @param stage The record number of the stage.
+     * @return The race ID.
+     */
+    public int getStageRaceId(int stage) {
+        return buffer.getInt(at(STAGES, stage, STAGE_RACE_ID));
+    }
+
+    /**
+     * Gets the length of a stage.
+     * @param stage The record number of the stage.
+     * @return The length of the stage in kilometres.
+     */
+    public double getStageLength(int stage) {
+        return buffer.getDouble(at(STAGES, stage, STAGE_LENGTH));
+    }
+
+    /**
+     * Gets the record number of the first segment of a stage. The segments of a stage follow each other in
+     * location order.
+     * @param stage The record number of the stage.
+     * @return The record number of the first segment.
+     */
+    public int getFirstSegment(int stage) {
+        return buffer.getInt(at(STAGES, stage, STAGE_FIRST_SEGMENT));
+    }
+
+    /**
+     * Gets the number of segments in a stage.
+     * @param stage The record number of the stage.
+     * @return The number of segments.
+     */
+    public int getNumberOfSegments(int stage) {
+        return buffer.getInt(at(STAGES, stage, STAGE_SEGMENT_COUNT));
+    }
+
+    /**
+     * Gets the ID of a segment.
+     * @param segment The record number of the segment.
+     * @return The segment ID.
+     */
+    public int getSegmentId(int segment) {
+        return buffer.getInt(at(SEGMENTS, segment, SEGMENT_ID));
+    }
+
+    /**
+     * Gets the number of results in a stage.
+     * @param stage The record number of the stage.
+     * @return The number of results.
+     */
+    public int getNumberOfResults(int stage) {
+        return buffer.getInt(at(STAGES, stage, STAGE_RESULT_COUNT));
+    }
+
+    /**
+     * Finds the result of a rider in a stage by binary search.
+     * @param stage The record number of the stage.
+     * @param riderId The ID of the rider.
+     * @return The position of the result among the results of the stage, or -1 if the rider has no result.
+     */
+    public int findResult(int stage, int riderId) {
+        int firstResult = buffer.getInt(at(STAGES, stage, STAGE_FIRST_RESULT));
+        int low = 0;
+        int high = getNumberOfResults(stage) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = buffer.getInt(at(RESULTS, firstResult + middle, 0));
+            if (middleId < riderId) {
+                low = middle + 1;
+            } else if (middleId > riderId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the checkpoint times of a result.
+     * @param stage The record number of the stage.
+     * @param result The position of the result among the results of the stage.
+     * @return The checkpoint times in nanoseconds of the day.
+     */
+    public long[] getCheckpoints(int stage, int result) {
+        int checkpointsPerResult = buffer.getInt(at(STAGES, stage, STAGE_CHECKPOINTS_PER_RESULT));
+        int first = buffer.getInt(at(STAGES, stage, STAGE_FIRST_CHECKPOINT)) + result * checkpointsPerResult;
+        long[] checkpoints = new long[checkpointsPerResult];
+        for (int i = 0; i < checkpointsPerResult; i++) {
+            checkpoints[i] = buffer.getLong(at(CHECKPOINTS, first + i, 0));
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Gets the number of teams in the image.
+     * @return The number of teams.
+     */
+    public int getNumberOfTeams() {
+        return counts[TEAMS];
+    }
+
+    /**
+     * Finds a team by ID.
+     * @param teamId The ID of the team.
+     * @return The record number of the team, or -1 if there is no team with the ID.
+     */
+    public int findTeam(int teamId) {
+        return find(TEAM_INDEX, teamId);
+    }
+
+    /**
+     * Gets the ID of a team.
+     * @param team The record number of the team.
+     * @return The team ID.
+     */
+    public int getTeamId(int team) {
+        return buffer.getInt(at(TEAMS, team, TEAM_ID));
+    }
+
+    /**
+     * Gets the record number of the first rider of a team. The riders of a team follow each other in the order
+     * they were added.
+     * @param team The record number of the team.
+     * @return The record number of the first rider.
+     */
+    public int getFirstRider(int team) {
+        return buffer.getInt(at(TEAMS, team, TEAM_FIRST_RIDER));
+    }
+
+    /**
+     * Gets the number of riders in a team.
+     * @param team The record number of the team.
+     * @return The number of riders.
+     */
+    public int getNumberOfRiders(int team) {
+        return buffer.getInt(at(TEAMS, team, TEAM_RIDER_COUNT));
+    }
+
+    /**
+     * Finds a rider by ID.
+     * @param riderId The ID of the rider.
+     * @return The record number of the rider, or -1 if there is no rider with the ID.
+     */
+    public int findRider(int riderId) {
+        return find(RIDER_INDEX, riderId);
+    }
+
+    /**
+     * Gets the ID of a rider.
+     * @param rider The record number of the rider.
+     * @return The rider ID.
+     */
+    public int getRiderId(int rider) {
+        return buffer.getInt(at(RIDERS, rider, RIDER_ID));
+    }
+
+    /**
+     * Builds a stage object from its record, with its segments and results.
+     * @param stage The record number of the stage.
+     * @return The stage.
+     */
+    public Stage buildStage(int stage) {
+        int record = at(STAGES, stage, 0);
+        int stageId = buffer.getInt(record + STAGE_ID);
+        int startNano = buffer.getInt(record + STAGE_START_NANO);
+        LocalDateTime startTime = startNano < 0 ? null
+                : LocalDateTime.ofEpochSecond(buffer.getLong(record + STAGE_START_SECOND), startNano, ZoneOffset.UTC);
+        Stage newStage = new Stage(stageId, buffer.getInt(record + STAGE_RACE_ID),
+                getString(buffer.getInt(record + STAGE_NAME)), getString(buffer.getInt(record + STAGE_DESCRIPTION)),
+                buffer.getDouble(record + STAGE_LENGTH), startTime, type(stageTypes, buffer.get(record + STAGE_TYPE)),
+                getString(buffer.getInt(record + STAGE_STATE)));
+
+        int firstSegment = buffer.getInt(record + STAGE_FIRST_SEGMENT);
+        int numberOfSegments = buffer.getInt(record + STAGE_SEGMENT_COUNT);
+        for (int i = firstSegment; i < firstSegment + numberOfSegments; i++) {
+            int segment = at(SEGMENTS, i, 0);
+            int segmentId = buffer.getInt(segment + SEGMENT_ID);
+            int flags = buffer.get(segment + SEGMENT_FLAGS);
+            double location = buffer.getDouble(segment + SEGMENT_LOCATION);
+            if ((flags & CLIMB) != 0) {
+                Double averageGradient = (flags & HAS_AVERAGE_GRADIENT) != 0
+                        ? buffer.getDouble(segment + SEGMENT_AVERAGE_GRADIENT) : null;
+                Double length = (flags & HAS_LENGTH) != 0 ? buffer.getDouble(segment + SEGMENT_LENGTH) : null;
+                newStage.arrayListOfSegments.add(new CategorizedClimb(segmentId, stageId, location,
+                        type(segmentTypes, buffer.get(segment + SEGMENT_TYPE)), averageGradient, length));
+            } else {
+                newStage.arrayListOfSegments.add(new IntermediateSprint(segmentId, stageId, location));
+            }
+        }
+
+        int firstResult = buffer.getInt(record + STAGE_FIRST_RESULT);
+        int numberOfResults = buffer.getInt(record + STAGE_RESULT_COUNT);
+        for (int i = 0; i < numberOfResults; i++) {
+            int riderId = buffer.getInt(at(RESULTS, firstResult + i, 0));
+            newStage.registerRiderResultsInStage(stageId, riderId, getCheckpoints(stage, i));
+        }
+        return newStage;
+    }
+
+    /**
+     * Builds a race object from its record, holding the given stage objects.
+     * @param race The record number of the race.
+     * @param arrayListOfStages The stages of the race, in order.
+     * @return The race.
+     */
+    public Race buildRace(int race, ArrayList<Stage> arrayListOfStages) {
+        Race newRace = new Race(getRaceId(race), getRaceName(race), getRaceDescription(race));
+        newRace.arrayListOfStages.addAll(arrayListOfStages);
+        return newRace;
+    }
+
+    /**
+     * Builds a team object from its record, with its riders.
+     * @param team The record number of the team.
+     * @return The team.
+     */
+    public Team buildTeam(int team) {
+        int record = at(TEAMS, team, 0);
+        Team newTeam = new Team(buffer.getInt(record + TEAM_ID), getString(buffer.getInt(record + TEAM_NAME)),
+                getString(buffer.getInt(record + TEAM_DESCRIPTION)));
+        int firstRider = buffer.getInt(record + TEAM_FIRST_RIDER);
+        int numberOfRiders = buffer.getInt(record + TEAM_RIDER_COUNT);
+        for (int i = firstRider; i < firstRider + numberOfRiders; i++) {
+            int rider = at(RIDERS, i, 0);
+            newTeam.arrayListOfRiders.add(new Rider(buffer.getInt(rider + RIDER_ID),
+                    buffer.getInt(rider + RIDER_TEAM_ID), getString(buffer.getInt(rider + RIDER_NAME)),
+                    buffer.getInt(rider + RIDER_YEAR_OF_BIRTH)));
+        }
+        return newTeam;
+    }
+
+    /**
+     * Gets the byte a stage or segment type is saved as in its record.
+     * @param type The type, which may be null.
+     * @return The position of the type in its enum, or {@link #NO_TYPE} if there is none.
+     */
+    private static byte typeOrdinal(Enum<?> type) {
+        return type == null ? NO_TYPE : (byte) type.ordinal();
+    }
+
+    /**
+     * Gets the stage or segment type saved in a record.
+     * @param types The types in the order the records use.
+     * @param ordinal The byte saved in the record.
+     * @param <E> The enum type.
+     * @return The type, or null if the record has {@link #NO_TYPE}.
+     */
+    private static <E extends Enum<E>> E type(E[] types, byte ordinal) {
+        return ordinal == NO_TYPE ? null : types[ordinal];
+    }
+
+    /**
+     * Looks up an enum constant by the name saved in an image.
+     * @param enumType The enum class.
+     * @param name The saved name.
+     * @param <E> The enum type.
+     * @return The constant with the name.
+     * @throws IOException If the enum has no constant with the name.
+     */
+    private static <E extends Enum<E>> E valueOf(Class<E> enumType, String name) throws IOException {
+        try {
+            return Enum.valueOf(enumType, name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException("The image holds an unknown " + enumType.getSimpleName() + " " + name, e);
+        }
+    }
+
+    /**
+     * The ImageStrings class numbers the distinct strings of an image as it is written.
+     */
+    private static final class ImageStrings {
+        private final HashMap<String, Integer> stringTable = new HashMap<>();
+        private final ArrayList<byte[]> strings = new ArrayList<>();
+
+        /**
+         * Gets the strings added so far.
+         * @return The UTF-8 bytes of each string, in the order of their positions.
+         */
+        ArrayList<byte[]> getStrings() {
+            return strings;
+        }
+
+        /**
+         * Adds a string to the table if it is not there yet.
+         * @param value The string, which may be null.
+         * @return The position of the string in the table, or -1 for null.
+         */
+        int add(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = stringTable.get(value);
+            if (index == null) {
+                index = strings.size();
+                stringTable.put(value, index);
+                strings.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package cycling;
+
+import java.io.Serializable;
+
+/**
+ * The PortalIndex class maps every race, stage, segment, team and rider ID in the cycling portal to its object,
+ * and every child ID to its parent, so that ID based operations do not have to search the portal.
+ * It is kept up to date by the create and remove methods of the cycling portal.
+ */
+public class PortalIndex implements Serializable {
+    private IntObjectMap<Race> racesById = new IntObjectMap<>();
+    private IntObjectMap<Stage> stagesById = new IntObjectMap<>();
+    private IntObjectMap<Segment> segmentsById = new IntObjectMap<>();
+    private IntObjectMap<Team> teamsById = new IntObjectMap<>();
+    private IntObjectMap<Rider> ridersById = new IntObjectMap<>();
+    private IntObjectMap<Race> raceOfStage = new IntObjectMap<>();
+    private IntObjectMap<Stage> stageOfSegment = new IntObjectMap<>();
+    private IntObjectMap<Team> teamOfRider = new IntObjectMap<>();
+
+    /**
+     * Gets the race with the given ID.
+     * @param raceId The ID of the race.
+     * @return The race, or null if there is no race with the ID.
+     */
+    public Race getRace(int raceId) {
+        return racesById.get(raceId);
+    }
+
+    /**
+     * Gets the stage with the given ID.
+     * @param stageId The ID of the stage.
+     * @return The stage, or null if there is no stage with the ID.
+     */
+    public Stage getStage(int stageId) {
+        return stagesById.get(stageId);
+    }
+
+    /**
+     * Gets the segment with the given ID.
+     * @param segmentId The ID of the segment.
+     * @return The segment, or null if there is no segment with the ID.
+     */
+    public Segment getSegment(int segmentId) {
+        return segmentsById.get(segmentId);
+    }
+
+    /**
+     * Gets the team with the given ID.
+     * @param teamId The ID of the team.
+     * @return The team, or null if there is no team with the ID.
+     */
+    public Team getTeam(int teamId) {
+        return teamsById.get(teamId);
+    }
+
+    /**
+     * Gets the rider with the given ID.
+     * @param riderId The ID of the rider.
+     * @return The rider, or null if there is no rider with the ID.
+     */
+    public Rider getRider(int riderId) {
+        return ridersById.get(riderId);
+    }
+
+    /**
+     * Gets the race a stage belongs to.
+     * @param stageId The ID of the stage.
+     * @return The race holding the stage, or null if there is no stage with the ID.
+     */
+    public Race getRaceOfStage(int stageId) {
+        return raceOfStage.get(stageId);
+    }
+
+    /**
+     * Gets the stage a segment belongs to.
+     * @param segmentId The ID of the segment.
+     * @return The stage holding the segment, or null if there is no segment with the ID.
+     */
+    public Stage getStageOfSegment(int segmentId) {
+        return stageOfSegment.get(segmentId);
+    }
+
+    /**
+     * Gets the team a rider belongs to.
+     * @param riderId The ID of the rider.
+     * @return The team of the rider, or null if there is no rider with the ID.
+     */
+    public Team getTeamOfRider(int riderId) {
+        return teamOfRider.get(riderId);
+    }
+
+    /**
+     * Adds a race, along with all of its stages and segments, to the index.
+     * @param race The race being added.
+     */
+    public void addRace(Race race) {
+        racesById.put(race.getRaceId(), race);
+        for (Stage stage:race.arrayListOfStages) {
+            addStage(race, stage);
+        }
+    }
+
+    /**
+     * Removes a race, along with all of its stages and segments, from the index.
+     * @param race The race being removed.
+     */
+    public void removeRace(Race race) {
+        racesById.remove(race.getRaceId());
+        for (Stage stage:race.arrayListOfStages) {
+            removeStage(stage);
+        }
+    }
+
+    /**
+     * Adds a stage, along with all of its segments, to the index.
+     * @param race The race the stage belongs to.
+     * @param stage The stage being added.
+     */
+    public void addStage(Race race, Stage stage) {
+        stagesById.put(stage.getStageId(), stage);
+        raceOfStage.put(stage.getStageId(), race);
+        for (Segment segment:stage.arrayListOfSegments) {
+            addSegment(stage, segment);
+        }
+    }
+
+    /**
+     * Removes a stage, along with all of its segments, from the index.
+     * @param stage The stage being removed.
+     */
+    public void removeStage(Stage stage) {
+        stagesById.remove(stage.getStageId());
+        raceOfStage.remove(stage.getStageId());
+        for (Segment segment:stage.arrayListOfSegments) {
+            removeSegment(segment);
+        }
+    }
+
+    /**
+     * Adds a segment to the index.
+     * @param stage The stage the segment belongs to.
+     * @param segment The segment being added.
+     */
+    public void addSegment(Stage stage, Segment segment) {
+        segmentsById.put(segment.getSegmentId(), segment);
+        stageOfSegment.put(segment.getSegmentId(), stage);
+    }
+
+    /**
+     * Removes a segment from the index.
+     * @param segment The segment being removed.
+     */
+    public void removeSegment(Segment segment) {
+        segmentsById.remove(segment.getSegmentId());
+        stageOfSegment.remove(segment.getSegmentId());
+    }
+
+    /**
+     * Adds a team, along with all of its riders, to the index.
+     * @param team The team being added.
+     */
+    public void addTeam(Team team) {
+        teamsById.put(team.getTeamId(), team);
+        for (Rider rider:team.arrayListOfRiders) {
+            addRider(team, rider);
+        }
+    }
+
+    /**
+     * Removes a team, along with all of its riders, from the index.
+     * @param team The team being removed.
+     */
+    public void removeTeam(Team team) {
+        teamsById.remove(team.getTeamId());
+        for (Rider rider:team.arrayListOfRiders) {
+            removeRider(rider);
+        }
+    }
+
+    /**
+     * Adds a rider to the index.
+     * @param team The team the rider belongs to.
+     * @param rider The rider being added.
+     */
+    public void addRider(Team team, Rider rider) {
+        ridersById.put(rider.getRiderId(), rider);
+        teamOfRider.put(rider.getRiderId(), team);
+    }
+
+    /**
+     * Removes a rider from the index.
+     * @param rider The rider being removed.
+     */
+    public void removeRider(Rider rider) {
+        ridersById.remove(rider.getRiderId());
+        teamOfRider.remove(rider.getRiderId());
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    public void clear() {
+        racesById.clear();
+        stagesById.clear();
+        segmentsById.clear();
+        teamsById.clear();
+        ridersById.clear();
+        raceOfStage.clear();
+        stageOfSegment.clear();
+        teamOfRider.clear();
+    }
+}
@@ -0,0 +1,1054 @@
+package cycling;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * The PortalJournal class records every change made to a cycling portal in an append-only file, so the portal can
+ * be restored by loading its latest snapshot and replaying the changes made since. A journal directory holds
+ * numbered generations: generation n is the snapshot "portal-n.cyps" and the journal "journal-n.log" of the
+ * changes made after it. Taking a checkpoint writes the next snapshot, starts an empty journal next to it and
+ * deletes the older generation, so a crash at any point leaves one complete generation to restore from.
+ * <p>
+ * The journal starts with the bytes "CYPJ" and a format version. Each change is a record of its length, the
+ * CRC-32 of its contents, its type and its arguments, written with the same variable length integers as
+ * {@link PortalSnapshot}. Records of changes that create something also hold the ID the portal gave it, and
+ * replaying checks the portal gives the same ID again. A record cut short or damaged by a crash ends the journal,
+ * and is cut off before new records are added.
+ * <p>
+ * Records are added to a buffer in memory and written to the file and forced to disk by group commit: whichever
+ * caller syncs first writes and forces everything buffered so far, and callers that arrive while it does so wait
+ * for it rather than forcing the file again. With a group commit interval of zero every change is on disk before
+ * the portal method returns. Otherwise a background thread syncs once per interval, so a change takes
+ * microseconds and a crash loses at most the changes of the last interval.
+ */
+public class PortalJournal {
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'J'};
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int CREATE_RACE = 1;
+    private static final int REMOVE_RACE = 2;
+    private static final int ADD_STAGE = 3;
+    private static final int REMOVE_STAGE = 4;
+    private static final int ADD_CATEGORIZED_CLIMB = 5;
+    private static final int ADD_INTERMEDIATE_SPRINT = 6;
+    private static final int REMOVE_SEGMENT = 7;
+    private static final int CONCLUDE_STAGE_PREPARATION = 8;
+    private static final int CREATE_TEAM = 9;
+    private static final int REMOVE_TEAM = 10;
+    private static final int CREATE_RIDER = 11;
+    private static final int REMOVE_RIDER = 12;
+    private static final int REGISTER_RESULTS = 13;
+    private static final int DELETE_RESULTS = 14;
+    private static final int ERASE = 15;
+
+    private final Path directory;
+    private final long generation;
+    private final long groupCommitNanos;
+    private final FileChannel channel;
+    private final Thread flusher;
+    private byte[] pending = new byte[4096];
+    private int pendingLength;
+    private byte[] writing = new byte[4096];
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean syncing;
+    private volatile boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructor for the PortalJournal class, appending to a journal file that holds only valid records.
+     * @param directory The journal directory.
+     * @param generation The generation of the journal file.
+     * @param channel The journal file, positioned at its end.
+     * @param groupCommitNanos The time between syncs of the background thread in nanoseconds, or 0 to sync
+     *                         every change as it is recorded.
+     */
+    private PortalJournal(Path directory, long generation, FileChannel channel, long groupCommitNanos) {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = channel;
+        this.groupCommitNanos = groupCommitNanos;
+        if (groupCommitNanos > 0) {
+            flusher = new Thread(this::flushPeriodically, "portal-journal-" + generation);
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Restores a portal from the latest generation in a journal directory and opens its journal for new records.
+     * The portal is erased first. If the directory has no snapshot yet, a snapshot of the empty portal is written
+     * so the ID counters the journal starts from are saved too. Files of older generations are deleted.
+     * @param directory The journal directory, which is created if it does not exist.
+     * @param groupCommitNanos The time between syncs in nanoseconds, or 0 to sync every change as it is recorded.
+     * @param portal The portal to restore, which must not have a journal open.
+     * @return The journal, ready to record changes to the portal.
+     * @throws IOException If the files cannot be read or written, or the journal does not match the snapshot.
+     */
+    static PortalJournal open(Path directory, long groupCommitNanos, CyclingPortal portal) throws IOException {
+        Files.createDirectories(directory);
+        long generation = latestGeneration(directory);
+        Path snapshotFile = snapshotFile(directory, generation);
+        portal.eraseCyclingPortal();
+        if (Files.exists(snapshotFile)) {
+            try {
+                portal.loadCyclingPortal(snapshotFile.toString());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("The journal directory holds a snapshot that cannot be read", e);
+            }
+        } else {
+            writeSnapshot(directory, generation, portal.arrayListOfRaces, portal.arrayListOfTeams,
+                    portal.idAllocator.getCounters());
+        }
+        Path journalFile = journalFile(directory, generation);
+        long validLength = Files.exists(journalFile) ? replay(journalFile, portal) : 0;
+        deleteOlderGenerations(directory, generation);
+        return new PortalJournal(directory, generation, openForAppend(journalFile, validLength), groupCommitNanos);
+    }
+
+    /**
+     * Writes a snapshot of the portal as the next generation and starts an empty journal for it, then closes this
+     * journal and deletes its generation.
+     * @param arrayListOfRaces The races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters of the portal.
+     * @return The journal of the next generation, which records changes from now on.
+     * @throws IOException If the files cannot be written.
+     */
+    PortalJournal checkpoint(ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters)
+            throws IOException {
+        long nextGeneration = generation + 1;
+        writeSnapshot(directory, nextGeneration, arrayListOfRaces, arrayListOfTeams, counters);
+        PortalJournal next = new PortalJournal(directory, nextGeneration,
+                openForAppend(journalFile(directory, nextGeneration), 0), groupCommitNanos);
+        close();
+        deleteOlderGenerations(directory, nextGeneration);
+        return next;
+    }
+
+    /**
+     * Writes the snapshot of a generation, first to a temporary file that is renamed once it is on disk, so the
+     * snapshot file is only ever seen complete.
+     * @param directory The journal directory.
+     * @param generation The generation.
+     * @param arrayListOfRaces The races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters of the portal.
+     * @throws IOException If the files cannot be written.
+     */
+    private static void writeSnapshot(Path directory, long generation, ArrayList<Race> arrayListOfRaces,
+                                      ArrayList<Team> arrayListOfTeams, int[] counters) throws IOException {
+        Path snapshotFile = snapshotFile(directory, generation);
+        Path temporaryFile = directory.resolve(snapshotFile.getFileName() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temporaryFile.toFile())) {
+            PortalSnapshot.write(arrayListOfRaces, arrayListOfTeams, counters, outputStream);
+            outputStream.getFD().sync();
+        }
+        Files.move(temporaryFile, snapshotFile, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+    }
+
+    /**
+     * Records the creation of a race.
+     * @param raceId The ID the race was given.
+     * @param name The name of the race.
+     * @param description The description of the race.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void createRace(int raceId, String name, String description) {
+        Record record = new Record(CREATE_RACE);
+        record.putVarInt(raceId);
+        record.putString(name);
+        record.putString(description);
+        append(record);
+    }
+
+    /**
+     * Records the removal of a race, whether it was removed by ID or by name.
+     * @param raceId The ID of the race.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void removeRace(int raceId) {
+        Record record = new Record(REMOVE_RACE);
+        record.putVarInt(raceId);
+        append(record);
+    }
+
+    /**
+     * Records a stage being added to a race.
+     * @param stageId The ID the stage was given.
+     * @param raceId The ID of the race.
+     * @param stageName The name of the stage.
+     * @param description The description of the stage.
+     * @param length The length of the stage in kilometres.
+     * @param startTime The date and time the stage starts.
+     * @param type The type of the stage.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void addStage(int stageId, int raceId, String stageName, String description, double length,
+                         LocalDateTime startTime, StageType type) {
+        Record record = new Record(ADD_STAGE);
+        record.putVarInt(stageId);
+        record.putVarInt(raceId);
+        record.putString(stageName);
+        record.putString(description);
+        record.putDouble(length);
+        if (startTime == null) {
+            record.putByte(0);
+        } else {
+            record.putByte(1);
+            record.putSignedVarLong(startTime.toEpochSecond(ZoneOffset.UTC));
+            record.putVarInt(startTime.getNano());
+        }
+        record.putString(type == null ? null : type.name());
+        append(record);
+    }
+
+    /**
+     * Records the removal of a stage.
+     * @param stageId The ID of the stage.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void removeStage(int stageId) {
+        Record record = new Record(REMOVE_STAGE);
+        record.putVarInt(stageId);
+        append(record);
+    }
+
+    /**
+     * Records a categorized climb being added to a stage.
+     * @param segmentId The ID the climb was given.
+     * @param stageId The ID of the stage.
+     * @param location The location of the finish of the climb in the stage.
+     * @param type The category of the climb.
+     * @param averageGradient The average gradient of the climb.
+     * @param length The length of the climb in kilometres.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void addCategorizedClimb(int segmentId, int stageId, Double location, SegmentType type,
+                                    Double averageGradient, Double length) {
+        Record record = new Record(ADD_CATEGORIZED_CLIMB);
+        record.putVarInt(segmentId);
+        record.putVarInt(stageId);
+        record.putDouble(location);
+        record.putString(type == null ? null : type.name());
+        record.putNullableDouble(averageGradient);
+        record.putNullableDouble(length);
+        append(record);
+    }
+
+    /**
+     * Records an intermediate sprint being added to a stage.
+     * @param segmentId The ID the sprint was given.
+     * @param stageId The ID of the stage.
+     * @param location The location of the sprint in the stage.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void addIntermediateSprint(int segmentId, int stageId, double location) {
+        Record record = new Record(ADD_INTERMEDIATE_SPRINT);
+        record.putVarInt(segmentId);
+        record.putVarInt(stageId);
+        record.putDouble(location);
+        append(record);
+    }
+
+    /**
+     * Records the removal of a segment.
+     * @param segmentId The ID of the segment.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void removeSegment(int segmentId) {
+        Record record = new Record(REMOVE_SEGMENT);
+        record.putVarInt(segmentId);
+        append(record);
+    }
+
+    /**
+     * Records the end of the preparation of a stage.
+     * @param stageId The ID of the stage.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void concludeStagePreparation(int stageId) {
+        Record record = new Record(CONCLUDE_STAGE_PREPARATION);
+        record.putVarInt(stageId);
+        append(record);
+    }
+
+    /**
+     * Records the creation of a team.
+     * @param teamId The ID the team was given.
+     * @param name The name of the team.
+     * @param description The description of the team.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void createTeam(int teamId, String name, String description) {
+        Record record = new Record(CREATE_TEAM);
+        record.putVarInt(teamId);
+        record.putString(name);
+        record.putString(description);
+        append(record);
+    }
+
+    /**
+     * Records the removal of a team.
+     * @param teamId The ID of the team.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void removeTeam(int teamId) {
+        Record record = new Record(REMOVE_TEAM);
+        record.putVarInt(teamId);
+        append(record);
+    }
+
+    /**
+     * Records the creation of a rider.
+     * @param riderId The ID the rider was given.
+     * @param teamId The ID of the rider's team.
+     * @param name The name of the rider.
+     * @param yearOfBirth The year the rider was born.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void createRider(int riderId, int teamId, String name, int yearOfBirth) {
+        Record record = new Record(CREATE_RIDER);
+        record.putVarInt(riderId);
+        record.putVarInt(teamId);
+        record.putString(name);
+        record.putSignedVarLong(yearOfBirth);
+        append(record);
+    }
+
+    /**
+     * Records the removal of a rider.
+     * @param riderId The ID of the rider.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void removeRider(int riderId) {
+        Record record = new Record(REMOVE_RIDER);
+        record.putVarInt(riderId);
+        append(record);
+    }
+
+    /**
+     * Records the times of a rider in a stage. The first checkpoint is written in nanoseconds of the day and each
+     * next one as the difference to the one before, as in a snapshot.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @param checkpoints The checkpoint times in nanoseconds of the day.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void registerRiderResults(int stageId, int riderId, long[] checkpoints) {
+        Record record = new Record(REGISTER_RESULTS);
+        record.putVarInt(stageId);
+        record.putVarInt(riderId);
+        record.putVarInt(checkpoints.length);
+        long previous = 0;
+        for (long checkpoint:checkpoints) {
+            record.putSignedVarLong(checkpoint - previous);
+            previous = checkpoint;
+        }
+        append(record);
+    }
+
+    /**
+     * Records the deletion of the times of a rider in a stage.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void deleteRiderResults(int stageId, int riderId) {
+        Record record = new Record(DELETE_RESULTS);
+        record.putVarInt(stageId);
+        record.putVarInt(riderId);
+        append(record);
+    }
+
+    /**
+     * Records the portal being erased.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    public void erase() {
+        append(new Record(ERASE));
+    }
+
+    /**
+     * Adds a record to the buffer of records waiting to be written, framed by its length and checksum, and syncs
+     * it straight away if there is no background thread.
+     * @param record The record to add.
+     * @throws UncheckedIOException If the journal cannot be written to.
+     */
+    private void append(Record record) {
+        long sequence;
+        synchronized (this) {
+            if (failure != null) {
+                throw new UncheckedIOException("The portal journal can no longer be written to", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("The portal journal is closed");
+            }
+            int needed = pendingLength + 5 + 4 + record.length;
+            if (needed > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(needed, pending.length * 2));
+            }
+            int length = record.length;
+            while ((length & ~0x7F) != 0) {
+                pending[pendingLength++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            pending[pendingLength++] = (byte) length;
+            CRC32 crc = new CRC32();
+            crc.update(record.bytes, 0, record.length);
+            int checksum = (int) crc.getValue();
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                pending[pendingLength++] = (byte) (checksum >>> shift);
+            }
+            System.arraycopy(record.bytes, 0, pending, pendingLength, record.length);
+            pendingLength += record.length;
+            sequence = ++appendedSequence;
+        }
+        if (flusher == null) {
+            try {
+                awaitDurable(sequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes every record added so far to the file and forces it to disk, sharing the force with any other caller
+     * already doing so.
+     * @throws IOException If the journal cannot be written to.
+     */
+    public void sync() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Waits until a record is on disk. If no other caller is writing, this caller writes everything buffered so
+     * far and forces the file, which also makes durable the records of the callers that wait for it.
+     * @param sequence The number of the record, counting from 1.
+     * @throws IOException If the journal cannot be written to.
+     */
+    private void awaitDurable(long sequence) throws IOException {
+        byte[] batch;
+        int batchLength;
+        long batchSequence;
+        synchronized (this) {
+            while (syncing && durableSequence < sequence && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the portal journal", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (durableSequence >= sequence) {
+                return;
+            }
+            syncing = true;
+            batch = pending;
+            batchLength = pendingLength;
+            batchSequence = appendedSequence;
+            pending = writing;
+            pendingLength = 0;
+            writing = batch;
+        }
+        IOException error = null;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch, 0, batchLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (this) {
+            syncing = false;
+            if (error == null) {
+                durableSequence = batchSequence;
+            } else {
+                failure = error;
+            }
+            notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Syncs the journal once per group commit interval until it is closed. Runs on the background thread.
+     */
+    private void flushPeriodically() {
+        while (!closed) {
+            LockSupport.parkNanos(groupCommitNanos);
+            try {
+                sync();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Syncs every record added so far, stops the background thread and closes the file.
+     * @throws IOException If the journal cannot be written to.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            closed = true;
+            if (flusher != null) {
+                LockSupport.unpark(flusher);
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Applies the valid records of a journal file to a portal.
+     * @param journalFile The journal file.
+     * @param portal The portal, holding the snapshot the journal follows and with no journal open.
+     * @return The length of the start of the file that holds a header and whole, undamaged records.
+     * @throws IOException If the file cannot be read, or a record does not apply to the portal the way it did
+     *                     when it was recorded.
+     */
+    static long replay(Path journalFile, CyclingPortal portal) throws IOException {
+        byte[] bytes = Files.readAllBytes(journalFile);
+        if (bytes.length < HEADER_LENGTH) {
+            return 0;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                throw new IOException("The file is not a cycling portal journal");
+            }
+        }
+        if (bytes[MAGIC.length] != VERSION) {
+            throw new IOException("Cycling portal journal version " + bytes[MAGIC.length] + " is not supported");
+        }
+        int position = HEADER_LENGTH;
+        CRC32 crc = new CRC32();
+        while (position < bytes.length) {
+            int length = 0;
+            int cursor = position;
+            int shift = 0;
+            boolean complete = false;
+            while (cursor < bytes.length && shift < 32) {
+                int b = bytes[cursor++] & 0xFF;
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+            }
+            if (!complete || length < 0 || bytes.length - cursor < 4 || bytes.length - cursor - 4 < length) {
+                break;
+            }
+            int checksum = ((bytes[cursor] & 0xFF) << 24) | ((bytes[cursor + 1] & 0xFF) << 16)
+                    | ((bytes[cursor + 2] & 0xFF) << 8) | (bytes[cursor + 3] & 0xFF);
+            cursor += 4;
+            crc.reset();
+            crc.update(bytes, cursor, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(new RecordReader(bytes, cursor, cursor + length), portal);
+            position = cursor + length;
+        }
+        return position;
+    }
+
+    /**
+     * Applies one record to a portal by calling the portal method that made the change.
+     * @param reader The contents of the record.
+     * @param portal The portal.
+     * @throws IOException If the record is not understood or does not apply to the portal the way it did when it
+     *                     was recorded.
+     */
+    private static void apply(RecordReader reader, CyclingPortal portal) throws IOException {
+        int type = reader.getByte();
+        try {
+            switch (type) {
+                case CREATE_RACE: {
+                    int raceId = reader.getVarInt();
+                    expectId(raceId, portal.createRace(reader.getString(), reader.getString()));
+                    break;
+                }
+                case REMOVE_RACE:
+                    portal.removeRaceById(reader.getVarInt());
+                    break;
+                case ADD_STAGE: {
+                    int stageId = reader.getVarInt();
+                    int raceId = reader.getVarInt();
+                    String stageName = reader.getString();
+                    String description = reader.getString();
+                    double length = reader.getDouble();
+                    LocalDateTime startTime = null;
+                    if (reader.getByte() != 0) {
+                        long epochSecond = reader.getSignedVarLong();
+                        startTime = LocalDateTime.ofEpochSecond(epochSecond, reader.getVarInt(), ZoneOffset.UTC);
+                    }
+                    String typeName = reader.getString();
+                    StageType stageType = typeName == null ? null : StageType.valueOf(typeName);
+                    expectId(stageId, portal.addStageToRace(raceId, stageName, description, length, startTime,
+                            stageType));
+                    break;
+                }
+                case REMOVE_STAGE:
+                    portal.removeStageById(reader.getVarInt());
+                    break;
+                case ADD_CATEGORIZED_CLIMB: {
+                    int segmentId = reader.getVarInt();
+                    int stageId = reader.getVarInt();
+                    double location = reader.getDouble();
+                    String typeName = reader.getString();
+                    SegmentType segmentType = typeName == null ? null : SegmentType.valueOf(typeName);
+                    Double averageGradient = reader.getNullableDouble();
+                    Double length = reader.getNullableDouble();
+                    expectId(segmentId, portal.addCategorizedClimbToStage(stageId, location, segmentType,
+                            averageGradient, length));
+                    break;
+                }
+                case ADD_INTERMEDIATE_SPRINT: {
+                    int segmentId = reader.getVarInt();
+                    int stageId = reader.getVarInt();
+                    expectId(segmentId, portal.addIntermediateSprintToStage(stageId, reader.getDouble()));
+                    break;
+                }
+                case REMOVE_SEGMENT:
+                    portal.removeSegment(reader.getVarInt());
+                    break;
+                case CONCLUDE_STAGE_PREPARATION:
+                    portal.concludeStagePreparation(reader.getVarInt());
+                    break;
+                case CREATE_TEAM: {
+                    int teamId = reader.getVarInt();
+                    expectId(teamId, portal.createTeam(reader.getString(), reader.getString()));
+                    break;
+                }
+                case REMOVE_TEAM:
+                    portal.removeTeam(reader.getVarInt());
+                    break;
+                case CREATE_RIDER: {
+                    int riderId = reader.getVarInt();
+                    int teamId = reader.getVarInt();
+                    String name = reader.getString();
+                    expectId(riderId, portal.createRider(teamId, name, (int) reader.getSignedVarLong()));
+                    break;
+                }
+                case REMOVE_RIDER:
+                    portal.removeRider(reader.getVarInt());
+                    break;
+                case REGISTER_RESULTS: {
+                    int stageId = reader.getVarInt();
+                    int riderId = reader.getVarInt();
+                    long[] checkpoints = new long[reader.getVarInt()];
+                    long previous = 0;
+                    for (int i = 0; i < checkpoints.length; i++) {
+                        previous += reader.getSignedVarLong();
+                        checkpoints[i] = previous;
+                    }
+                    portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+                    break;
+                }
+                case DELETE_RESULTS:
+                    portal.deleteRiderResultsInStage(reader.getVarInt(), reader.getVarInt());
+                    break;
+                case ERASE:
+                    portal.eraseCyclingPortal();
+                    break;
+                default:
+                    throw new IOException("The portal journal holds a record of unknown type " + type);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("The portal journal does not match the snapshot it follows", e);
+        }
+    }
+
+    /**
+     * Checks that replaying a record gave the new object the ID it was given when the record was written.
+     * @param recordedId The ID in the record.
+     * @param id The ID given on replay.
+     * @throws IOException If the IDs differ.
+     */
+    private static void expectId(int recordedId, int id) throws IOException {
+        if (recordedId != id) {
+            throw new IOException("The portal journal recorded ID " + recordedId + " but replaying it gave ID " + id);
+        }
+    }
+
+    /**
+     * Opens a journal file for new records, cutting off anything after its valid records and writing the header
+     * if it has none.
+     * @param journalFile The journal file, which is created if it does not exist.
+     * @param validLength The length of the start of the file that holds a header and whole records, or 0.
+     * @return The file, positioned at its end.
+     * @throws IOException If the file cannot be opened or written to.
+     */
+    private static FileChannel openForAppend(Path journalFile, long validLength) throws IOException {
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        channel.truncate(validLength);
+        channel.position(validLength);
+        if (validLength < HEADER_LENGTH) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.put(MAGIC).put((byte) VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        channel.force(true);
+        if (created) {
+            syncDirectory(journalFile.getParent());
+        }
+        return channel;
+    }
+
+    /**
+     * Finds the newest generation in a journal directory with a complete snapshot.
+     * @param directory The journal directory.
+     * @return The generation, or 0 if there is no snapshot yet.
+     * @throws IOException If the directory cannot be listed.
+     */
+    private static long latestGeneration(Path directory) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "portal-*.cyps")) {
+            for (Path file:files) {
+                long generation = generationOf(file, "portal-", ".cyps");
+                latest = Math.max(latest, generation);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes the snapshots and journals of generations before a generation, and unfinished snapshots.
+     * @param directory The journal directory.
+     * @param generation The generation to keep.
+     * @throws IOException If the files cannot be deleted.
+     */
+    private static void deleteOlderGenerations(Path directory, long generation) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file:files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")
+                        || generationOf(file, "portal-", ".cyps") < generation
+                        || generationOf(file, "journal-", ".log") < generation) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the generation in the name of a snapshot or journal file.
+     * @param file The file.
+     * @param prefix The start of the name.
+     * @param suffix The end of the name.
+     * @return The generation, or Long.MAX_VALUE if the name is not of that kind.
+     */
+    private static long generationOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Forces a directory to disk so files created or renamed in it survive a crash. Not every platform can open a
+     * directory, in which case this does nothing.
+     * @param directory The directory.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //the platform does not support it
+        }
+    }
+
+    /**
+     * Gets the snapshot file of a generation.
+     * @param directory The journal directory.
+     * @param generation The generation.
+     * @return The snapshot file.
+     */
+    static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve("portal-" + generation + ".cyps");
+    }
+
+    /**
+     * Gets the journal file of a generation.
+     * @param directory The journal directory.
+     * @param generation The generation.
+     * @return The journal file.
+     */
+    static Path journalFile(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    /**
+     * The Record class builds the contents of one journal record.
+     */
+    private static final class Record {
+        private byte[] bytes = new byte[64];
+        private int length;
+
+        /**
+         * Constructor for the Record class.
+         * @param type The type of the record.
+         */
+        Record(int type) {
+            putByte(type);
+        }
+
+        /**
+         * Makes sure the record has room for a number of bytes.
+         * @param count The number of bytes about to be added.
+         */
+        private void ensureSpace(int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + count, bytes.length * 2));
+            }
+        }
+
+        /**
+         * Adds a single byte.
+         * @param value The byte, in the low eight bits.
+         */
+        void putByte(int value) {
+            ensureSpace(1);
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Adds a whole number that is not negative in as few bytes as it needs.
+         * @param value The number.
+         */
+        void putVarInt(int value) {
+            putVarLong(value & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Adds a whole number that is not negative in as few bytes as it needs, seven bits to a byte.
+         * @param value The number.
+         */
+        void putVarLong(long value) {
+            ensureSpace(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Adds a whole number that may be negative, so numbers close to zero either way take few bytes.
+         * @param value The number.
+         */
+        void putSignedVarLong(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Adds a double as its eight bytes.
+         * @param value The number.
+         */
+        void putDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            ensureSpace(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (bits >>> shift);
+            }
+        }
+
+        /**
+         * Adds a double that may be null, as a byte saying whether it is there followed by the double.
+         * @param value The number, which may be null.
+         */
+        void putNullableDouble(Double value) {
+            if (value == null) {
+                putByte(0);
+            } else {
+                putByte(1);
+                putDouble(value);
+            }
+        }
+
+        /**
+         * Adds a string as its length plus one followed by its UTF-8 bytes, or 0 for null.
+         * @param value The string, which may be null.
+         */
+        void putString(String value) {
+            if (value == null) {
+                putVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(utf8.length + 1);
+            ensureSpace(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+    }
+
+    /**
+     * The RecordReader class reads the contents of one journal record, mirroring {@link Record}.
+     */
+    private static final class RecordReader {
+        private final byte[] bytes;
+        private int position;
+        private final int limit;
+
+        /**
+         * Constructor for the RecordReader class.
+         * @param bytes The bytes of the journal.
+         * @param position The start of the record's contents.
+         * @param limit The end of the record's contents.
+         */
+        RecordReader(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        /**
+         * Reads a single byte.
+         * @return The byte, from 0 to 255.
+         * @throws IOException If the record has ended.
+         */
+        int getByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("A portal journal record ended unexpectedly");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        /**
+         * Reads a whole number added by {@link Record#putVarInt(int)}.
+         * @return The number.
+         * @throws IOException If the record has ended or the number is too large.
+         */
+        int getVarInt() throws IOException {
+            long value = getVarLong();
+            if ((value >>> 32) != 0) {
+                throw new IOException("The portal journal holds a number that is too large");
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a whole number added by {@link Record#putVarLong(long)}.
+         * @return The number.
+         * @throws IOException If the record has ended or the number is too long.
+         */
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = getByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("The portal journal holds a number that is too long");
+        }
+
+        /**
+         * Reads a whole number added by {@link Record#putSignedVarLong(long)}.
+         * @return The number.
+         * @throws IOException If the record has ended or the number is too long.
+         */
+        long getSignedVarLong() throws IOException {
+            long value = getVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a double added by {@link Record#putDouble(double)}.
+         * @return The number.
+         * @throws IOException If the record has ended.
+         */
+        double getDouble() throws IOException {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | getByte();
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        /**
+         * Reads a double added by {@link Record#putNullableDouble(Double)}.
+         * @return The number, which may be null.
+         * @throws IOException If the record has ended.
+         */
+        Double getNullableDouble() throws IOException {
+            return getByte() == 0 ? null : getDouble();
+        }
+
+        /**
+         * Reads a string added by {@link Record#putString(String)}.
+         * @return The string, which may be null.
+         * @throws IOException If the record has ended.
+         */
+        String getString() throws IOException {
+            int length = getVarInt();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length > limit - position) {
+                throw new IOException("A portal journal record ended unexpectedly");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
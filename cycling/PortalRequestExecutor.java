@@ -0,0 +1,847 @@
+package cycling;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * PortalRequestExecutor runs the requests made to a {@link ConcurrentCyclingPortal} as tasks, for a request layer
+ * where each call arrives as a message, such as a REST gateway, a timing feed or a broadcaster. Every method of
+ * the portal has an asynchronous variant, named with the suffix Async, that returns a {@link CompletableFuture}
+ * which completes with the result or with the exception the portal threw; the methods of the portal interface
+ * run the same request and wait for it.
+ * <p>
+ * Requests run on virtual threads when the JDK has them (Java 21 or later), so tens of thousands of requests can
+ * be in flight at once, each waiting for the portal's locks without holding a platform thread. On older JDKs
+ * they run on a fixed pool of platform threads instead, and requests beyond the pool wait in its queue.
+ * <p>
+ * Requests that change a race, its stages, segments or results are run one at a time and in the order they were
+ * made, per race, so a feed that deletes a result and registers it again never sees the two swapped, while
+ * changes to different races run alongside each other. Requests that change the portal as a whole, such as
+ * creating races, teams and riders, removing them, or erasing, saving and loading the portal, wait for every
+ * change made before them, to any race, and every change made after them waits for them. So a rider registered
+ * in a stage and then removed is removed after the registration, and a race removed by name is removed in the
+ * same order as one removed by ID. Queries are not queued, as the portal lets them run alongside everything else.
+ * <p>
+ * The race a stage or segment belongs to is looked up in an index the portal keeps without a lock, so making a
+ * request never blocks the calling thread. A stage or segment the portal does not know is queued as a change to
+ * the portal as a whole, which keeps it in order with everything else until the portal reports the unknown ID.
+ */
+public class PortalRequestExecutor implements CyclingPortalInterface, AutoCloseable {
+    private static final int PORTAL_QUEUE = 0;//race IDs start at 1, so 0 is free for changes to the whole portal
+    private final ConcurrentCyclingPortal portal;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Integer, CompletableFuture<?>> lastRequestOfQueue = new ConcurrentHashMap<>();
+    private final ReadWriteLock queueLock = new StampedLock().asReadWriteLock();//write locked to queue a portal change
+
+    /**
+     * A request to the portal, which may throw any of the exceptions the portal's methods declare.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    private interface Request<T> {
+        /**
+         * Runs the request.
+         * @return The result.
+         * @throws Exception If the portal rejects the request.
+         */
+        T run() throws Exception;
+    }
+
+    /**
+     * Constructor for the PortalRequestExecutor class, running requests on a new, empty portal.
+     */
+    public PortalRequestExecutor() {
+        this(new ConcurrentCyclingPortal());
+    }
+
+    /**
+     * Constructor for the PortalRequestExecutor class, running requests on virtual threads, or on a pool of
+     * platform threads if the JDK has no virtual threads.
+     * @param portal The portal to run the requests on.
+     */
+    public PortalRequestExecutor(ConcurrentCyclingPortal portal) {
+        this(portal, newRequestExecutor());
+    }
+
+    /**
+     * Constructor for the PortalRequestExecutor class, running requests on the given executor, which is shut
+     * down when this is closed.
+     * @param portal The portal to run the requests on.
+     * @param executor The executor to run the requests on.
+     */
+    public PortalRequestExecutor(ConcurrentCyclingPortal portal, ExecutorService executor) {
+        this.portal = portal;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the executor requests run on by default: one virtual thread per request if the JDK has virtual
+     * threads, which is looked up by reflection as the portal is built for Java 17, or else a fixed pool of daemon
+     * platform threads, a few per processor since requests spend time waiting for locks and disks.
+     * @return The executor.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threads = new AtomicInteger();
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, task -> {
+                Thread thread = new Thread(task, "portal-request-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Checks whether requests run on virtual threads.
+     * @return true if the executor runs requests on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        try {
+            return executor.submit(() -> (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()))
+                    .get();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the portal requests are run on.
+     * @return The portal.
+     */
+    public ConcurrentCyclingPortal getPortal() {
+        return portal;
+    }
+
+    /**
+     * Runs a query straight away on the executor.
+     * @param request The query.
+     * @param <T> The type of the result.
+     * @return The future result.
+     */
+    private <T> CompletableFuture<T> query(Request<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(request, result);
+        return result.copy();
+    }
+
+    /**
+     * Runs a change on the executor once the changes it has to follow are done. A change to a race follows the last
+     * change queued for that race and the last change to the portal as a whole; it is swapped in as the last of its
+     * race's queue under the read lock, so changes to different races are queued without waiting for each other. A
+     * change to the portal as a whole follows the last change of every queue, and is queued under the write lock
+     * so no change to a race can slip in between.
+     * @param queue The ID of the race changed, or {@link #PORTAL_QUEUE} for a change to the portal as a whole.
+     * @param request The change.
+     * @param <T> The type of the result.
+     * @return The future result.
+     */
+    private <T> CompletableFuture<T> change(int queue, Request<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<?>[] previous;
+        Lock lock = queue == PORTAL_QUEUE ? queueLock.writeLock() : queueLock.readLock();
+        lock.lock();
+        try {
+            if (queue == PORTAL_QUEUE) {
+                previous = lastRequestOfQueue.values().toArray(new CompletableFuture<?>[0]);
+                lastRequestOfQueue.put(PORTAL_QUEUE, result);
+            } else {
+                CompletableFuture<?> previousOfRace = lastRequestOfQueue.put(queue, result);
+                CompletableFuture<?> previousOfPortal = lastRequestOfQueue.get(PORTAL_QUEUE);
+                if (previousOfRace == null) {
+                    previous = previousOfPortal == null ? new CompletableFuture<?>[0]
+                            : new CompletableFuture<?>[] {previousOfPortal};
+                } else {
+                    previous = previousOfPortal == null ? new CompletableFuture<?>[] {previousOfRace}
+                            : new CompletableFuture<?>[] {previousOfRace, previousOfPortal};
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (previous.length == 0) {
+            execute(request, result);
+        } else if (previous.length == 1) {
+            previous[0].whenComplete((value, exception) -> execute(request, result));
+        } else {
+            CompletableFuture.allOf(previous).whenComplete((value, exception) -> execute(request, result));
+        }
+        result.whenComplete((value, exception) -> lastRequestOfQueue.remove(queue, result));
+        return result.copy();
+    }
+
+    /**
+     * Hands a request to the executor, completing the result when it has run.
+     * @param request The request.
+     * @param result The future to complete.
+     * @param <T> The type of the result.
+     */
+    private <T> void execute(Request<T> request, CompletableFuture<T> result) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(request.run());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for a request made by one of the methods of the portal interface, throwing what the portal threw.
+     * The portal can only throw the exceptions its method declares, which the calling method declares too.
+     * @param request The future result of the request.
+     * @param <T> The type of the result.
+     * @return The result.
+     */
+    private static <T> T await(CompletableFuture<T> request) {
+        try {
+            return request.join();
+        } catch (CompletionException e) {
+            throw PortalRequestExecutor.<RuntimeException>rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Throws an exception without the compiler checking its type.
+     * @param exception The exception.
+     * @param <E> The type the compiler takes the exception to be.
+     * @return Never returns.
+     * @throws E Always.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E rethrow(Throwable exception) throws E {
+        throw (E) exception;
+    }
+
+    /**
+     * Stops taking requests, waits for those already made to finish and shuts the executor down. If interrupted
+     * while waiting it returns straight away, leaving the requests to finish, with the thread's interrupt set.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            boolean terminated = false;
+            while (!terminated) {
+                terminated = executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the races in the portal.
+     * @return The future IDs of the races.
+     */
+    public CompletableFuture<int[]> getRaceIdsAsync() {
+        return query(portal::getRaceIds);
+    }
+
+    @Override
+    public int[] getRaceIds() {
+        return await(getRaceIdsAsync());
+    }
+
+    /**
+     * Creates a race, after every change made before it, to the portal or any race.
+     * @param name The name of the race.
+     * @param description The description of the race.
+     * @return The future ID of the race.
+     */
+    public CompletableFuture<Integer> createRaceAsync(String name, String description) {
+        return change(PORTAL_QUEUE, () -> portal.createRace(name, description));
+    }
+
+    @Override
+    public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+        return await(createRaceAsync(name, description));
+    }
+
+    /**
+     * Gets the details of a race.
+     * @param raceId The ID of the race.
+     * @return The future details.
+     */
+    public CompletableFuture<String> viewRaceDetailsAsync(int raceId) {
+        return query(() -> portal.viewRaceDetails(raceId));
+    }
+
+    @Override
+    public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+        return await(viewRaceDetailsAsync(raceId));
+    }
+
+    /**
+     * Removes a race, after the changes to it and to the portal made before.
+     * @param raceId The ID of the race.
+     * @return A future completed once the race is removed.
+     */
+    public CompletableFuture<Void> removeRaceByIdAsync(int raceId) {
+        return change(raceId, () -> {
+            portal.removeRaceById(raceId);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeRaceById(int raceId) throws IDNotRecognisedException {
+        await(removeRaceByIdAsync(raceId));
+    }
+
+    /**
+     * Gets the number of stages in a race.
+     * @param raceId The ID of the race.
+     * @return The future number of stages.
+     */
+    public CompletableFuture<Integer> getNumberOfStagesAsync(int raceId) {
+        return query(() -> portal.getNumberOfStages(raceId));
+    }
+
+    @Override
+    public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+        return await(getNumberOfStagesAsync(raceId));
+    }
+
+    /**
+     * Adds a stage to a race, after the changes to the race and to the portal made before.
+     * @param raceId The ID of the race.
+     * @param stageName The name of the stage.
+     * @param description The description of the stage.
+     * @param length The length of the stage in kilometres.
+     * @param startTime The date and time the stage starts.
+     * @param type The type of the stage.
+     * @return The future ID of the stage.
+     */
+    public CompletableFuture<Integer> addStageToRaceAsync(int raceId, String stageName, String description,
+                                                          double length, LocalDateTime startTime, StageType type) {
+        return change(raceId, () -> portal.addStageToRace(raceId, stageName, description, length, startTime, type));
+    }
+
+    @Override
+    public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime,
+                              StageType type)
+            throws IDNotRecognisedException, IllegalNameException, InvalidNameException, InvalidLengthException {
+        return await(addStageToRaceAsync(raceId, stageName, description, length, startTime, type));
+    }
+
+    /**
+     * Gets the stages of a race, in order of start time.
+     * @param raceId The ID of the race.
+     * @return The future IDs of the stages.
+     */
+    public CompletableFuture<int[]> getRaceStagesAsync(int raceId) {
+        return query(() -> portal.getRaceStages(raceId));
+    }
+
+    @Override
+    public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        return await(getRaceStagesAsync(raceId));
+    }
+
+    /**
+     * Gets the length of a stage.
+     * @param stageId The ID of the stage.
+     * @return The future length in kilometres.
+     */
+    public CompletableFuture<Double> getStageLengthAsync(int stageId) {
+        return query(() -> portal.getStageLength(stageId));
+    }
+
+    @Override
+    public double getStageLength(int stageId) throws IDNotRecognisedException {
+        return await(getStageLengthAsync(stageId));
+    }
+
+    /**
+     * Removes a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @return A future completed once the stage is removed.
+     */
+    public CompletableFuture<Void> removeStageByIdAsync(int stageId) {
+        return change(portal.getRaceOfStage(stageId), () -> {
+            portal.removeStageById(stageId);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeStageById(int stageId) throws IDNotRecognisedException {
+        await(removeStageByIdAsync(stageId));
+    }
+
+    /**
+     * Adds a categorized climb to a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @param location The location of the climb's finish in the stage, in kilometres.
+     * @param type The category of the climb.
+     * @param averageGradient The average gradient of the climb.
+     * @param length The length of the climb in kilometres.
+     * @return The future ID of the segment.
+     */
+    public CompletableFuture<Integer> addCategorizedClimbToStageAsync(int stageId, Double location, SegmentType type,
+                                                                      Double averageGradient, Double length) {
+        return change(portal.getRaceOfStage(stageId),
+                () -> portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length));
+    }
+
+    @Override
+    public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+                                          Double length) throws IDNotRecognisedException, InvalidLocationException,
+            InvalidStageStateException, InvalidStageTypeException {
+        return await(addCategorizedClimbToStageAsync(stageId, location, type, averageGradient, length));
+    }
+
+    /**
+     * Adds an intermediate sprint to a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @param location The location of the sprint in the stage, in kilometres.
+     * @return The future ID of the segment.
+     */
+    public CompletableFuture<Integer> addIntermediateSprintToStageAsync(int stageId, double location) {
+        return change(portal.getRaceOfStage(stageId), () -> portal.addIntermediateSprintToStage(stageId, location));
+    }
+
+    @Override
+    public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+            InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+        return await(addIntermediateSprintToStageAsync(stageId, location));
+    }
+
+    /**
+     * Removes a segment, after the changes to its race and to the portal made before.
+     * @param segmentId The ID of the segment.
+     * @return A future completed once the segment is removed.
+     */
+    public CompletableFuture<Void> removeSegmentAsync(int segmentId) {
+        return change(portal.getRaceOfSegment(segmentId), () -> {
+            portal.removeSegment(segmentId);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
+        await(removeSegmentAsync(segmentId));
+    }
+
+    /**
+     * Concludes the preparation of a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @return A future completed once the stage is waiting for results.
+     */
+    public CompletableFuture<Void> concludeStagePreparationAsync(int stageId) {
+        return change(portal.getRaceOfStage(stageId), () -> {
+            portal.concludeStagePreparation(stageId);
+            return null;
+        });
+    }
+
+    @Override
+    public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+        await(concludeStagePreparationAsync(stageId));
+    }
+
+    /**
+     * Gets the segments of a stage, in order of location.
+     * @param stageId The ID of the stage.
+     * @return The future IDs of the segments.
+     */
+    public CompletableFuture<int[]> getStageSegmentsAsync(int stageId) {
+        return query(() -> portal.getStageSegments(stageId));
+    }
+
+    @Override
+    public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+        return await(getStageSegmentsAsync(stageId));
+    }
+
+    /**
+     * Creates a team, after every change made before it, to the portal or any race.
+     * @param name The name of the team.
+     * @param description The description of the team.
+     * @return The future ID of the team.
+     */
+    public CompletableFuture<Integer> createTeamAsync(String name, String description) {
+        return change(PORTAL_QUEUE, () -> portal.createTeam(name, description));
+    }
+
+    @Override
+    public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+        return await(createTeamAsync(name, description));
+    }
+
+    /**
+     * Removes a team and its riders, after every change made before it, to the portal or any race.
+     * @param teamId The ID of the team.
+     * @return A future completed once the team is removed.
+     */
+    public CompletableFuture<Void> removeTeamAsync(int teamId) {
+        return change(PORTAL_QUEUE, () -> {
+            portal.removeTeam(teamId);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeTeam(int teamId) throws IDNotRecognisedException {
+        await(removeTeamAsync(teamId));
+    }
+
+    /**
+     * Gets the teams in the portal.
+     * @return The future IDs of the teams.
+     */
+    public CompletableFuture<int[]> getTeamsAsync() {
+        return query(portal::getTeams);
+    }
+
+    @Override
+    public int[] getTeams() {
+        return await(getTeamsAsync());
+    }
+
+    /**
+     * Gets the riders of a team.
+     * @param teamId The ID of the team.
+     * @return The future IDs of the riders.
+     */
+    public CompletableFuture<int[]> getTeamRidersAsync(int teamId) {
+        return query(() -> portal.getTeamRiders(teamId));
+    }
+
+    @Override
+    public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+        return await(getTeamRidersAsync(teamId));
+    }
+
+    /**
+     * Creates a rider in a team, after every change made before it, to the portal or any race.
+     * @param teamID The ID of the team.
+     * @param name The name of the rider.
+     * @param yearOfBirth The year the rider was born.
+     * @return The future ID of the rider.
+     */
+    public CompletableFuture<Integer> createRiderAsync(int teamID, String name, int yearOfBirth) {
+        return change(PORTAL_QUEUE, () -> portal.createRider(teamID, name, yearOfBirth));
+    }
+
+    @Override
+    public int createRider(int teamID, String name, int yearOfBirth) throws IDNotRecognisedException,
+            IllegalArgumentException {
+        return await(createRiderAsync(teamID, name, yearOfBirth));
+    }
+
+    /**
+     * Removes a rider and their results, after every change made before it, to the portal or any race.
+     * @param riderId The ID of the rider.
+     * @return A future completed once the rider is removed.
+     */
+    public CompletableFuture<Void> removeRiderAsync(int riderId) {
+        return change(PORTAL_QUEUE, () -> {
+            portal.removeRider(riderId);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeRider(int riderId) throws IDNotRecognisedException {
+        await(removeRiderAsync(riderId));
+    }
+
+    /**
+     * Registers the times of a rider in a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @param checkpoints The times the rider reached each checkpoint.
+     * @return A future completed once the result is registered.
+     */
+    public CompletableFuture<Void> registerRiderResultsInStageAsync(int stageId, int riderId,
+                                                                    LocalTime... checkpoints) {
+        return change(portal.getRaceOfStage(stageId), () -> {
+            portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+            return null;
+        });
+    }
+
+    @Override
+    public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+            throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+            InvalidStageStateException {
+        await(registerRiderResultsInStageAsync(stageId, riderId, checkpoints));
+    }
+
+    /**
+     * Gets the times of a rider in a stage.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @return The future times, with the elapsed time last.
+     */
+    public CompletableFuture<LocalTime[]> getRiderResultsInStageAsync(int stageId, int riderId) {
+        return query(() -> portal.getRiderResultsInStage(stageId, riderId));
+    }
+
+    @Override
+    public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        return await(getRiderResultsInStageAsync(stageId, riderId));
+    }
+
+    /**
+     * Gets the adjusted elapsed time of a rider in a stage.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @return The future adjusted elapsed time.
+     */
+    public CompletableFuture<LocalTime> getRiderAdjustedElapsedTimeInStageAsync(int stageId, int riderId) {
+        return query(() -> portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId));
+    }
+
+    @Override
+    public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        return await(getRiderAdjustedElapsedTimeInStageAsync(stageId, riderId));
+    }
+
+    /**
+     * Deletes the result of a rider in a stage, after the changes to its race and to the portal made before.
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @return A future completed once the result is deleted.
+     */
+    public CompletableFuture<Void> deleteRiderResultsInStageAsync(int stageId, int riderId) {
+        return change(portal.getRaceOfStage(stageId), () -> {
+            portal.deleteRiderResultsInStage(stageId, riderId);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        await(deleteRiderResultsInStageAsync(stageId, riderId));
+    }
+
+    /**
+     * Gets the riders of a stage in order of elapsed time.
+     * @param stageId The ID of the stage.
+     * @return The future IDs of the riders.
+     */
+    public CompletableFuture<int[]> getRidersRankInStageAsync(int stageId) {
+        return query(() -> portal.getRidersRankInStage(stageId));
+    }
+
+    @Override
+    public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        return await(getRidersRankInStageAsync(stageId));
+    }
+
+    /**
+     * Gets the adjusted elapsed times of the riders of a stage, in order of elapsed time.
+     * @param stageId The ID of the stage.
+     * @return The future times.
+     */
+    public CompletableFuture<LocalTime[]> getRankedAdjustedElapsedTimesInStageAsync(int stageId) {
+        return query(() -> portal.getRankedAdjustedElapsedTimesInStage(stageId));
+    }
+
+    @Override
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        return await(getRankedAdjustedElapsedTimesInStageAsync(stageId));
+    }
+
+    /**
+     * Gets the points of the riders of a stage, in order of elapsed time.
+     * @param stageId The ID of the stage.
+     * @return The future points.
+     */
+    public CompletableFuture<int[]> getRidersPointsInStageAsync(int stageId) {
+        return query(() -> portal.getRidersPointsInStage(stageId));
+    }
+
+    @Override
+    public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+        return await(getRidersPointsInStageAsync(stageId));
+    }
+
+    /**
+     * Gets the mountain points of the riders of a stage, in order of elapsed time.
+     * @param stageId The ID of the stage.
+     * @return The future mountain points.
+     */
+    public CompletableFuture<int[]> getRidersMountainPointsInStageAsync(int stageId) {
+        return query(() -> portal.getRidersMountainPointsInStage(stageId));
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+        return await(getRidersMountainPointsInStageAsync(stageId));
+    }
+
+    /**
+     * Erases the portal, after every change made before it, to the portal or any race.
+     * @return A future completed once the portal is empty.
+     */
+    public CompletableFuture<Void> eraseCyclingPortalAsync() {
+        return change(PORTAL_QUEUE, () -> {
+            portal.eraseCyclingPortal();
+            return null;
+        });
+    }
+
+    @Override
+    public void eraseCyclingPortal() {
+        await(eraseCyclingPortalAsync());
+    }
+
+    /**
+     * Saves the portal, after every change made before it, to the portal or any race.
+     * @param filename Location of the file to be saved.
+     * @return A future completed once the portal is saved.
+     */
+    public CompletableFuture<Void> saveCyclingPortalAsync(String filename) {
+        return change(PORTAL_QUEUE, () -> {
+            portal.saveCyclingPortal(filename);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveCyclingPortal(String filename) throws IOException {
+        await(saveCyclingPortalAsync(filename));
+    }
+
+    /**
+     * Loads the portal, after every change made before it, to the portal or any race.
+     * @param filename Location of the file to be loaded.
+     * @return A future completed once the portal is loaded.
+     */
+    public CompletableFuture<Void> loadCyclingPortalAsync(String filename) {
+        return change(PORTAL_QUEUE, () -> {
+            portal.loadCyclingPortal(filename);
+            return null;
+        });
+    }
+
+    @Override
+    public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+        await(loadCyclingPortalAsync(filename));
+    }
+
+    /**
+     * Removes a race by name, after every change made before it, to the portal or any race.
+     * @param name The name of the race.
+     * @return A future completed once the race is removed.
+     */
+    public CompletableFuture<Void> removeRaceByNameAsync(String name) {
+        return change(PORTAL_QUEUE, () -> {
+            portal.removeRaceByName(name);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeRaceByName(String name) throws NameNotRecognisedException {
+        await(removeRaceByNameAsync(name));
+    }
+
+    /**
+     * Gets the general classification of a race.
+     * @param raceId The ID of the race.
+     * @return The future IDs of the riders, in order.
+     */
+    public CompletableFuture<int[]> getRidersGeneralClassificationRankAsync(int raceId) {
+        return query(() -> portal.getRidersGeneralClassificationRank(raceId));
+    }
+
+    @Override
+    public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        return await(getRidersGeneralClassificationRankAsync(raceId));
+    }
+
+    /**
+     * Gets the total adjusted elapsed times of the riders of a race, in general classification order.
+     * @param raceId The ID of the race.
+     * @return The future times.
+     */
+    public CompletableFuture<LocalTime[]> getGeneralClassificationTimesInRaceAsync(int raceId) {
+        return query(() -> portal.getGeneralClassificationTimesInRace(raceId));
+    }
+
+    @Override
+    public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        return await(getGeneralClassificationTimesInRaceAsync(raceId));
+    }
+
+    /**
+     * Gets the points of the riders of a race, in general classification order.
+     * @param raceId The ID of the race.
+     * @return The future points.
+     */
+    public CompletableFuture<int[]> getRidersPointsInRaceAsync(int raceId) {
+        return query(() -> portal.getRidersPointsInRace(raceId));
+    }
+
+    @Override
+    public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+        return await(getRidersPointsInRaceAsync(raceId));
+    }
+
+    /**
+     * Gets the mountain points of the riders of a race, in general classification order.
+     * @param raceId The ID of the race.
+     * @return The future mountain points.
+     */
+    public CompletableFuture<int[]> getRidersMountainPointsInRaceAsync(int raceId) {
+        return query(() -> portal.getRidersMountainPointsInRace(raceId));
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+        return await(getRidersMountainPointsInRaceAsync(raceId));
+    }
+
+    /**
+     * Gets the points classification of a race.
+     * @param raceId The ID of the race.
+     * @return The future IDs of the riders, in order.
+     */
+    public CompletableFuture<int[]> getRidersPointClassificationRankAsync(int raceId) {
+        return query(() -> portal.getRidersPointClassificationRank(raceId));
+    }
+
+    @Override
+    public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return await(getRidersPointClassificationRankAsync(raceId));
+    }
+
+    /**
+     * Gets the mountain classification of a race.
+     * @param raceId The ID of the race.
+     * @return The future IDs of the riders, in order.
+     */
+    public CompletableFuture<int[]> getRidersMountainPointClassificationRankAsync(int raceId) {
+        return query(() -> portal.getRidersMountainPointClassificationRank(raceId));
+    }
+
+    @Override
+    public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        return await(getRidersMountainPointClassificationRankAsync(raceId));
+    }
+}
@@ -0,0 +1,426 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+
+/**
+ * The PortalSnapshot class is the binary format the cycling portal is saved in. A snapshot starts with the bytes
+ * "CYPS" and a format version, followed by the ID counters, then every team with its riders and every race with
+ * its stages, segments and results. IDs and counts are variable length integers, strings go through the string
+ * table of {@link SnapshotWriter}, and the checkpoint times of a result are written as the start time in
+ * nanoseconds followed by the difference to each next checkpoint. Enum values are written by name, so reordering
+ * {@link StageType} or {@link SegmentType} does not change the meaning of a saved file, and a missing type, which
+ * the portal accepts, is written as a null string.
+ */
+public class PortalSnapshot {
+    /**
+     * The bytes every snapshot starts with.
+     */
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'S'};
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+    private static final int CLIMB = 1;
+    private static final int HAS_AVERAGE_GRADIENT = 2;
+    private static final int HAS_LENGTH = 4;
+
+    private final ArrayList<Race> arrayListOfRaces;
+    private final ArrayList<Team> arrayListOfTeams;
+    private final int[] counters;
+
+    /**
+     * Constructor for the PortalSnapshot class, holding the contents of a snapshot that has been read.
+     * @param arrayListOfRaces The races in the snapshot.
+     * @param arrayListOfTeams The teams in the snapshot.
+     * @param counters The race, stage, segment, team and rider counters in the snapshot.
+     */
+    private PortalSnapshot(ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters) {
+        this.arrayListOfRaces = arrayListOfRaces;
+        this.arrayListOfTeams = arrayListOfTeams;
+        this.counters = counters;
+    }
+
+    /**
+     * Gets the races read from the snapshot.
+     * @return The races.
+     */
+    public ArrayList<Race> getRaces() {
+        return arrayListOfRaces;
+    }
+
+    /**
+     * Gets the teams read from the snapshot.
+     * @return The teams.
+     */
+    public ArrayList<Team> getTeams() {
+        return arrayListOfTeams;
+    }
+
+    /**
+     * Gets the ID counters saved in the snapshot, which the portal restores so objects created after loading get
+     * new IDs.
+     * @return The race, stage, segment, team and rider counters.
+     */
+    public int[] getCounters() {
+        return counters.clone();
+    }
+
+    /**
+     * Checks whether the start of a stream is a snapshot, without reading past the start.
+     * @param header The first bytes of the stream.
+     * @param length The number of bytes in the header.
+     * @return True if the bytes are the start of a snapshot.
+     */
+    public static boolean isSnapshot(byte[] header, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a snapshot of the portal with the given ID counters to a stream, which is flushed but not closed.
+     * @param arrayListOfRaces The races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters to save.
+     * @param outputStream The stream to write to.
+     * @throws IOException If the stream cannot be written to.
+     */
+    static void write(ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters,
+                      OutputStream outputStream) throws IOException {
+        SnapshotWriter writer = new SnapshotWriter(outputStream);
+        writer.writeBytes(MAGIC);
+        writer.writeVarInt(VERSION);
+        for (int counter:counters) {
+            writer.writeVarInt(counter);
+        }
+        writeTeams(writer, arrayListOfTeams);
+        writer.writeVarInt(arrayListOfRaces.size());
+        for (Race race:arrayListOfRaces) {
+            writeRace(writer, race);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the teams of the portal with their riders.
+     * @param writer The writer of the snapshot.
+     * @param arrayListOfTeams The teams of the portal.
+     * @throws IOException If the stream cannot be written to.
+     */
+    static void writeTeams(SnapshotWriter writer, ArrayList<Team> arrayListOfTeams) throws IOException {
+        writer.writeVarInt(arrayListOfTeams.size());
+        for (Team team:arrayListOfTeams) {
+            writer.writeVarInt(team.getTeamId());
+            writer.writeString(team.getName());
+            writer.writeString(team.getDescription());
+            writer.writeVarInt(team.arrayListOfRiders.size());
+            for (Rider rider:team.arrayListOfRiders) {
+                writer.writeVarInt(rider.getRiderId());
+                writer.writeString(rider.getName());
+                writer.writeSignedVarLong(rider.getYearOfBirth());
+            }
+        }
+    }
+
+    /**
+     * Writes a race with its stages.
+     * @param writer The writer of the snapshot.
+     * @param race The race to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    static void writeRace(SnapshotWriter writer, Race race) throws IOException {
+        writeRace(writer, race, false);
+    }
+
+    /**
+     * Writes a race with its stages, choosing how checkpoint times are encoded.
+     * @param writer The writer of the snapshot.
+     * @param race The race to write.
+     * @param deltaOfDelta Whether each rider's gaps between checkpoints are written as the difference from the
+     *                     previous rider's gaps, which are usually close, rather than as they are.
+     * @throws IOException If the stream cannot be written to.
+     */
+    static void writeRace(SnapshotWriter writer, Race race, boolean deltaOfDelta) throws IOException {
+        writer.writeVarInt(race.getRaceId());
+        writer.writeString(race.getName());
+        writer.writeString(race.getDescription());
+        writer.writeVarInt(race.arrayListOfStages.size());
+        for (Stage stage:race.arrayListOfStages) {
+            writeStage(writer, stage, deltaOfDelta);
+        }
+    }
+
+    /**
+     * Writes a stage with its segments and results.
+     * @param writer The writer of the snapshot.
+     * @param stage The stage to write.
+     * @param deltaOfDelta Whether checkpoint gaps are written relative to the previous rider's gaps.
+     * @throws IOException If the stream cannot be written to.
+     */
+    private static void writeStage(SnapshotWriter writer, Stage stage, boolean deltaOfDelta) throws IOException {
+        writer.writeVarInt(stage.getStageId());
+        writer.writeString(stage.getStageName());
+        writer.writeString(stage.getDescription());
+        writer.writeDouble(stage.getStageLength());
+        LocalDateTime startTime = stage.getStartTime();
+        if (startTime == null) {
+            writer.writeByte(0);
+        } else {
+            writer.writeByte(1);
+            writer.writeSignedVarLong(startTime.toEpochSecond(ZoneOffset.UTC));
+            writer.writeVarInt(startTime.getNano());
+        }
+        writer.writeString(stage.getStageType() == null ? null : stage.getStageType().name());
+        writer.writeString(stage.getStageState());
+
+        writer.writeVarInt(stage.arrayListOfSegments.size());
+        for (Segment segment:stage.arrayListOfSegments) {
+            writer.writeVarInt(segment.getSegmentId());
+            if (segment instanceof CategorizedClimb) {
+                CategorizedClimb climb = (CategorizedClimb) segment;
+                int flags = CLIMB;
+                if (climb.getAverageGradient() != null) {
+                    flags |= HAS_AVERAGE_GRADIENT;
+                }
+                if (climb.getLength() != null) {
+                    flags |= HAS_LENGTH;
+                }
+                writer.writeByte(flags);
+                writer.writeDouble(climb.getLocation());
+                writer.writeString(climb.getSegmentType() == null ? null : climb.getSegmentType().name());
+                if (climb.getAverageGradient() != null) {
+                    writer.writeDouble(climb.getAverageGradient());
+                }
+                if (climb.getLength() != null) {
+                    writer.writeDouble(climb.getLength());
+                }
+            } else {
+                writer.writeByte(0);
+                writer.writeDouble(segment.getLocation());
+            }
+        }
+
+        ArrayList<Result> arrayListOfResults = stage.getArrayListOfResults();
+        writer.writeVarInt(arrayListOfResults.size());
+        if (arrayListOfResults.isEmpty()) {
+            return;
+        }
+        int numberOfCheckpoints = arrayListOfResults.get(0).getNumberOfCheckpoints();
+        writer.writeVarInt(numberOfCheckpoints);
+        if (deltaOfDelta) {
+            //riders cover the same segments, so a gap usually differs little from the previous rider's gap
+            long[] previousGaps = new long[numberOfCheckpoints];
+            for (Result result:arrayListOfResults) {
+                writer.writeVarInt(result.getRiderId());
+                long previous = 0;
+                for (int i = 0; i < numberOfCheckpoints; i++) {
+                    long checkpoint = result.getCheckpoint(i);
+                    long gap = checkpoint - previous;
+                    writer.writeSignedVarLong(gap - previousGaps[i]);
+                    previousGaps[i] = gap;
+                    previous = checkpoint;
+                }
+            }
+            return;
+        }
+        for (Result result:arrayListOfResults) {
+            writer.writeVarInt(result.getRiderId());
+            long previous = result.getCheckpoint(0);
+            writer.writeVarLong(previous);
+            for (int i = 1; i < numberOfCheckpoints; i++) {
+                long checkpoint = result.getCheckpoint(i);
+                writer.writeSignedVarLong(checkpoint - previous);
+                previous = checkpoint;
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream. Nothing in the portal is changed by reading it.
+     * @param inputStream The stream to read from, positioned at the start of the snapshot.
+     * @return The contents of the snapshot.
+     * @throws IOException If the stream cannot be read, is not a snapshot, or has a version this class cannot read.
+     */
+    public static PortalSnapshot read(InputStream inputStream) throws IOException {
+        SnapshotReader reader = new SnapshotReader(inputStream);
+        byte[] magic = reader.readBytes(MAGIC.length);
+        if (!isSnapshot(magic, magic.length)) {
+            throw new IOException("The file is not a cycling portal snapshot");
+        }
+        int version = reader.readVarInt();
+        if (version != VERSION) {
+            throw new IOException("Cycling portal snapshot version " + version + " is not supported");
+        }
+        int[] counters = readCounters(reader);
+        ArrayList<Team> arrayListOfTeams = readTeams(reader);
+        int numberOfRaces = reader.readVarInt();
+        ArrayList<Race> arrayListOfRaces = new ArrayList<>(numberOfRaces);
+        for (int r = 0; r < numberOfRaces; r++) {
+            arrayListOfRaces.add(readRace(reader));
+        }
+        return new PortalSnapshot(arrayListOfRaces, arrayListOfTeams, counters);
+    }
+
+    /**
+     * Reads the race, stage, segment, team and rider counters.
+     * @param reader The reader of the snapshot.
+     * @return The counters.
+     * @throws IOException If the stream cannot be read.
+     */
+    static int[] readCounters(SnapshotReader reader) throws IOException {
+        int[] counters = new int[5];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = reader.readVarInt();
+        }
+        return counters;
+    }
+
+    /**
+     * Reads the teams of the portal with their riders.
+     * @param reader The reader of the snapshot.
+     * @return The teams.
+     * @throws IOException If the stream cannot be read.
+     */
+    static ArrayList<Team> readTeams(SnapshotReader reader) throws IOException {
+        int numberOfTeams = reader.readVarInt();
+        ArrayList<Team> arrayListOfTeams = new ArrayList<>(numberOfTeams);
+        for (int t = 0; t < numberOfTeams; t++) {
+            Team team = new Team(reader.readVarInt(), reader.readString(), reader.readString());
+            int numberOfRiders = reader.readVarInt();
+            for (int r = 0; r < numberOfRiders; r++) {
+                int riderId = reader.readVarInt();
+                String name = reader.readString();
+                int yearOfBirth = (int) reader.readSignedVarLong();
+                team.arrayListOfRiders.add(new Rider(riderId, team.getTeamId(), name, yearOfBirth));
+            }
+            arrayListOfTeams.add(team);
+        }
+        return arrayListOfTeams;
+    }
+
+    /**
+     * Reads a race with its stages.
+     * @param reader The reader of the snapshot.
+     * @return The race.
+     * @throws IOException If the stream cannot be read or holds an unknown stage or segment type.
+     */
+    static Race readRace(SnapshotReader reader) throws IOException {
+        return readRace(reader, false);
+    }
+
+    /**
+     * Reads a race with its stages, written with the given encoding of checkpoint times.
+     * @param reader The reader of the snapshot.
+     * @param deltaOfDelta Whether checkpoint gaps were written relative to the previous rider's gaps.
+     * @return The race.
+     * @throws IOException If the stream cannot be read or holds an unknown stage or segment type.
+     */
+    static Race readRace(SnapshotReader reader, boolean deltaOfDelta) throws IOException {
+        Race race = new Race(reader.readVarInt(), reader.readString(), reader.readString());
+        int numberOfStages = reader.readVarInt();
+        for (int s = 0; s < numberOfStages; s++) {
+            race.arrayListOfStages.add(readStage(reader, race.getRaceId(), deltaOfDelta));
+        }
+        return race;
+    }
+
+    /**
+     * Reads a stage with its segments and results.
+     * @param reader The reader of the snapshot.
+     * @param raceId The ID of the race the stage belongs to.
+     * @param deltaOfDelta Whether checkpoint gaps were written relative to the previous rider's gaps.
+     * @return The stage.
+     * @throws IOException If the stream cannot be read or holds an unknown stage or segment type.
+     */
+    private static Stage readStage(SnapshotReader reader, int raceId, boolean deltaOfDelta) throws IOException {
+        int stageId = reader.readVarInt();
+        String stageName = reader.readString();
+        String description = reader.readString();
+        double length = reader.readDouble();
+        LocalDateTime startTime = null;
+        if (reader.readByte() != 0) {
+            long epochSecond = reader.readSignedVarLong();
+            startTime = LocalDateTime.ofEpochSecond(epochSecond, reader.readVarInt(), ZoneOffset.UTC);
+        }
+        StageType type = valueOf(StageType.class, reader.readString());
+        String state = reader.readString();
+        Stage stage = new Stage(stageId, raceId, stageName, description, length, startTime, type, state);
+
+        int numberOfSegments = reader.readVarInt();
+        for (int i = 0; i < numberOfSegments; i++) {
+            int segmentId = reader.readVarInt();
+            int flags = reader.readByte();
+            double location = reader.readDouble();
+            if ((flags & CLIMB) != 0) {
+                SegmentType segmentType = valueOf(SegmentType.class, reader.readString());
+                Double averageGradient = (flags & HAS_AVERAGE_GRADIENT) != 0 ? reader.readDouble() : null;
+                Double climbLength = (flags & HAS_LENGTH) != 0 ? reader.readDouble() : null;
+                stage.arrayListOfSegments.add(new CategorizedClimb(segmentId, stageId, location, segmentType,
+                        averageGradient, climbLength));
+            } else {
+                stage.arrayListOfSegments.add(new IntermediateSprint(segmentId, stageId, location));
+            }
+        }
+
+        int numberOfResults = reader.readVarInt();
+        if (numberOfResults == 0) {
+            return stage;
+        }
+        int numberOfCheckpoints = reader.readVarInt();
+        if (deltaOfDelta) {
+            long[] previousGaps = new long[numberOfCheckpoints];
+            for (int i = 0; i < numberOfResults; i++) {
+                int riderId = reader.readVarInt();
+                long[] checkpoints = new long[numberOfCheckpoints];
+                long previous = 0;
+                for (int j = 0; j < numberOfCheckpoints; j++) {
+                    previousGaps[j] += reader.readSignedVarLong();
+                    previous += previousGaps[j];
+                    checkpoints[j] = previous;
+                }
+                stage.registerRiderResultsInStage(stageId, riderId, checkpoints);
+            }
+            return stage;
+        }
+        for (int i = 0; i < numberOfResults; i++) {
+            int riderId = reader.readVarInt();
+            long[] checkpoints = new long[numberOfCheckpoints];
+            checkpoints[0] = reader.readVarLong();
+            for (int j = 1; j < numberOfCheckpoints; j++) {
+                checkpoints[j] = checkpoints[j - 1] + reader.readSignedVarLong();
+            }
+            stage.registerRiderResultsInStage(stageId, riderId, checkpoints);
+        }
+        return stage;
+    }
+
+    /**
+     * Looks up an enum constant by the name saved in a snapshot.
+     * @param enumType The enum class.
+     * @param name The saved name, or null if no constant was saved.
+     * @param <E> The enum type.
+     * @return The constant with the name, or null if the name is null.
+     * @throws IOException If the enum has no constant with the name.
+     */
+    private static <E extends Enum<E>> E valueOf(Class<E> enumType, String name) throws IOException {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(enumType, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The snapshot holds an unknown " + enumType.getSimpleName() + " " + name, e);
+        }
+    }
+}
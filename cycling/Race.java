@@ -3,30 +3,42 @@ package cycling;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.io.Serializable;
 
 /**
  * The Race class stores all the information related to a race, and stores an arraylist of the stages for the race.
  */
 public class Race implements Serializable {
-    public static int raceCounter = 0;
     private int raceId;
     private String name;
     private String description;
     private int numberOfStages;
     private double totalLength;
     ArrayList<Stage> arrayListOfStages = new ArrayList<>();
+    private transient RaceStandings standings;//running totals of the classifications, rebuilt when first needed
+    private transient volatile RaceSnapshot snapshot;//the snapshot the classifications were last worked out from
 
     /**
      * Constructor for the Race class.
+     * @param idAllocator The ID allocator of the portal the race is created in.
      * @param name The name of the race.
      * @param description The description of the race.
      */
-    public Race(String name, String description) {
+    public Race(IdAllocator idAllocator, String name, String description) {
+        this(idAllocator.nextRaceId(), name, description);
+    }
+
+    /**
+     * Constructor for a race restored from a saved portal, which keeps its saved ID.
+     * @param raceId The ID of the race.
+     * @param name The name of the race.
+     * @param description The description of the race.
+     */
+    Race(int raceId, String name, String description) {
+        this.raceId = raceId;
         this.name = name;
         this.description = description;
-        raceCounter += 1;
-        raceId = raceCounter;
     }
 
     /**
@@ -80,20 +92,95 @@ public class Race implements Serializable {
         return arrayListOfStages;
     }
 
+    /**
+     * Gets the general, points and mountain classifications of the race. If no stage has changed since they
+     * were last worked out they are returned as they are; otherwise a snapshot of the stages is taken and only
+     * the stages whose results have changed are added up again.
+     * @return The classifications of the race.
+     */
+    public RaceClassification getClassification() {
+        return getClassification(ClassificationParallelism.SEQUENTIAL);
+    }
+
+    /**
+     * Gets the general, points and mountain classifications of the race, working out the stages that have
+     * changed in parallel if there are enough of them.
+     * @param parallelism How to work out the stages.
+     * @return The classifications of the race.
+     */
+    public RaceClassification getClassification(ClassificationParallelism parallelism) {
+        RaceClassification classification = getPublishedClassification();
+        if (classification != null) {
+            return classification;
+        }
+        return classify(takeSnapshot(), parallelism);
+    }
+
+    /**
+     * Takes a snapshot of the stages of the race to work out the classifications from. Stages that have not changed
+     * since the last snapshot published on the race keep what was worked out for them, and the rest are only copied,
+     * so this is cheap enough to run under the race's lock. The stages must not change while it runs.
+     * @return A snapshot of the race.
+     */
+    public RaceSnapshot takeSnapshot() {
+        return new RaceSnapshot(arrayListOfStages, snapshot);
+    }
+
+    /**
+     * Gets the classifications last worked out, if no stage has changed since. Only reads the version of each
+     * stage's results, so it needs no lock on them, only that stages are not added or removed while it runs.
+     * @return The classifications, or null if there are none or they are out of date.
+     */
+    public RaceClassification getPublishedClassification() {
+        RaceSnapshot published = snapshot;
+        return published != null && published.isCurrent(arrayListOfStages) ? published.getClassification() : null;
+    }
+
+    /**
+     * Works out the classifications of a snapshot of the race and publishes them for later queries. The snapshot
+     * only holds copies, so this needs no lock on the race and writers do not wait for it. The copied stages are
+     * worked out first, by each thread for its own snapshot, before the snapshot is added up.
+     * @param captured A snapshot of the race.
+     * @param parallelism How to work out and add up the stages.
+     * @return The classifications of the snapshot.
+     */
+    public RaceClassification classify(RaceSnapshot captured, ClassificationParallelism parallelism) {
+        captured.workOut(parallelism);
+        return addUp(captured, parallelism);
+    }
+
+    /**
+     * Adds up a worked out snapshot of the race and publishes its classifications. Synchronized, as threads adding
+     * up snapshots of the same race take turns at the running totals.
+     * @param captured A snapshot of the race whose stages have all been worked out.
+     * @param parallelism How to add up the stages.
+     * @return The classifications of the snapshot.
+     */
+    private synchronized RaceClassification addUp(RaceSnapshot captured, ClassificationParallelism parallelism) {
+        if (standings == null) {
+            standings = new RaceStandings();
+        }
+        captured.setClassification(standings.getClassification(captured, parallelism));
+        snapshot = captured;
+        return captured.getClassification();
+    }
+
     /**
      * Creates a new stage and adds it to the race.
+     * @param idAllocator The ID allocator of the portal the stage is created in.
      * @param raceId The ID of the race which the stage is added to.
      * @param stageName The name for the stage.
      * @param description A description for the stage.
      * @param length The length of the stage in kilometres.
      * @param startTime The date and time in which the stage will be raced.
      * @param type The type of the stage.
+     * @return The stage created.
      */
-    public int createStage(int raceId, String stageName, String description, double length,
+    public Stage createStage(IdAllocator idAllocator, int raceId, String stageName, String description, double length,
                             LocalDateTime startTime, StageType type) {
-        Stage newStage = new Stage(raceId, stageName, description, length, startTime, type);
+        Stage newStage = new Stage(idAllocator, raceId, stageName, description, length, startTime, type);
         arrayListOfStages.add(newStage);
-        return newStage.getStageId();
+        return newStage;
     }
 
     /**
@@ -109,6 +196,18 @@ public class Race implements Serializable {
         }
     }
 
+    /**
+     * Gets the stages of the race ordered by when they start. Stages starting at the same time stay in the
+     * order they were added, as they do in {@link #getRaceStages()}.
+     * @return The list of stages ordered (from first to last) by their start time.
+     */
+    public ArrayList<Stage> getStagesInStartOrder(){
+        ArrayList<Stage> arrayListOfStagesSortedByStartTime = new ArrayList<>(arrayListOfStages);
+        Collections.sort(arrayListOfStagesSortedByStartTime, Comparator.comparing(Stage::getStartTime,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+        return arrayListOfStagesSortedByStartTime;
+    }
+
     /**
      * Orders the stages based on which stage starts soonest to latest.
      * @return A list of stage ID's ordered by when they start.
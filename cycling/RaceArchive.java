@@ -0,0 +1,1429 @@
+package cycling;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The RaceArchive class keeps races of the portal on disk until they are needed. An archive file holds one section
+ * per race and one for the teams, each encoded on its own so it can be read without the rest of the file, followed
+ * by an index of the races and a trailer pointing to the index. A save can append only the sections that changed
+ * with a new index and trailer, and the last complete trailer in the file is the one that counts. Races are
+ * loaded when first asked for, and the races used least recently are evicted once the estimated size of the loaded
+ * races goes over the memory budget. Evicted races that have changed since they were loaded are written to a
+ * spill file so nothing is lost before the portal is saved again.
+ */
+public class RaceArchive {
+    static final byte[] MAGIC = {'C', 'Y', 'P', 'A'};
+    /**
+     * The version of the archive format written by this class.
+     */
+    public static final int VERSION = 3;
+    /**
+     * The codec of a section written by the snapshot encoding as it is.
+     */
+    static final int PLAIN = 0;
+    /**
+     * The codec of a section whose checkpoint gaps are delta-of-delta encoded and which is then compressed by a
+     * Deflater.
+     */
+    static final int DEFLATED = 1;
+    private static final int BUFFER_LENGTH = 64 * 1024;
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int TRAILER_LENGTH = 20;
+    private static final int SCAN_BLOCK_LENGTH = 64 * 1024;
+    private static final int COMPACTION_RATIO = 2;
+    private static final int MAX_INDEXES = 256;
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final IntObjectMap<Section> sections = new IntObjectMap<>();
+    private final IntIntMap raceOfUnloadedStage = new IntIntMap();
+    private final IntIntMap raceOfUnloadedSegment = new IntIntMap();
+    private final LinkedHashMap<Integer, Race> loadedRaces = new LinkedHashMap<>(16, 0.75f, true);
+    private int numberOfUnloadedRaces;
+    private long memoryBudget;
+    private FileChannel source;
+    private Path sourceFile;
+    private Object sourceKey;
+    private int version;
+    private long fileLength;
+    private long liveLength;
+    private long indexChainLength;
+    private int numberOfIndexes;
+    private final IntIntMap removedSinceSave = new IntIntMap();
+    private long teamsOffset;
+    private int teamsLength;
+    private int teamsCodec;
+    private boolean compressed;
+    private boolean teamsChanged = true;
+    private FileChannel spill;
+    private Path spillFile;
+    private ArrayList<Team> arrayListOfTeams = new ArrayList<>();
+    private int[] counters;
+
+    /**
+     * The Section class records where a race is stored and what it holds, so it can be found without loading it.
+     */
+    private static final class Section {
+        final int raceId;
+        final String name;
+        final int[] stageIds;
+        final int[] segmentIds;
+        FileChannel file;
+        final long offset;
+        final int length;
+        final int codec;
+
+        /**
+         * Constructor for the Section class.
+         * @param raceId The ID of the race.
+         * @param name The name of the race.
+         * @param stageIds The IDs of the stages of the race.
+         * @param segmentIds The IDs of the segments of all the stages of the race.
+         * @param file The file the race is stored in.
+         * @param offset The position of the race in the file.
+         * @param length The number of bytes the race takes up.
+         * @param codec How the race is encoded, PLAIN or DEFLATED.
+         */
+        Section(int raceId, String name, int[] stageIds, int[] segmentIds, FileChannel file, long offset,
+                int length, int codec) {
+            this.raceId = raceId;
+            this.name = name;
+            this.stageIds = stageIds;
+            this.segmentIds = segmentIds;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.codec = codec;
+        }
+    }
+
+    /**
+     * The SectionOutput class is a stream that writes to a file from a given position onwards, so a section can
+     * be encoded straight into the archive.
+     */
+    private static final class SectionOutput extends OutputStream {
+        private final FileChannel channel;
+        private final long start;
+        private long position;
+
+        /**
+         * Constructor for the SectionOutput class.
+         * @param channel The file to write to.
+         * @param position The position to start writing at.
+         */
+        SectionOutput(FileChannel channel, long position) {
+            this.channel = channel;
+            this.start = position;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        /**
+         * Gets the number of bytes written so far.
+         * @return The length of the section.
+         */
+        int length() {
+            return (int) (position - start);
+        }
+    }
+
+    /**
+     * The SectionInput class is a stream that reads one section of a file, so a section can be decoded straight
+     * from the archive.
+     */
+    private static final class SectionInput extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        /**
+         * Constructor for the SectionInput class.
+         * @param channel The file to read from.
+         * @param offset The position of the section.
+         * @param length The length of the section.
+         */
+        SectionInput(FileChannel channel, long offset, int length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)),
+                    position);
+            if (count < 0) {
+                throw new EOFException("Race archive is truncated");
+            }
+            position += count;
+            return count;
+        }
+    }
+
+    /**
+     * Constructor for the RaceArchive class, creating an archive with no races on disk and no memory budget.
+     */
+    public RaceArchive() {
+        this.memoryBudget = UNLIMITED;
+    }
+
+    /**
+     * Checks whether the first bytes of a file are those of an archive.
+     * @param header The first bytes of the file.
+     * @param length The number of bytes of the header that were read.
+     * @return true if the file starts like an archive.
+     */
+    public static boolean isArchive(byte[] header, int length) {
+        if (length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens an archive file, reading its index and teams but none of its races. If the file ends part way
+     * through an appended save, the archive is opened as it was after the last complete save.
+     * @param file The archive file.
+     * @return The archive, with every race on disk.
+     * @throws IOException If the file cannot be read or is not an archive this class can read.
+     */
+    public static RaceArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_LENGTH) {
+                throw new IOException("Not a race archive");
+            }
+            ByteBuffer header = read(channel, 0, HEADER_LENGTH);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a race archive");
+                }
+            }
+            int version = header.get(MAGIC.length);
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported race archive version " + version);
+            }
+            long end = size;
+            byte[] index = readIndexBefore(channel, end, version);
+            while (index == null && version == VERSION) {
+                end = previousTrailerEnd(channel, end - 1);
+                if (end < 0) {
+                    break;
+                }
+                index = readIndexBefore(channel, end, version);
+            }
+            if (index == null) {
+                throw new IOException("Race archive has no complete index");
+            }
+            RaceArchive archive = new RaceArchive();
+            IntIntMap superseded = new IntIntMap();
+            long previousEnd = archive.readIndex(index, channel, version, true, superseded);
+            archive.indexChainLength = index.length + TRAILER_LENGTH;
+            archive.numberOfIndexes = 1;
+            while (previousEnd > 0) {
+                byte[] previousIndex = readIndexBefore(channel, previousEnd, version);
+                if (previousIndex == null) {
+                    throw new IOException("Race archive index refers to a missing earlier index");
+                }
+                previousEnd = archive.readIndex(previousIndex, channel, version, false, superseded);
+                archive.indexChainLength += previousIndex.length + TRAILER_LENGTH;
+                archive.numberOfIndexes++;
+            }
+            archive.source = channel;
+            archive.sourceFile = file;
+            archive.sourceKey = fileKey(file);
+            archive.version = version;
+            archive.fileLength = end;
+            archive.teamsChanged = false;
+            archive.measure();
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the index whose trailer ends at a given position, checking that the trailer is intact.
+     * @param channel The archive file.
+     * @param end The position just after the trailer.
+     * @param version The version of the archive.
+     * @return The bytes of the index, or null if there is no intact trailer ending at that position.
+     * @throws IOException If the file cannot be read.
+     */
+    private static byte[] readIndexBefore(FileChannel channel, long end, int version) throws IOException {
+        int trailerLength = version == 1 ? 16 : TRAILER_LENGTH;
+        if (end < HEADER_LENGTH + trailerLength) {
+            return null;
+        }
+        ByteBuffer trailer = read(channel, end - trailerLength, trailerLength);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (trailer.get(trailerLength - MAGIC.length + i) != MAGIC[i]) {
+                return null;
+            }
+        }
+        long indexOffset = trailer.getLong(0);
+        int indexLength = trailer.getInt(8);
+        if (indexOffset < HEADER_LENGTH || indexLength < 0 || indexOffset + indexLength > end - trailerLength) {
+            return null;
+        }
+        byte[] index = read(channel, indexOffset, indexLength).array();
+        if (version != 1) {
+            CRC32 crc = new CRC32();
+            crc.update(index);
+            if ((int) crc.getValue() != trailer.getInt(12)) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Searches backwards for the end of an earlier trailer, for files whose last appended save is incomplete.
+     * @param channel The archive file.
+     * @param limit The last position the trailer may end at.
+     * @return The position just after the last copy of the magic bytes at or before the limit, or -1 if there
+     *         is none.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long previousTrailerEnd(FileChannel channel, long limit) throws IOException {
+        long blockEnd = limit;
+        while (blockEnd - HEADER_LENGTH >= MAGIC.length) {
+            long blockStart = Math.max(HEADER_LENGTH, blockEnd - SCAN_BLOCK_LENGTH);
+            ByteBuffer block = read(channel, blockStart, (int) (blockEnd - blockStart));
+            for (int end = block.capacity(); end >= MAGIC.length; end--) {
+                int i = 0;
+                while (i < MAGIC.length && block.get(end - MAGIC.length + i) == MAGIC[i]) {
+                    i++;
+                }
+                if (i == MAGIC.length) {
+                    return blockStart + end;
+                }
+            }
+            blockEnd = blockStart + MAGIC.length - 1;
+            if (blockStart == HEADER_LENGTH) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads an index of an archive, setting up a section for every race in it that a later index has not
+     * replaced or removed. An appended save writes an index of only the races it wrote, which refers back to the
+     * index before it, so the indexes are read from the latest back to the first full one.
+     * @param index The bytes of the index.
+     * @param file The archive file the races are stored in.
+     * @param version The version of the archive; version 1 kept the teams inside its only index.
+     * @param latest Whether this is the latest index, which holds the counters and says where the teams are.
+     * @param superseded The IDs of races found or removed in later indexes, which this index adds to.
+     * @return The position just after the trailer of the index before this one, or 0 if this is a full index.
+     * @throws IOException If the index or the teams cannot be decoded.
+     */
+    private long readIndex(byte[] index, FileChannel file, int version, boolean latest, IntIntMap superseded)
+            throws IOException {
+        SnapshotReader reader = new SnapshotReader(new ByteArrayInputStream(index));
+        int[] indexCounters = PortalSnapshot.readCounters(reader);
+        long previousEnd = 0;
+        if (version == 1) {
+            arrayListOfTeams = PortalSnapshot.readTeams(reader);
+        } else {
+            long offset = reader.readVarLong();
+            int length = reader.readVarInt();
+            int codec = version >= 3 ? reader.readVarInt() : PLAIN;
+            previousEnd = reader.readVarLong();
+            int numberOfRemovedRaces = reader.readVarInt();
+            for (int r = 0; r < numberOfRemovedRaces; r++) {
+                int raceId = reader.readVarInt();
+                superseded.put(raceId, raceId);
+            }
+            if (latest) {
+                teamsOffset = offset;
+                teamsLength = length;
+                teamsCodec = codec;
+                arrayListOfTeams = readTeams(file, offset, length, codec);
+            }
+        }
+        if (latest) {
+            counters = indexCounters;
+        }
+        int numberOfRaces = reader.readVarInt();
+        for (int r = 0; r < numberOfRaces; r++) {
+            int raceId = reader.readVarInt();
+            String name = reader.readString();
+            int[] stageIds = new int[reader.readVarInt()];
+            for (int s = 0; s < stageIds.length; s++) {
+                stageIds[s] = reader.readVarInt();
+            }
+            int[] segmentIds = new int[reader.readVarInt()];
+            for (int s = 0; s < segmentIds.length; s++) {
+                segmentIds[s] = reader.readVarInt();
+            }
+            long offset = reader.readVarLong();
+            int length = reader.readVarInt();
+            int codec = version >= 3 ? reader.readVarInt() : PLAIN;
+            if (!superseded.containsKey(raceId)) {
+                superseded.put(raceId, raceId);
+                Section section = new Section(raceId, name, stageIds, segmentIds, file, offset, length, codec);
+                sections.put(raceId, section);
+                markUnloaded(section);
+            }
+        }
+        return previousEnd;
+    }
+
+    /**
+     * Gets the teams read from the index of the archive when it was opened.
+     * @return The teams of the portal.
+     */
+    public ArrayList<Team> getTeams() {
+        return arrayListOfTeams;
+    }
+
+    /**
+     * Gets the ID counters read from the index of the archive when it was opened.
+     * @return The race, stage, segment, team and rider counters.
+     */
+    public int[] getCounters() {
+        return counters;
+    }
+
+    /**
+     * Sets the most memory the loaded races should take up, as estimated by estimateSize.
+     * @param bytes The memory budget in bytes, or Long.MAX_VALUE for no budget.
+     */
+    public void setMemoryBudget(long bytes) {
+        memoryBudget = bytes;
+    }
+
+    /**
+     * Sets whether races and teams written from now on are compressed. Sections already on disk keep the codec
+     * they were written with, so an archive can hold both.
+     * @param compressed true to delta-of-delta encode checkpoint times and deflate each section.
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Checks whether races and teams written from now on are compressed.
+     * @return true if new sections are compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Gets the most memory the loaded races should take up.
+     * @return The memory budget in bytes.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Checks whether any races are on disk and not loaded.
+     * @return true if at least one race has not been loaded.
+     */
+    public boolean hasUnloadedRaces() {
+        return numberOfUnloadedRaces > 0;
+    }
+
+    /**
+     * Gets the IDs of the races that are on disk and not loaded.
+     * @return The race IDs in ascending order.
+     */
+    public int[] getUnloadedRaceIds() {
+        int[] raceIds = new int[numberOfUnloadedRaces];
+        int count = 0;
+        for (Section section:sections.values()) {
+            if (!loadedRaces.containsKey(section.raceId)) {
+                raceIds[count++] = section.raceId;
+            }
+        }
+        Arrays.sort(raceIds, 0, count);
+        return count == raceIds.length ? raceIds : Arrays.copyOf(raceIds, count);
+    }
+
+    /**
+     * Checks whether a race is on disk and not loaded.
+     * @param raceId The ID of the race.
+     * @return true if the race is in the archive and has not been loaded.
+     */
+    public synchronized boolean isUnloaded(int raceId) {
+        return sections.containsKey(raceId) && !loadedRaces.containsKey(raceId);
+    }
+
+    /**
+     * Finds the race that owns a stage which has not been loaded.
+     * @param stageId The ID of the stage.
+     * @return The ID of the race, or -1 if the stage is not in an unloaded race.
+     */
+    public int getRaceOfUnloadedStage(int stageId) {
+        return raceOfUnloadedStage.get(stageId, -1);
+    }
+
+    /**
+     * Finds the race that owns a segment which has not been loaded.
+     * @param segmentId The ID of the segment.
+     * @return The ID of the race, or -1 if the segment is not in an unloaded race.
+     */
+    public int getRaceOfUnloadedSegment(int segmentId) {
+        return raceOfUnloadedSegment.get(segmentId, -1);
+    }
+
+    /**
+     * Finds a race that has not been loaded by its name.
+     * @param name The name of the race.
+     * @return The ID of the race, or -1 if no unloaded race has that name.
+     */
+    public int findUnloadedRace(String name) {
+        for (Section section:sections.values()) {
+            if (name != null && name.equals(section.name) && !loadedRaces.containsKey(section.raceId)) {
+                return section.raceId;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Loads a race from disk. The race is counted as used most recently.
+     * @param raceId The ID of a race that has not been loaded.
+     * @return The race with its stages, segments and results.
+     * @throws IOException If the race cannot be read.
+     */
+    public Race load(int raceId) throws IOException {
+        Section section = sections.get(raceId);
+        Race race = readRace(section);
+        markLoaded(section);
+        loadedRaces.put(raceId, race);
+        return race;
+    }
+
+    /**
+     * Counts a loaded race as used most recently. Races are only tracked while there is a memory budget.
+     * @param raceId The ID of the race.
+     */
+    public void touch(int raceId) {
+        if (memoryBudget != UNLIMITED) {
+            loadedRaces.get(raceId);
+        }
+    }
+
+    /**
+     * Starts tracking a race created or loaded outside the archive, counting it as used most recently.
+     * @param race The race.
+     */
+    public void added(Race race) {
+        loadedRaces.put(race.getRaceId(), race);
+    }
+
+    /**
+     * Records that a loaded race has changed, so its copy on disk is out of date. Synchronized with
+     * {@link #isUnloaded(int)}, as a concurrent portal changes different races from different threads.
+     * @param raceId The ID of the race.
+     */
+    public synchronized void changed(int raceId) {
+        if (loadedRaces.containsKey(raceId)) {
+            sections.remove(raceId);
+        }
+    }
+
+    /**
+     * Forgets a race that has been removed from the portal, whether it was loaded or not.
+     * @param raceId The ID of the race.
+     */
+    public void removed(int raceId) {
+        removedSinceSave.put(raceId, raceId);
+        Section section = sections.remove(raceId);
+        if (section != null && !loadedRaces.containsKey(raceId)) {
+            markLoaded(section);
+        }
+        loadedRaces.remove(raceId);
+    }
+
+    /**
+     * Evicts the races used least recently until the loaded races fit in the memory budget. The race used most
+     * recently is never evicted. Races that changed since they were loaded are written to the spill file first.
+     * @return The evicted races, which the portal should stop referencing.
+     * @throws IOException If a changed race cannot be written to the spill file.
+     */
+    public ArrayList<Race> evict() throws IOException {
+        ArrayList<Race> evictedRaces = new ArrayList<>();
+        if (memoryBudget == UNLIMITED || loadedRaces.size() < 2) {
+            return evictedRaces;
+        }
+        long size = 0;
+        for (Race race:loadedRaces.values()) {
+            size += estimateSize(race);
+        }
+        Iterator<Map.Entry<Integer, Race>> iterator = loadedRaces.entrySet().iterator();
+        while (size > memoryBudget && loadedRaces.size() > 1) {
+            Race race = iterator.next().getValue();
+            Section section = sections.get(race.getRaceId());
+            if (section == null) {
+                section = spill(race);
+                sections.put(race.getRaceId(), section);
+            }
+            iterator.remove();
+            markUnloaded(section);
+            size -= estimateSize(race);
+            evictedRaces.add(race);
+        }
+        return evictedRaces;
+    }
+
+    /**
+     * Estimates the heap taken up by a race with its stages, segments and results. The figures are rough object
+     * sizes for a 64-bit JVM with compressed references, including the caches a stage builds for its rankings.
+     * @param race The race.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateSize(Race race) {
+        long size = 256;
+        for (Stage stage:race.arrayListOfStages) {
+            size += 384 + 64L * stage.arrayListOfSegments.size();
+            for (Result result:stage.arrayListOfResults) {
+                size += 160 + 24L * result.getNumberOfCheckpoints();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes a changed race to the end of the spill file, creating the file if needed.
+     * @param race The race.
+     * @return The section recording where the race was written.
+     * @throws IOException If the spill file cannot be written to.
+     */
+    private Section spill(Race race) throws IOException {
+        if (spill == null) {
+            spillFile = Files.createTempFile("cycling-races", ".spill");
+            spillFile.toFile().deleteOnExit();
+            spill = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return writeRace(spill, spill.size(), race, codec());
+    }
+
+    /**
+     * Saves the portal as an archive. Loaded races are encoded afresh, while races that were never loaded are
+     * copied from disk without decoding them, so saving to the file the archive was read from also compacts
+     * it, dropping races superseded by appended saves. The file is written under a temporary name and renamed
+     * over the target, and afterwards every race in the portal is backed by the new file.
+     * @param file The file to save to.
+     * @param arrayListOfRaces The loaded races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters to save.
+     * @throws IOException If the file cannot be written.
+     */
+    void save(Path file, ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters)
+            throws IOException {
+        IntObjectMap<Race> racesById = racesById(arrayListOfRaces);
+        int[] raceIds = allRaceIds(arrayListOfRaces);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        ArrayList<Section> savedSections = new ArrayList<>(raceIds.length);
+        long length;
+        int indexLength;
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] header = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+            header[MAGIC.length] = VERSION;
+            long position = write(channel, 0, header);
+            for (int raceId:raceIds) {
+                Section section = writeSection(channel, position, raceId, racesById.get(raceId));
+                position += section.length;
+                savedSections.add(section);
+            }
+            position = writeTeams(channel, position, arrayListOfTeams);
+            byte[] index = encodeIndex(savedSections, counters, teamsOffset, teamsLength, teamsCodec, 0, new int[0]);
+            length = writeIndex(channel, position, index);
+            indexLength = index.length;
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        FileChannel savedFile = FileChannel.open(file, StandardOpenOption.READ);
+        closeFiles();
+        source = savedFile;
+        sourceFile = file;
+        sourceKey = fileKey(file);
+        version = VERSION;
+        fileLength = length;
+        teamsChanged = false;
+        saved(savedSections);
+        removedSinceSave.clear();
+        indexChainLength = indexLength + TRAILER_LENGTH;
+        numberOfIndexes = 1;
+        measure();
+    }
+
+    /**
+     * Saves only what changed since the portal was last saved to or loaded from the file: races that changed,
+     * the teams if they changed, and a new index, all appended to the end of the file. Races that did not
+     * change stay where they are, so the cost of a save follows the size of the changed races rather than the
+     * whole portal. Superseded copies of races are left behind in the file, and once they take up more space
+     * than the live portal the file is compacted by saving it in full instead. If the archive was not read from
+     * the file, or the file has been replaced since, the portal is saved in full.
+     * @param file The file to save to.
+     * @param arrayListOfRaces The loaded races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters to save.
+     * @throws IOException If the file cannot be written.
+     */
+    void saveChanges(Path file, ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams,
+                     int[] counters) throws IOException {
+        if (source == null || version != VERSION || !Files.exists(file) || !Files.isSameFile(file, sourceFile)
+                || !Objects.equals(fileKey(file), sourceKey) || fileLength > COMPACTION_RATIO * liveLength
+                || numberOfIndexes >= MAX_INDEXES) {
+            save(file, arrayListOfRaces, arrayListOfTeams, counters);
+            return;
+        }
+        IntObjectMap<Race> racesById = racesById(arrayListOfRaces);
+        int[] raceIds = allRaceIds(arrayListOfRaces);
+        ArrayList<Section> savedSections = new ArrayList<>(raceIds.length);
+        ArrayList<Section> writtenSections = new ArrayList<>();
+        long length;
+        byte[] index;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            //anything after the last complete save is the remains of a save that did not finish
+            channel.truncate(fileLength);
+            long position = fileLength;
+            for (int raceId:raceIds) {
+                Section section = sections.get(raceId);
+                if (section == null || section.file != source) {
+                    section = writeSection(channel, position, raceId, racesById.get(raceId));
+                    position += section.length;
+                    writtenSections.add(section);
+                }
+                savedSections.add(section);
+            }
+            if (teamsChanged) {
+                position = writeTeams(channel, position, arrayListOfTeams);
+            }
+            index = encodeIndex(writtenSections, counters, teamsOffset, teamsLength, teamsCodec, fileLength,
+                    removedSinceSave.keys());
+            length = writeIndex(channel, position, index);
+            channel.force(true);
+        }
+        fileLength = length;
+        teamsChanged = false;
+        saved(savedSections);
+        if (spill != null) {
+            spill.truncate(0);
+        }
+        removedSinceSave.clear();
+        indexChainLength += index.length + TRAILER_LENGTH;
+        numberOfIndexes++;
+        measure();
+    }
+
+    /**
+     * Captures the portal as it is now, for writing to an archive on another thread. Races whose copy on disk is
+     * up to date, loaded or not, are copied from disk as they are, read through a channel of their own or copied
+     * into memory if they are in the spill file, so saves and evictions after the capture cannot move them.
+     * Races that changed since they were last written are shared with the portal until it is about to change
+     * them again, and the teams are copied.
+     * @param arrayListOfRaces The loaded races of the portal.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param counters The race, stage, segment, team and rider counters to save.
+     * @return The captured portal.
+     * @throws IOException If the archive file cannot be opened again or a spilled race cannot be read.
+     */
+    Capture capture(ArrayList<Race> arrayListOfRaces, ArrayList<Team> arrayListOfTeams, int[] counters)
+            throws IOException {
+        int[] raceIds = allRaceIds(arrayListOfRaces);
+        IntObjectMap<Race> changedRaces = new IntObjectMap<>();
+        IntObjectMap<Section> storedSections = new IntObjectMap<>();
+        IntObjectMap<byte[]> spilledSections = new IntObjectMap<>();
+        FileChannel capturedSource = null;
+        try {
+            for (Race race:arrayListOfRaces) {
+                if (!sections.containsKey(race.getRaceId())) {
+                    changedRaces.put(race.getRaceId(), race);
+                }
+            }
+            for (Section section:sections.values()) {
+                int raceId = section.raceId;
+                if (section.file == source) {
+                    if (capturedSource == null) {
+                        capturedSource = FileChannel.open(sourceFile, StandardOpenOption.READ);
+                    }
+                    section = new Section(raceId, section.name, section.stageIds, section.segmentIds,
+                            capturedSource, section.offset, section.length, section.codec);
+                } else {
+                    spilledSections.put(raceId, read(section.file, section.offset, section.length).array());
+                }
+                storedSections.put(raceId, section);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (capturedSource != null) {
+                capturedSource.close();
+            }
+            throw e;
+        }
+        return new Capture(raceIds, changedRaces, storedSections, spilledSections,
+                capturedSource, arrayListOfTeams, counters, codec());
+    }
+
+    /**
+     * The Capture class holds the portal as it was at one moment while it is written to an archive on another
+     * thread, so the portal can keep changing during the write. Changed races are not copied when the capture is
+     * taken. Instead the portal calls preserve before it changes a race, which copies the race for the capture
+     * if it has not been written yet, or waits if it is being written. A copy shares the segments and results
+     * of the race, which never change once created, so only the lists holding them are copied.
+     */
+    static final class Capture {
+        private final int[] raceIds;
+        private final IntObjectMap<Race> races;//changed races not written yet, guarded by the capture
+        private final IntObjectMap<Section> storedSections;
+        private final IntObjectMap<byte[]> spilledSections;
+        private final FileChannel source;
+        private final ArrayList<Team> arrayListOfTeams;
+        private final int[] counters;
+        private final int codec;
+        private Race writingRace;
+        private int numberOfCopiedRaces;
+
+        /**
+         * Constructor for the Capture class, copying the teams and their lists of riders.
+         * @param raceIds The IDs of every race in the portal, in ascending order.
+         * @param races The races that changed since they were last written, by ID.
+         * @param storedSections The sections of the races whose copy on disk is up to date.
+         * @param spilledSections The bytes of those sections that are in the spill file.
+         * @param source The channel the sections in the archive file are read through, or null if there are none.
+         * @param arrayListOfTeams The teams of the portal.
+         * @param counters The race, stage, segment, team and rider counters.
+         * @param codec How to encode loaded races and the teams, PLAIN or DEFLATED.
+         */
+        private Capture(int[] raceIds, IntObjectMap<Race> races, IntObjectMap<Section> storedSections,
+                        IntObjectMap<byte[]> spilledSections, FileChannel source, ArrayList<Team> arrayListOfTeams,
+                        int[] counters, int codec) {
+            this.raceIds = raceIds;
+            this.races = races;
+            this.storedSections = storedSections;
+            this.spilledSections = spilledSections;
+            this.source = source;
+            this.arrayListOfTeams = new ArrayList<>(arrayListOfTeams.size());
+            for (Team team:arrayListOfTeams) {
+                Team copy = new Team(team.getTeamId(), team.getName(), team.getDescription());
+                copy.arrayListOfRiders.addAll(team.arrayListOfRiders);
+                this.arrayListOfTeams.add(copy);
+            }
+            this.counters = counters;
+            this.codec = codec;
+        }
+
+        /**
+         * Keeps a race as it was when the capture was taken, before the portal changes it. If the race is being
+         * written, this waits until it has been written; if it has not been written yet, it is copied.
+         * @param race The race about to change.
+         */
+        synchronized void preserve(Race race) {
+            boolean interrupted = false;
+            while (writingRace == race) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (races.get(race.getRaceId()) == race) {
+                races.put(race.getRaceId(), copyOf(race));
+                numberOfCopiedRaces++;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Gets the number of races that were copied because the portal changed them before they were written.
+         * @return The number of copied races.
+         */
+        synchronized int getNumberOfCopiedRaces() {
+            return numberOfCopiedRaces;
+        }
+
+        /**
+         * Copies a race and its stages, sharing their segments and results.
+         * @param race The race.
+         * @return The copy.
+         */
+        private static Race copyOf(Race race) {
+            Race copy = new Race(race.getRaceId(), race.getName(), race.getDescription());
+            for (Stage stage:race.arrayListOfStages) {
+                Stage stageCopy = new Stage(stage.getStageId(), stage.getRaceId(), stage.getStageName(),
+                        stage.getDescription(), stage.getStageLength(), stage.getStartTime(), stage.getStageType(),
+                        stage.getStageState());
+                stageCopy.arrayListOfSegments.addAll(stage.arrayListOfSegments);
+                stageCopy.arrayListOfResults.addAll(stage.arrayListOfResults);
+                copy.arrayListOfStages.add(stageCopy);
+            }
+            return copy;
+        }
+
+        /**
+         * Writes the captured portal as a full archive. The file is written under a temporary name and renamed
+         * over the target, and the portal's own archive is left as it is.
+         * @param file The file to write to.
+         * @return The number of bytes written.
+         * @throws IOException If the file cannot be written or an unloaded race cannot be read.
+         */
+        long writeTo(Path file) throws IOException {
+            Path directory = file.toAbsolutePath().getParent();
+            Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                ArrayList<Section> savedSections = new ArrayList<>(raceIds.length);
+                long length;
+                try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+                    byte[] header = Arrays.copyOf(MAGIC, HEADER_LENGTH);
+                    header[MAGIC.length] = VERSION;
+                    long position = write(channel, 0, header);
+                    for (int raceId:raceIds) {
+                        Section section = writeSection(channel, position, raceId);
+                        position += section.length;
+                        savedSections.add(section);
+                    }
+                    int teamsLength = writeTeams(channel, position, arrayListOfTeams, codec);
+                    byte[] index = encodeIndex(savedSections, counters, position, teamsLength, codec, 0, new int[0]);
+                    length = writeIndex(channel, position + teamsLength, index);
+                    channel.force(true);
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return length;
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+                close();
+            }
+        }
+
+        /**
+         * Writes a captured race as a section, encoding it if it had changed and copying it as it is if not.
+         * @param channel The archive being written.
+         * @param position The position to write the section at.
+         * @param raceId The ID of the race.
+         * @return The section.
+         * @throws IOException If the race cannot be read or written.
+         */
+        private Section writeSection(FileChannel channel, long position, int raceId) throws IOException {
+            Race race = take(raceId);
+            if (race != null) {
+                try {
+                    return writeRace(channel, position, race, codec);
+                } finally {
+                    written();
+                }
+            }
+            Section unloaded = storedSections.get(raceId);
+            byte[] spilled = spilledSections.get(raceId);
+            if (spilled == null) {
+                return copySection(unloaded, channel, position);
+            }
+            write(channel, position, spilled);
+            return new Section(raceId, unloaded.name, unloaded.stageIds, unloaded.segmentIds, null, position,
+                    spilled.length, unloaded.codec);
+        }
+
+        /**
+         * Takes a loaded race to write it, so the portal waits before changing it until it has been written.
+         * @param raceId The ID of the race.
+         * @return The race, or null if its copy on disk is used instead.
+         */
+        private synchronized Race take(int raceId) {
+            writingRace = races.remove(raceId);
+            return writingRace;
+        }
+
+        /**
+         * Lets the portal change the race that has just been written.
+         */
+        private synchronized void written() {
+            writingRace = null;
+            notifyAll();
+        }
+
+        /**
+         * Closes the channel the unloaded races are read through.
+         * @throws IOException If the channel cannot be closed.
+         */
+        void close() throws IOException {
+            if (source != null) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a race as a section of an archive, encoding it if it is loaded and copying it as it is, without
+     * decoding or recompressing it, if it is not.
+     * @param channel The archive being written.
+     * @param position The position to write the section at.
+     * @param raceId The ID of the race.
+     * @param race The race if it is loaded, otherwise null.
+     * @return The section, with no file set until the save is complete.
+     * @throws IOException If the race cannot be read or written.
+     */
+    private Section writeSection(FileChannel channel, long position, int raceId, Race race) throws IOException {
+        if (race != null) {
+            Section section = writeRace(channel, position, race, codec());
+            section.file = null;
+            return section;
+        }
+        return copySection(sections.get(raceId), channel, position);
+    }
+
+    /**
+     * Copies the section of a race that is not loaded into an archive as it is, without decoding it.
+     * @param unloaded The section of the race.
+     * @param channel The archive being written.
+     * @param position The position to write the section at.
+     * @return The copied section, with no file set until the save is complete.
+     * @throws IOException If the section cannot be read or written.
+     */
+    private static Section copySection(Section unloaded, FileChannel channel, long position) throws IOException {
+        long copied = 0;
+        while (copied < unloaded.length) {
+            channel.position(position + copied);
+            long count = unloaded.file.transferTo(unloaded.offset + copied, unloaded.length - copied, channel);
+            if (count <= 0) {
+                throw new IOException("Race archive is truncated");
+            }
+            copied += count;
+        }
+        return new Section(unloaded.raceId, unloaded.name, unloaded.stageIds, unloaded.segmentIds, null, position,
+                unloaded.length, unloaded.codec);
+    }
+
+    /**
+     * Gets the codec new sections are written with.
+     * @return DEFLATED if the archive is set to compress, otherwise PLAIN.
+     */
+    private int codec() {
+        return compressed ? DEFLATED : PLAIN;
+    }
+
+    /**
+     * Encodes a race straight into a file as a section that can be read on its own. The race passes through
+     * fixed-size buffers, so it is never held in memory encoded.
+     * @param channel The file being written.
+     * @param position The position to write the section at.
+     * @param race The race.
+     * @param codec How to encode the race, PLAIN or DEFLATED.
+     * @return The section recording where the race was written.
+     * @throws IOException If the file cannot be written to.
+     */
+    private static Section writeRace(FileChannel channel, long position, Race race, int codec) throws IOException {
+        SectionOutput output = new SectionOutput(channel, position);
+        Deflater deflater = codec == DEFLATED ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            DeflaterOutputStream deflated = deflater == null ? null
+                    : new DeflaterOutputStream(output, deflater, BUFFER_LENGTH);
+            SnapshotWriter writer = new SnapshotWriter(deflated == null ? output : deflated);
+            PortalSnapshot.writeRace(writer, race, codec == DEFLATED);
+            writer.flush();
+            if (deflated != null) {
+                deflated.finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return describe(race, channel, position, output.length(), codec);
+    }
+
+    /**
+     * Encodes the teams with their riders straight into a file as a section, compressing it if the archive is
+     * set to, and records where they were written.
+     * @param channel The file being written.
+     * @param position The position to write the section at.
+     * @param arrayListOfTeams The teams of the portal.
+     * @return The position after the section.
+     * @throws IOException If the file cannot be written to.
+     */
+    private long writeTeams(FileChannel channel, long position, ArrayList<Team> arrayListOfTeams)
+            throws IOException {
+        teamsOffset = position;
+        teamsLength = writeTeams(channel, position, arrayListOfTeams, codec());
+        teamsCodec = codec();
+        return position + teamsLength;
+    }
+
+    /**
+     * Encodes the teams with their riders straight into a file as a section.
+     * @param channel The file being written.
+     * @param position The position to write the section at.
+     * @param arrayListOfTeams The teams of the portal.
+     * @param codec How to encode the teams, PLAIN or DEFLATED.
+     * @return The length of the section.
+     * @throws IOException If the file cannot be written to.
+     */
+    private static int writeTeams(FileChannel channel, long position, ArrayList<Team> arrayListOfTeams, int codec)
+            throws IOException {
+        SectionOutput output = new SectionOutput(channel, position);
+        Deflater deflater = codec == DEFLATED ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            DeflaterOutputStream deflated = deflater == null ? null
+                    : new DeflaterOutputStream(output, deflater, BUFFER_LENGTH);
+            SnapshotWriter writer = new SnapshotWriter(deflated == null ? output : deflated);
+            PortalSnapshot.writeTeams(writer, arrayListOfTeams);
+            writer.flush();
+            if (deflated != null) {
+                deflated.finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return output.length();
+    }
+
+    /**
+     * Decodes a race from its section, streaming it from the file through fixed-size buffers.
+     * @param section The section of the race.
+     * @return The race.
+     * @throws IOException If the section cannot be read or decoded.
+     */
+    private static Race readRace(Section section) throws IOException {
+        Inflater inflater = section.codec == DEFLATED ? new Inflater() : null;
+        try {
+            InputStream input = new SectionInput(section.file, section.offset, section.length);
+            if (inflater != null) {
+                input = new InflaterInputStream(input, inflater, BUFFER_LENGTH);
+            }
+            return PortalSnapshot.readRace(new SnapshotReader(input), section.codec == DEFLATED);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decodes the teams with their riders from their section.
+     * @param file The archive file.
+     * @param offset The position of the section.
+     * @param length The length of the section.
+     * @param codec How the section is encoded, PLAIN or DEFLATED.
+     * @return The teams.
+     * @throws IOException If the section cannot be read or decoded.
+     */
+    private static ArrayList<Team> readTeams(FileChannel file, long offset, int length, int codec)
+            throws IOException {
+        Inflater inflater = codec == DEFLATED ? new Inflater() : null;
+        try {
+            InputStream input = new SectionInput(file, offset, length);
+            if (inflater != null) {
+                input = new InflaterInputStream(input, inflater, BUFFER_LENGTH);
+            }
+            return PortalSnapshot.readTeams(new SnapshotReader(input));
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Writes the index of an archive followed by the trailer that points to it.
+     * @param channel The archive being written.
+     * @param position The position to write the index at.
+     * @param index The encoded index.
+     * @return The position just after the trailer, which is the new length of the archive.
+     * @throws IOException If the archive cannot be written to.
+     */
+    private static long writeIndex(FileChannel channel, long position, byte[] index) throws IOException {
+        long indexOffset = position;
+        position = write(channel, position, index);
+        CRC32 crc = new CRC32();
+        crc.update(index);
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        trailer.putLong(indexOffset).putInt(index.length).putInt((int) crc.getValue()).put(MAGIC);
+        return write(channel, position, trailer.array());
+    }
+
+    /**
+     * Points the sections written by a save at the archive file and makes them the current sections.
+     * @param savedSections The sections of every race in the portal, as saved.
+     */
+    private void saved(ArrayList<Section> savedSections) {
+        for (Section section:savedSections) {
+            section.file = source;
+            sections.put(section.raceId, section);
+        }
+    }
+
+    /**
+     * Works out how many bytes of the archive file the current portal uses, to decide when to compact it.
+     */
+    private void measure() {
+        liveLength = HEADER_LENGTH + teamsLength + indexChainLength;
+        for (Section section:sections.values()) {
+            liveLength += section.length;
+        }
+    }
+
+    /**
+     * Records that a team or rider has changed, so the next save writes the teams again.
+     */
+    public void teamsChanged() {
+        teamsChanged = true;
+    }
+
+    /**
+     * Maps the loaded races of the portal by ID.
+     * @param arrayListOfRaces The loaded races of the portal.
+     * @return The races by ID.
+     */
+    private static IntObjectMap<Race> racesById(ArrayList<Race> arrayListOfRaces) {
+        IntObjectMap<Race> racesById = new IntObjectMap<>(arrayListOfRaces.size());
+        for (Race race:arrayListOfRaces) {
+            racesById.put(race.getRaceId(), race);
+        }
+        return racesById;
+    }
+
+    /**
+     * Gets the IDs of every race in the portal, loaded or not.
+     * @param arrayListOfRaces The loaded races of the portal.
+     * @return The race IDs in ascending order.
+     */
+    private int[] allRaceIds(ArrayList<Race> arrayListOfRaces) {
+        int[] unloadedRaceIds = getUnloadedRaceIds();
+        int[] raceIds = Arrays.copyOf(unloadedRaceIds, unloadedRaceIds.length + arrayListOfRaces.size());
+        for (int i = 0; i < arrayListOfRaces.size(); i++) {
+            raceIds[unloadedRaceIds.length + i] = arrayListOfRaces.get(i).getRaceId();
+        }
+        Arrays.sort(raceIds);
+        return raceIds;
+    }
+
+    /**
+     * Describes where a race is stored, collecting the IDs of its stages and segments for the index.
+     * @param race The race.
+     * @param file The file the race is stored in.
+     * @param offset The position of the race in the file.
+     * @param length The number of bytes the race takes up.
+     * @param codec How the race is encoded, PLAIN or DEFLATED.
+     * @return The section for the race.
+     */
+    private static Section describe(Race race, FileChannel file, long offset, int length, int codec) {
+        int[] stageIds = new int[race.arrayListOfStages.size()];
+        int numberOfSegments = 0;
+        for (int s = 0; s < stageIds.length; s++) {
+            Stage stage = race.arrayListOfStages.get(s);
+            stageIds[s] = stage.getStageId();
+            numberOfSegments += stage.arrayListOfSegments.size();
+        }
+        int[] segmentIds = new int[numberOfSegments];
+        int count = 0;
+        for (Stage stage:race.arrayListOfStages) {
+            for (Segment segment:stage.arrayListOfSegments) {
+                segmentIds[count++] = segment.getSegmentId();
+            }
+        }
+        return new Section(race.getRaceId(), race.getName(), stageIds, segmentIds, file, offset, length, codec);
+    }
+
+    /**
+     * Encodes an index of an archive: the counters, where the teams are stored, the index it follows on from, the
+     * races removed since that index, and where each race it covers is stored.
+     * @param savedSections The sections of the races the index covers.
+     * @param counters The race, stage, segment, team and rider counters.
+     * @param teamsOffset The position of the teams section.
+     * @param teamsLength The length of the teams section.
+     * @param teamsCodec How the teams section is encoded.
+     * @param previousEnd The position just after the trailer of the index this one follows on from, or 0 if the
+     *                    index covers every race.
+     * @param removedRaceIds The IDs of races removed since the previous index.
+     * @return The encoded index.
+     * @throws IOException If the index cannot be encoded.
+     */
+    private static byte[] encodeIndex(ArrayList<Section> savedSections, int[] counters, long teamsOffset,
+                                      int teamsLength, int teamsCodec, long previousEnd, int[] removedRaceIds)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SnapshotWriter writer = new SnapshotWriter(bytes);
+        for (int counter:counters) {
+            writer.writeVarInt(counter);
+        }
+        writer.writeVarLong(teamsOffset);
+        writer.writeVarInt(teamsLength);
+        writer.writeVarInt(teamsCodec);
+        writer.writeVarLong(previousEnd);
+        writer.writeVarInt(removedRaceIds.length);
+        for (int raceId:removedRaceIds) {
+            writer.writeVarInt(raceId);
+        }
+        writer.writeVarInt(savedSections.size());
+        for (Section section:savedSections) {
+            writer.writeVarInt(section.raceId);
+            writer.writeString(section.name);
+            writer.writeVarInt(section.stageIds.length);
+            for (int stageId:section.stageIds) {
+                writer.writeVarInt(stageId);
+            }
+            writer.writeVarInt(section.segmentIds.length);
+            for (int segmentId:section.segmentIds) {
+                writer.writeVarInt(segmentId);
+            }
+            writer.writeVarLong(section.offset);
+            writer.writeVarInt(section.length);
+            writer.writeVarInt(section.codec);
+        }
+        writer.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Makes the stages and segments of a race findable while it is not loaded.
+     * @param section The section of the race.
+     */
+    private void markUnloaded(Section section) {
+        for (int stageId:section.stageIds) {
+            raceOfUnloadedStage.put(stageId, section.raceId);
+        }
+        for (int segmentId:section.segmentIds) {
+            raceOfUnloadedSegment.put(segmentId, section.raceId);
+        }
+        numberOfUnloadedRaces++;
+    }
+
+    /**
+     * Stops looking up the stages and segments of a race through the archive, once it is loaded or removed.
+     * @param section The section of the race.
+     */
+    private void markLoaded(Section section) {
+        for (int stageId:section.stageIds) {
+            raceOfUnloadedStage.remove(stageId);
+        }
+        for (int segmentId:section.segmentIds) {
+            raceOfUnloadedSegment.remove(segmentId);
+        }
+        numberOfUnloadedRaces--;
+    }
+
+    /**
+     * Gets what identifies a file on disk, so that a file written over the archive under the same name, such as
+     * a background snapshot, is not mistaken for the archive.
+     * @param file The file.
+     * @return The key of the file, or null if the file system has none.
+     * @throws IOException If the attributes of the file cannot be read.
+     */
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Reads a range of bytes from a file.
+     * @param channel The file.
+     * @param offset The position of the first byte.
+     * @param length The number of bytes.
+     * @return A buffer holding the bytes, backed by an array.
+     * @throws IOException If the file ends before the range does.
+     */
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Race archive is truncated");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes bytes to a file at a given position.
+     * @param channel The file.
+     * @param offset The position to write at.
+     * @param bytes The bytes to write.
+     * @return The position after the last byte written.
+     * @throws IOException If the file cannot be written to.
+     */
+    private static long write(FileChannel channel, long offset, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        return offset + bytes.length;
+    }
+
+    /**
+     * Closes the archive file and deletes the spill file, after which only saved races can be read.
+     * @throws IOException If a file cannot be closed.
+     */
+    private void closeFiles() throws IOException {
+        if (source != null) {
+            source.close();
+            source = null;
+            sourceFile = null;
+            sourceKey = null;
+        }
+        if (spill != null) {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+            spill = null;
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Closes the files of the archive. Races that have not been loaded can no longer be read.
+     * @throws IOException If a file cannot be closed.
+     */
+    public void close() throws IOException {
+        closeFiles();
+    }
+}
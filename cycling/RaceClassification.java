@@ -0,0 +1,177 @@
+package cycling;
+
+/**
+ * The RaceClassification class holds the general, points and mountain classifications of a race, worked out from
+ * the totals of each classified rider. The general classification is sorted once and the points classifications
+ * are ranked from it.
+ */
+public class RaceClassification {
+    private final int[] rankedRiderIds;
+    private final long[] rankedTotalAdjustedElapsedTimes;
+    private final int[] rankedPoints;
+    private final int[] rankedMountainPoints;
+    private final int[] pointsClassificationRanks;
+    private final int[] mountainClassificationRanks;
+    private final int[] pointsClassificationRiderIds;
+    private final int[] mountainClassificationRiderIds;
+
+    /**
+     * Constructor for the RaceClassification class, working out the classifications of a race.
+     * @param riderIds The IDs of the classified riders, in any order.
+     * @param times The total adjusted elapsed time in nanoseconds of each classified rider.
+     * @param numberOfRiders The number of classified riders at the start of the arrays.
+     * @param totalPoints The total points of each rider, keyed by rider ID.
+     * @param totalMountainPoints The total mountain points of each rider, keyed by rider ID.
+     */
+    public RaceClassification(int[] riderIds, long[] times, int numberOfRiders, IntIntMap totalPoints,
+                              IntIntMap totalMountainPoints) {
+        int[] order = Ranking.sortedOrder(times, riderIds, numberOfRiders);
+        rankedRiderIds = new int[numberOfRiders];
+        rankedTotalAdjustedElapsedTimes = new long[numberOfRiders];
+        rankedPoints = new int[numberOfRiders];
+        rankedMountainPoints = new int[numberOfRiders];
+        for (int rank = 0; rank < numberOfRiders; rank++) {
+            int riderId = riderIds[order[rank]];
+            rankedRiderIds[rank] = riderId;
+            rankedTotalAdjustedElapsedTimes[rank] = times[order[rank]];
+            rankedPoints[rank] = totalPoints.get(riderId, 0);
+            rankedMountainPoints[rank] = totalMountainPoints.get(riderId, 0);
+        }
+        pointsClassificationRanks = rankByPoints(rankedPoints);
+        mountainClassificationRanks = rankByPoints(rankedMountainPoints);
+        pointsClassificationRiderIds = riderIdsInOrder(pointsClassificationRanks);
+        mountainClassificationRiderIds = riderIdsInOrder(mountainClassificationRanks);
+    }
+
+    /**
+     * Ranks the classified riders by points, most points first. Riders on the same points keep their order in
+     * the general classification.
+     * @param pointsInGeneralClassificationOrder The points of each rider, in general classification order.
+     * @return The general classification position of each rider, sorted by points.
+     */
+    private int[] rankByPoints(int[] pointsInGeneralClassificationOrder) {
+        int numberOfRiders = pointsInGeneralClassificationOrder.length;
+        long[] keys = new long[numberOfRiders];
+        int[] generalClassificationRanks = new int[numberOfRiders];
+        for (int rank = 0; rank < numberOfRiders; rank++) {
+            keys[rank] = -pointsInGeneralClassificationOrder[rank];
+            generalClassificationRanks[rank] = rank;
+        }
+        return Ranking.sortedOrder(keys, generalClassificationRanks, numberOfRiders);
+    }
+
+    /**
+     * Gets the IDs of the classified riders in a given order.
+     * @param generalClassificationRanks The general classification position of each rider, in the order wanted.
+     * @return The rider IDs in that order.
+     */
+    private int[] riderIdsInOrder(int[] generalClassificationRanks) {
+        int[] sortedRiderIds = new int[generalClassificationRanks.length];
+        for (int i = 0; i < sortedRiderIds.length; i++) {
+            sortedRiderIds[i] = rankedRiderIds[generalClassificationRanks[i]];
+        }
+        return sortedRiderIds;
+    }
+
+    /**
+     * Gets the number of riders in the classifications.
+     * @return The number of classified riders.
+     */
+    public int getNumberOfRiders() {
+        return rankedRiderIds.length;
+    }
+
+    /**
+     * Gets the IDs of the riders in general classification order.
+     * @return The rider IDs, starting with the rider with the smallest total adjusted elapsed time.
+     */
+    public int[] getGeneralClassificationRiderIds() {
+        return rankedRiderIds.clone();
+    }
+
+    /**
+     * Gets the total adjusted elapsed time of the rider at a position in the general classification.
+     * @param rank The position, starting from 0.
+     * @return The sum of the rider's adjusted elapsed times in nanoseconds.
+     */
+    public long getTotalAdjustedElapsedNanos(int rank) {
+        return rankedTotalAdjustedElapsedTimes[rank];
+    }
+
+    /**
+     * Gets the rider at a position in the general classification.
+     * @param rank The position, starting from 0.
+     * @return The ID of the rider.
+     */
+    public int getRiderId(int rank) {
+        return rankedRiderIds[rank];
+    }
+
+    /**
+     * Gets the total points of the rider at a position in the general classification.
+     * @param rank The position, starting from 0.
+     * @return The points of the rider.
+     */
+    public int getPoints(int rank) {
+        return rankedPoints[rank];
+    }
+
+    /**
+     * Gets the total mountain points of the rider at a position in the general classification.
+     * @param rank The position, starting from 0.
+     * @return The mountain points of the rider.
+     */
+    public int getMountainPoints(int rank) {
+        return rankedMountainPoints[rank];
+    }
+
+    /**
+     * Finds the general classification position of the rider at a position in the points classification.
+     * @param position The position in the points classification, starting from 0.
+     * @return The position of the same rider in the general classification.
+     */
+    public int getGeneralClassificationRankInPointsClassification(int position) {
+        return pointsClassificationRanks[position];
+    }
+
+    /**
+     * Finds the general classification position of the rider at a position in the mountain classification.
+     * @param position The position in the mountain classification, starting from 0.
+     * @return The position of the same rider in the general classification.
+     */
+    public int getGeneralClassificationRankInMountainClassification(int position) {
+        return mountainClassificationRanks[position];
+    }
+
+    /**
+     * Gets the total points of every classified rider.
+     * @return The points, in general classification order.
+     */
+    public int[] getRankedPoints() {
+        return rankedPoints.clone();
+    }
+
+    /**
+     * Gets the total mountain points of every classified rider.
+     * @return The mountain points, in general classification order.
+     */
+    public int[] getRankedMountainPoints() {
+        return rankedMountainPoints.clone();
+    }
+
+    /**
+     * Gets the IDs of the riders in points classification order.
+     * @return The rider IDs, starting with the rider with the most points.
+     */
+    public int[] getPointsClassificationRiderIds() {
+        return pointsClassificationRiderIds.clone();
+    }
+
+    /**
+     * Gets the IDs of the riders in mountain classification order.
+     * @return The rider IDs, starting with the rider with the most mountain points.
+     */
+    public int[] getMountainClassificationRiderIds() {
+        return mountainClassificationRiderIds.clone();
+    }
+}
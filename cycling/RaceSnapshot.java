@@ -0,0 +1,222 @@
+package cycling;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The RaceSnapshot class holds what the classifications of a race are worked out from at one moment: each
+ * stage with the version of its results, and the adjusted elapsed times and points those results gave. Taking
+ * a snapshot only copies: stages whose times and points are already known, from the last snapshot of the race
+ * or the stage itself, keep them, and every other stage has its checkpoint times copied. Those copies are then
+ * ranked by {@link #workOut(ClassificationParallelism)}, which reads nothing of the race, so it and the adding up
+ * can both run after the lock the snapshot was taken under has been released, and writers do not wait for them.
+ * Once the classifications are set the snapshot is published on its race, and a query may use them without a
+ * lock for as long as every stage of the race is the same object at the same version.
+ */
+public class RaceSnapshot {
+    private final Stage[] stages;
+    private final int[] stageIds;
+    private final int[] resultsVersions;
+    private final AdjustedElapsedTimes[] stageTimes;
+    private final StagePoints[] stagePoints;
+    private final CapturedStage[] capturedStages;//the copies of the stages still to be worked out, by position
+    private final int[] stagesToWorkOut;
+    private int numberToWorkOut;
+    private RaceClassification classification;//set once, before the snapshot is published
+
+    /**
+     * Constructor for the RaceSnapshot class, taking the results of every stage of a race. The stages must not
+     * change while it runs.
+     * @param arrayListOfStages The stages of the race.
+     */
+    public RaceSnapshot(ArrayList<Stage> arrayListOfStages) {
+        this(arrayListOfStages, null);
+    }
+
+    /**
+     * Constructor for the RaceSnapshot class, taking the results of every stage of a race. A stage still at the
+     * version it had in the previous snapshot keeps the times and points worked out for it there, and so does a
+     * stage that has them already. The rest only have their checkpoint times copied, to be worked out later by
+     * {@link #workOut(ClassificationParallelism)}. The stages must not change while it runs.
+     * @param arrayListOfStages The stages of the race.
+     * @param previous The last snapshot published on the race, or null if there is none.
+     */
+    public RaceSnapshot(ArrayList<Stage> arrayListOfStages, RaceSnapshot previous) {
+        int numberOfStages = arrayListOfStages.size();
+        stages = new Stage[numberOfStages];
+        stageIds = new int[numberOfStages];
+        resultsVersions = new int[numberOfStages];
+        stageTimes = new AdjustedElapsedTimes[numberOfStages];
+        stagePoints = new StagePoints[numberOfStages];
+        capturedStages = new CapturedStage[numberOfStages];
+        stagesToWorkOut = new int[numberOfStages];
+        for (int i = 0; i < numberOfStages; i++) {
+            Stage stage = arrayListOfStages.get(i);
+            stages[i] = stage;
+            stageIds[i] = stage.getStageId();
+            resultsVersions[i] = stage.getResultsVersion();
+            if (previous != null && i < previous.stages.length && previous.stages[i] == stage
+                    && previous.resultsVersions[i] == resultsVersions[i]) {
+                stageTimes[i] = previous.stageTimes[i];
+                stagePoints[i] = previous.stagePoints[i];
+            } else if (stage.hasStagePoints()) {
+                stageTimes[i] = stage.getAdjustedElapsedTimes();
+                stagePoints[i] = stage.getStagePoints();
+            } else {
+                capturedStages[i] = new CapturedStage(stage);
+                stagesToWorkOut[numberToWorkOut++] = i;
+            }
+        }
+    }
+
+    /**
+     * The CapturedStage class is a copy of what the times and points of a stage are worked out from, taken
+     * while the stage could not change.
+     */
+    private static final class CapturedStage {
+        private final StageType stageType;
+        private final SegmentType[] segmentTypes;
+        private final CheckpointColumns columns;
+
+        /**
+         * Constructor for the CapturedStage class.
+         * @param stage The stage to copy.
+         */
+        CapturedStage(Stage stage) {
+            stageType = stage.getStageType();
+            segmentTypes = stage.getSegmentTypesInLocationOrder();
+            columns = stage.getCheckpointColumns().copy();
+        }
+    }
+
+    /**
+     * Works out the times and points of the stages that were copied when the snapshot was taken, in parallel if
+     * there are enough of them. Only the copies are read, so no lock on the race is needed. The stages are not
+     * given what is worked out, as they may have changed since. Called by the one thread holding the snapshot,
+     * before it is added up; once every stage is worked out it does nothing.
+     * @param parallelism How to work out the stages.
+     */
+    public void workOut(ClassificationParallelism parallelism) {
+        if (numberToWorkOut == 0) {
+            return;
+        }
+        if (parallelism.isParallel(numberToWorkOut)) {
+            parallelism.invoke(new WorkOutStages(0, numberToWorkOut));
+        } else {
+            for (int i = 0; i < numberToWorkOut; i++) {
+                workOutStage(stagesToWorkOut[i]);
+            }
+        }
+        numberToWorkOut = 0;
+    }
+
+    /**
+     * Works out the times and points of one copied stage, then lets go of the copy.
+     * @param index The position of the stage in the race.
+     */
+    private void workOutStage(int index) {
+        CapturedStage captured = capturedStages[index];
+        AdjustedElapsedTimes times = new AdjustedElapsedTimes(captured.columns, captured.stageType);
+        stageTimes[index] = times;
+        stagePoints[index] = new StagePoints(captured.stageType, captured.segmentTypes, captured.columns, times);
+        capturedStages[index] = null;
+    }
+
+    /**
+     * The WorkOutStages class works out the times and points of a range of the copied stages, splitting it in
+     * half until each task has one stage. Each task writes only the positions of its own stages.
+     */
+    private final class WorkOutStages extends RecursiveAction {
+        private final int start;
+        private final int end;
+
+        /**
+         * Constructor for the WorkOutStages class.
+         * @param start The first position in stagesToWorkOut to work out.
+         * @param end The position in stagesToWorkOut after the last to work out.
+         */
+        WorkOutStages(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                workOutStage(stagesToWorkOut[start]);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new WorkOutStages(start, middle), new WorkOutStages(middle, end));
+        }
+    }
+
+    /**
+     * Checks whether the race still has the stages and results the snapshot was taken from.
+     * @param arrayListOfStages The stages of the race now.
+     * @return true if every stage is the same, at the same version.
+     */
+    public boolean isCurrent(ArrayList<Stage> arrayListOfStages) {
+        if (arrayListOfStages.size() != stages.length) {
+            return false;
+        }
+        for (int i = 0; i < stages.length; i++) {
+            Stage stage = arrayListOfStages.get(i);
+            if (stage != stages[i] || stage.getResultsVersion() != resultsVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of stages in the snapshot.
+     * @return The number of stages.
+     */
+    public int getNumberOfStages() {
+        return stages.length;
+    }
+
+    /**
+     * Gets the ID of a stage in the snapshot.
+     * @param index The position of the stage in the race.
+     * @return The ID of the stage.
+     */
+    public int getStageId(int index) {
+        return stageIds[index];
+    }
+
+    /**
+     * Gets the adjusted elapsed times of a stage in the snapshot.
+     * @param index The position of the stage in the race.
+     * @return The adjusted elapsed times of the stage.
+     */
+    public AdjustedElapsedTimes getStageTimes(int index) {
+        return stageTimes[index];
+    }
+
+    /**
+     * Gets the points of a stage in the snapshot.
+     * @param index The position of the stage in the race.
+     * @return The points of the stage.
+     */
+    public StagePoints getStagePoints(int index) {
+        return stagePoints[index];
+    }
+
+    /**
+     * Gets the classifications worked out from the snapshot.
+     * @return The classifications, or null if they have not been set yet.
+     */
+    public RaceClassification getClassification() {
+        return classification;
+    }
+
+    /**
+     * Sets the classifications worked out from the snapshot, before it is published.
+     * @param classification The classifications.
+     */
+    void setClassification(RaceClassification classification) {
+        this.classification = classification;
+    }
+}
@@ -0,0 +1,268 @@
+package cycling;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The RaceStandings class keeps the running total adjusted elapsed time, points and mountain points of every
+ * rider in a race. The times and points each stage has added are remembered, so when the results of one stage
+ * change only that stage's contribution is taken off the totals and added again. The totals are brought to
+ * whatever snapshot of the race they are given, even one older than the last, so snapshots taken by different
+ * threads may be added up in any order. When enough stages have to be added at once, such as the first time a
+ * race is classified, they are added up in parallel into separate totals that are then added together. The
+ * classifications worked out from the totals are kept until a stage changes, so reading them while nothing has
+ * changed only copies the answer.
+ */
+public class RaceStandings {
+    private final IntObjectMap<AdjustedElapsedTimes> timesAddedByStage = new IntObjectMap<>();
+    private final IntObjectMap<StagePoints> pointsAddedByStage = new IntObjectMap<>();
+    private final Totals totals = new Totals(0);
+    private RaceClassification classification;
+
+    /**
+     * Gets the classifications of a snapshot of the race, first bringing the totals to the snapshot: stages
+     * whose results differ from those last added are taken off and added again, and stages not in the snapshot
+     * are taken off.
+     * @param snapshot The snapshot of the race.
+     * @param parallelism How to add up the stages.
+     * @return The classifications of the race.
+     */
+    public RaceClassification getClassification(RaceSnapshot snapshot, ClassificationParallelism parallelism) {
+        int[] stagesToAdd = new int[snapshot.getNumberOfStages()];
+        int numberToAdd = 0;
+        for (int i = 0; i < snapshot.getNumberOfStages(); i++) {
+            int stageId = snapshot.getStageId(i);
+            if (timesAddedByStage.get(stageId) != snapshot.getStageTimes(i)) {
+                takeOffStage(stageId);
+                stagesToAdd[numberToAdd++] = i;
+            }
+        }
+        if (parallelism.isParallel(numberToAdd)) {
+            addStages(snapshot, stagesToAdd, numberToAdd, parallelism);
+        } else {
+            for (int k = 0; k < numberToAdd; k++) {
+                int i = stagesToAdd[k];
+                addStage(snapshot.getStageId(i), snapshot.getStageTimes(i), snapshot.getStagePoints(i));
+            }
+        }
+        if (timesAddedByStage.size() > snapshot.getNumberOfStages()) {
+            for (int stageId:timesAddedByStage.keys()) {
+                if (!containsStage(snapshot, stageId)) {
+                    takeOffStage(stageId);
+                }
+            }
+        }
+        if (classification == null) {
+            classification = buildClassification();
+        }
+        return classification;
+    }
+
+    /**
+     * Checks whether a snapshot has a stage.
+     * @param snapshot The snapshot of the race.
+     * @param stageId The ID of the stage.
+     * @return true if the stage is in the snapshot.
+     */
+    private static boolean containsStage(RaceSnapshot snapshot, int stageId) {
+        for (int i = 0; i < snapshot.getNumberOfStages(); i++) {
+            if (snapshot.getStageId(i) == stageId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the adjusted elapsed times and points of a stage to the totals.
+     * @param stageId The ID of the stage.
+     * @param times The adjusted elapsed times of the stage.
+     * @param points The points of the stage, worked out from the same results as the times.
+     */
+    private void addStage(int stageId, AdjustedElapsedTimes times, StagePoints points) {
+        timesAddedByStage.put(stageId, times);
+        pointsAddedByStage.put(stageId, points);
+        if (times.getNumberOfRiders() > 0) {
+            totals.add(times, points);
+            classification = null;
+        }
+    }
+
+    /**
+     * Adds the adjusted elapsed times and points of several stages to the totals, adding them up on the pool
+     * first and then adding the sum to the totals in one pass.
+     * @param snapshot The snapshot of the race.
+     * @param stagesToAdd The positions in the snapshot of the stages to add.
+     * @param numberToAdd The number of stages to add, at the start of stagesToAdd.
+     * @param parallelism The pool to add them up on.
+     */
+    private void addStages(RaceSnapshot snapshot, int[] stagesToAdd, int numberToAdd,
+                           ClassificationParallelism parallelism) {
+        Totals sum = parallelism.invoke(new AddUpStages(snapshot, stagesToAdd, 0, numberToAdd));
+        for (int k = 0; k < numberToAdd; k++) {
+            int i = stagesToAdd[k];
+            timesAddedByStage.put(snapshot.getStageId(i), snapshot.getStageTimes(i));
+            pointsAddedByStage.put(snapshot.getStageId(i), snapshot.getStagePoints(i));
+        }
+        totals.add(sum);
+        classification = null;
+    }
+
+    /**
+     * The Totals class holds the adjusted elapsed time, points, mountain points and number of stages ridden of
+     * each rider over a group of stages. The totals of two groups add up to the totals of both, and a rider is
+     * dropped once every stage they rode has been taken off.
+     */
+    private static final class Totals {
+        final IntLongMap adjustedElapsedTimes;
+        final IntIntMap points;
+        final IntIntMap mountainPoints;
+        final IntIntMap stagesRidden;
+        int stagesWithResults;
+
+        /**
+         * Constructor for the Totals class, with no stages added.
+         * @param expectedRiders The number of riders expected.
+         */
+        Totals(int expectedRiders) {
+            adjustedElapsedTimes = new IntLongMap(expectedRiders);
+            points = new IntIntMap(expectedRiders);
+            mountainPoints = new IntIntMap(expectedRiders);
+            stagesRidden = new IntIntMap(expectedRiders);
+        }
+
+        /**
+         * Adds the adjusted elapsed times and points of a stage.
+         * @param times The adjusted elapsed times of the stage.
+         * @param stagePoints The points of the stage.
+         */
+        void add(AdjustedElapsedTimes times, StagePoints stagePoints) {
+            int numberOfRiders = times.getNumberOfRiders();
+            if (numberOfRiders == 0) {
+                return;
+            }
+            stagesWithResults++;
+            for (int rank = 0; rank < numberOfRiders; rank++) {
+                int riderId = times.getRiderId(rank);
+                adjustedElapsedTimes.add(riderId, times.getAdjustedElapsedNanos(rank));
+                points.add(riderId, stagePoints.getPoints(rank));
+                mountainPoints.add(riderId, stagePoints.getMountainPoints(rank));
+                stagesRidden.add(riderId, 1);
+            }
+        }
+
+        /**
+         * Adds the totals of another group of stages.
+         * @param other The totals of the other group.
+         */
+        void add(Totals other) {
+            stagesWithResults += other.stagesWithResults;
+            for (int riderId:other.stagesRidden.keys()) {
+                adjustedElapsedTimes.add(riderId, other.adjustedElapsedTimes.get(riderId, 0L));
+                points.add(riderId, other.points.get(riderId, 0));
+                mountainPoints.add(riderId, other.mountainPoints.get(riderId, 0));
+                stagesRidden.add(riderId, other.stagesRidden.get(riderId, 0));
+            }
+        }
+
+        /**
+         * Takes off the adjusted elapsed times and points of a stage that were added before.
+         * @param times The adjusted elapsed times of the stage.
+         * @param stagePoints The points of the stage.
+         */
+        void takeOff(AdjustedElapsedTimes times, StagePoints stagePoints) {
+            stagesWithResults--;
+            for (int rank = 0; rank < times.getNumberOfRiders(); rank++) {
+                int riderId = times.getRiderId(rank);
+                if (stagesRidden.add(riderId, -1) == 0) {
+                    stagesRidden.remove(riderId);
+                    adjustedElapsedTimes.remove(riderId);
+                    points.remove(riderId);
+                    mountainPoints.remove(riderId);
+                } else {
+                    adjustedElapsedTimes.add(riderId, -times.getAdjustedElapsedNanos(rank));
+                    points.add(riderId, -stagePoints.getPoints(rank));
+                    mountainPoints.add(riderId, -stagePoints.getMountainPoints(rank));
+                }
+            }
+        }
+    }
+
+    /**
+     * The AddUpStages class adds up the times and points of a range of stages, splitting it in half until each
+     * task has one stage and adding the smaller of each pair of totals into the larger.
+     */
+    private static final class AddUpStages extends RecursiveTask<Totals> {
+        private final RaceSnapshot snapshot;
+        private final int[] stageIndexes;
+        private final int start;
+        private final int end;
+
+        /**
+         * Constructor for the AddUpStages class.
+         * @param snapshot The snapshot of the race.
+         * @param stageIndexes The positions in the snapshot of the stages to add up.
+         * @param start The first position in stageIndexes to add up.
+         * @param end The position in stageIndexes after the last to add up.
+         */
+        AddUpStages(RaceSnapshot snapshot, int[] stageIndexes, int start, int end) {
+            this.snapshot = snapshot;
+            this.stageIndexes = stageIndexes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (end - start == 1) {
+                AdjustedElapsedTimes times = snapshot.getStageTimes(stageIndexes[start]);
+                Totals totals = new Totals(times.getNumberOfRiders());
+                totals.add(times, snapshot.getStagePoints(stageIndexes[start]));
+                return totals;
+            }
+            int middle = (start + end) >>> 1;
+            AddUpStages second = new AddUpStages(snapshot, stageIndexes, middle, end);
+            second.fork();
+            Totals first = new AddUpStages(snapshot, stageIndexes, start, middle).compute();
+            Totals other = second.join();
+            if (first.stagesRidden.size() < other.stagesRidden.size()) {
+                other.add(first);
+                return other;
+            }
+            first.add(other);
+            return first;
+        }
+    }
+
+    /**
+     * Takes the adjusted elapsed times and points a stage added off the totals, if it added any.
+     * @param stageId The ID of the stage.
+     */
+    private void takeOffStage(int stageId) {
+        AdjustedElapsedTimes times = timesAddedByStage.remove(stageId);
+        StagePoints points = pointsAddedByStage.remove(stageId);
+        if (times == null || times.getNumberOfRiders() == 0) {
+            return;
+        }
+        totals.takeOff(times, points);
+        classification = null;
+    }
+
+    /**
+     * Works out the classifications from the totals. Only riders with a result in every stage that has results
+     * are classified.
+     * @return The classifications of the race.
+     */
+    private RaceClassification buildClassification() {
+        int[] riderIds = totals.stagesRidden.keys();
+        long[] times = new long[riderIds.length];
+        int numberOfRiders = 0;
+        for (int riderId:riderIds) {
+            if (totals.stagesRidden.get(riderId, 0) == totals.stagesWithResults) {
+                riderIds[numberOfRiders] = riderId;
+                times[numberOfRiders] = totals.adjustedElapsedTimes.get(riderId, 0L);
+                numberOfRiders++;
+            }
+        }
+        return new RaceClassification(riderIds, times, numberOfRiders, totals.points, totals.mountainPoints);
+    }
+}
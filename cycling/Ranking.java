@@ -0,0 +1,82 @@
+package cycling;
+
+/**
+ * The Ranking class sorts riders by a primitive time or score without boxing, which is what every
+ * classification in the cycling portal is built on.
+ */
+public class Ranking {
+
+    /**
+     * Works out the order of entries sorted ascending by key, using the tie breakers (normally rider IDs)
+     * when two keys are equal so that the order is always the same.
+     * @param keys The key of each entry, such as an elapsed time in nanoseconds.
+     * @param tieBreakers The value used to order entries with equal keys.
+     * @param count The number of entries to sort, starting from index 0.
+     * @return The indexes of the entries in sorted order.
+     */
+    public static int[] sortedOrder(long[] keys, int[] tieBreakers, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        if (count > 1) {
+            mergeSort(order, new int[count], 0, count, keys, tieBreakers);
+        }
+        return order;
+    }
+
+    /**
+     * Sorts part of an array of indexes by their keys.
+     * @param order The indexes being sorted.
+     * @param buffer Working space the same length as the indexes.
+     * @param from The first position to sort.
+     * @param to The position after the last one to sort.
+     * @param keys The key of each entry.
+     * @param tieBreakers The value used to order entries with equal keys.
+     */
+    private static void mergeSort(int[] order, int[] buffer, int from, int to, long[] keys, int[] tieBreakers) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int entry = order[i];
+                int j = i - 1;
+                while (j >= from && comesBefore(entry, order[j], keys, tieBreakers)) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = entry;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(order, buffer, from, middle, keys, tieBreakers);
+        mergeSort(order, buffer, middle, to, keys, tieBreakers);
+        if (!comesBefore(order[middle], order[middle - 1], keys, tieBreakers)) {
+            return;
+        }
+        System.arraycopy(order, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && !comesBefore(buffer[right], buffer[left], keys, tieBreakers))) {
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Checks whether one entry sorts before another.
+     * @param a The first entry.
+     * @param b The second entry.
+     * @param keys The key of each entry.
+     * @param tieBreakers The value used to order entries with equal keys.
+     * @return True if the first entry sorts strictly before the second.
+     */
+    private static boolean comesBefore(int a, int b, long[] keys, int[] tieBreakers) {
+        if (keys[a] != keys[b]) {
+            return keys[a] < keys[b];
+        }
+        return tieBreakers[a] < tieBreakers[b];
+    }
+}
@@ -0,0 +1,405 @@
+package cycling;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The ResultCsvReader class reads rider results from a CSV file, one result per line: the stage ID, the rider ID,
+ * and then the time the rider reached each checkpoint, written as hours, minutes and optionally seconds with a
+ * fraction, such as 12:04:31.250. The file is read through a channel into a buffer that is reused for the whole
+ * file, and the IDs and times are parsed straight from its bytes, so no strings are made for lines or fields.
+ * Blank lines are skipped, as is a first non-blank line that does not start with a number, which is taken to be
+ * a header. Fields may be padded with spaces or tabs and wrapped in double quotes, and a trailing comma is
+ * ignored.
+ */
+public class ResultCsvReader implements Closeable {
+    private static final int BUFFER_LENGTH = 64 * 1024;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final ReadableByteChannel channel;
+    private byte[] bytes = new byte[BUFFER_LENGTH];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private int lineNumber;
+    private boolean headerChecked;
+    private int stageId;
+    private int riderId;
+    private long[] checkpoints = new long[16];
+    private int numberOfCheckpoints;
+    private String error;
+
+    /**
+     * Constructor for the ResultCsvReader class.
+     * @param channel The channel to read the file from, which is closed when the reader is closed.
+     */
+    public ResultCsvReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Reads the next result in the file. If the line cannot be parsed, the reader still moves on to it and
+     * getError says what is wrong with it, so one bad line does not stop the rest of the file being read.
+     * @return true if a line was read, or false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int end = findLineEnd();
+            if (end < 0) {
+                return false;
+            }
+            int lineStart = position;
+            position = end < limit ? end + 1 : end;
+            lineNumber++;
+            if (lineNumber == 1 && startsWith(lineStart, end, BYTE_ORDER_MARK)) {
+                lineStart += BYTE_ORDER_MARK.length;
+            }
+            if (end > lineStart && bytes[end - 1] == '\r') {
+                end--;
+            }
+            int first = skipPadding(lineStart, end);
+            if (first == end) {
+                continue;
+            }
+            if (!headerChecked) {
+                headerChecked = true;
+                if (!isDigit(first)) {
+                    continue;
+                }
+            }
+            parse(lineStart, end);
+            return true;
+        }
+    }
+
+    /**
+     * Finds the end of the line starting at the current position, reading more of the file or growing the
+     * buffer until the whole line is in it.
+     * @return The index of the newline ending the line, or the end of the buffered bytes if the file ends
+     *         without one, or -1 if there are no more lines.
+     * @throws IOException If the file cannot be read.
+     */
+    private int findLineEnd() throws IOException {
+        int scanned = position;
+        while (true) {
+            for (int i = scanned; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    return i;
+                }
+            }
+            if (endOfInput) {
+                return position < limit ? limit : -1;
+            }
+            scanned = limit - position;
+            fill();
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it if a single line fills it, and reads as much
+     * of the file as fits after them.
+     * @throws IOException If the file cannot be read.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length << 1);
+        }
+        System.arraycopy(bytes, position, bytes, 0, remaining);
+        position = 0;
+        limit = remaining;
+        int count = channel.read(ByteBuffer.wrap(bytes, limit, bytes.length - limit));
+        if (count < 0) {
+            endOfInput = true;
+        } else {
+            limit += count;
+        }
+    }
+
+    /**
+     * Parses the fields of a line, setting the error instead if they are not a stage ID, a rider ID and at least
+     * one time.
+     * @param start The index of the first byte of the line.
+     * @param end The index just after the last byte of the line, without its line ending.
+     */
+    private void parse(int start, int end) {
+        error = null;
+        numberOfCheckpoints = 0;
+        int fieldEnd = fieldEnd(start, end);
+        stageId = parseId(start, fieldEnd);
+        if (stageId < 0) {
+            error = "The stage ID is not a number";
+            return;
+        }
+        if (fieldEnd == end) {
+            error = "The line has no rider ID";
+            return;
+        }
+        start = fieldEnd + 1;
+        fieldEnd = fieldEnd(start, end);
+        riderId = parseId(start, fieldEnd);
+        if (riderId < 0) {
+            error = "The rider ID is not a number";
+            return;
+        }
+        while (fieldEnd < end) {
+            start = fieldEnd + 1;
+            fieldEnd = fieldEnd(start, end);
+            if (fieldEnd == end && skipPadding(start, end) == end) {
+                break;
+            }
+            long time = parseTime(start, fieldEnd);
+            if (time < 0) {
+                error = "Checkpoint " + (numberOfCheckpoints + 1) + " is not a time of day";
+                return;
+            }
+            if (numberOfCheckpoints == checkpoints.length) {
+                checkpoints = Arrays.copyOf(checkpoints, numberOfCheckpoints << 1);
+            }
+            checkpoints[numberOfCheckpoints++] = time;
+        }
+        if (numberOfCheckpoints == 0) {
+            error = "The line has no checkpoint times";
+        }
+    }
+
+    /**
+     * Finds the end of the field starting at a given index.
+     * @param start The index of the first byte of the field.
+     * @param end The end of the line.
+     * @return The index of the comma after the field, or the end of the line.
+     */
+    private int fieldEnd(int start, int end) {
+        int i = start;
+        while (i < end && bytes[i] != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parses a field holding a non-negative ID.
+     * @param start The index of the first byte of the field.
+     * @param end The index just after the last byte of the field.
+     * @return The ID, or -1 if the field is not a number that fits in an int.
+     */
+    private int parseId(int start, int end) {
+        int i = skipPadding(start, end);
+        end = trimPadding(i, end);
+        if (i == end) {
+            return -1;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a field holding a time of day as hours and minutes, optionally followed by seconds and a fraction
+     * of a second of up to nine digits.
+     * @param start The index of the first byte of the field.
+     * @param end The index just after the last byte of the field.
+     * @return The time in nanoseconds of the day, or -1 if the field is not a valid time.
+     */
+    private long parseTime(int start, int end) {
+        int i = skipPadding(start, end);
+        end = trimPadding(i, end);
+        int hourEnd = i;
+        while (hourEnd < end && hourEnd - i < 2 && isDigit(hourEnd)) {
+            hourEnd++;
+        }
+        if (hourEnd == i || hourEnd + 3 > end || bytes[hourEnd] != ':') {
+            return -1;
+        }
+        int hours = parseDigits(i, hourEnd);
+        int minutes = parseTwoDigits(hourEnd + 1);
+        i = hourEnd + 3;
+        int seconds = 0;
+        long nanos = 0;
+        if (i < end) {
+            if (bytes[i] != ':' || i + 3 > end) {
+                return -1;
+            }
+            seconds = parseTwoDigits(i + 1);
+            i += 3;
+            if (i < end) {
+                int digits = end - i - 1;
+                if (bytes[i] != '.' || digits < 1 || digits > 9) {
+                    return -1;
+                }
+                int fraction = parseDigits(i + 1, end);
+                if (fraction < 0) {
+                    return -1;
+                }
+                nanos = fraction;
+                for (int d = digits; d < 9; d++) {
+                    nanos *= 10;
+                }
+            }
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return -1;
+        }
+        return ((hours * 60L + minutes) * 60L + seconds) * NANOS_PER_SECOND + nanos;
+    }
+
+    /**
+     * Parses two digits.
+     * @param start The index of the first digit.
+     * @return The number, or -1 if either byte is not a digit.
+     */
+    private int parseTwoDigits(int start) {
+        return parseDigits(start, start + 2);
+    }
+
+    /**
+     * Parses a run of digits.
+     * @param start The index of the first digit.
+     * @param end The index just after the last digit.
+     * @return The number, or -1 if any byte is not a digit.
+     */
+    private int parseDigits(int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            if (!isDigit(i)) {
+                return -1;
+            }
+            value = value * 10 + bytes[i] - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Checks whether a byte of the buffer is a digit.
+     * @param index The index of the byte.
+     * @return true if the byte is an ASCII digit.
+     */
+    private boolean isDigit(int index) {
+        return bytes[index] >= '0' && bytes[index] <= '9';
+    }
+
+    /**
+     * Skips spaces, tabs and quotes at the start of a field.
+     * @param start The index of the first byte of the field.
+     * @param end The index just after the last byte of the field.
+     * @return The index of the first byte that is not padding, or the end.
+     */
+    private int skipPadding(int start, int end) {
+        while (start < end && isPadding(bytes[start])) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Skips spaces, tabs and quotes at the end of a field.
+     * @param start The index of the first byte of the field that is not padding.
+     * @param end The index just after the last byte of the field.
+     * @return The index just after the last byte that is not padding.
+     */
+    private int trimPadding(int start, int end) {
+        while (end > start && isPadding(bytes[end - 1])) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Checks whether a byte pads a field.
+     * @param b The byte.
+     * @return true for a space, a tab or a double quote.
+     */
+    private static boolean isPadding(byte b) {
+        return b == ' ' || b == '\t' || b == '"';
+    }
+
+    /**
+     * Checks whether a line starts with given bytes.
+     * @param start The index of the first byte of the line.
+     * @param end The end of the line.
+     * @param prefix The bytes to look for.
+     * @return true if the line starts with the prefix.
+     */
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of the line last read, counting from 1 and including blank lines and the header.
+     * @return The line number.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Gets what is wrong with the line last read.
+     * @return A description of the problem, or null if the line was read as a result.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Gets the stage ID of the result last read.
+     * @return The stage ID.
+     */
+    public int getStageId() {
+        return stageId;
+    }
+
+    /**
+     * Gets the rider ID of the result last read.
+     * @return The rider ID.
+     */
+    public int getRiderId() {
+        return riderId;
+    }
+
+    /**
+     * Gets the number of checkpoint times of the result last read.
+     * @return The number of times on the line.
+     */
+    public int getNumberOfCheckpoints() {
+        return numberOfCheckpoints;
+    }
+
+    /**
+     * Gets the checkpoint times of the result last read.
+     * @return A new array of the times, in nanoseconds of the day.
+     */
+    public long[] getCheckpoints() {
+        return Arrays.copyOf(checkpoints, numberOfCheckpoints);
+    }
+
+    /**
+     * Closes the channel the file is read from.
+     * @throws IOException If the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
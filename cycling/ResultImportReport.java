@@ -0,0 +1,89 @@
+package cycling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The ResultImportReport class describes how a file of results was imported: how many lines held results, how
+ * many of them were registered, and what was wrong with each line that was not. Only the first thousand problems
+ * are kept, so a file in the wrong format does not fill memory with them, but every one is counted.
+ */
+public class ResultImportReport {
+    private static final int MAX_ERRORS = 1000;
+    private int numberOfRows;
+    private int numberOfImportedResults;
+    private int numberOfErrors;
+    private int[] errorLineNumbers = new int[16];
+    private final ArrayList<String> arrayListOfErrorMessages = new ArrayList<>();
+
+    /**
+     * Records that a line holding a result, or meant to, was read.
+     */
+    void rowRead() {
+        numberOfRows++;
+    }
+
+    /**
+     * Records that results were registered.
+     * @param count The number of results.
+     */
+    void imported(int count) {
+        numberOfImportedResults += count;
+    }
+
+    /**
+     * Records that a line was not imported.
+     * @param lineNumber The number of the line in the file, counting from 1.
+     * @param message What was wrong with the line.
+     */
+    void error(int lineNumber, String message) {
+        if (numberOfErrors < MAX_ERRORS) {
+            if (numberOfErrors == errorLineNumbers.length) {
+                errorLineNumbers = Arrays.copyOf(errorLineNumbers, numberOfErrors << 1);
+            }
+            errorLineNumbers[numberOfErrors] = lineNumber;
+            arrayListOfErrorMessages.add(message);
+        }
+        numberOfErrors++;
+    }
+
+    /**
+     * Gets the number of lines that held a result or were meant to, not counting blank lines or a header.
+     * @return The number of rows read.
+     */
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * Gets the number of results registered.
+     * @return The number of rows imported.
+     */
+    public int getNumberOfImportedResults() {
+        return numberOfImportedResults;
+    }
+
+    /**
+     * Gets the number of rows that were not imported.
+     * @return The number of problems found, including any beyond those kept.
+     */
+    public int getNumberOfErrors() {
+        return numberOfErrors;
+    }
+
+    /**
+     * Gets the line numbers of the rows that were not imported, in the order they appear in the file.
+     * @return The line numbers of the problems kept, counting from 1.
+     */
+    public int[] getErrorLineNumbers() {
+        return Arrays.copyOf(errorLineNumbers, arrayListOfErrorMessages.size());
+    }
+
+    /**
+     * Gets what was wrong with each row that was not imported, in the same order as the line numbers.
+     * @return The messages of the problems kept.
+     */
+    public String[] getErrorMessages() {
+        return arrayListOfErrorMessages.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,147 @@
+package cycling;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The ResultInbox class collects results offered to a stage by many threads at once, until they are moved into
+ * the stage. It has a slot for each rider ID, held in chunks of 1024 riders, and a result is offered by a single
+ * compare-and-set of its rider's slot from empty, which also makes sure only one result per rider gets in.
+ * Offers for different riders therefore never wait for each other; a lock is only taken to add a chunk the
+ * first time a rider in it is offered a result. Results are taken out in order of rider ID, so the stage ends
+ * up the same whatever order the offers arrived in.
+ * <p>
+ * Each chunk is marked when a result is offered to it, so taking results only looks through the chunks offered
+ * to since results were last taken, rather than every rider ID up to the highest. A chunk that has not been
+ * offered to between two takes is dropped at the second, so a stage keeps no more chunks than its feeds have
+ * written to since the take before last.
+ */
+public class ResultInbox {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_LENGTH = 1 << CHUNK_BITS;
+    private volatile AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(1);
+    private volatile boolean pending;
+
+    /**
+     * The Chunk class holds the slots of 1024 riders, and whether any of them has been offered a result since
+     * results were last taken.
+     */
+    private static final class Chunk {
+        private final AtomicReferenceArray<Result> slots = new AtomicReferenceArray<>(CHUNK_LENGTH);
+        private volatile boolean offered;
+    }
+
+    /**
+     * Offers a result. May be called by any number of threads at once, but not while results are being taken.
+     * @param result The result.
+     * @return true if the result was added, or false if the inbox already holds a result for the rider.
+     */
+    boolean offer(Result result) {
+        int riderId = result.getRiderId();
+        Chunk chunk = chunk(riderId >>> CHUNK_BITS);
+        if (!chunk.slots.compareAndSet(riderId & (CHUNK_LENGTH - 1), null, result)) {
+            return false;
+        }
+        if (!chunk.offered) {//only written once between takes, so feeds in the same chunk do not share a write
+            chunk.offered = true;
+        }
+        if (!pending) {
+            pending = true;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the inbox holds a result for a rider.
+     * @param riderId The ID of the rider.
+     * @return true if a result for the rider has been offered and not taken yet.
+     */
+    boolean contains(int riderId) {
+        AtomicReferenceArray<Chunk> currentChunks = chunks;
+        int chunkIndex = riderId >>> CHUNK_BITS;
+        if (chunkIndex >= currentChunks.length()) {
+            return false;
+        }
+        Chunk chunk = currentChunks.get(chunkIndex);
+        return chunk != null && chunk.slots.get(riderId & (CHUNK_LENGTH - 1)) != null;
+    }
+
+    /**
+     * Checks whether any results are waiting to be taken.
+     * @return true if a result has been offered since results were last taken.
+     */
+    boolean hasPendingResults() {
+        return pending;
+    }
+
+    /**
+     * Takes every result out of the inbox, looking only through the chunks offered to since results were last
+     * taken and dropping the others. Must not be called while results are being offered.
+     * @return The results, in order of rider ID.
+     */
+    ArrayList<Result> take() {
+        ArrayList<Result> results = new ArrayList<>();
+        AtomicReferenceArray<Chunk> currentChunks = chunks;
+        for (int c = 0; c < currentChunks.length(); c++) {
+            Chunk chunk = currentChunks.get(c);
+            if (chunk == null) {
+                continue;
+            }
+            if (!chunk.offered) {
+                currentChunks.set(c, null);
+                continue;
+            }
+            chunk.offered = false;
+            for (int slot = 0; slot < CHUNK_LENGTH; slot++) {
+                Result result = chunk.slots.get(slot);
+                if (result != null) {
+                    results.add(result);
+                    chunk.slots.set(slot, null);
+                }
+            }
+        }
+        pending = false;
+        return results;
+    }
+
+    /**
+     * Gets a chunk of slots, adding it if it is not there yet.
+     * @param chunkIndex The index of the chunk, which is the rider ID divided by the chunk length.
+     * @return The chunk.
+     */
+    private Chunk chunk(int chunkIndex) {
+        AtomicReferenceArray<Chunk> currentChunks = chunks;
+        if (chunkIndex < currentChunks.length()) {
+            Chunk chunk = currentChunks.get(chunkIndex);
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return addChunk(chunkIndex);
+    }
+
+    /**
+     * Adds a chunk of slots, growing the array of chunks if it is too short. Chunks are only added and the array
+     * only replaced while holding the lock, so a chunk is never added to an array that has already been copied.
+     * @param chunkIndex The index of the chunk.
+     * @return The chunk, which another thread may have added first.
+     */
+    private synchronized Chunk addChunk(int chunkIndex) {
+        AtomicReferenceArray<Chunk> currentChunks = chunks;
+        if (chunkIndex >= currentChunks.length()) {
+            int length = Math.max(chunkIndex + 1, currentChunks.length() * 2);
+            AtomicReferenceArray<Chunk> grown = new AtomicReferenceArray<>(length);
+            for (int c = 0; c < currentChunks.length(); c++) {
+                grown.set(c, currentChunks.get(c));
+            }
+            currentChunks = grown;
+            chunks = grown;
+        }
+        Chunk chunk = currentChunks.get(chunkIndex);
+        if (chunk == null) {
+            chunk = new Chunk();
+            currentChunks.set(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+}
@@ -6,7 +6,6 @@ import java.io.Serializable;
  * The Rider class stores all the data related to the rider.
  */
 public class Rider implements Serializable{
-    public static int riderCounter = 0;
     private int riderId;
     private int teamId;
     private String name;
@@ -14,17 +13,28 @@ public class Rider implements Serializable{
 
     /**
      * Constructor for the Rider class.
+     * @param idAllocator The ID allocator of the portal the rider is created in.
      * @param teamId The ID of the rider's team.
      * @param name The name of the rider.
      * @param yearOfBirth The year of birth of the rider.
      * @see cycling.team
      */
-    public Rider(int teamId, String name, int yearOfBirth) {
+    public Rider(IdAllocator idAllocator, int teamId, String name, int yearOfBirth) {
+        this(idAllocator.nextRiderId(), teamId, name, yearOfBirth);
+    }
+
+    /**
+     * Constructor for a rider restored from a saved portal, which keeps its saved ID.
+     * @param riderId The ID of the rider.
+     * @param teamId The ID of the rider's team.
+     * @param name The name of the rider.
+     * @param yearOfBirth The year of birth of the rider.
+     */
+    Rider(int riderId, int teamId, String name, int yearOfBirth) {
+        this.riderId = riderId;
         this.teamId = teamId;
         this.name = name;
         this.yearOfBirth = yearOfBirth;
-        riderCounter ++;
-        riderId = riderCounter;
     }
 
     /**
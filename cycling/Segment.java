@@ -6,15 +6,14 @@ import java.io.Serializable;
  * The Segment class is a parent class for CategorizedClimb and IntermediateSprint.
  */
 abstract class Segment implements Serializable{
-    public static int segmentCounter = 0;
     public int segmentId;
 
-    /** 
-     * Constructor for the Segment class.
+    /**
+     * Constructor for a segment restored from a saved portal, which keeps its saved ID.
+     * @param segmentId The ID of the segment.
      */
-    public Segment() {
-        segmentCounter += 1;
-        segmentId = segmentCounter;
+    Segment(int segmentId) {
+        this.segmentId = segmentId;
     }
 
     /**
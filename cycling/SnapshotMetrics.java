@@ -0,0 +1,131 @@
+package cycling;
+
+/**
+ * The SnapshotMetrics class counts the snapshots a portal has saved in the background, with how long they took
+ * and how many bytes they wrote. The portal records into it from the thread writing the snapshots while the
+ * figures are read from any thread, so every method is synchronized.
+ */
+public class SnapshotMetrics {
+    private long numberOfSnapshots;
+    private long numberOfFailedSnapshots;
+    private long lastCaptureNanos;
+    private long totalCaptureNanos;
+    private long lastDurationNanos;
+    private long totalDurationNanos;
+    private long maxDurationNanos;
+    private long lastBytesWritten;
+    private long totalBytesWritten;
+    private long totalCopiedRaces;
+
+    /**
+     * Records that a snapshot was captured, which is the part of a snapshot the caller waits for.
+     * @param captureNanos How long the capture took in nanoseconds.
+     */
+    synchronized void captured(long captureNanos) {
+        lastCaptureNanos = captureNanos;
+        totalCaptureNanos += captureNanos;
+    }
+
+    /**
+     * Records that a snapshot has been written.
+     * @param durationNanos How long the snapshot took from its capture until the file was on disk, in nanoseconds.
+     * @param bytesWritten The length of the file written.
+     * @param copiedRaces The number of races copied because the portal changed them before they were written.
+     */
+    synchronized void completed(long durationNanos, long bytesWritten, int copiedRaces) {
+        numberOfSnapshots++;
+        lastDurationNanos = durationNanos;
+        totalDurationNanos += durationNanos;
+        maxDurationNanos = Math.max(maxDurationNanos, durationNanos);
+        lastBytesWritten = bytesWritten;
+        totalBytesWritten += bytesWritten;
+        totalCopiedRaces += copiedRaces;
+    }
+
+    /**
+     * Records that a snapshot could not be written.
+     */
+    synchronized void failed() {
+        numberOfFailedSnapshots++;
+    }
+
+    /**
+     * Gets the number of snapshots written.
+     * @return The number of snapshots that completed.
+     */
+    public synchronized long getNumberOfSnapshots() {
+        return numberOfSnapshots;
+    }
+
+    /**
+     * Gets the number of snapshots that could not be written.
+     * @return The number of snapshots that failed.
+     */
+    public synchronized long getNumberOfFailedSnapshots() {
+        return numberOfFailedSnapshots;
+    }
+
+    /**
+     * Gets how long the caller waited for the last snapshot to be captured.
+     * @return The capture time in nanoseconds.
+     */
+    public synchronized long getLastCaptureNanos() {
+        return lastCaptureNanos;
+    }
+
+    /**
+     * Gets how long the caller waited for every snapshot to be captured, added together.
+     * @return The total capture time in nanoseconds.
+     */
+    public synchronized long getTotalCaptureNanos() {
+        return totalCaptureNanos;
+    }
+
+    /**
+     * Gets how long the last snapshot written took, from its capture until its file was on disk.
+     * @return The duration in nanoseconds.
+     */
+    public synchronized long getLastDurationNanos() {
+        return lastDurationNanos;
+    }
+
+    /**
+     * Gets how long every snapshot written took, added together.
+     * @return The total duration in nanoseconds.
+     */
+    public synchronized long getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    /**
+     * Gets how long the slowest snapshot written took.
+     * @return The longest duration in nanoseconds.
+     */
+    public synchronized long getMaxDurationNanos() {
+        return maxDurationNanos;
+    }
+
+    /**
+     * Gets the number of bytes the last snapshot written wrote.
+     * @return The length of the last snapshot file.
+     */
+    public synchronized long getLastBytesWritten() {
+        return lastBytesWritten;
+    }
+
+    /**
+     * Gets the number of bytes every snapshot written wrote, added together.
+     * @return The total length of the snapshot files.
+     */
+    public synchronized long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    /**
+     * Gets the number of races the portal copied because it changed them while a snapshot was being written.
+     * @return The number of copied races across every snapshot written.
+     */
+    public synchronized long getTotalCopiedRaces() {
+        return totalCopiedRaces;
+    }
+}
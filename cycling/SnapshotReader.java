@@ -0,0 +1,148 @@
+package cycling;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The SnapshotReader class reads the primitive values written by a {@link SnapshotWriter} from a stream through
+ * its own buffer, keeping the string table in step with the writer.
+ */
+public class SnapshotReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final ArrayList<String> stringTable = new ArrayList<>();
+
+    /**
+     * Constructor for the SnapshotReader class.
+     * @param inputStream The stream the snapshot is read from.
+     */
+    public SnapshotReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Refills the buffer from the stream once everything in it has been read.
+     * @throws IOException If the stream cannot be read or has ended.
+     */
+    private void fill() throws IOException {
+        int count = inputStream.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            throw new EOFException("The snapshot ended unexpectedly");
+        }
+        position = 0;
+        limit = count;
+    }
+
+    /**
+     * Reads a single byte.
+     * @return The byte, from 0 to 255.
+     * @throws IOException If the stream cannot be read or has ended.
+     */
+    public int readByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads an exact number of bytes.
+     * @param length The number of bytes to read.
+     * @return The bytes.
+     * @throws IOException If the stream cannot be read or has ended.
+     */
+    public byte[] readBytes(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (position == limit) {
+                fill();
+            }
+            int count = Math.min(length - read, limit - position);
+            System.arraycopy(buffer, position, bytes, read, count);
+            position += count;
+            read += count;
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a whole number written by {@link SnapshotWriter#writeVarInt(int)}.
+     * @return The number.
+     * @throws IOException If the stream cannot be read or the number is too long.
+     */
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if ((value >>> 32) != 0) {
+            throw new IOException("The snapshot holds a number that is too large");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a whole number written by {@link SnapshotWriter#writeVarLong(long)}.
+     * @return The number.
+     * @throws IOException If the stream cannot be read or the number is too long.
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("The snapshot holds a number that is too long");
+    }
+
+    /**
+     * Reads a whole number written by {@link SnapshotWriter#writeSignedVarLong(long)}.
+     * @return The number.
+     * @throws IOException If the stream cannot be read or the number is too long.
+     */
+    public long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a double written by {@link SnapshotWriter#writeDouble(double)}.
+     * @return The number.
+     * @throws IOException If the stream cannot be read or has ended.
+     */
+    public double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Reads a string written by {@link SnapshotWriter#writeString(String)}.
+     * @return The string, which may be null.
+     * @throws IOException If the stream cannot be read or refers to a string that is not in the table.
+     */
+    public String readString() throws IOException {
+        int tag = readVarInt();
+        if (tag == 0) {
+            return null;
+        }
+        if (tag == 1) {
+            String value = new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+            stringTable.add(value);
+            return value;
+        }
+        if (tag - 2 >= stringTable.size()) {
+            throw new IOException("The snapshot refers to a string that has not been defined");
+        }
+        return stringTable.get(tag - 2);
+    }
+}
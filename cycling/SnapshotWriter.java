@@ -0,0 +1,145 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The SnapshotWriter class writes the primitive values of a portal snapshot to a stream through its own buffer.
+ * Whole numbers are written as variable length integers, so small IDs take a single byte, and each distinct
+ * string is written once and referred to by its position in the string table after that.
+ */
+public class SnapshotWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private final HashMap<String, Integer> stringTable = new HashMap<>();
+
+    /**
+     * Constructor for the SnapshotWriter class.
+     * @param outputStream The stream the snapshot is written to.
+     */
+    public SnapshotWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Makes sure there is room in the buffer for a number of bytes, writing the buffer to the stream if not.
+     * @param length The number of bytes about to be written, at most the size of the buffer.
+     * @throws IOException If the stream cannot be written to.
+     */
+    private void ensureSpace(int length) throws IOException {
+        if (position + length > buffer.length) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes a single byte.
+     * @param value The byte, in the low eight bits.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeByte(int value) throws IOException {
+        ensureSpace(1);
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes an array of bytes as they are.
+     * @param bytes The bytes to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+            outputStream.write(bytes);
+            return;
+        }
+        ensureSpace(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes a whole number that is not negative in as few bytes as it needs, seven bits to a byte.
+     * @param value The number to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a whole number that is not negative in as few bytes as it needs, seven bits to a byte.
+     * @param value The number to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeVarLong(long value) throws IOException {
+        ensureSpace(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a whole number that may be negative, so that numbers close to zero either way take few bytes.
+     * @param value The number to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a double as its eight bytes.
+     * @param value The number to write.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeDouble(double value) throws IOException {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureSpace(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Writes a string. A string that has been written before is written as its position in the string table,
+     * otherwise it is written in UTF-8 and added to the table. Null is written as 0, a new string as 1 followed by
+     * its length and bytes, and a string already in the table as its position plus 2.
+     * @param value The string to write, which may be null.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = stringTable.get(value);
+        if (index != null) {
+            writeVarInt(index + 2);
+            return;
+        }
+        stringTable.put(value, stringTable.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(1);
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes everything still in the buffer to the stream and flushes it.
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void flush() throws IOException {
+        outputStream.write(buffer, 0, position);
+        position = 0;
+        outputStream.flush();
+    }
+}
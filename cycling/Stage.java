@@ -1,20 +1,18 @@
 package cycling;
 
-import java.security.Identity;
-import java.time.LocalTime;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.time.LocalDateTime;
 import java.util.Collections;
-import java.util.Hashtable;
-import java.lang.reflect.Array;
+import java.util.Comparator;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * The Stage class stores all the information related to a stage, and stores arraylists of results and segments for the given stage.
  */
 public class Stage implements Serializable{
-    public static int stageCounter = 0;
     private int stageId;//unique stage identifier
     private int raceId;
     private String stageName;//name of stage
@@ -25,59 +23,81 @@ public class Stage implements Serializable{
     private String state = "Not waiting on results";
     ArrayList<Result> arrayListOfResults = new ArrayList<>();//arraylist of all rider objects for given race
     ArrayList<Segment> arrayListOfSegments = new ArrayList<>();
+    transient IntObjectMap<Result> resultsByRiderId = new IntObjectMap<>();//results of the stage keyed by rider ID
+    private transient CheckpointColumns checkpointColumns = new CheckpointColumns(2, 0);//one column per checkpoint
+    private transient volatile AdjustedElapsedTimes adjustedElapsedTimes;//worked out when needed, cleared on change
+    private transient volatile StagePoints stagePoints;//worked out when needed, cleared when results change
+    private transient volatile int resultsVersion;//counts the changes to the results, for snapshots of the race
+    private transient volatile ResultInbox resultInbox;//results offered from many threads, made when first needed
+    private static final AtomicReferenceFieldUpdater<Stage, ResultInbox> RESULT_INBOX =
+            AtomicReferenceFieldUpdater.newUpdater(Stage.class, ResultInbox.class, "resultInbox");
 
     
     /**
      * Constructor for the Stage class.
+     * @param idAllocator The ID allocator of the portal the stage is created in.
      * @param raceId The ID of the race this stage object belongs to.
      * @param description The description of the stage.
      * @param length The length of the stage in kilometres.
      * @param startTime The date and time in which the stage will be raced.
      * @param type The type of the stage. This is used to determine the amount of points given to the winner.
      */
-    public Stage(int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) {
+    public Stage(IdAllocator idAllocator, int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) {
         this.raceId = raceId;
         this.stageName = stageName;
         this.description = description;
         this.length = length;
         this.startTime = startTime;
         this.type = type;
-        stageCounter+=1;
-        stageId = stageCounter;
+        stageId = idAllocator.nextStageId();
     }
 
     /**
-     * Creates and returns a Hashtable dictionary with keys representing each rider in the stage and 
-     * their respective values representing their Sprinter's Classification points in the stage. 
-     * Values for all keys are initialised as 0 here.
-     * @return The default starter Hashtable of rider keys each with a value of 0.
+     * Constructor for a stage restored from a saved portal, which keeps its saved ID and state.
+     * @param stageId The ID of the stage.
+     * @param raceId The ID of the race this stage object belongs to.
+     * @param stageName The name of the stage.
+     * @param description The description of the stage.
+     * @param length The length of the stage in kilometres.
+     * @param startTime The date and time in which the stage will be raced.
+     * @param type The type of the stage.
+     * @param state The state of the stage.
      */
-    public Hashtable<String, Integer> createRiderSprintersPointsDictionary(){
-        Hashtable<String, Integer> riderSprintersPointsDictionary = new Hashtable<String, Integer>();
-        for (Result result:arrayListOfResults){
-            if (!riderSprintersPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                riderSprintersPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
-            }
-        }
-        return riderSprintersPointsDictionary;
+    Stage(int stageId, int raceId, String stageName, String description, double length, LocalDateTime startTime,
+          StageType type, String state) {
+        this.stageId = stageId;
+        this.raceId = raceId;
+        this.stageName = stageName;
+        this.description = description;
+        this.length = length;
+        this.startTime = startTime;
+        this.type = type;
+        this.state = state;
     }
 
     /**
-     * Creates and returns a Hashtable dictionary with keys representing each rider in the stage and 
-     * their respective values representing their KOM Classification points in the stage. 
-     * Values for all keys are initialised as 0 here.
-     * @return The default starter Hashtable of rider keys each with a value of 0.
+     * Restores a stage that has been loaded from a saved portal, rebuilding the index of results by
+     * rider ID and the checkpoint columns, which are not saved with the stage.
+     * @param inputStream The stream the stage is being read from.
+     * @throws IOException If the stage cannot be read from the stream.
+     * @throws ClassNotFoundException If a class of the saved stage cannot be found.
      */
-    public Hashtable<String, Integer> createRiderKOMPointsDictionary(){
-        Hashtable<String, Integer> riderKOMPointsDictionary = new Hashtable<String, Integer>();
-        for (Result result:arrayListOfResults){
-            if (!riderKOMPointsDictionary.containsKey("Rider "+String.valueOf(result.getRiderId()))){
-                riderKOMPointsDictionary.put("Rider "+String.valueOf(result.getRiderId()),0);
+    private void readObject(ObjectInputStream inputStream) throws IOException, ClassNotFoundException {
+        inputStream.defaultReadObject();
+        resultsByRiderId = new IntObjectMap<>(arrayListOfResults.size());
+        for (Result result:arrayListOfResults) {
+            resultsByRiderId.put(result.getRiderId(), result);
+        }
+        if (arrayListOfResults.isEmpty()) {
+            checkpointColumns = new CheckpointColumns(arrayListOfSegments.size() + 2, 0);
+        } else {
+            checkpointColumns = new CheckpointColumns(arrayListOfResults.get(0).getNumberOfCheckpoints(), arrayListOfResults.size());
+            for (Result result:arrayListOfResults) {
+                checkpointColumns.add(result);
             }
         }
-        return riderKOMPointsDictionary;
     }
-    
+
     /**
      * Gets the length for the stage.
      * @return The stage length in kilometres.
@@ -147,30 +167,38 @@ public class Stage implements Serializable{
      * @return The list of segment IDs ordered (from first to last) by their location in the stage.
      */
     public ArrayList<Integer> getStageSegments(){
-        ArrayList<Double> arrayListOfSegmentLocations = new ArrayList<>();
-        for (Segment segment:arrayListOfSegments){
-            arrayListOfSegmentLocations.add(segment.getLocation());
-        }
-        Collections.sort(arrayListOfSegmentLocations);
         ArrayList<Integer> arrayListOfSegmentIDsSortedByLocation = new ArrayList<>();
-        ArrayList<Double> oldArrayListOfSegmentLocations = new ArrayList<>();
-        ArrayList<Integer> tempArrayOfIndexes = new ArrayList<>();
-        for (Segment segment:arrayListOfSegments){
-            oldArrayListOfSegmentLocations.add(segment.getLocation());
-        }
-        for (Double segmentLocation:arrayListOfSegmentLocations){
-            int locationIndex = oldArrayListOfSegmentLocations.indexOf(segmentLocation);
-            tempArrayOfIndexes.add(locationIndex);
+        for (Segment segment:getSegmentsInLocationOrder()){
+            arrayListOfSegmentIDsSortedByLocation.add(segment.getSegmentId());
         }
-        for (int index:tempArrayOfIndexes){
-            Segment exampleSegment = arrayListOfSegments.get(index);
-            int id = exampleSegment.getSegmentId();
-            arrayListOfSegmentIDsSortedByLocation.add(id);
-        }
-
         return arrayListOfSegmentIDsSortedByLocation;
     }
 
+    /**
+     * Gets the segments of the stage ordered by their location, which is the order of the
+     * checkpoints between the start and finish times of a result.
+     * @return The list of segments ordered (from first to last) by their location in the stage.
+     */
+    public ArrayList<Segment> getSegmentsInLocationOrder(){
+        ArrayList<Segment> arrayListOfSegmentsSortedByLocation = new ArrayList<>(arrayListOfSegments);
+        Collections.sort(arrayListOfSegmentsSortedByLocation, Comparator.comparingDouble(Segment::getLocation));
+        return arrayListOfSegmentsSortedByLocation;
+    }
+
+    /**
+     * Gets the types of the segments of the stage ordered by their location, one for each checkpoint between the
+     * start and finish times of a result.
+     * @return The types of the segments ordered (from first to last) by their location in the stage.
+     */
+    public SegmentType[] getSegmentTypesInLocationOrder(){
+        ArrayList<Segment> arrayListOfSegmentsSortedByLocation = getSegmentsInLocationOrder();
+        SegmentType[] segmentTypes = new SegmentType[arrayListOfSegmentsSortedByLocation.size()];
+        for (int i = 0; i < segmentTypes.length; i++){
+            segmentTypes[i] = arrayListOfSegmentsSortedByLocation.get(i).getSegmentType();
+        }
+        return segmentTypes;
+    }
+
     /**
      * Concludes the preparation of a stage. After conclusion, the stage's state
 	 * should be "waiting for results".
@@ -198,6 +226,7 @@ public class Stage implements Serializable{
 
     /**
      * Adds a climb segment to a stage.
+     * @param idAllocator The ID allocator of the portal the segment is created in.
      * @param stageId The ID of the stage to which the climb segment is being added.
      * @param location The kilometre location where the climb finishes within the stage.
      * @param type The category of the climb - {@link SegmentType#C4}, {@link SegmentType#C3}, 
@@ -205,30 +234,31 @@ public class Stage implements Serializable{
      *                                       or {@link SegmentType#HC}
      * @param averageGradient The average gradient for the climb.
      * @param length The length of the climb in kilometres.
-     * @return The ID of the Segment object created.
+     * @return The Segment object created.
      * 
      */
-    public int addCategorizedClimbToStage (int stageId, Double location, SegmentType type, Double averageGradient, Double length) {
+    public Segment addCategorizedClimbToStage (IdAllocator idAllocator, int stageId, Double location, SegmentType type, Double averageGradient, Double length) {
         Double locationnew = location;
         SegmentType typenew = type;
         Double averageGradientnew = averageGradient;
         Double lengthnew = length;
-        CategorizedClimb newClimb = new CategorizedClimb(stageId, locationnew, typenew, averageGradientnew, lengthnew);
+        CategorizedClimb newClimb = new CategorizedClimb(idAllocator, stageId, locationnew, typenew, averageGradientnew, lengthnew);
         arrayListOfSegments.add(newClimb);
-        return newClimb.getSegmentId();
+        return newClimb;
     }
 
     /**
      * Adds an intermediate sprint to a stage.
+     * @param idAllocator The ID allocator of the portal the segment is created in.
      * @param stageId The ID of the stage to which the intermediate sprint segment is being added.
      * @param location The kilometre location where the intermediate sprint finishes within the stage.
-     * @return The ID of the Segment object created.
+     * @return The Segment object created.
      */
-    public int addIntermediateSprintToStage (int stageId, double location) {
+    public Segment addIntermediateSprintToStage (IdAllocator idAllocator, int stageId, double location) {
         double locationnew = location;
-        IntermediateSprint newSprint = new IntermediateSprint(stageId, locationnew);
+        IntermediateSprint newSprint = new IntermediateSprint(idAllocator, stageId, locationnew);
         arrayListOfSegments.add(newSprint);
-        return newSprint.getSegmentId();
+        return newSprint;
     }
 
     /**
@@ -248,73 +278,234 @@ public class Stage implements Serializable{
      * Record the times of a rider in a stage.
      * @param stageId The ID of the stage the result refers to.
      * @param riderId The ID of the rider the result refers to.
-     * @param checkpoints An array of times at which the rider reached each of the
-	 *                    segments of the stage, including the start time and the
-	 *                    finish line.
-     */
-    public void registerRiderResultsInStage(int stageId, int riderId, LocalTime[] checkpoints) {
-        int stageIdnew = stageId;
-        int riderIdnew = riderId;
-        LocalTime[] checkpointsnew = checkpoints;
-        Result newResults = new Result(stageIdnew, riderIdnew, checkpointsnew);
+     * @param checkpoints An array of times, in nanoseconds of the day, at which the rider
+	 *                    reached each of the segments of the stage, including the start
+	 *                    time and the finish line.
+     */
+    public void registerRiderResultsInStage(int stageId, int riderId, long[] checkpoints) {
+        Result newResults = new Result(stageId, riderId, checkpoints);
         arrayListOfResults.add(newResults);
+        resultsByRiderId.put(riderId, newResults);
+        if (checkpointColumns.getNumberOfCheckpoints() != checkpoints.length) {
+            checkpointColumns = new CheckpointColumns(checkpoints.length, 0);
+        }
+        checkpointColumns.add(newResults);
+        resultsChanged();
+    }
+
+    /**
+     * Records the times of several riders in the stage at once, making room for all of them before adding any
+     * and clearing the classifications only once.
+     * @param stageId The ID of the stage the results refer to.
+     * @param riderIds The IDs of the riders, none of whom has a result in the stage.
+     * @param checkpoints The times of each rider, in nanoseconds of the day, with one time for each segment of
+     *                    the stage plus the start time and the finish line.
+     * @param count The number of riders to record, from the start of the arrays.
+     */
+    public void registerRiderResultsInStage(int stageId, int[] riderIds, long[][] checkpoints, int count) {
+        if (count == 0) {
+            return;
+        }
+        arrayListOfResults.ensureCapacity(arrayListOfResults.size() + count);
+        if (checkpointColumns.getNumberOfCheckpoints() != checkpoints[0].length) {
+            checkpointColumns = new CheckpointColumns(checkpoints[0].length, count);
+        }
+        checkpointColumns.ensureCapacity(checkpointColumns.size() + count);
+        for (int i = 0; i < count; i++) {
+            Result newResults = new Result(stageId, riderIds[i], checkpoints[i]);
+            arrayListOfResults.add(newResults);
+            resultsByRiderId.put(riderIds[i], newResults);
+            checkpointColumns.add(newResults);
+        }
+        resultsChanged();
+    }
+
+    /**
+     * Offers the times of a rider to the stage from any thread, without waiting for threads offering the times of
+     * other riders. The result is kept in the stage's inbox until {@link #addPendingResults()} adds it, which
+     * must happen before the results of the stage are next read or changed, and offers must not be made while
+     * it runs.
+     * @param stageId The ID of the stage the result refers to.
+     * @param riderId The ID of the rider the result refers to.
+     * @param checkpoints The times the rider reached each checkpoint, in nanoseconds of the day.
+     * @return true if the result was offered, or false if the rider already has a result in the stage or
+     *         offered one first.
+     */
+    public boolean offerRiderResultsInStage(int stageId, int riderId, long[] checkpoints) {
+        if (resultsByRiderId.containsKey(riderId)) {
+            return false;
+        }
+        ResultInbox inbox = resultInbox;
+        if (inbox == null) {
+            RESULT_INBOX.compareAndSet(this, null, new ResultInbox());
+            inbox = resultInbox;
+        }
+        return inbox.offer(new Result(stageId, riderId, checkpoints));
+    }
+
+    /**
+     * Checks whether a rider has a result offered to the stage that has not been added yet.
+     * @param riderId The ID of the rider.
+     * @return true if the rider has a pending result.
+     */
+    public boolean hasPendingResult(int riderId) {
+        ResultInbox inbox = resultInbox;
+        return inbox != null && inbox.contains(riderId);
+    }
+
+    /**
+     * Checks whether results have been offered to the stage since they were last added.
+     * @return true if there are pending results.
+     */
+    public boolean hasPendingResults() {
+        ResultInbox inbox = resultInbox;
+        return inbox != null && inbox.hasPendingResults();
+    }
+
+    /**
+     * Adds the results offered to the stage, in order of rider ID, as one batch.
+     * @return true if any results were added.
+     */
+    public boolean addPendingResults() {
+        if (!hasPendingResults()) {
+            return false;
+        }
+        ArrayList<Result> pendingResults = resultInbox.take();
+        if (pendingResults.isEmpty()) {
+            return false;
+        }
+        int numberOfCheckpoints = pendingResults.get(0).getNumberOfCheckpoints();
+        arrayListOfResults.ensureCapacity(arrayListOfResults.size() + pendingResults.size());
+        if (checkpointColumns.getNumberOfCheckpoints() != numberOfCheckpoints) {
+            checkpointColumns = new CheckpointColumns(numberOfCheckpoints, pendingResults.size());
+        }
+        checkpointColumns.ensureCapacity(checkpointColumns.size() + pendingResults.size());
+        for (Result result:pendingResults) {
+            arrayListOfResults.add(result);
+            resultsByRiderId.put(result.getRiderId(), result);
+            checkpointColumns.add(result);
+        }
+        resultsChanged();
+        return true;
+    }
+
+    /**
+     * Clears the classifications worked out for the stage, after its results have changed.
+     */
+    private void resultsChanged() {
+        adjustedElapsedTimes = null;
+        stagePoints = null;
+        resultsVersion++;
+    }
+
+    /**
+     * Gets the version of the stage's results, which goes up every time they change. Only the thread changing
+     * the results writes it, so it can be read without a lock to check whether a snapshot is out of date.
+     * @return The version of the results.
+     */
+    public int getResultsVersion() {
+        return resultsVersion;
+    }
+
+    /**
+     * Gets the adjusted elapsed times of all riders in the stage, working them out if the results
+     * have changed since they were last needed. Threads reading the stage at once may each work them out, which
+     * is harmless as the field is read once, is volatile so the times are published whole, and the times cannot
+     * change after they are built.
+     * @return The adjusted elapsed times of the riders in the stage.
+     */
+    public AdjustedElapsedTimes getAdjustedElapsedTimes() {
+        AdjustedElapsedTimes times = adjustedElapsedTimes;
+        if (times == null) {
+            times = new AdjustedElapsedTimes(getCheckpointColumns(), type);
+            adjustedElapsedTimes = times;
+        }
+        return times;
+    }
+
+    /**
+     * Gets the checkpoint times of all results in the stage, stored column by column. The columns are made with the
+     * stage and only replaced or changed with its results, so readers never build them.
+     * @return The checkpoint columns of the stage.
+     */
+    public CheckpointColumns getCheckpointColumns() {
+        return checkpointColumns;
+    }
+
+    /**
+     * Checks whether a rider has a result registered in the stage.
+     * @param riderId The ID of the rider.
+     * @return True if the rider has a result in the stage.
+     */
+    public boolean hasResult(int riderId) {
+        return resultsByRiderId.containsKey(riderId);
+    }
+
+    /**
+     * Gets the result of a rider in the stage.
+     * @param riderId The ID of the rider.
+     * @return The result of the rider, or null if the rider has no result in the stage.
+     */
+    public Result getResult(int riderId) {
+        return resultsByRiderId.get(riderId);
     }
 
     /**
      * Get the times of a rider in a stage.
      * @param riderId The ID of the rider a given result refers to.
-     * @return The array of times at which the rider reached each of the segments of
-	 *         the stage and the total elapsed time. The elapsed time is the
+     * @return The array of times, in nanoseconds, at which the rider reached each of the
+	 *         segments of the stage and the total elapsed time. The elapsed time is the
 	 *         difference between the finish time and the start time.
      * 
      *         An empty array is returned if there are no results registered for the 
      *         given stage; i.e, the array list of result objects of the stage object
      *         is empty.
      */
-    public ArrayList<LocalTime> getRiderResultsInStage(int riderId){
-        for (Result i:arrayListOfResults){
-            if ((i.getRiderId())==(riderId)){
-                LocalTime[] checkPointsArray = i.getCheckpoints();
-                ArrayList<LocalTime> checkpointsArrayList = new ArrayList<>();
-                for (LocalTime checkpoint:checkPointsArray){
-                    checkpointsArrayList.add(checkpoint);
-                }
-                checkpointsArrayList.add(i.getElapsedTime());
-                return checkpointsArrayList;
-            }
-        }return new ArrayList<LocalTime>();
+    public long[] getRiderResultsInStage(int riderId){
+        Result i = resultsByRiderId.get(riderId);
+        if (i == null){
+            return new long[0];
+        }
+        int numberOfCheckpoints = i.getNumberOfCheckpoints();
+        long[] times = new long[numberOfCheckpoints + 1];
+        for (int j = 0; j < numberOfCheckpoints; j++){
+            times[j] = i.getCheckpoint(j);
+        }
+        times[numberOfCheckpoints] = i.getElapsedNanos();
+        return times;
     }
 
     /**
      * Gets the adjusted elapsed time for a rider in the stage.
 	 * @param riderId The ID of the rider a given result refers to.
-	 * @return The adjusted elapsed time for the rider in the stage. 
+	 * @return The adjusted elapsed time for the rider in the stage, in nanoseconds. 
      * 
-     *         Null if there is no result registered for 
+     *         -1 if there is no result registered for 
      *         the rider in the stage.
      */
-    public LocalTime getRiderAdjustedElapsedTimeInStage(int riderId) {
-        for (Result i:arrayListOfResults){
-            if ((i.getRiderId())==(riderId)){
-                return i.getAdjustedElapsedTime(arrayListOfResults);
-            }
-        }return null;
+    public long getRiderAdjustedElapsedTimeInStage(int riderId) {
+        AdjustedElapsedTimes times = getAdjustedElapsedTimes();
+        int rank = times.getRankOfRider(riderId);
+        if (rank < 0){
+            return -1;
+        }
+        return times.getAdjustedElapsedNanos(rank);
     }
 
     /**
      * Gets the elapsed time for a rider in the stage.
 	 * @param riderId The ID of the rider a given result refers to.
-	 * @return The elapsed time for the rider in the stage. 
+	 * @return The elapsed time for the rider in the stage, in nanoseconds. 
      * 
-     *         Null if there is no result registered for 
+     *         -1 if there is no result registered for 
      *         the rider in the stage.
      */
-    public LocalTime getRiderElapsedTimeInStage(int riderId){
-        for (Result i:arrayListOfResults){
-            if ((i.getRiderId())==(riderId)){
-                return i.getElapsedTime();
-            }
-        }return null;
+    public long getRiderElapsedTimeInStage(int riderId){
+        Result i = resultsByRiderId.get(riderId);
+        if (i == null){
+            return -1;
+        }
+        return i.getElapsedNanos();
     }
 
 
@@ -323,679 +514,86 @@ public class Stage implements Serializable{
 	 * @param riderId The ID of the rider a given result refers to.
      */
     public void deleteRiderResultsInStage(int riderId) {
-        for (Result i:arrayListOfResults){
-            if ((i.getRiderId())==(riderId)){
-                arrayListOfResults.remove(i);
-                break;
-            }
+        Result i = resultsByRiderId.remove(riderId);
+        if (i != null){
+            arrayListOfResults.remove(i);
+            checkpointColumns.remove(riderId);
+            resultsChanged();
         }
     }
 
     /**
      * Get the riders finished position in a a stage.
-     * @param allRiders An arraylist of all riders created in the cycling portal for the current race/stage
 	 * @return A list of riders' ID sorted by their elapsed time. 
      * 
      *         An empty list if there is no result for the stage.
      */
-    public ArrayList<Integer> getRidersRankInStage (ArrayList<Rider> allRiders) {
-        ArrayList<LocalTime> arrayListOfRiderElapsedTimes = new ArrayList<>();
-        if (arrayListOfResults.isEmpty()){
-            return (new ArrayList<Integer>());
-        }
-        for(Result j:arrayListOfResults){
-            arrayListOfRiderElapsedTimes.add(j.getElapsedTime());
-        }
-        Collections.sort(arrayListOfRiderElapsedTimes);
-        ArrayList<Integer> arrayListOfSortedRiderIDs = new ArrayList<>();
-        for(LocalTime z:arrayListOfRiderElapsedTimes){
-            for (Result k:arrayListOfResults){
-                if (z.equals(k.getElapsedTime())){
-                    arrayListOfSortedRiderIDs.add(k.getRiderId());
-                }
-            }
+    public ArrayList<Integer> getRidersRankInStage () {
+        AdjustedElapsedTimes times = getAdjustedElapsedTimes();
+        ArrayList<Integer> arrayListOfSortedRiderIDs = new ArrayList<>(times.getNumberOfRiders());
+        for (int rank = 0; rank < times.getNumberOfRiders(); rank++){
+            arrayListOfSortedRiderIDs.add(times.getRiderId(rank));
         }
         return arrayListOfSortedRiderIDs;
     }
 
     /**
      * Get the adjusted elapsed times of riders in a stage.
-     * @param allRiders An arraylist of all riders created in the cycling portal for the current race/stage
-	 * @return The ranked list of adjusted elapsed times sorted by their finish time. 
+	 * @return The ranked adjusted elapsed times in nanoseconds, in the same order as the riders returned by
+     *         {@link #getRidersRankInStage()}. 
      * 
-     *         An empty list if there is no result for the stage.
+     *         An empty array if there is no result for the stage.
      */
-    public ArrayList<LocalTime> getRankedAdjustedElapsedTimesInStage(ArrayList<Rider> allRiders) {
-        if (arrayListOfResults.isEmpty()){
-            return (new ArrayList<LocalTime>());
-        }
-        ArrayList<LocalTime> arrayListOfRiderFinishTimes = new ArrayList<>();
-        
-        for(Result j:arrayListOfResults){
-            arrayListOfRiderFinishTimes.add(j.getFinishTime());
+    public long[] getRankedAdjustedElapsedTimesInStage() {
+        AdjustedElapsedTimes times = getAdjustedElapsedTimes();
+        long[] sortedAdjustedElapsedTimes = new long[times.getNumberOfRiders()];
+        for (int rank = 0; rank < sortedAdjustedElapsedTimes.length; rank++){
+            sortedAdjustedElapsedTimes[rank] = times.getAdjustedElapsedNanos(rank);
         }
-        Collections.sort(arrayListOfRiderFinishTimes);
-        ArrayList<LocalTime> arrayListOfSortedAdjustedElapsedTimes = new ArrayList<>();
-        for(LocalTime z:arrayListOfRiderFinishTimes){
-            for (Result k:arrayListOfResults){
-                if (z.equals(k.getFinishTime())){
-                    arrayListOfSortedAdjustedElapsedTimes.add(k.getAdjustedElapsedTime(arrayListOfResults));
-                }
-            }
-        }return arrayListOfSortedAdjustedElapsedTimes;       
+        return sortedAdjustedElapsedTimes;
     }
 
     /**
-     * Get the number of points obtained by each rider in a stage.
-     * @param allRiders An arraylist of all riders created in the cycling portal for the current race/stage
-	 * @return @return The ranked list of points each rider received in the stage, sorted
-	 *         by their elapsed time.
-     * 
-     *         An empty list if there is no result for the stage.
+     * Gets the points and mountain points of all riders in the stage, working them out if the results
+     * have changed since they were last needed.
+     * @return The points of the riders in the stage.
      */
-    public ArrayList<Integer> getRidersPointsInStage(ArrayList<Rider> allRiders) {
-        if (arrayListOfResults.isEmpty()){
-            return (new ArrayList<Integer>());
-        }
-        ArrayList<LocalTime> arrayListOfRiderElapsedTimes = new ArrayList<>();
-        ArrayList<LocalTime> arrayListOfRiderFinishTimes = new ArrayList<>();
-
-        for(Result j:arrayListOfResults){
-            arrayListOfRiderElapsedTimes.add(j.getElapsedTime());
-        }
-        for(Result j:arrayListOfResults){
-            arrayListOfRiderFinishTimes.add(j.getFinishTime());
+    public StagePoints getStagePoints() {
+        StagePoints points = stagePoints;
+        if (points == null) {
+            points = new StagePoints(this, getAdjustedElapsedTimes());
+            stagePoints = points;
         }
+        return points;
+    }
 
-        Collections.sort(arrayListOfRiderElapsedTimes);
-        //time trial handler
-        if (this.type.equals(StageType.TT)){
-            ArrayList<Integer> arrayListOfSortedRiderIDs = new ArrayList<>();
-            for(LocalTime z:arrayListOfRiderElapsedTimes){
-                for (Result k:arrayListOfResults){
-                    if (z.equals(k.getElapsedTime())){
-                        arrayListOfSortedRiderIDs.add(k.getRiderId());
-                    }
-                }
-            }
-            Hashtable <String, Integer> riderSprintersPointsDictionary = this.createRiderSprintersPointsDictionary();
-            for (int id: arrayListOfSortedRiderIDs){
-                for (Result result: arrayListOfResults){
-                    if(result.getRiderId()==(id)){
-                        int currentDictionaryValue = riderSprintersPointsDictionary.get("Rider "+String.valueOf(id));
-                        if ((arrayListOfSortedRiderIDs.indexOf(id)+1)>15||(arrayListOfSortedRiderIDs.indexOf(id)+1)<1){
-                            break;
-                        }else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==1){
-                            int updatedDictionaryValue = currentDictionaryValue+=20;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==2){
-                            int updatedDictionaryValue = currentDictionaryValue+=17;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==3){
-                            int updatedDictionaryValue = currentDictionaryValue+=15;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==4){
-                            int updatedDictionaryValue = currentDictionaryValue+=13;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==5){
-                            int updatedDictionaryValue = currentDictionaryValue+=11;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==6){
-                            int updatedDictionaryValue = currentDictionaryValue+=10;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==7){
-                            int updatedDictionaryValue = currentDictionaryValue+=9;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==8){
-                            int updatedDictionaryValue = currentDictionaryValue+=8;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==9){
-                            int updatedDictionaryValue = currentDictionaryValue+=7;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==10){
-                            int updatedDictionaryValue = currentDictionaryValue+=6;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==11){
-                            int updatedDictionaryValue = currentDictionaryValue+=5;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==12){
-                            int updatedDictionaryValue = currentDictionaryValue+=4;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==13){
-                            int updatedDictionaryValue = currentDictionaryValue+=3;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==14){
-                            int updatedDictionaryValue = currentDictionaryValue+=2;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                        else if((arrayListOfSortedRiderIDs.indexOf(id)+1)==15){
-                            int updatedDictionaryValue = currentDictionaryValue+=1;
-                            riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                        }
-                    }
-                }
-            }ArrayList<Integer> arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime = new ArrayList<>();
-            for (int id:arrayListOfSortedRiderIDs){
-                arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime.add(riderSprintersPointsDictionary.get("Rider "+String.valueOf(id)));
-            }
-            return arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime; 
-        }
-        //finish position handler
-        Collections.sort(arrayListOfRiderFinishTimes);
-        
-        Hashtable <String, Integer> riderSprintersPointsDictionary = this.createRiderSprintersPointsDictionary();
-        for (Result result:arrayListOfResults){
-            int givenRiderId = result.getRiderId();
-            LocalTime givenFinishTime = result.getFinishTime();
-            int positionOfGivenRiderInStage = arrayListOfRiderFinishTimes.indexOf(givenFinishTime);
-            int currentDictionaryValue = riderSprintersPointsDictionary.get("Rider "+String.valueOf(givenRiderId));
-            if (this.type.equals(StageType.FLAT)){
-                if (positionOfGivenRiderInStage+1>15||positionOfGivenRiderInStage+1<1){
-                    break;
-                }else if(positionOfGivenRiderInStage+1==1){
-                    int updatedDictionaryValue = currentDictionaryValue+=50;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==2){
-                    int updatedDictionaryValue = currentDictionaryValue+=30;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==3){
-                    int updatedDictionaryValue = currentDictionaryValue+=20;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==4){
-                    int updatedDictionaryValue = currentDictionaryValue+=18;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==5){
-                    int updatedDictionaryValue = currentDictionaryValue+=16;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==6){
-                    int updatedDictionaryValue = currentDictionaryValue+=14;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==7){
-                    int updatedDictionaryValue = currentDictionaryValue+=12;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==8){
-                    int updatedDictionaryValue = currentDictionaryValue+=10;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==9){
-                    int updatedDictionaryValue = currentDictionaryValue+=8;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==10){
-                    int updatedDictionaryValue = currentDictionaryValue+=7;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==11){
-                    int updatedDictionaryValue = currentDictionaryValue+=6;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==12){
-                    int updatedDictionaryValue = currentDictionaryValue+=5;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==13){
-                    int updatedDictionaryValue = currentDictionaryValue+=4;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==14){
-                    int updatedDictionaryValue = currentDictionaryValue+=3;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==15){
-                    int updatedDictionaryValue = currentDictionaryValue+=2;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-            }
-            else if (this.type.equals(StageType.MEDIUM_MOUNTAIN)){
-                if (positionOfGivenRiderInStage+1>15||positionOfGivenRiderInStage+1<1){
-                    break;
-                }else if(positionOfGivenRiderInStage+1==1){
-                    int updatedDictionaryValue = currentDictionaryValue+=30;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==2){
-                    int updatedDictionaryValue = currentDictionaryValue+=25;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==3){
-                    int updatedDictionaryValue = currentDictionaryValue+=22;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==4){
-                    int updatedDictionaryValue = currentDictionaryValue+=19;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==5){
-                    int updatedDictionaryValue = currentDictionaryValue+=17;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==6){
-                    int updatedDictionaryValue = currentDictionaryValue+=15;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==7){
-                    int updatedDictionaryValue = currentDictionaryValue+=13;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==8){
-                    int updatedDictionaryValue = currentDictionaryValue+=11;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==9){
-                    int updatedDictionaryValue = currentDictionaryValue+=9;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==10){
-                    int updatedDictionaryValue = currentDictionaryValue+=7;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==11){
-                    int updatedDictionaryValue = currentDictionaryValue+=6;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==12){
-                    int updatedDictionaryValue = currentDictionaryValue+=5;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==13){
-                    int updatedDictionaryValue = currentDictionaryValue+=4;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==14){
-                    int updatedDictionaryValue = currentDictionaryValue+=3;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==15){
-                    int updatedDictionaryValue = currentDictionaryValue+=2;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-            }
-            else if (this.type.equals(StageType.HIGH_MOUNTAIN)){
-                if (positionOfGivenRiderInStage+1>15||positionOfGivenRiderInStage+1<1){
-                    break;
-                }else if(positionOfGivenRiderInStage+1==1){
-                    int updatedDictionaryValue = currentDictionaryValue+=20;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==2){
-                    int updatedDictionaryValue = currentDictionaryValue+=17;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==3){
-                    int updatedDictionaryValue = currentDictionaryValue+=15;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==4){
-                    int updatedDictionaryValue = currentDictionaryValue+=13;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==5){
-                    int updatedDictionaryValue = currentDictionaryValue+=11;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==6){
-                    int updatedDictionaryValue = currentDictionaryValue+=10;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==7){
-                    int updatedDictionaryValue = currentDictionaryValue+=9;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==8){
-                    int updatedDictionaryValue = currentDictionaryValue+=8;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==9){
-                    int updatedDictionaryValue = currentDictionaryValue+=7;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==10){
-                    int updatedDictionaryValue = currentDictionaryValue+=6;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==11){
-                    int updatedDictionaryValue = currentDictionaryValue+=5;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==12){
-                    int updatedDictionaryValue = currentDictionaryValue+=4;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==13){
-                    int updatedDictionaryValue = currentDictionaryValue+=3;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==14){
-                    int updatedDictionaryValue = currentDictionaryValue+=2;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-                else if(positionOfGivenRiderInStage+1==15){
-                    int updatedDictionaryValue = currentDictionaryValue+=1;
-                    riderSprintersPointsDictionary.put("Rider "+String.valueOf(givenRiderId), updatedDictionaryValue);
-                }
-            }
-        }
-        ArrayList<Integer> arrayListOfSortedRiderIDs = new ArrayList<>();
-        for(LocalTime z:arrayListOfRiderElapsedTimes){
-            for (Result k:arrayListOfResults){
-                if (z.equals(k.getElapsedTime())){
-                    arrayListOfSortedRiderIDs.add(k.getRiderId());
-                }
-            }
-        }
-        ArrayList<LocalTime[]> arrayListOfCheckpointALs = new ArrayList<>();
-        for (int y:arrayListOfSortedRiderIDs){
-            for (Result i:arrayListOfResults){
-                if ((y)==(i.getRiderId())){
-                    arrayListOfCheckpointALs.add(i.getCheckpointsWithoutStartAndEnd());
-                }
-            }
-        }
-        ArrayList<ArrayList<LocalTime>>arrayListOfSortedCheckpointsForEachRider = new ArrayList<>();
-        for (int j=0; j<arrayListOfResults.size(); j++){
-            ArrayList<LocalTime> arrayListOfGivenSubElements = new ArrayList<>();
-            for (LocalTime[] i:arrayListOfCheckpointALs){
-                if (j > i.length|| j==(i.length)){
-                    break;
-                }
-                arrayListOfGivenSubElements.add(i[j]);
-            }
-            Collections.sort(arrayListOfGivenSubElements);
-            arrayListOfSortedCheckpointsForEachRider.add(arrayListOfGivenSubElements);
-        }
-        for (ArrayList<LocalTime> k:arrayListOfSortedCheckpointsForEachRider){
-            int indexofelement = arrayListOfSortedCheckpointsForEachRider.indexOf(k);//final
-            ArrayList<LocalTime> arrayListOfGivenSubElements = new ArrayList<>();
-            for (LocalTime[] i:arrayListOfCheckpointALs){
-                arrayListOfGivenSubElements.add((LocalTime)Array.get(i, indexofelement));
-            }
-            ArrayList<Integer> arrayListOfIndexes = new ArrayList<>();
-            for (LocalTime x:k){
-                for (LocalTime z:arrayListOfGivenSubElements){
-                    if (x.equals(z)){
-                        int indexofelement2 = arrayListOfGivenSubElements.indexOf(z);//final
-                        arrayListOfIndexes.add(indexofelement2);
-                    }
-                }    
-            }
-            outerloop:
-            for (int item:arrayListOfIndexes){
-                for (int id:arrayListOfSortedRiderIDs){
-                    if (arrayListOfSortedRiderIDs.indexOf(id) == (item)){
-                        int currentDictionaryValue = riderSprintersPointsDictionary.get("Rider "+String.valueOf(id));
-                        if (indexofelement==arrayListOfSegments.size()||indexofelement>arrayListOfSegments.size()){
-                            break outerloop;
-                        }
-                        if (arrayListOfSegments.get(indexofelement).getSegmentType().equals(SegmentType.SPRINT)){
-                            if (arrayListOfIndexes.indexOf(item)+1>15||arrayListOfIndexes.indexOf(item)+1<1){
-                                break;
-                            }else if(arrayListOfIndexes.indexOf(item)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=20;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==2){
-                                int updatedDictionaryValue = currentDictionaryValue+=17;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==3){
-                                int updatedDictionaryValue = currentDictionaryValue+=15;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==4){
-                                int updatedDictionaryValue = currentDictionaryValue+=13;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==5){
-                                int updatedDictionaryValue = currentDictionaryValue+=11;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==6){
-                                int updatedDictionaryValue = currentDictionaryValue+=10;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==7){
-                                int updatedDictionaryValue = currentDictionaryValue+=9;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==8){
-                                int updatedDictionaryValue = currentDictionaryValue+=8;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==9){
-                                int updatedDictionaryValue = currentDictionaryValue+=7;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==10){
-                                int updatedDictionaryValue = currentDictionaryValue+=6;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==11){
-                                int updatedDictionaryValue = currentDictionaryValue+=5;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==12){
-                                int updatedDictionaryValue = currentDictionaryValue+=4;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==13){
-                                int updatedDictionaryValue = currentDictionaryValue+=3;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==14){
-                                int updatedDictionaryValue = currentDictionaryValue+=2;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                            else if(arrayListOfIndexes.indexOf(item)+1==15){
-                                int updatedDictionaryValue = currentDictionaryValue+=1;
-                                riderSprintersPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        ArrayList<Integer> arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime = new ArrayList<>();
-        for (int id:arrayListOfSortedRiderIDs){
-            arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime.add(riderSprintersPointsDictionary.get("Rider "+String.valueOf(id)));
-        }
-        return arrayListOfPointsCorrespondingToRiderIDsSortedByElapsedTime;
+    /**
+     * Checks whether the points of the stage have been worked out since its results last changed.
+     * @return true if {@link #getStagePoints()} only has to return them.
+     */
+    public boolean hasStagePoints() {
+        return stagePoints != null;
     }
 
     /**
      * Get the number of points obtained by each rider in a stage.
-     * @param allRiders An arraylist of all riders created in the cycling portal for the current race/stage
-	 * @return @return The ranked list of mountain points each riders received in the stage,
-	 *         sorted by their finish time.
+	 * @return The ranked list of points each rider received in the stage, in the same order as the riders
+     *         returned by {@link #getRidersRankInStage()}.
      * 
-     *         An empty list if there is no result for the stage.
+     *         An empty array if there is no result for the stage.
      */
-    public ArrayList<Integer> getRidersMountainPointsInStage(ArrayList<Rider> allRiders) {
-        if (arrayListOfResults.isEmpty()){
-            return (new ArrayList<Integer>());
-        }
-        ArrayList<LocalTime> arrayListOfRiderFinishTimes = new ArrayList<>();
-
-        for(Result j:arrayListOfResults){
-            arrayListOfRiderFinishTimes.add(j.getFinishTime());
-        }
-
-        Collections.sort(arrayListOfRiderFinishTimes);
-        
-        ArrayList<Integer> arrayListOfSortedRiderIDs = new ArrayList<>();
-        for(LocalTime z:arrayListOfRiderFinishTimes){
-            for (Result k:arrayListOfResults){
-                if (z.equals(k.getFinishTime())){
-                    arrayListOfSortedRiderIDs.add(k.getRiderId());
-                }
-            }
-        }
-        ArrayList<LocalTime[]> arrayListOfCheckpointALs = new ArrayList<>();
-        for (int y:arrayListOfSortedRiderIDs){
-            for (Result i:arrayListOfResults){
-                if ((y)==(i.getRiderId())){
-                    arrayListOfCheckpointALs.add(i.getCheckpointsWithoutStartAndEnd());
-                }
-            }
-        }
-        ArrayList<ArrayList<LocalTime>>arrayListOfSortedCheckpointsForEachRider = new ArrayList<>();
-        for (int j=0; j<arrayListOfResults.size(); j++){
-            ArrayList<LocalTime> arrayListOfGivenSubElements = new ArrayList<>();
-            for (LocalTime[] i:arrayListOfCheckpointALs){
-                if (j > i.length|| j==(i.length)){
-                    break;
-                }
-                arrayListOfGivenSubElements.add(i[j]);
-            }
-            Collections.sort(arrayListOfGivenSubElements);
-            arrayListOfSortedCheckpointsForEachRider.add(arrayListOfGivenSubElements);
-        }
-        Hashtable <String, Integer> riderKOMPointsDictionary = this.createRiderKOMPointsDictionary();
-        for (ArrayList<LocalTime> k:arrayListOfSortedCheckpointsForEachRider){
-            int indexofelement3 = arrayListOfSortedCheckpointsForEachRider.indexOf(k);
-            ArrayList<LocalTime> arrayListOfGivenSubElements = new ArrayList<>();
-            for (LocalTime[] i:arrayListOfCheckpointALs){
-                arrayListOfGivenSubElements.add((LocalTime)Array.get(i, indexofelement3));
-            }
-            ArrayList<Integer> arrayListOfIndexes2 = new ArrayList<>();
-            for (LocalTime x:k){
-                for (LocalTime z:arrayListOfGivenSubElements){
-                    if (x.equals(z)){
-                        int indexofelement4 = arrayListOfGivenSubElements.indexOf(z);
-                        arrayListOfIndexes2.add(indexofelement4);
-                    }
-                }    
-            }
-            outerloop:
-            for (int indexitem:arrayListOfIndexes2){
-                for (int id:arrayListOfSortedRiderIDs){
-                    if (arrayListOfSortedRiderIDs.indexOf(id) == (indexitem)){
-                        int currentDictionaryValue = riderKOMPointsDictionary.get("Rider "+String.valueOf(id));
-                        if (indexofelement3==arrayListOfSegments.size()||indexofelement3>arrayListOfSegments.size()){
-                            break outerloop;
-                        }
-                        if (arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.SPRINT)){
-                            break outerloop;
-                        }
-                        if (arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.C4)){
-                            if (arrayListOfIndexes2.indexOf(indexitem)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=1;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1!=1){
-                                int updatedDictionaryValue = currentDictionaryValue+=0;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }else if(arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.C3)){
-                            if (arrayListOfIndexes2.indexOf(indexitem)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=2;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==2){
-                                int updatedDictionaryValue = currentDictionaryValue+=1;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1!=1){
-                                int updatedDictionaryValue = currentDictionaryValue+=0;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }
-                        else if(arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.C2)){
-                            if (arrayListOfIndexes2.indexOf(indexitem)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=5;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==2){
-                                int updatedDictionaryValue = currentDictionaryValue+=3;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==3){
-                                int updatedDictionaryValue = currentDictionaryValue+=2;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==4){
-                                int updatedDictionaryValue = currentDictionaryValue+=1;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1!=1){
-                                int updatedDictionaryValue = currentDictionaryValue+=0;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }else if(arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.C1)){
-                            if (arrayListOfIndexes2.indexOf(indexitem)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=10;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==2){
-                                int updatedDictionaryValue = currentDictionaryValue+=8;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==3){
-                                int updatedDictionaryValue = currentDictionaryValue+=6;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==4){
-                                int updatedDictionaryValue = currentDictionaryValue+=4;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==5){
-                                int updatedDictionaryValue = currentDictionaryValue+=2;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==6){
-                                int updatedDictionaryValue = currentDictionaryValue+=1;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1!=1){
-                                int updatedDictionaryValue = currentDictionaryValue+=0;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }
-                        else if (arrayListOfSegments.get(indexofelement3).getSegmentType().equals(SegmentType.HC)){
-                            if (arrayListOfIndexes2.indexOf(indexitem)+1==1){
-                                int updatedDictionaryValue = currentDictionaryValue+=20;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==2){
-                                int updatedDictionaryValue = currentDictionaryValue+=15;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==3){
-                                int updatedDictionaryValue = currentDictionaryValue+=12;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==4){
-                                int updatedDictionaryValue = currentDictionaryValue+=10;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==5){
-                                int updatedDictionaryValue = currentDictionaryValue+=8;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==6){
-                                int updatedDictionaryValue = currentDictionaryValue+=6;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==7){
-                                int updatedDictionaryValue = currentDictionaryValue+=4;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1==8){
-                                int updatedDictionaryValue = currentDictionaryValue+=2;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }else if(arrayListOfIndexes2.indexOf(indexitem)+1!=1){
-                                int updatedDictionaryValue = currentDictionaryValue+=0;
-                                riderKOMPointsDictionary.put("Rider "+String.valueOf(id), updatedDictionaryValue);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    public int[] getRidersPointsInStage() {
+        return getStagePoints().getRankedPoints();
+    }
 
-        ArrayList<Integer> arrayListOfMountainPointsCorrespondingToRiderIDsSortedByFinishTime = new ArrayList<>();
-        for (int id:arrayListOfSortedRiderIDs){
-            arrayListOfMountainPointsCorrespondingToRiderIDsSortedByFinishTime.add(riderKOMPointsDictionary.get("Rider "+String.valueOf(id)));
-        }
-        return arrayListOfMountainPointsCorrespondingToRiderIDsSortedByFinishTime;
+    /**
+     * Get the number of mountain points obtained by each rider in a stage.
+	 * @return The ranked list of mountain points each rider received in the stage, in the same order as the
+     *         riders returned by {@link #getRidersRankInStage()}.
+     * 
+     *         An empty array if there is no result for the stage.
+     */
+    public int[] getRidersMountainPointsInStage() {
+        return getStagePoints().getRankedMountainPoints();
     }
 }
@@ -0,0 +1,126 @@
+package cycling;
+
+/**
+ * The StagePoints class works out the points (sprinters' classification) and mountain points (king of the
+ * mountains classification) of every rider in a stage. The points given for each position are read from
+ * tables for each stage type and segment type, so the riders only have to be ranked once at the finish
+ * and once at each segment, by sorting that segment's column of checkpoint times.
+ */
+public class StagePoints {
+    private static final int[] FLAT_FINISH_POINTS = {50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2};
+    private static final int[] MEDIUM_MOUNTAIN_FINISH_POINTS = {30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2};
+    private static final int[] HIGH_MOUNTAIN_FINISH_POINTS = {20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    private static final int[] TIME_TRIAL_FINISH_POINTS = {20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    private static final int[] SPRINT_POINTS = {20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
+    private static final int[] C4_POINTS = {1};
+    private static final int[] C3_POINTS = {2, 1};
+    private static final int[] C2_POINTS = {5, 3, 2, 1};
+    private static final int[] C1_POINTS = {10, 8, 6, 4, 2, 1};
+    private static final int[] HC_POINTS = {20, 15, 12, 10, 8, 6, 4, 2};
+
+    /**
+     * Points for each finishing position, indexed by the ordinal of the {@link StageType}.
+     */
+    private static final int[][] FINISH_POINTS = new int[StageType.values().length][];
+    /**
+     * Points for each position at a segment, indexed by the ordinal of the {@link SegmentType}.
+     */
+    private static final int[][] SEGMENT_POINTS = new int[SegmentType.values().length][];
+
+    static {
+        FINISH_POINTS[StageType.FLAT.ordinal()] = FLAT_FINISH_POINTS;
+        FINISH_POINTS[StageType.MEDIUM_MOUNTAIN.ordinal()] = MEDIUM_MOUNTAIN_FINISH_POINTS;
+        FINISH_POINTS[StageType.HIGH_MOUNTAIN.ordinal()] = HIGH_MOUNTAIN_FINISH_POINTS;
+        FINISH_POINTS[StageType.TT.ordinal()] = TIME_TRIAL_FINISH_POINTS;
+        SEGMENT_POINTS[SegmentType.SPRINT.ordinal()] = SPRINT_POINTS;
+        SEGMENT_POINTS[SegmentType.C4.ordinal()] = C4_POINTS;
+        SEGMENT_POINTS[SegmentType.C3.ordinal()] = C3_POINTS;
+        SEGMENT_POINTS[SegmentType.C2.ordinal()] = C2_POINTS;
+        SEGMENT_POINTS[SegmentType.C1.ordinal()] = C1_POINTS;
+        SEGMENT_POINTS[SegmentType.HC.ordinal()] = HC_POINTS;
+    }
+
+    private final int[] rankedPoints;
+    private final int[] rankedMountainPoints;
+
+    /**
+     * Constructor for the StagePoints class, working out the points of every rider in a stage.
+     * @param stage The stage the points are for.
+     * @param times The adjusted elapsed times of the stage, which give the finishing position of each rider.
+     */
+    public StagePoints(Stage stage, AdjustedElapsedTimes times) {
+        this(stage.getStageType(), stage.getSegmentTypesInLocationOrder(), stage.getCheckpointColumns(), times);
+    }
+
+    /**
+     * Constructor for the StagePoints class, working out the points of every rider from a copy of a stage's
+     * checkpoint times, so the stage itself is not read.
+     * @param stageType The type of the stage.
+     * @param segmentTypes The types of the segments of the stage, ordered by their location.
+     * @param columns The checkpoint times of all rider results for the stage.
+     * @param times The adjusted elapsed times worked out from the same checkpoint times.
+     */
+    public StagePoints(StageType stageType, SegmentType[] segmentTypes, CheckpointColumns columns,
+                       AdjustedElapsedTimes times) {
+        int numberOfRiders = times.getNumberOfRiders();
+        rankedPoints = new int[numberOfRiders];
+        rankedMountainPoints = new int[numberOfRiders];
+
+        int[] finishPoints = FINISH_POINTS[stageType.ordinal()];
+        for (int rank = 0; rank < numberOfRiders && rank < finishPoints.length; rank++) {
+            rankedPoints[rank] += finishPoints[rank];
+        }
+
+        if (segmentTypes.length == 0 || numberOfRiders == 0) {
+            return;
+        }
+        // Riders reaching a segment at the same time are split by their finishing position.
+        int[] rankOfSlot = new int[numberOfRiders];
+        for (int rank = 0; rank < numberOfRiders; rank++) {
+            rankOfSlot[columns.getSlotOfRider(times.getRiderId(rank))] = rank;
+        }
+        for (int segmentIndex = 0; segmentIndex < segmentTypes.length; segmentIndex++) {
+            SegmentType segmentType = segmentTypes[segmentIndex];
+            int[] segmentPoints = SEGMENT_POINTS[segmentType.ordinal()];
+            int[] pointsToAward = segmentType == SegmentType.SPRINT ? rankedPoints : rankedMountainPoints;
+            int[] order = Ranking.sortedOrder(columns.getColumn(segmentIndex + 1), rankOfSlot, numberOfRiders);
+            for (int position = 0; position < numberOfRiders && position < segmentPoints.length; position++) {
+                pointsToAward[rankOfSlot[order[position]]] += segmentPoints[position];
+            }
+        }
+    }
+
+    /**
+     * Gets the points of every rider in the stage.
+     * @return The points of each rider, in the order of their finishing position in the stage.
+     */
+    public int[] getRankedPoints() {
+        return rankedPoints.clone();
+    }
+
+    /**
+     * Gets the mountain points of every rider in the stage.
+     * @return The mountain points of each rider, in the order of their finishing position in the stage.
+     */
+    public int[] getRankedMountainPoints() {
+        return rankedMountainPoints.clone();
+    }
+
+    /**
+     * Gets the points of the rider at a finishing position in the stage.
+     * @param rank The finishing position, starting from 0.
+     * @return The points of the rider.
+     */
+    public int getPoints(int rank) {
+        return rankedPoints[rank];
+    }
+
+    /**
+     * Gets the mountain points of the rider at a finishing position in the stage.
+     * @param rank The finishing position, starting from 0.
+     * @return The mountain points of the rider.
+     */
+    public int getMountainPoints(int rank) {
+        return rankedMountainPoints[rank];
+    }
+}
@@ -8,7 +8,6 @@ import java.io.Serializable;
  *  including which riders are a part of the team.
  */
 public class Team implements Serializable{
-    public static int teamCounter = 0;
     private int teamId;
     private String name;
     private String description;
@@ -16,14 +15,24 @@ public class Team implements Serializable{
 
     /**
      * Constructor for the team class.
+     * @param idAllocator The ID allocator of the portal the team is created in.
      * @param name The name of the team.
      * @param description A description of the team.
      */
-    public Team(String name, String description) {
+    public Team(IdAllocator idAllocator, String name, String description) {
+        this(idAllocator.nextTeamId(), name, description);
+    }
+
+    /**
+     * Constructor for a team restored from a saved portal, which keeps its saved ID.
+     * @param teamId The ID of the team.
+     * @param name The name of the team.
+     * @param description A description of the team.
+     */
+    Team(int teamId, String name, String description) {
+        this.teamId = teamId;
         this.name = name;
         this.description = description;
-        teamCounter += 1;
-        teamId = teamCounter;
     }
 
     /**
@@ -52,15 +61,16 @@ public class Team implements Serializable{
 
     /**
      * Creates a new rider and adds it to a list of riders that belong to the team.
+     * @param idAllocator The ID allocator of the portal the rider is created in.
      * @param teamId The ID of the team the rider belongs to.
      * @param name The name of the rider.
      * @param yearOfBirth The year of birth for the rider.
-     * @return The ID created for the rider
+     * @return The rider created.
      */
-    public int createRider(int teamId, String name, int yearOfBirth) {
-        Rider newRider = new Rider(teamId, name, yearOfBirth);
+    public Rider createRider(IdAllocator idAllocator, int teamId, String name, int yearOfBirth) {
+        Rider newRider = new Rider(idAllocator, teamId, name, yearOfBirth);
         arrayListOfRiders.add(newRider);
-        return newRider.getRiderId();
+        return newRider;
     }
 
     /**
@@ -71,6 +81,7 @@ public class Team implements Serializable{
         for (Rider i:arrayListOfRiders) {
             if ((i.getRiderId()) == (riderId)) {
                 arrayListOfRiders.remove(i);
+                break;
             }
         }
     }